@@ -3,7 +3,7 @@ package com.github.jscancella.conformance;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Collection;
@@ -32,14 +32,14 @@ import com.github.jscancella.conformance.internal.ManifestChecker;
 import com.github.jscancella.conformance.internal.MetadataChecker;
 import com.github.jscancella.conformance.internal.VersionChecker;
 import com.github.jscancella.conformance.profile.BagitProfile;
+import com.github.jscancella.conformance.profile.BagitProfileCache;
+import com.github.jscancella.conformance.profile.CompiledBagitProfile;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.Version;
-import com.github.jscancella.exceptions.InvalidBagMetadataException;
 import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
 import com.github.jscancella.exceptions.MaliciousPathException;
 import com.github.jscancella.exceptions.UnparsableVersionException;
 import com.github.jscancella.reader.internal.BagitTextFileReader;
-import com.github.jscancella.reader.internal.KeyValueReader;
 import com.github.jscancella.verify.BagVerifier;
 
 public enum BagLinter {
@@ -82,6 +82,37 @@ public enum BagLinter {
     return true;
   }
 
+  /**
+   * Check a bag against a compiled bagit-profile as described by <a href=
+   * "https://github.com/ruebot/bagit-profiles">https://github.com/ruebot/bagit-profiles</a>.
+   * The profile is only parsed when it is compiled, so use this when checking many bags against the same profile.
+   * See {@link BagitProfileCache} for keeping compiled profiles by their identifier.
+   * <br>
+   * Note: <b> This implementation does not check the Serialization part of the
+   * profile!</b>
+   * 
+   * @param profile the compiled conformance profile to check the bag against
+   * @param bag the bag to check against the conformance profile
+   * 
+   * @return true if the bag meets the conformance profile
+   * 
+   * @throws FetchFileNotAllowedException If the bag contains a fetch file but the profile forbids it
+   * @throws RequiredMetadataFieldNotPresentException If the bag is missing a required metadata field
+   * @throws MetatdataValueIsNotAcceptableException if the metadata value present in the bag is not in the list of acceptable values from the profile
+   * @throws RequiredManifestNotPresentException if the manifest present doesn't use the required checksum algorithm from the profile
+   * @throws BagitVersionIsNotAcceptableException if the bag is too old
+   * @throws RequiredTagFileNotPresentException if a tag file is missing
+   * @throws MetatdataValueIsNotRepeatableException if there is a repeat of metadata in the bag
+   */
+  public static boolean checkAgainstProfile(final CompiledBagitProfile profile, final Bag bag)
+      throws FetchFileNotAllowedException, RequiredMetadataFieldNotPresentException, MetatdataValueIsNotAcceptableException,
+      RequiredManifestNotPresentException, BagitVersionIsNotAcceptableException, RequiredTagFileNotPresentException, 
+      MetatdataValueIsNotRepeatableException{
+    BagProfileChecker.bagConformsToProfile(profile, bag);
+
+    return true;
+  }
+
   /**
    * The BagIt specification is very flexible in what it allows which leads to
    * situations where something may be technically allowed, but should be
@@ -120,11 +151,35 @@ public enum BagLinter {
    * @throws MaliciousPathException if the bag is trying to be maliciou
    */
   public static Set<BagitWarning> lintBag(final Path bagitDir, final Collection<BagitWarning> warningsToIgnore) throws IOException, UnparsableVersionException, InvalidBagitFileFormatException, MaliciousPathException{
+    return lintBag(bagitDir, warningsToIgnore, new LintOptions());
+  }
+
+  /**
+   * The BagIt specification is very flexible in what it allows which leads to
+   * situations where something may be technically allowed, but should be
+   * discouraged. This method checks a bag for potential problems, or other items
+   * that are allowed but discouraged. This <strong>does not</strong> validate a
+   * bag. See {@link BagVerifier} instead.
+   * 
+   * @param bagitDir the directory that contains a bag
+   * @param warningsToIgnore a collection of warnings you would like the linter to ignore
+   * @param options the thresholds for a large bag and whether to estimate its size instead of walking the payload directory
+   * 
+   * @return a set of warnings that were found in the bag
+   * 
+   * @throws IOException if there was a problem reading a bag file
+   * @throws UnparsableVersionException if there was a problem parsing the version of the bag
+   * @throws InvalidBagitFileFormatException if a file is not formatted correctly
+   * @throws MaliciousPathException if the bag is trying to be malicious
+   */
+  public static Set<BagitWarning> lintBag(final Path bagitDir, final Collection<BagitWarning> warningsToIgnore, final LintOptions options) 
+      throws IOException, UnparsableVersionException, InvalidBagitFileFormatException, MaliciousPathException{
     final Set<BagitWarning> warnings = new HashSet<>();
 
     final Path bagitFile = bagitDir.resolve("bagit.txt");
-    checkForExtraLines(bagitFile, warnings, warningsToIgnore);
-    final SimpleImmutableEntry<Version, Charset> bagitInfo = BagitTextFileReader.readBagitTextFile(bagitFile);
+    final List<SimpleImmutableEntry<String, String>> pairs = BagitTextFileReader.readKeyValues(Files.readAllBytes(bagitFile), bagitFile);
+    final SimpleImmutableEntry<Version, Charset> bagitInfo = BagitTextFileReader.getVersionAndEncoding(pairs);
+    checkForExtraLines(pairs, bagitInfo.getKey(), warnings, warningsToIgnore);
 
     logger.info(messages.getString("checking_encoding_problems"));
     EncodingChecker.checkEncoding(bagitInfo.getValue(), warnings, warningsToIgnore);
@@ -133,7 +188,7 @@ public enum BagLinter {
     VersionChecker.checkVersion(bagitInfo.getKey(), warnings, warningsToIgnore);
     
     logger.info(messages.getString("checking_size"));
-    LargeBagChecker.checkForLargeBag(bagitDir, warnings, warningsToIgnore);
+    LargeBagChecker.checkForLargeBag(bagitDir, bagitInfo.getValue(), warnings, warningsToIgnore, options);
 
     logger.info(messages.getString("checking_manifest_problems"));
     ManifestChecker.checkManifests(bagitDir, bagitInfo.getValue(), warnings, warningsToIgnore);
@@ -147,24 +202,18 @@ public enum BagLinter {
   /*
    * After version 1.0 the specification read that the bagit.txt MUST contain EXACTLY 2 lines
    */
-  private static void checkForExtraLines(final Path bagitFile, final Collection<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore) throws InvalidBagMetadataException, IOException, UnparsableVersionException {
+  private static void checkForExtraLines(final List<SimpleImmutableEntry<String, String>> pairs, final Version version, 
+      final Collection<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore){
     if(warningsToIgnore.contains(BagitWarning.EXTRA_LINES_IN_BAGIT_FILES)){
       logger.debug(messages.getString("skipping_check_extra_lines"));
       return;
     }
     
     logger.debug(messages.getString("checking_extra_lines"));
-    final List<SimpleImmutableEntry<String, String>> pairs = KeyValueReader.readKeyValuesFromFile(bagitFile, ":", StandardCharsets.UTF_8);
-     
-    for(final SimpleImmutableEntry<String, String> pair : pairs){
-      if("BagIt-Version".equals(pair.getKey())){
-        final Version version = BagitTextFileReader.parseVersion(pair.getValue());
-        //versions after 1.0 specified it must be exactly 2 lines
-        if(pairs.size() > 2 && version.isSameOrNewer(Version.VERSION_1_0())){
-          logger.warn(messages.getString("extra_lines_warning"), pairs.size());
-          warnings.add(BagitWarning.EXTRA_LINES_IN_BAGIT_FILES);
-        }
-      }
+    //versions after 1.0 specified it must be exactly 2 lines
+    if(pairs.size() > 2 && version.isSameOrNewer(Version.VERSION_1_0())){
+      logger.warn(messages.getString("extra_lines_warning"), pairs.size());
+      warnings.add(BagitWarning.EXTRA_LINES_IN_BAGIT_FILES);
     }
   }
 }
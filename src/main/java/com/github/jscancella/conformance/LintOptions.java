@@ -0,0 +1,75 @@
+package com.github.jscancella.conformance;
+
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Options that change how {@link BagLinter#lintBag(Path, Collection, LintOptions)} checks a bag.
+ * The defaults result in the same warnings as {@link BagLinter#lintBag(Path, Collection)}.
+ */
+public final class LintOptions {
+  private static final long ONE_TERABYTE = 1024L * 1024L * 1024L * 1024L;
+
+  private long largeFileCount = 1000; //FIXME What is a good number here?
+  private long largePayloadSize = ONE_TERABYTE;
+  private long largeManifestCount = 20; //FIXME What is a good number here?
+  private boolean estimateLargeBag;
+
+  /**
+   * @return the number of payload files a bag must have more than to be considered large, defaults to 1000
+   */
+  public long getLargeFileCount() {
+    return largeFileCount;
+  }
+
+  /**
+   * @param largeFileCount the number of payload files a bag must have more than to get a {@link BagitWarning#LARGE_NUMBER_OF_FILES} warning
+   */
+  public void setLargeFileCount(final long largeFileCount) {
+    this.largeFileCount = largeFileCount;
+  }
+
+  /**
+   * @return the number of payload bytes at which a bag is considered large, defaults to 1 terabyte
+   */
+  public long getLargePayloadSize() {
+    return largePayloadSize;
+  }
+
+  /**
+   * @param largePayloadSize the number of payload bytes at which a bag gets a {@link BagitWarning#LARGE_BAG_SIZE} warning
+   */
+  public void setLargePayloadSize(final long largePayloadSize) {
+    this.largePayloadSize = largePayloadSize;
+  }
+
+  /**
+   * @return the number of manifests a bag must have more than to be considered large, defaults to 20
+   */
+  public long getLargeManifestCount() {
+    return largeManifestCount;
+  }
+
+  /**
+   * @param largeManifestCount the number of manifests a bag must have more than to get a {@link BagitWarning#LARGE_NUMBER_OF_MANIFESTS} warning
+   */
+  public void setLargeManifestCount(final long largeManifestCount) {
+    this.largeManifestCount = largeManifestCount;
+  }
+
+  /**
+   * @return true if the number of payload files and their size are estimated instead of walking the payload directory, defaults to false
+   */
+  public boolean isEstimateLargeBag() {
+    return estimateLargeBag;
+  }
+
+  /**
+   * @param estimateLargeBag true to take the number of payload files and their size from the Payload-Oxum,
+   * or else to count the lines of a payload manifest (stopping once there are more than {@link #getLargeFileCount()}).
+   * The payload directory is only walked for what can't be estimated this way
+   */
+  public void setEstimateLargeBag(final boolean estimateLargeBag) {
+    this.estimateLargeBag = estimateLargeBag;
+  }
+}
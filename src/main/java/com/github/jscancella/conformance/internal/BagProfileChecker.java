@@ -17,8 +17,6 @@ import org.slf4j.helpers.MessageFormatter;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.github.jscancella.conformance.exceptions.BagitVersionIsNotAcceptableException;
 import com.github.jscancella.conformance.exceptions.FetchFileNotAllowedException;
 import com.github.jscancella.conformance.exceptions.MetatdataValueIsNotAcceptableException;
@@ -26,9 +24,9 @@ import com.github.jscancella.conformance.exceptions.MetatdataValueIsNotRepeatabl
 import com.github.jscancella.conformance.exceptions.RequiredManifestNotPresentException;
 import com.github.jscancella.conformance.exceptions.RequiredMetadataFieldNotPresentException;
 import com.github.jscancella.conformance.exceptions.RequiredTagFileNotPresentException;
-import com.github.jscancella.conformance.profile.BagInfoRequirement;
 import com.github.jscancella.conformance.profile.BagitProfile;
-import com.github.jscancella.conformance.profile.BagitProfileDeserializer;
+import com.github.jscancella.conformance.profile.CompiledBagitProfile;
+import com.github.jscancella.conformance.profile.CompiledBagitProfile.Requirement;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.FetchItem;
 import com.github.jscancella.domain.Manifest;
@@ -66,7 +64,30 @@ public enum BagProfileChecker {;//using enum to enforce singleton
   IOException, FetchFileNotAllowedException, RequiredMetadataFieldNotPresentException, MetatdataValueIsNotAcceptableException, 
   RequiredManifestNotPresentException, BagitVersionIsNotAcceptableException, RequiredTagFileNotPresentException, MetatdataValueIsNotRepeatableException{
     
-    final BagitProfile profile = parseBagitProfile(jsonProfile);
+    bagConformsToProfile(CompiledBagitProfile.compile(jsonProfile), bag);
+  }
+  
+  /**
+   * Check a bag against a compiled bagit-profile as described by 
+   * <a href="https://github.com/ruebot/bagit-profiles">https://github.com/ruebot/bagit-profiles</a>.
+   * The profile isn't parsed again, so this is the one to use when checking many bags against the same profile.
+   * <br>Note: <b> This implementation does not check the Serialization part of the profile!</b>
+   * 
+   * @param profile the compiled profile
+   * @param bag the bag to check against the profile
+   * 
+   * @throws FetchFileNotAllowedException if there is a fetch file when the profile prohibits it
+   * @throws MetatdataValueIsNotAcceptableException if a metadata value is not in the list of acceptable values
+   * @throws MetatdataValueIsNotRepeatableException if a metadata value shows up more than once when not repeatable
+   * @throws RequiredMetadataFieldNotPresentException if a metadata field is not present but it should be
+   * @throws RequiredManifestNotPresentException if a payload or tag manifest type is not present but should be
+   * @throws BagitVersionIsNotAcceptableException if the version of the bag is not in the list of acceptable versions
+   * @throws RequiredTagFileNotPresentException if a tag file is not present but should be
+   */
+  public static void bagConformsToProfile(final CompiledBagitProfile profile, final Bag bag) throws FetchFileNotAllowedException, 
+  RequiredMetadataFieldNotPresentException, MetatdataValueIsNotAcceptableException, RequiredManifestNotPresentException, 
+  BagitVersionIsNotAcceptableException, RequiredTagFileNotPresentException, MetatdataValueIsNotRepeatableException{
+    
     checkFetch(bag.getRootDir(), profile.isFetchFileAllowed(), bag.getItemsToFetch());
     
     checkMetadata(bag.getMetadata(), profile.getBagInfoRequirements());
@@ -75,22 +96,13 @@ public enum BagProfileChecker {;//using enum to enforce singleton
 
     requiredManifestsExist(bag.getTagManifests(), profile.getTagManifestTypesRequired(), false);
 
-    if(!profile.getAcceptableBagitVersions().contains(bag.getVersion().toString())){
+    if(!profile.isAcceptableBagitVersion(bag.getVersion().toString())){
       throw new BagitVersionIsNotAcceptableException(messages.getString("bagit_version_not_acceptable_error"), bag.getVersion(), profile.getAcceptableBagitVersions());
     }
     
     requiredTagFilesExist(bag.getRootDir(), profile.getTagFilesRequired());
   }
   
-  private static BagitProfile parseBagitProfile(final InputStream jsonProfile) throws JsonParseException, JsonMappingException, IOException{
-    final ObjectMapper mapper = new ObjectMapper();
-    final SimpleModule module = new SimpleModule();
-    module.addDeserializer(BagitProfile.class, new BagitProfileDeserializer());
-    mapper.registerModule(module);
-
-    return mapper.readValue(jsonProfile, BagitProfile.class);
-  }
-  
   private static void checkFetch(final Path rootDir, final boolean allowFetchFile, final List<FetchItem> itemsToFetch) throws FetchFileNotAllowedException{
     logger.debug(messages.getString("checking_fetch_file_allowed"), rootDir);
     if(!allowFetchFile && !itemsToFetch.isEmpty()){
@@ -98,10 +110,10 @@ public enum BagProfileChecker {;//using enum to enforce singleton
     }
   }
   
-  private static void checkMetadata(final Metadata bagMetadata, final Map<String, BagInfoRequirement> bagInfoEntryRequirements) 
+  private static void checkMetadata(final Metadata bagMetadata, final Map<String, Requirement> bagInfoEntryRequirements) 
       throws RequiredMetadataFieldNotPresentException, MetatdataValueIsNotAcceptableException, MetatdataValueIsNotRepeatableException{
     
-    for(final Entry<String, BagInfoRequirement> bagInfoEntryRequirement : bagInfoEntryRequirements.entrySet()){
+    for(final Entry<String, Requirement> bagInfoEntryRequirement : bagInfoEntryRequirements.entrySet()){
       final boolean metadataContainsKey = bagMetadata.contains(bagInfoEntryRequirement.getKey());
       
       checkIfMetadataEntryIsRequired(bagInfoEntryRequirement, metadataContainsKey);
@@ -112,7 +124,7 @@ public enum BagProfileChecker {;//using enum to enforce singleton
     }
   }
   
-  private static void checkIfMetadataEntryIsRequired(final Entry<String, BagInfoRequirement> bagInfoEntryRequirement, final boolean metadataContainsKey) throws RequiredMetadataFieldNotPresentException{
+  private static void checkIfMetadataEntryIsRequired(final Entry<String, Requirement> bagInfoEntryRequirement, final boolean metadataContainsKey) throws RequiredMetadataFieldNotPresentException{
     logger.debug(messages.getString("checking_metadata_entry_required"), bagInfoEntryRequirement.getKey());
     //is it required and not there?
     if(bagInfoEntryRequirement.getValue().isRequired() && !metadataContainsKey){
@@ -120,12 +132,12 @@ public enum BagProfileChecker {;//using enum to enforce singleton
     }
   }
   
-  private static void checkForAcceptableValues(final Metadata bagMetadata, final Entry<String, BagInfoRequirement> bagInfoEntryRequirement) throws MetatdataValueIsNotAcceptableException{
+  private static void checkForAcceptableValues(final Metadata bagMetadata, final Entry<String, Requirement> bagInfoEntryRequirement) throws MetatdataValueIsNotAcceptableException{
     //a size of zero implies that all values are acceptable
     if(!bagInfoEntryRequirement.getValue().getAcceptableValues().isEmpty()){
       logger.debug(messages.getString("check_values_acceptable"), bagInfoEntryRequirement.getKey());
       for(final String metadataValue : bagMetadata.get(bagInfoEntryRequirement.getKey())){
-        if(!bagInfoEntryRequirement.getValue().getAcceptableValues().contains(metadataValue)){
+        if(!bagInfoEntryRequirement.getValue().isAcceptableValue(metadataValue)){
           throw new MetatdataValueIsNotAcceptableException(messages.getString("metadata_value_not_acceptable_error"), 
               bagInfoEntryRequirement.getKey(), bagInfoEntryRequirement.getValue().getAcceptableValues(), metadataValue);
         }
@@ -133,7 +145,7 @@ public enum BagProfileChecker {;//using enum to enforce singleton
     }
   }
   
-  private static void checkForNoneRepeatableMetadata(final Metadata bagMetadata, final Entry<String, BagInfoRequirement> bagInfoEntryRequirement, final boolean metadataContainsKey) throws MetatdataValueIsNotRepeatableException{
+  private static void checkForNoneRepeatableMetadata(final Metadata bagMetadata, final Entry<String, Requirement> bagInfoEntryRequirement, final boolean metadataContainsKey) throws MetatdataValueIsNotRepeatableException{
     //if it is none repeatable, but shows up multiple times
     if(!bagInfoEntryRequirement.getValue().isRepeatable() && metadataContainsKey 
         && bagMetadata.get(bagInfoEntryRequirement.getKey()).size() > 1){
@@ -142,7 +154,7 @@ public enum BagProfileChecker {;//using enum to enforce singleton
   }
   
   @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-  private static void requiredManifestsExist(final Set<Manifest> manifests, final List<String> requiredManifestTypes, final boolean isPayloadManifest) throws RequiredManifestNotPresentException{
+  private static void requiredManifestsExist(final Set<Manifest> manifests, final Set<String> requiredManifestTypes, final boolean isPayloadManifest) throws RequiredManifestNotPresentException{
     final Set<String> manifestTypesPresent = new HashSet<>();
     logger.debug(messages.getString("check_required_manifests_present"));
     
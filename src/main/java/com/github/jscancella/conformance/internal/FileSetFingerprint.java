@@ -0,0 +1,63 @@
+package com.github.jscancella.conformance.internal;
+
+import java.nio.file.Path;
+
+/**
+ * An order independent fingerprint of the files listed in a manifest, so that manifests can be checked for listing the
+ * same set of files without keeping every path in memory. Each path is hashed to 64 bits and the hashes are combined
+ * with both a sum and an exclusive or, along with the number of files. Two different sets of files can only have the
+ * same fingerprint if their hashes collide in all three.
+ * Since the files themselves aren't kept, a file that is added twice counts twice. {@link ManifestChecker} only adds a file once
+ * when it is repeated among the lines of its directory (see {@link ListedDirectory}), so only a manifest that repeats a file
+ * further apart is reported as listing a different set of files.
+ * Mainly used in {@link ManifestChecker}
+ */
+final class FileSetFingerprint {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private long count;
+  private long sum;
+  private long xor;
+
+  /**
+   * Add a file to the fingerprint
+   *
+   * @param file the file listed in the manifest
+   */
+  void add(final Path file){
+    final long hash = hash(file.toString());
+    count++;
+    sum += hash;
+    xor ^= hash;
+  }
+
+  /*
+   * 64 bit FNV-1a over the characters of the path
+   */
+  private static long hash(final String path){
+    long hash = FNV_OFFSET_BASIS;
+    for(int index = 0; index < path.length(); index++){
+      hash ^= path.charAt(index);
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  @Override
+  public int hashCode(){
+    return Long.hashCode(count) + 31 * Long.hashCode(sum) + 961 * Long.hashCode(xor);
+  }
+
+  @Override
+  public boolean equals(final Object obj){
+    if(this == obj){
+      return true;
+    }
+    if(!(obj instanceof FileSetFingerprint)){
+      return false;
+    }
+    final FileSetFingerprint other = (FileSetFingerprint) obj;
+    return count == other.count && sum == other.sum && xor == other.xor;
+  }
+}
@@ -1,19 +1,27 @@
 package com.github.jscancella.conformance.internal;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Collection;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.jscancella.conformance.BagitWarning;
+import com.github.jscancella.conformance.LintOptions;
+import com.github.jscancella.exceptions.InvalidBagMetadataException;
 import com.github.jscancella.hash.internal.FileCountAndTotalSizeVistor;
 import com.github.jscancella.internal.ManifestFilter;
+import com.github.jscancella.reader.internal.MetadataReader;
 
 /**
  * Part of the BagIt conformance suite. 
@@ -22,56 +30,148 @@ import com.github.jscancella.internal.ManifestFilter;
 public enum LargeBagChecker { ; //using enum to enforce singleton
   private static final Logger logger = LoggerFactory.getLogger(LargeBagChecker.class);
   private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final Pattern PAYLOAD_OXUM_PATTERN = Pattern.compile("\\d+\\.\\d+");
+  private static final long UNKNOWN = -1;
   
-  private static final long LARGE_FILE_COUNT = 1000; //FIXME What is a good number here?
-  private static final int LARGE_MANIFEST_COUNT = 20; //FIXME What is a good number here?
-  private static final int ONE_KILOBYTE = 1024;
-  private static final int ONE_MEGABYTE = 1024 * ONE_KILOBYTE;
-  private static final long ONE_GIGABYTE = 1024 * ONE_MEGABYTE;
-  private static final long ONE_TERABYTE = 1024 * ONE_GIGABYTE;
-  private static final long LARGE_PAYLOAD_SIZE = ONE_TERABYTE; 
-  
+  /**
+   * Check if the bag has a large number of payload files, a large payload, or a large number of manifests, using the default {@link LintOptions}
+   *
+   * @param bagitDir the directory containing a bag
+   * @param warnings The set of warnings to add to if any are found
+   * @param warningsToIgnore the collection of warnings to ignore
+   *
+   * @throws IOException if there is a problem reading a file
+   */
   public static void checkForLargeBag(final Path bagitDir, final Set<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore) throws IOException {
-    final FileCountAndTotalSizeVistor visitor = new FileCountAndTotalSizeVistor();
-    if(!warningsToIgnore.contains(BagitWarning.LARGE_BAG_SIZE) || !warningsToIgnore.contains(BagitWarning.LARGE_NUMBER_OF_FILES)) {
+    //the default options don't estimate, so the bag metadata is never read
+    checkForLargeBag(bagitDir, warnings, warningsToIgnore, new LintOptions(), UNKNOWN, UNKNOWN);
+  }
+  
+  /**
+   * Check if the bag has a large number of payload files, a large payload, or a large number of manifests.
+   * When the options allow estimating, the Payload-Oxum is used if the bag has one, otherwise the lines of a payload manifest are counted.
+   * The payload directory is only walked for whatever couldn't be estimated.
+   *
+   * @param bagitDir the directory containing a bag
+   * @param encoding the encoding of the tag files
+   * @param warnings The set of warnings to add to if any are found
+   * @param warningsToIgnore the collection of warnings to ignore
+   * @param options the thresholds for a large bag and whether to estimate
+   *
+   * @throws IOException if there is a problem reading a file
+   * @throws InvalidBagMetadataException if the bag metadata is read to estimate and it does not conform to the bagit spec
+   */
+  public static void checkForLargeBag(final Path bagitDir, final Charset encoding, final Set<BagitWarning> warnings,
+      final Collection<BagitWarning> warningsToIgnore, final LintOptions options) throws IOException, InvalidBagMetadataException {
+    long fileCount = UNKNOWN;
+    long size = UNKNOWN;
+    
+    if(options.isEstimateLargeBag() && (!warningsToIgnore.contains(BagitWarning.LARGE_NUMBER_OF_FILES) || !warningsToIgnore.contains(BagitWarning.LARGE_BAG_SIZE))) {
+      final long[] payloadOxum = getPayloadOxum(bagitDir, encoding);
+      if(payloadOxum == null) {
+        fileCount = countPayloadManifestLines(bagitDir, encoding, options.getLargeFileCount());
+      }
+      else {
+        size = payloadOxum[0];
+        fileCount = payloadOxum[1];
+      }
+    }
+    
+    checkForLargeBag(bagitDir, warnings, warningsToIgnore, options, fileCount, size);
+  }
+  
+  /*
+   * the payload directory is only walked if a checked file count or size is UNKNOWN
+   */
+  private static void checkForLargeBag(final Path bagitDir, final Set<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore,
+      final LintOptions options, final long estimatedFileCount, final long estimatedSize) throws IOException {
+    final boolean isFileCountChecked = !warningsToIgnore.contains(BagitWarning.LARGE_NUMBER_OF_FILES);
+    final boolean isSizeChecked = !warningsToIgnore.contains(BagitWarning.LARGE_BAG_SIZE);
+    long fileCount = estimatedFileCount;
+    long size = estimatedSize;
+    
+    if(isFileCountChecked && fileCount == UNKNOWN || isSizeChecked && size == UNKNOWN) {
+      final FileCountAndTotalSizeVistor visitor = new FileCountAndTotalSizeVistor();
       Files.walkFileTree(bagitDir.resolve("data"), visitor);
+      fileCount = fileCount == UNKNOWN ? visitor.getCount() : fileCount;
+      size = size == UNKNOWN ? visitor.getTotalSize() : size;
     }
     
-    if(!warningsToIgnore.contains(BagitWarning.LARGE_NUMBER_OF_FILES)){
-      checkNumberOfPayloadFiles(visitor, warnings);
+    if(isFileCountChecked){
+      checkNumberOfPayloadFiles(fileCount, options.getLargeFileCount(), warnings);
     }
     
-    if(!warningsToIgnore.contains(BagitWarning.LARGE_BAG_SIZE)){
-      checkBagSize(visitor, warnings);
+    if(isSizeChecked){
+      checkBagSize(size, options.getLargePayloadSize(), warnings);
     }
     
     if(!warningsToIgnore.contains(BagitWarning.LARGE_NUMBER_OF_MANIFESTS)){
-      checkNumberOfManifests(bagitDir, warnings);
+      checkNumberOfManifests(bagitDir, options.getLargeManifestCount(), warnings);
+    }
+  }
+  
+  /*
+   * the size and file count from the Payload-Oxum.
+   * A Payload-Oxum that isn't formatted correctly, or has a number too big for a long, is treated like it is missing
+   */
+  private static long[] getPayloadOxum(final Path bagitDir, final Charset encoding) throws IOException, InvalidBagMetadataException {
+    for(final SimpleImmutableEntry<String, String> pair : MetadataReader.readBagMetadata(bagitDir, encoding)){
+      if("Payload-Oxum".equals(pair.getKey()) && PAYLOAD_OXUM_PATTERN.matcher(pair.getValue()).matches()){
+        final String[] parts = pair.getValue().split("\\.");
+        try{
+          final long[] sizeAndCount = new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+          logger.debug(messages.getString("estimating_from_payload_oxum"), pair.getValue());
+          return sizeAndCount;
+        }
+        catch(NumberFormatException e){
+          logger.warn(messages.getString("payload_oxum_too_large"), pair.getValue());
+        }
+      }
+    }
+    return null;
+  }
+  
+  /*
+   * Every payload manifest lists every payload file, so only the first one found is counted, and only until it is past the limit
+   */
+  private static long countPayloadManifestLines(final Path bagitDir, final Charset encoding, final long limit) throws IOException {
+    try(DirectoryStream<Path> manifests = Files.newDirectoryStream(bagitDir, "manifest-*.txt")){
+      for(final Path manifest : manifests){
+        logger.debug(messages.getString("estimating_from_manifest"), manifest, limit);
+        long count = 0;
+        try(BufferedReader reader = Files.newBufferedReader(manifest, encoding)){
+          while(count <= limit && reader.readLine() != null){
+            count++;
+          }
+        }
+        return count;
+      }
     }
+    return UNKNOWN;
   }
   
-  private static void checkNumberOfPayloadFiles(final FileCountAndTotalSizeVistor visitor, final Set<BagitWarning> warnings) {
-    logger.debug(messages.getString("check_more_than_x_files"), LARGE_FILE_COUNT);
-    if(visitor.getCount() > LARGE_FILE_COUNT) {
-      logger.warn(messages.getString("large_payload_directory"), LARGE_FILE_COUNT, visitor.getCount());
+  private static void checkNumberOfPayloadFiles(final long fileCount, final long largeFileCount, final Set<BagitWarning> warnings) {
+    logger.debug(messages.getString("check_more_than_x_files"), largeFileCount);
+    if(fileCount > largeFileCount) {
+      logger.warn(messages.getString("large_payload_directory"), largeFileCount, fileCount);
       warnings.add(BagitWarning.LARGE_NUMBER_OF_FILES);
     }
   }
   
-  private static void checkBagSize(final FileCountAndTotalSizeVistor visitor, final Set<BagitWarning> warnings) {
-    logger.debug(messages.getString("check_size"), LARGE_PAYLOAD_SIZE);
-    if(visitor.getTotalSize() >= LARGE_PAYLOAD_SIZE) {
-      logger.warn(messages.getString("large_payload_size"), LARGE_PAYLOAD_SIZE, visitor.getTotalSize());
+  private static void checkBagSize(final long size, final long largePayloadSize, final Set<BagitWarning> warnings) {
+    logger.debug(messages.getString("check_size"), largePayloadSize);
+    if(size >= largePayloadSize) {
+      logger.warn(messages.getString("large_payload_size"), largePayloadSize, size);
       warnings.add(BagitWarning.LARGE_BAG_SIZE);
     }
   }
   
-  private static void checkNumberOfManifests(final Path bagitDir, final Set<BagitWarning> warnings) throws IOException {
+  private static void checkNumberOfManifests(final Path bagitDir, final long largeManifestCount, final Set<BagitWarning> warnings) throws IOException {
     long count = 0;
     try(DirectoryStream<Path> files = Files.newDirectoryStream(bagitDir, new ManifestFilter())){
       for(@SuppressWarnings("unused") final Path file : files){
         count++;
-        if(count > LARGE_MANIFEST_COUNT){
+        if(count > largeManifestCount){
           warnings.add(BagitWarning.LARGE_NUMBER_OF_MANIFESTS);
           return;
         }
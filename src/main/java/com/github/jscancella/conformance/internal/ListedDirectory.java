@@ -0,0 +1,46 @@
+package com.github.jscancella.conformance.internal;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The names of the files a manifest has listed in the directory it is currently listing, so that duplicate lines and paths that only
+ * differ in case can be found without keeping every path of the manifest in memory. This relies on the lines of a manifest being
+ * grouped by directory, like they are in a sorted manifest: a file is only compared to the files listed since the manifest moved to
+ * its directory. Paths whose directories only differ in case aren't compared at all.
+ * Mainly used in {@link ManifestChecker}
+ */
+final class ListedDirectory {
+  private final Set<String> names = new HashSet<>();
+  private final Set<String> lowerCaseNames = new HashSet<>();
+  private Path directory;
+  private boolean isLastFileDifferentCase;
+
+  /**
+   * Add the next file listed in the manifest
+   *
+   * @param file the file listed in the manifest
+   *
+   * @return false if the file was already listed in the current directory
+   */
+  boolean add(final Path file){
+    final Path parent = file.getParent();
+    if(parent == null ? directory != null : !parent.equals(directory)){
+      directory = parent;
+      names.clear();
+      lowerCaseNames.clear();
+    }
+    final String name = String.valueOf(file.getFileName());
+    isLastFileDifferentCase = !lowerCaseNames.add(name.toLowerCase(Locale.ROOT));
+    return names.add(name);
+  }
+
+  /**
+   * @return true if the last file added only differs in case from a file already listed in the current directory, or is the same file
+   */
+  boolean isLastFileDifferentCase(){
+    return isLastFileDifferentCase;
+  }
+}
@@ -9,22 +9,26 @@ import java.nio.file.Path;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.helpers.MessageFormatter;
 
 import com.github.jscancella.conformance.BagitWarning;
-import com.github.jscancella.domain.Manifest;
 import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
 import com.github.jscancella.exceptions.MaliciousPathException;
 import com.github.jscancella.internal.PathUtils;
-import com.github.jscancella.reader.internal.ManifestReader;
+import com.github.jscancella.reader.internal.TagFileReader;
 
 /**
  * Part of the BagIt conformance suite. 
@@ -42,10 +46,13 @@ public enum ManifestChecker {;// using enum to enforce singleton
   private static final String TRASHES_FILE = "\\.(_.)?[Tt][Rr][Aa][Ss][Hh][Ee][Ss]";
   private static final String FS_EVENTS_FILE = "\\.[Ff][Ss][Ee][Vv][Ee][Nn][Tt][Ss][Dd]";
   private static final String OS_FILES_REGEX = ".*data/(" + THUMBS_DB_FILE + "|" + DS_STORE_FILE + "|" + SPOTLIGHT_FILE + "|" + TRASHES_FILE + "|" + FS_EVENTS_FILE + ")";
+  private static final Pattern OS_FILES_PATTERN = Pattern.compile(OS_FILES_REGEX);
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
   private static final int PARSED_PATH_PARTS = 2; //all manifests should have the form <hash> <path> (thus 2) when parsed  
   
   /**
-   * Check for all the manifest specific potential problems
+   * Check for all the manifest specific potential problems.
+   * Each manifest is read once, with every line check done on that single pass.
    * 
    * @param bagitDir the directory containing a bag
    * @param encoding the encoding of the manifest
@@ -60,18 +67,19 @@ public enum ManifestChecker {;// using enum to enforce singleton
       final Collection<BagitWarning> warningsToIgnore) throws IOException, InvalidBagitFileFormatException, MaliciousPathException{
         
     boolean missingTagManifest = true;
-    final List<Path> payloadManifests = new ArrayList<>();
-    final List<Path> tagManifests = new ArrayList<>();
+    final Map<Path, FileSetFingerprint> payloadManifests = new LinkedHashMap<>();
+    final Map<Path, FileSetFingerprint> tagManifests = new LinkedHashMap<>();
+    final NormalizedDirectory normalizedDirectory = new NormalizedDirectory();
     try(DirectoryStream<Path> files = Files.newDirectoryStream(bagitDir)){
       for(final Path file : files){
-        final boolean manifestCheck = checkManifest(file, payloadManifests, tagManifests, encoding, warnings, warningsToIgnore); //prevent java lazy execution
+        final boolean manifestCheck = checkManifest(file, payloadManifests, tagManifests, normalizedDirectory, encoding, warnings, warningsToIgnore); //prevent java lazy execution
         missingTagManifest = missingTagManifest && manifestCheck;
       }
     }
     
     if(!warnings.contains(BagitWarning.MANIFEST_SETS_DIFFER)){
-      checkManifestsListSameSetOfFiles(warnings, tagManifests, encoding);
-      checkManifestsListSameSetOfFiles(warnings, payloadManifests, encoding);
+      checkManifestsListSameSetOfFiles(warnings, tagManifests);
+      checkManifestsListSameSetOfFiles(warnings, payloadManifests);
     }
     
     if(!warningsToIgnore.contains(BagitWarning.MISSING_TAG_MANIFEST) && missingTagManifest){
@@ -80,19 +88,18 @@ public enum ManifestChecker {;// using enum to enforce singleton
     }
   }
   
-  private static boolean checkManifest(final Path file, final List<Path> payloadManifests, final List<Path> tagManifests, 
-      final Charset encoding, final Set<BagitWarning> warnings, 
-      final Collection<BagitWarning> warningsToIgnore) throws IOException, InvalidBagitFileFormatException{
+  @SuppressWarnings("PMD.ExcessiveParameterList")
+  private static boolean checkManifest(final Path file, final Map<Path, FileSetFingerprint> payloadManifests, final Map<Path, FileSetFingerprint> tagManifests, 
+      final NormalizedDirectory normalizedDirectory, final Charset encoding, final Set<BagitWarning> warnings, 
+      final Collection<BagitWarning> warningsToIgnore) throws IOException, InvalidBagitFileFormatException, MaliciousPathException{
     boolean missingTagManifest = true;
     final String filename = PathUtils.getFilename(file);
     if(filename.contains("manifest-")){
       if(filename.startsWith("manifest-")){
-        payloadManifests.add(file);
-        checkManifestPayload(file, encoding, warnings, warningsToIgnore, true);
+        payloadManifests.put(file, checkManifestPayload(file, encoding, normalizedDirectory, warnings, warningsToIgnore, true));
       }
       else{
-        tagManifests.add(file);
-        checkManifestPayload(file, encoding, warnings, warningsToIgnore, false);
+        tagManifests.put(file, checkManifestPayload(file, encoding, normalizedDirectory, warnings, warningsToIgnore, false));
         missingTagManifest = false;
       }
       
@@ -104,14 +111,20 @@ public enum ManifestChecker {;// using enum to enforce singleton
   }
   
   /*
-   * Check for a "bag within a bag", relative paths, and OS specific files in the manifests
+   * Check for a "bag within a bag", relative paths, and OS specific files in the manifests,
+   * and fingerprint the files it lists so that it can be compared to the other manifests without reading it again.
+   * Only the current directory is kept in memory, see {@link ListedDirectory}
    */
-  private static void checkManifestPayload(final Path manifestFile, final Charset encoding, final Set<BagitWarning> warnings, 
-      final Collection<BagitWarning> warningsToIgnore, final boolean isPayloadManifest) 
-          throws IOException, InvalidBagitFileFormatException{
+  private static FileSetFingerprint checkManifestPayload(final Path manifestFile, final Charset encoding, final NormalizedDirectory normalizedDirectory, 
+      final Set<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore, final boolean isPayloadManifest) 
+          throws IOException, InvalidBagitFileFormatException, MaliciousPathException{
+    final Path bagRootDir = manifestFile.getParent();
+    final boolean isNormalizationChecked = encoding.name().startsWith("UTF") && !warningsToIgnore.contains(BagitWarning.DIFFERENT_NORMALIZATION);
+    final boolean isCaseChecked = !warningsToIgnore.contains(BagitWarning.DIFFERENT_CASE);
+    final FileSetFingerprint fingerprint = new FileSetFingerprint();
     
     try(BufferedReader reader = Files.newBufferedReader(manifestFile, encoding)){
-      final Set<String> paths = new HashSet<>();
+      final ListedDirectory listedDirectory = new ListedDirectory();
       
       String line = reader.readLine();
       while(line != null){
@@ -119,11 +132,15 @@ public enum ManifestChecker {;// using enum to enforce singleton
         
         path = checkForManifestCreatedWithMD5SumTools(path, warnings, warningsToIgnore);
         
-        checkForDifferentCase(path, paths, manifestFile, warnings, warningsToIgnore);
-        paths.add(path.toLowerCase(Locale.ROOT));
-        
-        if(encoding.name().startsWith("UTF")){
-          checkNormalization(path, manifestFile.getParent(), warnings, warningsToIgnore);
+        final Path file = TagFileReader.createFileFromManifest(bagRootDir, path);
+        if(listedDirectory.add(file)){ //a file listed twice is only in the set of files once
+          fingerprint.add(file);
+        }
+        if(isCaseChecked){
+          checkForDifferentCase(path, listedDirectory, manifestFile, warnings);
+        }
+        if(isNormalizationChecked){
+          checkNormalization(file, normalizedDirectory, warnings);
         }
         checkForBagWithinBag(line, warnings, warningsToIgnore, isPayloadManifest);
         checkForRelativePaths(line, warnings, warningsToIgnore, manifestFile);
@@ -132,13 +149,15 @@ public enum ManifestChecker {;// using enum to enforce singleton
         line = reader.readLine();
       }
     }
+    
+    return fingerprint;
   }
   
   /*
    * Check to make sure it conforms to <hash> <path>
    */
   static String parsePath(final String line) throws InvalidBagitFileFormatException{
-    final String[] parts = line.split("\\s+", 2);
+    final String[] parts = WHITESPACE.split(line, 2);
     if(parts.length < PARSED_PATH_PARTS){
       final String formattedMessage = messages.getString("manifest_line_violated_spec_error");
       throw new InvalidBagitFileFormatException(MessageFormatter.format(formattedMessage, line).getMessage());
@@ -167,11 +186,10 @@ public enum ManifestChecker {;// using enum to enforce singleton
   }
   
   /*
-   * Check that the same line doesn't already exist in the set of paths
+   * Check that the same line doesn't already exist in the directory being listed
    */
-  private static void checkForDifferentCase(final String path, final Set<String> paths, final Path manifestFile, 
-      final Set<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore){
-    if(!warningsToIgnore.contains(BagitWarning.DIFFERENT_CASE) && paths.contains(path.toLowerCase(Locale.ROOT))){
+  private static void checkForDifferentCase(final String path, final ListedDirectory listedDirectory, final Path manifestFile, final Set<BagitWarning> warnings){
+    if(listedDirectory.isLastFileDifferentCase()){
       logger.warn(messages.getString("different_case_warning"), manifestFile, path);
       warnings.add(BagitWarning.DIFFERENT_CASE);
     }
@@ -179,29 +197,44 @@ public enum ManifestChecker {;// using enum to enforce singleton
   
   /*
    * Check that the file specified has not changed its normalization (i.e. have the bytes changed but it still looks the same?)
+   * Only the listing of the last directory checked is kept, which is listed once as long as its files are together in the manifest
    */
-  private static void checkNormalization(final String path, final Path rootDir, final Set<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore) throws IOException{
-    if(!warningsToIgnore.contains(BagitWarning.DIFFERENT_NORMALIZATION)){
-      
-      final Path fileToCheck = rootDir.resolve(path).normalize();
-      final Path dirToCheck = fileToCheck.getParent();
-      if(dirToCheck == null){ 
-        final String formattedMessage = messages.getString("cannot_access_parent_path_error");
-        throw new IOException(MessageFormatter.format(formattedMessage, fileToCheck).getMessage()); //to satisfy findbugs
+  private static void checkNormalization(final Path fileToCheck, final NormalizedDirectory normalizedDirectory, 
+      final Set<BagitWarning> warnings) throws IOException{
+    final Path dirToCheck = fileToCheck.getParent();
+    if(dirToCheck == null){ 
+      final String formattedMessage = messages.getString("cannot_access_parent_path_error");
+      throw new IOException(MessageFormatter.format(formattedMessage, fileToCheck).getMessage()); //to satisfy findbugs
+    }
+    
+    if(!dirToCheck.equals(normalizedDirectory.directory)){
+      normalizedDirectory.directory = dirToCheck;
+      normalizedDirectory.normalizedFiles = listNormalizedFiles(dirToCheck);
+    }
+    
+    final List<Path> files = normalizedDirectory.normalizedFiles.getOrDefault(normalizePathToNFD(fileToCheck), Collections.emptyList());
+    for(final Path file : files){
+      if(!file.equals(fileToCheck)){
+        logger.warn(messages.getString("different_normalization_in_manifest_warning"), fileToCheck);
+        warnings.add(BagitWarning.DIFFERENT_NORMALIZATION);
+        break;
       }
-      final String normalizedFileToCheck = normalizePathToNFD(fileToCheck);
-      
-      try(DirectoryStream<Path> files = Files.newDirectoryStream(dirToCheck)){
+    }
+  }
+  
+  /*
+   * keeps every file that normalizes the same, since any one of them may be the one the manifest lists
+   */
+  private static Map<String, List<Path>> listNormalizedFiles(final Path directory) throws IOException{
+    final Map<String, List<Path>> normalizedFiles = new HashMap<>();
+    if(Files.isDirectory(directory)){
+      try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)){
         for(final Path file : files){
-          final String normalizedFile = normalizePathToNFD(file);
-          
-          if(!file.equals(fileToCheck) && normalizedFileToCheck.equals(normalizedFile)){
-            logger.warn(messages.getString("different_normalization_in_manifest_warning"), fileToCheck);
-            warnings.add(BagitWarning.DIFFERENT_NORMALIZATION);
-          }
+          normalizedFiles.computeIfAbsent(normalizePathToNFD(file), key -> new ArrayList<>()).add(file);
         }
       }
     }
+    return normalizedFiles;
   }
   
   /*
@@ -235,7 +268,7 @@ public enum ManifestChecker {;// using enum to enforce singleton
    * like .DS_Store or Thumbs.db
    */
   private static void checkForOSSpecificFiles(final String line, final Set<BagitWarning> warnings, final Collection<BagitWarning> warningsToIgnore, final Path manifestFile){
-    if(!warningsToIgnore.contains(BagitWarning.OS_SPECIFIC_FILES) && line.matches(OS_FILES_REGEX)){
+    if(!warningsToIgnore.contains(BagitWarning.OS_SPECIFIC_FILES) && OS_FILES_PATTERN.matcher(line).matches()){
       logger.warn(messages.getString("os_specific_files_warning"), manifestFile, line);
       warnings.add(BagitWarning.OS_SPECIFIC_FILES);
     }
@@ -259,20 +292,14 @@ public enum ManifestChecker {;// using enum to enforce singleton
   }
   
   //starting with version 1.0 all manifest types (tag, payload) MUST list the same set of files, but for older versions it SHOULD list all files
-  static void checkManifestsListSameSetOfFiles(final Set<BagitWarning> warnings, final List<Path> manifestPaths, final Charset charset) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
-    
-    Manifest compareToManifest = null;
-    Path compareToManifestPath = null;
-    for (final Path manifestPath : manifestPaths) {
-      final Manifest manifest = ManifestReader.readManifest(manifestPath, manifestPath.getParent(), charset);
-      if(compareToManifest == null) {
-        compareToManifestPath = manifestPath;
-        compareToManifest = manifest;
-        continue;
+  static void checkManifestsListSameSetOfFiles(final Set<BagitWarning> warnings, final Map<Path, FileSetFingerprint> manifests){
+    Entry<Path, FileSetFingerprint> compareTo = null;
+    for(final Entry<Path, FileSetFingerprint> manifest : manifests.entrySet()){
+      if(compareTo == null){
+        compareTo = manifest;
       }
-      
-      if(!compareToManifest.getFileToChecksumMap().keySet().equals(manifest.getFileToChecksumMap().keySet())) {
-        logger.warn(messages.getString("manifest_fileset_differ"), compareToManifestPath, manifestPath);
+      else if(!compareTo.getValue().equals(manifest.getValue())){
+        logger.warn(messages.getString("manifest_fileset_differ"), compareTo.getKey(), manifest.getKey());
         warnings.add(BagitWarning.MANIFEST_SETS_DIFFER);
       }
     }
@@ -281,4 +308,12 @@ public enum ManifestChecker {;// using enum to enforce singleton
   static String getOsFilesRegex(){
     return OS_FILES_REGEX;
   }
+  
+  /*
+   * the files of the last directory checked for normalization, by their normalized name
+   */
+  private static final class NormalizedDirectory{
+    private Path directory;
+    private Map<String, List<Path>> normalizedFiles;
+  }
 }
@@ -0,0 +1,111 @@
+package com.github.jscancella.conformance.profile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+/**
+ * Keeps {@link CompiledBagitProfile}s by their BagIt-Profile-Identifier, so that checking many bags against the same few profiles
+ * only parses each profile once. Safe to use from multiple threads.
+ */
+public final class BagitProfileCache {
+  private static final Logger logger = LoggerFactory.getLogger(BagitProfileCache.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int CONNECT_TIMEOUT_MILLISECONDS = 30_000;
+  private static final int READ_TIMEOUT_MILLISECONDS = 60_000;
+
+  private final ConcurrentMap<String, CompiledBagitProfile> profiles = new ConcurrentHashMap<>();
+
+  /**
+   * Parse, compile, and cache a json profile, replacing any cached profile with the same identifier
+   *
+   * @param jsonProfile the input stream to the json string describing the profile. It is not closed
+   * @return the compiled profile
+   *
+   * @throws IOException if there is a problem reading the profile
+   * @throws IllegalArgumentException if the profile doesn't have a BagIt-Profile-Identifier to cache it under
+   * @throws JsonMappingException if there is a problem mapping the profile to the {@link BagitProfile}
+   * @throws JsonParseException if there is a problem parsing the json while mapping to java object
+   */
+  public CompiledBagitProfile add(final InputStream jsonProfile) throws JsonParseException, JsonMappingException, IOException{
+    return add(CompiledBagitProfile.compile(jsonProfile));
+  }
+
+  /**
+   * Cache a compiled profile, replacing any cached profile with the same identifier
+   *
+   * @param profile the compiled profile
+   * @return the same compiled profile
+   *
+   * @throws IllegalArgumentException if the profile doesn't have a BagIt-Profile-Identifier to cache it under
+   */
+  public CompiledBagitProfile add(final CompiledBagitProfile profile){
+    if(profile.getBagitProfileIdentifier() == null || profile.getBagitProfileIdentifier().isEmpty()){
+      throw new IllegalArgumentException(messages.getString("missing_bagit_profile_identifier_error"));
+    }
+    profiles.put(profile.getBagitProfileIdentifier(), profile);
+    return profile;
+  }
+
+  /**
+   * @param bagitProfileIdentifier the identifier of the profile
+   * @return the cached profile, or null if there isn't one with that identifier
+   */
+  public CompiledBagitProfile get(final String bagitProfileIdentifier){
+    return profiles.get(bagitProfileIdentifier);
+  }
+
+  /**
+   * Get the cached profile, or else download it from its identifier (which is the URL it is published at) and cache it.
+   * The profile is cached under the identifier it was requested with.
+   * The download gives up if connecting takes longer than 30 seconds, or if no data arrives for 60 seconds.
+   *
+   * @param bagitProfileIdentifier the identifier of the profile
+   * @return the compiled profile
+   *
+   * @throws IOException if there is a problem downloading the profile
+   * @throws JsonMappingException if there is a problem mapping the profile to the {@link BagitProfile}
+   * @throws JsonParseException if there is a problem parsing the json while mapping to java object
+   */
+  public CompiledBagitProfile load(final String bagitProfileIdentifier) throws JsonParseException, JsonMappingException, IOException{
+    final CompiledBagitProfile cached = profiles.get(bagitProfileIdentifier);
+    if(cached != null){
+      return cached;
+    }
+
+    logger.info(messages.getString("loading_bagit_profile"), bagitProfileIdentifier);
+    final URLConnection connection = new URL(bagitProfileIdentifier).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLISECONDS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLISECONDS);
+    try(InputStream jsonProfile = connection.getInputStream()){
+      final CompiledBagitProfile profile = CompiledBagitProfile.compile(jsonProfile);
+      //if another thread loaded it at the same time keep theirs, they are the same
+      final CompiledBagitProfile previous = profiles.putIfAbsent(bagitProfileIdentifier, profile);
+      return previous == null ? profile : previous;
+    }
+  }
+
+  /**
+   * @param bagitProfileIdentifier the identifier of the profile to remove from the cache
+   */
+  public void remove(final String bagitProfileIdentifier){
+    profiles.remove(bagitProfileIdentifier);
+  }
+
+  /**
+   * Remove all the profiles from the cache
+   */
+  public void clear(){
+    profiles.clear();
+  }
+}
@@ -0,0 +1,193 @@
+package com.github.jscancella.conformance.profile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * A {@link BagitProfile} that has been parsed once and prepared for checking many bags against it.
+ * The acceptable values, required manifest types, and acceptable versions are kept in hash sets so each check is a single lookup.
+ * It can not be changed after it is created, so one instance can be safely shared by any number of threads.
+ * See {@link BagitProfileCache} for keeping the compiled profiles by their identifier.
+ */
+public final class CompiledBagitProfile {
+  private static final Logger logger = LoggerFactory.getLogger(CompiledBagitProfile.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final ObjectMapper MAPPER = createMapper(); //thread safe once configured
+
+  private final String bagitProfileIdentifier;
+  private final boolean fetchFileAllowed;
+  private final Map<String, Requirement> bagInfoRequirements;
+  private final Set<String> manifestTypesRequired;
+  private final Set<String> tagManifestTypesRequired;
+  private final List<String> acceptableBagitVersions;
+  private final Set<String> acceptableBagitVersionSet;
+  private final List<String> tagFilesRequired;
+
+  private CompiledBagitProfile(final BagitProfile profile){
+    bagitProfileIdentifier = profile.getBagitProfileIdentifier();
+    fetchFileAllowed = profile.isFetchFileAllowed();
+    final Map<String, Requirement> requirements = new HashMap<>();
+    for(final Entry<String, BagInfoRequirement> requirement : profile.getBagInfoRequirements().entrySet()){
+      requirements.put(requirement.getKey(), new Requirement(requirement.getValue()));
+    }
+    bagInfoRequirements = Collections.unmodifiableMap(requirements);
+    manifestTypesRequired = Collections.unmodifiableSet(new HashSet<>(profile.getManifestTypesRequired()));
+    tagManifestTypesRequired = Collections.unmodifiableSet(new HashSet<>(profile.getTagManifestTypesRequired()));
+    acceptableBagitVersions = Collections.unmodifiableList(new ArrayList<>(profile.getAcceptableBagitVersions()));
+    acceptableBagitVersionSet = Collections.unmodifiableSet(new HashSet<>(acceptableBagitVersions));
+    tagFilesRequired = Collections.unmodifiableList(new ArrayList<>(profile.getTagFilesRequired()));
+  }
+
+  private static ObjectMapper createMapper(){
+    final ObjectMapper mapper = new ObjectMapper();
+    final SimpleModule module = new SimpleModule();
+    module.addDeserializer(BagitProfile.class, new BagitProfileDeserializer());
+    mapper.registerModule(module);
+    return mapper;
+  }
+
+  /**
+   * Parse and compile a json profile
+   *
+   * @param jsonProfile the input stream to the json string describing the profile. It is not closed
+   * @return the compiled profile
+   *
+   * @throws IOException if there is a problem reading the profile
+   * @throws JsonMappingException if there is a problem mapping the profile to the {@link BagitProfile}
+   * @throws JsonParseException if there is a problem parsing the json while mapping to java object
+   */
+  public static CompiledBagitProfile compile(final InputStream jsonProfile) throws JsonParseException, JsonMappingException, IOException{
+    return compile(MAPPER.readValue(jsonProfile, BagitProfile.class));
+  }
+
+  /**
+   * Compile a profile. Later changes to the profile do not change the compiled profile
+   *
+   * @param profile the profile to compile
+   * @return the compiled profile
+   */
+  public static CompiledBagitProfile compile(final BagitProfile profile){
+    logger.debug(messages.getString("compiling_bagit_profile"), profile.getBagitProfileIdentifier());
+    return new CompiledBagitProfile(profile);
+  }
+
+  /**
+   * @return the identifier of the profile, which is the URL it is published at
+   */
+  public String getBagitProfileIdentifier() {
+    return bagitProfileIdentifier;
+  }
+
+  /**
+   * @return true if a bag may have a fetch.txt file
+   */
+  public boolean isFetchFileAllowed() {
+    return fetchFileAllowed;
+  }
+
+  /**
+   * @return the bag-info.txt requirements by their metadata key
+   */
+  public Map<String, Requirement> getBagInfoRequirements() {
+    return bagInfoRequirements;
+  }
+
+  /**
+   * @return the algorithms that a bag must have a payload manifest for
+   */
+  public Set<String> getManifestTypesRequired() {
+    return manifestTypesRequired;
+  }
+
+  /**
+   * @return the algorithms that a bag must have a tag manifest for
+   */
+  public Set<String> getTagManifestTypesRequired() {
+    return tagManifestTypesRequired;
+  }
+
+  /**
+   * @return the bagit versions a bag may have, in the order they are listed in the profile
+   */
+  public List<String> getAcceptableBagitVersions() {
+    return acceptableBagitVersions;
+  }
+
+  /**
+   * @param version the bagit version of a bag
+   * @return true if the version is one of the acceptable versions
+   */
+  public boolean isAcceptableBagitVersion(final String version) {
+    return acceptableBagitVersionSet.contains(version);
+  }
+
+  /**
+   * @return the tag files a bag must have, relative to the root of the bag
+   */
+  public List<String> getTagFilesRequired() {
+    return tagFilesRequired;
+  }
+
+  /**
+   * The compiled form of a {@link BagInfoRequirement}
+   */
+  public static final class Requirement {
+    private final boolean required;
+    private final boolean repeatable;
+    private final List<String> acceptableValues;
+    private final Set<String> acceptableValueSet;
+
+    private Requirement(final BagInfoRequirement requirement){
+      required = requirement.isRequired();
+      repeatable = requirement.isRepeatable();
+      acceptableValues = Collections.unmodifiableList(new ArrayList<>(requirement.getAcceptableValues()));
+      acceptableValueSet = Collections.unmodifiableSet(new HashSet<>(acceptableValues));
+    }
+
+    /**
+     * @return true if the metadata key must be in the bag-info.txt
+     */
+    public boolean isRequired() {
+      return required;
+    }
+
+    /**
+     * @return true if the metadata key may be in the bag-info.txt more than once
+     */
+    public boolean isRepeatable() {
+      return repeatable;
+    }
+
+    /**
+     * @return the values the metadata may have, in the order they are listed in the profile. Empty means any value is acceptable
+     */
+    public List<String> getAcceptableValues() {
+      return acceptableValues;
+    }
+
+    /**
+     * @param value a value of the metadata key
+     * @return true if any value is acceptable or the value is one of the acceptable values
+     */
+    public boolean isAcceptableValue(final String value) {
+      return acceptableValueSet.isEmpty() || acceptableValueSet.contains(value);
+    }
+  }
+}
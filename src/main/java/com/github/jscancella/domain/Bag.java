@@ -4,10 +4,14 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
 
 /**
  * The main representation of the bagit spec.
@@ -34,6 +38,13 @@ public final class Bag {
   //the current location of the bag on the filesystem
   private Path rootDir;
   
+  //manifests that will be read on first access, keyed by bagit algorithm name
+  private Map<String, Supplier<Manifest>> unloadedPayLoadManifests = new HashMap<>();
+  private Map<String, Supplier<Manifest>> unloadedTagManifests = new HashMap<>();
+  
+  //the fetch items that will be read on first access
+  private Supplier<List<FetchItem>> unloadedItemsToFetch;
+  
   /**
    * empty bag with an invalid version
    */
@@ -51,18 +62,24 @@ public final class Bag {
   }
   
   /**
-   * Create a new bag with the same values as the supplied bag
+   * Create a new bag with the same values as the supplied bag. 
+   * The manifests and fetch items are kept in their own collections, so each bag reads the ones that haven't been read yet on its own
    * 
    * @param bag the bag to clone
    */
   public Bag(final Bag bag){
-    this.version = bag.getVersion();
-    this.fileEncoding = bag.fileEncoding;
-    this.itemsToFetch = bag.getItemsToFetch();
-    this.metadata = bag.getMetadata();
-    this.payLoadManifests = bag.getPayLoadManifests();
-    this.tagManifests = bag.getTagManifests();
-    this.rootDir = bag.getRootDir();
+    synchronized(bag){
+      this.version = bag.getVersion();
+      this.fileEncoding = bag.fileEncoding;
+      this.itemsToFetch = new ArrayList<>(bag.itemsToFetch); //each bag adds the items to its own list when they are loaded
+      this.metadata = bag.getMetadata();
+      this.payLoadManifests = new HashSet<>(bag.payLoadManifests);
+      this.tagManifests = new HashSet<>(bag.tagManifests);
+      this.rootDir = bag.getRootDir();
+      this.unloadedPayLoadManifests = new HashMap<>(bag.unloadedPayLoadManifests);
+      this.unloadedTagManifests = new HashMap<>(bag.unloadedTagManifests);
+      this.unloadedItemsToFetch = bag.unloadedItemsToFetch;
+    }
   }
   
   /**
@@ -83,29 +100,144 @@ public final class Bag {
     return version;
   }
 
-  public Set<Manifest> getPayLoadManifests() {
+  /**
+   * @return all the payload manifests, reading any that have not been read yet
+   */
+  public synchronized Set<Manifest> getPayLoadManifests() {
+    loadAll(unloadedPayLoadManifests, payLoadManifests);
     return payLoadManifests;
   }
 
-  public void setPayLoadManifests(final Set<Manifest> payLoadManifests) {
+  public synchronized void setPayLoadManifests(final Set<Manifest> payLoadManifests) {
+    this.unloadedPayLoadManifests.clear();
     this.payLoadManifests = payLoadManifests;
   }
+  
+  /**
+   * Get a single payload manifest. If the bag was read lazily only this manifest will be read.
+   * 
+   * @param bagitAlgorithmName the bagit algorithm name of the manifest, for example sha512
+   * 
+   * @return the payload manifest or null if the bag does not contain a payload manifest for that algorithm
+   */
+  public synchronized Manifest getPayLoadManifest(final String bagitAlgorithmName) {
+    return load(bagitAlgorithmName, unloadedPayLoadManifests, payLoadManifests);
+  }
+  
+  /**
+   * @return the bagit algorithm names of all the payload manifests, without reading any manifest that has not been read yet
+   */
+  public synchronized Set<String> getPayLoadManifestAlgorithms() {
+    return getAlgorithms(unloadedPayLoadManifests, payLoadManifests);
+  }
+  
+  /**
+   * Add a payload manifest which will only be read when it is first accessed
+   * 
+   * @param bagitAlgorithmName the bagit algorithm name of the manifest, for example sha512
+   * @param loader reads the manifest, throwing a {@link com.github.jscancella.exceptions.LazyLoadingException} if unable to
+   */
+  public synchronized void addUnloadedPayLoadManifest(final String bagitAlgorithmName, final Supplier<Manifest> loader) {
+    unloadedPayLoadManifests.put(bagitAlgorithmName, loader);
+  }
 
-  public Set<Manifest> getTagManifests() {
+  /**
+   * @return all the tag manifests, reading any that have not been read yet
+   */
+  public synchronized Set<Manifest> getTagManifests() {
+    loadAll(unloadedTagManifests, tagManifests);
     return tagManifests;
   }
 
-  public void setTagManifests(final Set<Manifest> tagManifests) {
+  public synchronized void setTagManifests(final Set<Manifest> tagManifests) {
+    this.unloadedTagManifests.clear();
     this.tagManifests = tagManifests;
   }
+  
+  /**
+   * Get a single tag manifest. If the bag was read lazily only this manifest will be read.
+   * 
+   * @param bagitAlgorithmName the bagit algorithm name of the manifest, for example sha512
+   * 
+   * @return the tag manifest or null if the bag does not contain a tag manifest for that algorithm
+   */
+  public synchronized Manifest getTagManifest(final String bagitAlgorithmName) {
+    return load(bagitAlgorithmName, unloadedTagManifests, tagManifests);
+  }
+  
+  /**
+   * @return the bagit algorithm names of all the tag manifests, without reading any manifest that has not been read yet
+   */
+  public synchronized Set<String> getTagManifestAlgorithms() {
+    return getAlgorithms(unloadedTagManifests, tagManifests);
+  }
+  
+  /**
+   * Add a tag manifest which will only be read when it is first accessed
+   * 
+   * @param bagitAlgorithmName the bagit algorithm name of the manifest, for example sha512
+   * @param loader reads the manifest, throwing a {@link com.github.jscancella.exceptions.LazyLoadingException} if unable to
+   */
+  public synchronized void addUnloadedTagManifest(final String bagitAlgorithmName, final Supplier<Manifest> loader) {
+    unloadedTagManifests.put(bagitAlgorithmName, loader);
+  }
 
-  public List<FetchItem> getItemsToFetch() {
+  /**
+   * @return the items to fetch, reading them if they have not been read yet
+   */
+  public synchronized List<FetchItem> getItemsToFetch() {
+    if(unloadedItemsToFetch != null){
+      itemsToFetch.addAll(unloadedItemsToFetch.get());
+      unloadedItemsToFetch = null;
+    }
     return itemsToFetch;
   }
 
-  public void setItemsToFetch(final List<FetchItem> itemsToFetch) {
+  public synchronized void setItemsToFetch(final List<FetchItem> itemsToFetch) {
+    this.unloadedItemsToFetch = null;
     this.itemsToFetch = itemsToFetch;
   }
+  
+  /**
+   * Set the items to fetch which will only be read when they are first accessed
+   * 
+   * @param loader reads the fetch items, throwing a {@link com.github.jscancella.exceptions.LazyLoadingException} if unable to
+   */
+  public synchronized void setUnloadedItemsToFetch(final Supplier<List<FetchItem>> loader) {
+    this.unloadedItemsToFetch = loader;
+  }
+  
+  private static void loadAll(final Map<String, Supplier<Manifest>> unloadedManifests, final Set<Manifest> manifests){
+    for(final String bagitAlgorithmName : new ArrayList<>(unloadedManifests.keySet())){
+      load(bagitAlgorithmName, unloadedManifests, manifests);
+    }
+  }
+  
+  private static Manifest load(final String bagitAlgorithmName, final Map<String, Supplier<Manifest>> unloadedManifests, final Set<Manifest> manifests){
+    final Supplier<Manifest> loader = unloadedManifests.get(bagitAlgorithmName);
+    if(loader != null){
+      final Manifest manifest = loader.get();
+      unloadedManifests.remove(bagitAlgorithmName);
+      manifests.add(manifest);
+      return manifest;
+    }
+    
+    for(final Manifest manifest : manifests){
+      if(manifest.getBagitAlgorithmName().equals(bagitAlgorithmName)){
+        return manifest;
+      }
+    }
+    
+    return null;
+  }
+  
+  private static Set<String> getAlgorithms(final Map<String, Supplier<Manifest>> unloadedManifests, final Set<Manifest> manifests){
+    final Set<String> algorithms = new TreeSet<>(unloadedManifests.keySet());
+    for(final Manifest manifest : manifests){
+      algorithms.add(manifest.getBagitAlgorithmName());
+    }
+    return algorithms;
+  }
 
   public Metadata getMetadata() {
     return metadata;
@@ -124,7 +256,9 @@ public final class Bag {
   }
 
   @Override
-  public String toString() {
+  public synchronized String toString() {
+    loadAll(unloadedPayLoadManifests, payLoadManifests);
+    loadAll(unloadedTagManifests, tagManifests);
     final StringBuilder sb = new StringBuilder(95);
     sb.append("Bag [version=").append(version)
     .append(", fileEncoding=").append(fileEncoding)
@@ -136,7 +270,7 @@ public final class Bag {
     for(final Manifest tagManifest : tagManifests){
       sb.append(tagManifest).append(' ');
     }
-    sb.append("], itemsToFetch=").append(itemsToFetch)
+    sb.append("], itemsToFetch=").append(getItemsToFetch())
     .append(", metadata=").append(metadata).append(']');
     
     return sb.toString();
@@ -144,8 +278,8 @@ public final class Bag {
 
   @Override
   public int hashCode() {
-    return Objects.hash(version) + Objects.hash(fileEncoding) + Objects.hash(payLoadManifests) + 
-        Objects.hash(tagManifests) + Objects.hash(itemsToFetch) + Objects.hash(metadata);
+    return Objects.hash(version) + Objects.hash(fileEncoding) + Objects.hash(getPayLoadManifests()) + 
+        Objects.hash(getTagManifests()) + Objects.hash(getItemsToFetch()) + Objects.hash(metadata);
   }
 
   @Override
@@ -163,9 +297,9 @@ public final class Bag {
     final Bag other = (Bag) obj;
     return Objects.equals(this.version, other.getVersion()) && 
         Objects.equals(this.fileEncoding, other.getFileEncoding()) &&
-        Objects.equals(this.payLoadManifests, other.getPayLoadManifests()) && 
-        Objects.equals(this.tagManifests, other.getTagManifests()) &&
-        Objects.equals(this.itemsToFetch, other.getItemsToFetch()) &&
+        Objects.equals(this.getPayLoadManifests(), other.getPayLoadManifests()) && 
+        Objects.equals(this.getTagManifests(), other.getTagManifests()) &&
+        Objects.equals(this.getItemsToFetch(), other.getItemsToFetch()) &&
         Objects.equals(this.metadata, other.getMetadata());
   }
 
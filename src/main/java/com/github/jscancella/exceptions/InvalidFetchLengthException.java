@@ -0,0 +1,12 @@
+package com.github.jscancella.exceptions;
+
+/**
+ * Class to represent an error when the number of bytes fetched for a file is different than the length listed in the fetch.txt
+ */
+public class InvalidFetchLengthException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public InvalidFetchLengthException(final String message){
+    super(message);
+  }
+}
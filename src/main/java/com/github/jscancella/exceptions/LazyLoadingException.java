@@ -0,0 +1,15 @@
+package com.github.jscancella.exceptions;
+
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Class to represent an error while reading part of a lazily read bag on first access. 
+ * The cause contains the original exception, for example a {@link MaliciousPathException}.
+ */
+public class LazyLoadingException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public LazyLoadingException(final String message, final Object file, final Exception cause){
+    super(MessageFormatter.format(message, file).getMessage(), cause);
+  }
+}
@@ -0,0 +1,148 @@
+package com.github.jscancella.fetch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.exceptions.InvalidFetchLengthException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.fetch.internal.FetchItemDownloader;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.internal.FutureUtils;
+
+/**
+ * Responsible for retrieving the files listed in a bag's fetch.txt and putting them in the payload.
+ * Supports http, https and file URLs (and anything else {@link java.net.URL} can open). Each file is hashed while it is downloaded
+ * and is only put in the bag if it matches its length and the payload manifests, so the bag doesn't have to be read again to verify it.
+ * Interrupted downloads are resumed where they stopped, and files that are already in the bag are skipped,
+ * so fetching again after a failure only retrieves what is still missing.
+ */
+public enum BagFetcher {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(BagFetcher.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int MAX_PENDING_ITEMS = 1024;
+
+  /**
+   * Fetch all the items of a bag, one at a time on the calling thread
+   *
+   * @param bag the bag to fetch the items of, which must have been read from the filesystem
+   *
+   * @return the number of files that were downloaded
+   *
+   * @throws IOException if there was a problem downloading a file
+   * @throws MaliciousPathException if a fetch item is trying to put a file outside the payload directory
+   * @throws CorruptChecksumException if a downloaded file doesn't match the payload manifests
+   * @throws InvalidFetchLengthException if a downloaded file doesn't match the length in fetch.txt
+   * @throws NoSuchAlgorithmException if the hasher for a payload manifest can't be found
+   */
+  public static int fetch(final Bag bag)
+      throws IOException, MaliciousPathException, CorruptChecksumException, InvalidFetchLengthException, NoSuchAlgorithmException{
+    return fetch(bag, null);
+  }
+
+  /**
+   * Fetch all the items of a bag, downloading several files at a time. The number of concurrent downloads is
+   * bounded by the executor, which is not shut down. If any payload manifest uses a hasher that can't be created for each
+   * download, the files are downloaded one at a time on the calling thread instead.
+   *
+   * @param bag the bag to fetch the items of, which must have been read from the filesystem
+   * @param executor the executor to download the files with, or null to download them on the calling thread
+   *
+   * @return the number of files that were downloaded
+   *
+   * @throws IOException if there was a problem downloading a file
+   * @throws MaliciousPathException if a fetch item is trying to put a file outside the payload directory
+   * @throws CorruptChecksumException if a downloaded file doesn't match the payload manifests
+   * @throws InvalidFetchLengthException if a downloaded file doesn't match the length in fetch.txt
+   * @throws NoSuchAlgorithmException if the hasher for a payload manifest can't be found
+   */
+  public static int fetch(final Bag bag, final ExecutorService executor)
+      throws IOException, MaliciousPathException, CorruptChecksumException, InvalidFetchLengthException, NoSuchAlgorithmException{
+    final List<FetchItem> items = bag.getItemsToFetch();
+    checkItemsAreInPayload(bag, items);
+    logger.info(messages.getString("fetching_items"), items.size(), bag.getRootDir());
+
+    final int fetched;
+    if(executor != null && canDownloadConcurrently(bag)){
+      fetched = fetchConcurrently(bag, items, executor);
+    }
+    else{
+      fetched = fetchSerially(bag, items);
+    }
+    FetchItemDownloader.removeStagingDirectory(bag);
+    return fetched;
+  }
+
+  private static int fetchSerially(final Bag bag, final List<FetchItem> items)
+      throws IOException, CorruptChecksumException, InvalidFetchLengthException, NoSuchAlgorithmException{
+    int fetched = 0;
+    for(final FetchItem item : items){
+      if(FetchItemDownloader.download(bag, item)){
+        fetched++;
+      }
+    }
+    return fetched;
+  }
+
+  /*
+   * fetch.txt is checked when it is read, but the items could also have been set directly
+   */
+  private static void checkItemsAreInPayload(final Bag bag, final List<FetchItem> items) throws MaliciousPathException{
+    final Path dataDir = bag.getDataDir().toAbsolutePath().normalize();
+    for(final FetchItem item : items){
+      if(!item.getPath().toAbsolutePath().normalize().startsWith(dataDir)){
+        throw new MaliciousPathException(MessageFormatter.format(messages.getString("fetch_item_outside_payload_error"), item.getPath()).getMessage());
+      }
+    }
+  }
+
+  private static boolean canDownloadConcurrently(final Bag bag) throws NoSuchAlgorithmException{
+    for(final Manifest manifest : bag.getPayLoadManifests()){
+      if(BagitChecksumNameMapping.get(manifest.getBagitAlgorithmName()).newInstance() == null){
+        logger.info(messages.getString("fetching_serially"), manifest.getBagitAlgorithmName());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int fetchConcurrently(final Bag bag, final List<FetchItem> items, final ExecutorService executor)
+      throws IOException, CorruptChecksumException, InvalidFetchLengthException, NoSuchAlgorithmException{
+    final Deque<Future<Boolean>> pending = new ArrayDeque<>();
+    int fetched = 0;
+    try{
+      for(final FetchItem item : items){
+        //limit how many items are waiting in the executor's queue
+        if(pending.size() >= MAX_PENDING_ITEMS && FutureUtils.waitFor(pending.poll(), CorruptChecksumException.class, InvalidFetchLengthException.class, NoSuchAlgorithmException.class)){
+          fetched++;
+        }
+        pending.add(executor.submit(() -> FetchItemDownloader.download(bag, item)));
+      }
+      while(!pending.isEmpty()){
+        if(FutureUtils.waitFor(pending.poll(), CorruptChecksumException.class, InvalidFetchLengthException.class, NoSuchAlgorithmException.class)){
+          fetched++;
+        }
+      }
+      return fetched;
+    }
+    finally{
+      for(final Future<Boolean> future : pending){
+        future.cancel(true);
+      }
+    }
+  }
+}
@@ -0,0 +1,312 @@
+package com.github.jscancella.fetch.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.exceptions.FileNotInManifestException;
+import com.github.jscancella.exceptions.InvalidFetchLengthException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.writer.internal.AtomicFileWriter;
+
+/**
+ * Responsible for downloading a single {@link FetchItem} into the bag while calculating its checksums, so it is verified without reading it again.
+ * The download goes to a partial file in a staging directory in the root of the bag, outside the payload, which is only renamed
+ * into place once its length and checksums have been checked. If a partial file is left over from an interrupted download, only the rest of the file is requested using
+ * a range request (or skipped over for URLs other than http and https). A partial file that is already as long as the fetch item
+ * isn't downloaded again, and if the server can't send the requested range the whole file is downloaded again.
+ * Mainly used in {@link com.github.jscancella.fetch.BagFetcher}
+ */
+public enum FetchItemDownloader {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(FetchItemDownloader.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+  private static final int CONNECT_TIMEOUT_MILLISECONDS = 30_000;
+  private static final int READ_TIMEOUT_MILLISECONDS = 60_000;
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+  private static final String STAGING_DIRECTORY = ".bagit-fetch";
+
+  /**
+   * Download a fetch item, unless its file is already in the bag
+   *
+   * @param bag the bag the item belongs to
+   * @param item the item to download
+   *
+   * @return true if the file was downloaded, false if it was already in the bag
+   *
+   * @throws IOException if there was a problem downloading the file, in which case what was downloaded is kept to resume from
+   * @throws FileNotInManifestException if the file isn't listed in any payload manifest so it can't be verified
+   * @throws CorruptChecksumException if the downloaded file doesn't match the payload manifests
+   * @throws InvalidFetchLengthException if the number of bytes downloaded is different than the length in the fetch item
+   * @throws NoSuchAlgorithmException if the hasher for a payload manifest can't be found
+   */
+  public static boolean download(final Bag bag, final FetchItem item)
+      throws IOException, CorruptChecksumException, InvalidFetchLengthException, NoSuchAlgorithmException{
+    final Path destination = item.getPath();
+    if(Files.exists(destination)){
+      logger.debug(messages.getString("fetch_item_already_present"), destination);
+      return false;
+    }
+
+    final List<Manifest> manifests = getManifestsListing(bag, destination);
+    final List<Hasher> hashers = createHashers(manifests);
+    final Path partialFile = getPartialFile(bag, destination);
+    final Path parent = destination.getParent();
+    if(parent != null){
+      Files.createDirectories(parent);
+    }
+    Files.createDirectories(bag.getRootDir().resolve(STAGING_DIRECTORY));
+
+    final long resumedLength = Files.exists(partialFile) ? hashPartialFile(partialFile, hashers) : 0;
+    final long length = isComplete(item, resumedLength) ? resumedLength : transfer(item, partialFile, resumedLength, hashers);
+
+    checkLength(item, partialFile, length);
+    checkChecksums(destination, partialFile, manifests, hashers);
+    AtomicFileWriter.move(partialFile, destination);
+    return true;
+  }
+
+  /**
+   * Get where the partial download of a payload file is kept. It is in a staging directory in the root of the bag, named after
+   * a hash of the path of the file in the bag, so it can't be mistaken for a payload file and is found again to resume the download.
+   *
+   * @param bag the bag the file belongs to
+   * @param destination where the file goes in the payload
+   *
+   * @return the partial file
+   */
+  public static Path getPartialFile(final Bag bag, final Path destination){
+    final Path rootDir = bag.getRootDir().toAbsolutePath().normalize();
+    final String relativePath = rootDir.relativize(destination.toAbsolutePath().normalize()).toString();
+    final byte[] hash = sha256().digest(relativePath.getBytes(StandardCharsets.UTF_8));
+    return bag.getRootDir().resolve(STAGING_DIRECTORY).resolve(String.format("%064x", new BigInteger(1, hash)) + ".part");
+  }
+
+  /**
+   * Remove the staging directory of the partial downloads if it is empty, which it is once every item was downloaded
+   *
+   * @param bag the bag the items were fetched for
+   *
+   * @throws IOException if there was a problem removing the directory
+   */
+  public static void removeStagingDirectory(final Bag bag) throws IOException{
+    final Path stagingDir = bag.getRootDir().resolve(STAGING_DIRECTORY);
+    try{
+      Files.deleteIfExists(stagingDir);
+    }
+    catch(DirectoryNotEmptyException e){
+      logger.debug(messages.getString("fetch_staging_directory_not_empty"), stagingDir);
+    }
+  }
+
+  private static MessageDigest sha256(){
+    try{
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch(NoSuchAlgorithmException e){
+      throw new IllegalStateException(e); //every java implementation is required to support SHA-256
+    }
+  }
+
+  private static List<Manifest> getManifestsListing(final Bag bag, final Path file) throws FileNotInManifestException{
+    final List<Manifest> manifests = new ArrayList<>();
+    for(final Manifest manifest : bag.getPayLoadManifests()){
+      if(manifest.getFileToChecksumMap().containsKey(file)){
+        manifests.add(manifest);
+      }
+    }
+    if(manifests.isEmpty()){
+      throw new FileNotInManifestException(MessageFormatter.format(messages.getString("fetch_item_not_in_manifest_error"), file).getMessage());
+    }
+    return manifests;
+  }
+
+  /*
+   * each download uses its own hashers when possible, see BagFetcher for when they can't be created
+   */
+  private static List<Hasher> createHashers(final List<Manifest> manifests) throws NoSuchAlgorithmException{
+    final List<Hasher> hashers = new ArrayList<>(manifests.size());
+    for(final Manifest manifest : manifests){
+      final Hasher prototype = BagitChecksumNameMapping.get(manifest.getBagitAlgorithmName());
+      final Hasher hasher = prototype.newInstance();
+      hashers.add(hasher == null ? prototype : hasher);
+    }
+    for(final Hasher hasher : hashers){
+      hasher.reset();
+    }
+    return hashers;
+  }
+
+  /*
+   * the bytes downloaded before the interruption have to be hashed too, but they don't have to be downloaded again
+   */
+  private static long hashPartialFile(final Path partialFile, final List<Hasher> hashers) throws IOException{
+    logger.info(messages.getString("resuming_fetch"), partialFile);
+    try(InputStream in = Files.newInputStream(partialFile)){
+      return copy(in, null, hashers);
+    }
+  }
+
+  /*
+   * the download was interrupted after the transfer but before the rename, so the length and checksums only need to be checked
+   */
+  private static boolean isComplete(final FetchItem item, final long resumedLength){
+    final Long expectedLength = item.getLength();
+    final boolean isComplete = resumedLength > 0 && expectedLength != null && expectedLength >= 0 && resumedLength >= expectedLength;
+    if(isComplete){
+      logger.debug(messages.getString("fetch_partial_file_complete"), item.getPath());
+    }
+    return isComplete;
+  }
+
+  /*
+   * returns the length of the partial file once the download finished
+   */
+  private static long transfer(final FetchItem item, final Path partialFile, final long resumedLength, final List<Hasher> hashers) throws IOException{
+    logger.debug(messages.getString("fetching_item"), item.getUrl(), item.getPath());
+    final URLConnection connection = item.getUrl().openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLISECONDS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLISECONDS);
+    if(resumedLength > 0 && connection instanceof HttpURLConnection){
+      connection.setRequestProperty("Range", "bytes=" + resumedLength + "-");
+    }
+
+    try{
+      if(resumedLength > 0 && isRangeRefused(connection, resumedLength)){
+        return transfer(item, partialFile, 0, hashers);
+      }
+      return transfer(connection, partialFile, resumedLength, hashers);
+    }
+    finally{
+      if(connection instanceof HttpURLConnection){
+        ((HttpURLConnection) connection).disconnect();
+      }
+    }
+  }
+
+  private static long transfer(final URLConnection connection, final Path partialFile, final long resumedLength, final List<Hasher> hashers) 
+      throws IOException{
+    try(InputStream in = connection.getInputStream()){
+      final boolean isResumed = resumedLength > 0 && isRangeHonored(connection, in, resumedLength);
+      if(!isResumed){
+        for(final Hasher hasher : hashers){
+          hasher.reset();
+        }
+      }
+      final StandardOpenOption mode = isResumed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+      try(OutputStream out = Files.newOutputStream(partialFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)){
+        final long written = copy(in, out, hashers);
+        return isResumed ? resumedLength + written : written;
+      }
+    }
+  }
+
+  /*
+   * the server can't send the rest of the file, for example because the partial file is already complete,
+   * or it sent a different range than was requested. Either way the file has to be downloaded again from the start
+   */
+  private static boolean isRangeRefused(final URLConnection connection, final long resumedLength) throws IOException{
+    if(!(connection instanceof HttpURLConnection)){
+      return false;
+    }
+    final int responseCode = ((HttpURLConnection) connection).getResponseCode();
+    final String contentRange = connection.getHeaderField("Content-Range");
+    final boolean isRefused = responseCode == HTTP_RANGE_NOT_SATISFIABLE || 
+        responseCode == HttpURLConnection.HTTP_PARTIAL && (contentRange == null || !contentRange.startsWith("bytes " + resumedLength + "-"));
+    if(isRefused){
+      logger.warn(messages.getString("fetch_range_refused_warning"), connection.getURL(), resumedLength);
+    }
+    return isRefused;
+  }
+
+  /*
+   * a server that doesn't support range requests sends the whole file instead. Other URLs are skipped to where the download stopped
+   */
+  private static boolean isRangeHonored(final URLConnection connection, final InputStream in, final long resumedLength) throws IOException{
+    if(connection instanceof HttpURLConnection){
+      final boolean isPartialContent = ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+      if(!isPartialContent){
+        logger.warn(messages.getString("fetch_range_not_supported_warning"), connection.getURL());
+      }
+      return isPartialContent;
+    }
+
+    long skipped = 0;
+    while(skipped < resumedLength){
+      final long skippedNow = in.skip(resumedLength - skipped);
+      if(skippedNow <= 0){
+        throw new IOException(MessageFormatter.format(messages.getString("fetch_source_shorter_than_partial_error"), connection.getURL()).getMessage());
+      }
+      skipped += skippedNow;
+    }
+    return true;
+  }
+
+  private static long copy(final InputStream in, final OutputStream out, final List<Hasher> hashers) throws IOException{
+    final byte[] buffer = new byte[CHUNK_SIZE];
+    long total = 0;
+    int read = in.read(buffer);
+    while(read != -1){
+      for(final Hasher hasher : hashers){
+        hasher.update(buffer, read);
+      }
+      if(out != null){
+        out.write(buffer, 0, read);
+      }
+      total += read;
+      read = in.read(buffer);
+    }
+    return total;
+  }
+
+  /*
+   * a shorter file is kept since the download can be resumed, a longer one is wrong and is removed
+   */
+  private static void checkLength(final FetchItem item, final Path partialFile, final long length) throws IOException, InvalidFetchLengthException{
+    final Long expectedLength = item.getLength();
+    if(expectedLength != null && expectedLength >= 0 && expectedLength != length){
+      if(length > expectedLength){
+        Files.delete(partialFile);
+      }
+      throw new InvalidFetchLengthException(MessageFormatter.arrayFormat(messages.getString("invalid_fetch_length_error"),
+          new Object[]{item.getUrl(), expectedLength, length}).getMessage());
+    }
+  }
+
+  private static void checkChecksums(final Path destination, final Path partialFile, final List<Manifest> manifests, final List<Hasher> hashers)
+      throws IOException, CorruptChecksumException{
+    for(int index = 0; index < manifests.size(); index++){
+      final String expected = manifests.get(index).getFileToChecksumMap().get(destination);
+      final String computed = hashers.get(index).getHash();
+      hashers.get(index).reset();
+      if(!computed.equals(expected)){
+        Files.delete(partialFile);
+        throw new CorruptChecksumException(messages.getString("corrupt_checksum_error"), destination,
+            manifests.get(index).getBagitAlgorithmName(), expected, computed);
+      }
+    }
+  }
+}
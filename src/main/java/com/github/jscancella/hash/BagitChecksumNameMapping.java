@@ -4,6 +4,8 @@ import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +56,13 @@ public enum BagitChecksumNameMapping {
     INSTANCE.map.remove(bagitAlgorithmName);
   }
   
+  /**
+   * @return the bagit algorithm names that currently have an implementation
+   */
+  public static Set<String> getBagitAlgorithmNames() {
+    return new TreeSet<>(INSTANCE.map.keySet());
+  }
+  
   public static Hasher get(final String bagitAlgorithmName) throws NoSuchAlgorithmException {
     if(!INSTANCE.map.containsKey(bagitAlgorithmName)) {
       final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
@@ -50,4 +50,16 @@ public interface Hasher {
    * @return the bagit formatted version of the algorithm name. For example if the hasher implements MD5, it would return md5 as the name. 
    */
   String getBagitAlgorithmName();
+  
+  /**
+   * Create a new, independent hasher for the same algorithm so that files can be hashed concurrently. 
+   * The returned hasher is already initialized.
+   * 
+   * @return a new hasher or null if this implementation does not support creating new instances
+   * 
+   * @throws NoSuchAlgorithmException if there is a problem during initialization
+   */
+  default Hasher newInstance() throws NoSuchAlgorithmException{
+    return null;
+  }
 }
@@ -22,6 +22,18 @@ public enum PayloadOxumGenerator {;//using enum to enforce singleton
     
     Files.walkFileTree(dataDir, visitor);
     
-    return visitor.getTotalSize() + "." + visitor.getCount();
+    return formatPayloadOxum(visitor.getTotalSize(), visitor.getCount());
+  }
+  
+  /**
+   * Format the total byte and file count as a payload-oxum value
+   * 
+   * @param totalSize the total number of bytes of the payload files
+   * @param count the number of payload files
+   * 
+   * @return the string representation of the payload-oxum value
+   */
+  public static String formatPayloadOxum(final long totalSize, final long count){
+    return totalSize + "." + count;
   }
 }
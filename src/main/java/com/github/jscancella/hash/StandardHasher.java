@@ -1,14 +1,10 @@
 package com.github.jscancella.hash;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Formatter;
+
+import com.github.jscancella.hash.internal.MessageDigestHasher;
 
 /**
  * Constant definitions for the standard {@link Hasher}. Pretty much every computer will be able to implement these
@@ -21,9 +17,7 @@ public enum StandardHasher implements Hasher {
   SHA384("SHA-384", "sha384"),
   SHA512("SHA-512", "sha512");
   
-  private static final int _64_KB = 1024 * 64;
-  private static final int CHUNK_SIZE = _64_KB;
-  private MessageDigest messageDigestInstance;
+  private MessageDigestHasher messageDigestHasher;
   private final String MESSAGE_DIGEST_NAME;
   private final String BAGIT_ALGORITHM_NAME;
   
@@ -34,56 +28,37 @@ public enum StandardHasher implements Hasher {
   
   @Override
   public String hash(final Path path) throws IOException{
-    reset();
-    updateMessageDigest(path, messageDigestInstance);
-    return formatMessageDigest(messageDigestInstance);
+    return messageDigestHasher.hash(path);
   }
 
   @Override
   public void update(final byte[] bytes, final int length){
-    messageDigestInstance.update(bytes, 0, length);
+    messageDigestHasher.update(bytes, length);
   }
 
   @Override
   public String getHash(){
-    return formatMessageDigest(messageDigestInstance);
+    return messageDigestHasher.getHash();
   }
 
   @Override
   public void reset(){
-    messageDigestInstance.reset();
+    messageDigestHasher.reset();
   }
 
   @Override
   public String getBagitAlgorithmName(){
     return BAGIT_ALGORITHM_NAME;
   }
-  
-  private static void updateMessageDigest(final Path path, final MessageDigest messageDigest) throws IOException{
-    try(InputStream is = new BufferedInputStream(Files.newInputStream(path, StandardOpenOption.READ))){
-      final byte[] buffer = new byte[CHUNK_SIZE];
-      int read = is.read(buffer);
 
-      while(read != -1){
-        messageDigest.update(buffer, 0, read);
-        read = is.read(buffer);
-      }
-    }
+  @Override
+  public void initialize() throws NoSuchAlgorithmException{
+    messageDigestHasher = new MessageDigestHasher(MESSAGE_DIGEST_NAME, BAGIT_ALGORITHM_NAME);
   }
   
-  private static String formatMessageDigest(final MessageDigest messageDigest){
-    try(Formatter formatter = new Formatter()){
-      for (final byte b : messageDigest.digest()) {
-        formatter.format("%02x", b);
-      }
-      
-      return formatter.toString();
-    }
-  }
-
   @Override
-  public void initialize() throws NoSuchAlgorithmException{
-    messageDigestInstance = MessageDigest.getInstance(MESSAGE_DIGEST_NAME);
+  public Hasher newInstance() throws NoSuchAlgorithmException{
+    return new MessageDigestHasher(MESSAGE_DIGEST_NAME, BAGIT_ALGORITHM_NAME);
   }
 
 }
@@ -0,0 +1,50 @@
+package com.github.jscancella.hash.internal;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.jscancella.hash.PayloadOxumGenerator;
+
+/**
+ * Keeps a running total of the number of files and bytes seen while they are hashed or copied, 
+ * so that the Payload-Oxum can be calculated without walking the payload again. Safe to use from multiple threads.
+ */
+public final class FileCountAndTotalSize {
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalSize = new LongAdder();
+  
+  /**
+   * Add a file to the running total
+   * 
+   * @param size the size of the file in bytes
+   */
+  public void addFile(final long size){
+    count.increment();
+    totalSize.add(size);
+  }
+  
+  /**
+   * Add several files to the running total
+   * 
+   * @param numberOfFiles the number of files
+   * @param size the combined size of the files in bytes
+   */
+  public void addFiles(final long numberOfFiles, final long size){
+    count.add(numberOfFiles);
+    totalSize.add(size);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotalSize() {
+    return totalSize.sum();
+  }
+  
+  /**
+   * @return the string representation of the payload-oxum value
+   */
+  public String toPayloadOxum(){
+    return PayloadOxumGenerator.formatPayloadOxum(getTotalSize(), getCount());
+  }
+}
@@ -0,0 +1,88 @@
+package com.github.jscancella.hash.internal;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+
+import com.github.jscancella.hash.Hasher;
+
+/**
+ * A {@link Hasher} backed by its own {@link MessageDigest}. 
+ * Unlike {@link com.github.jscancella.hash.StandardHasher} each instance is independent, so different threads can each use their own.
+ */
+public final class MessageDigestHasher implements Hasher {
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+  private final String messageDigestName;
+  private final String bagitAlgorithmName;
+  private MessageDigest messageDigest;
+  
+  /**
+   * @param messageDigestName the name of the java {@link MessageDigest} algorithm, like SHA-256
+   * @param bagitAlgorithmName the bagit name of the algorithm, like sha256
+   * 
+   * @throws NoSuchAlgorithmException if java does not support the algorithm
+   */
+  public MessageDigestHasher(final String messageDigestName, final String bagitAlgorithmName) throws NoSuchAlgorithmException{
+    this.messageDigestName = messageDigestName;
+    this.bagitAlgorithmName = bagitAlgorithmName;
+    initialize();
+  }
+
+  @Override
+  public String hash(final Path path) throws IOException{
+    reset();
+    try(InputStream is = new BufferedInputStream(Files.newInputStream(path, StandardOpenOption.READ))){
+      final byte[] buffer = new byte[CHUNK_SIZE];
+      int read = is.read(buffer);
+
+      while(read != -1){
+        messageDigest.update(buffer, 0, read);
+        read = is.read(buffer);
+      }
+    }
+    return getHash();
+  }
+
+  @Override
+  public void initialize() throws NoSuchAlgorithmException{
+    messageDigest = MessageDigest.getInstance(messageDigestName);
+  }
+
+  @Override
+  public void update(final byte[] bytes, final int length){
+    messageDigest.update(bytes, 0, length);
+  }
+
+  @Override
+  public String getHash(){
+    try(Formatter formatter = new Formatter()){
+      for (final byte b : messageDigest.digest()) {
+        formatter.format("%02x", b);
+      }
+      
+      return formatter.toString();
+    }
+  }
+
+  @Override
+  public void reset(){
+    messageDigest.reset();
+  }
+
+  @Override
+  public String getBagitAlgorithmName(){
+    return bagitAlgorithmName;
+  }
+
+  @Override
+  public Hasher newInstance() throws NoSuchAlgorithmException{
+    return new MessageDigestHasher(messageDigestName, bagitAlgorithmName);
+  }
+}
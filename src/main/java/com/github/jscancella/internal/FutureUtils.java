@@ -0,0 +1,116 @@
+package com.github.jscancella.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Responsible for waiting on tasks that were submitted to an executor across multiple packages.
+ */
+public interface FutureUtils {
+  /**
+   * Wait for a task to finish and return its result. If the task threw an exception that exception is thrown instead of
+   * an {@link ExecutionException}, so that callers see the same exception as if the task was run on the calling thread.
+   * 
+   * @param <T> the type of the result
+   * @param future the task to wait for
+   * 
+   * @return the result of the task
+   * 
+   * @throws InterruptedIOException if the calling thread was interrupted while waiting
+   * @throws Exception the exception thrown by the task
+   */
+  @SuppressWarnings("PMD.SignatureDeclareThrowsException")
+  static <T> T waitFor(final Future<T> future) throws Exception{
+    try{
+      return future.get();
+    }
+    catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+    catch(ExecutionException e){
+      final Throwable cause = e.getCause();
+      if(cause instanceof Exception){ throw (Exception) cause; }
+      if(cause instanceof Error){ throw (Error) cause; }
+      throw e;
+    }
+  }
+  
+  /**
+   * Wait for a task to finish like {@link #waitFor(Future)}, but only let the exceptions the caller declares through.
+   * An {@link IOException}, an exception of the given type or an unchecked exception thrown by the task is thrown as is,
+   * any other exception is wrapped in an {@link IOException}.
+   * 
+   * @param <T> the type of the result
+   * @param <A> the type of exception the task can throw
+   * @param future the task to wait for
+   * @param exceptionType the type of exception the task can throw
+   * 
+   * @return the result of the task
+   * 
+   * @throws IOException if the task threw one, threw an exception it shouldn't have, or the calling thread was interrupted
+   * @throws A the exception thrown by the task
+   */
+  static <T, A extends Exception> T waitFor(final Future<T> future, final Class<A> exceptionType) throws IOException, A{
+    return waitFor(future, exceptionType, exceptionType, exceptionType);
+  }
+  
+  /**
+   * Wait for a task to finish like {@link #waitFor(Future, Class)}, for a task that can throw two types of exception.
+   * 
+   * @param <T> the type of the result
+   * @param <A> the first type of exception the task can throw
+   * @param <B> the second type of exception the task can throw
+   * @param future the task to wait for
+   * @param firstType the first type of exception the task can throw
+   * @param secondType the second type of exception the task can throw
+   * 
+   * @return the result of the task
+   * 
+   * @throws IOException if the task threw one, threw an exception it shouldn't have, or the calling thread was interrupted
+   * @throws A the exception thrown by the task
+   * @throws B the exception thrown by the task
+   */
+  static <T, A extends Exception, B extends Exception> T waitFor(final Future<T> future, final Class<A> firstType, final Class<B> secondType) 
+      throws IOException, A, B{
+    return waitFor(future, firstType, secondType, secondType);
+  }
+  
+  /**
+   * Wait for a task to finish like {@link #waitFor(Future, Class)}, for a task that can throw three types of exception.
+   * 
+   * @param <T> the type of the result
+   * @param <A> the first type of exception the task can throw
+   * @param <B> the second type of exception the task can throw
+   * @param <C> the third type of exception the task can throw
+   * @param future the task to wait for
+   * @param firstType the first type of exception the task can throw
+   * @param secondType the second type of exception the task can throw
+   * @param thirdType the third type of exception the task can throw
+   * 
+   * @return the result of the task
+   * 
+   * @throws IOException if the task threw one, threw an exception it shouldn't have, or the calling thread was interrupted
+   * @throws A the exception thrown by the task
+   * @throws B the exception thrown by the task
+   * @throws C the exception thrown by the task
+   */
+  @SuppressWarnings({"PMD.AvoidCatchingGenericException", "PMD.AvoidRethrowingException"})
+  static <T, A extends Exception, B extends Exception, C extends Exception> T waitFor(final Future<T> future, final Class<A> firstType, 
+      final Class<B> secondType, final Class<C> thirdType) throws IOException, A, B, C{
+    try{
+      return waitFor(future);
+    }
+    catch(IOException | RuntimeException e){
+      throw e;
+    }
+    catch(Exception e){
+      if(firstType.isInstance(e)){ throw firstType.cast(e); }
+      if(secondType.isInstance(e)){ throw secondType.cast(e); }
+      if(thirdType.isInstance(e)){ throw thirdType.cast(e); }
+      throw new IOException(e);
+    }
+  }
+}
@@ -40,10 +40,32 @@ public interface PathUtils {
    */
   static boolean isHidden(final Path path) throws IOException{
     //cause Files.isHidden() doesn't work properly for windows if the file is a directory
-    if (System.getProperty("os.name").contains("Windows")){
+    //other filesystems, like a zip filesystem, may not support dos attributes
+    if (System.getProperty("os.name").contains("Windows") && path.getFileSystem().supportedFileAttributeViews().contains("dos")){
       return Files.readAttributes(path, DosFileAttributes.class).isHidden() || Files.isHidden(path);
     }
 
     return Files.isHidden(path);
   }
+  
+  /**
+   * Resolve a relative path against a directory, even when they belong to different filesystems
+   * (for example copying a bag from the default filesystem into a zip filesystem)
+   * 
+   * @param directory the directory to resolve against
+   * @param relativePath the relative path, possibly from a different filesystem
+   * 
+   * @return the resolved path, which belongs to the same filesystem as the directory
+   */
+  static Path resolve(final Path directory, final Path relativePath){
+    if(directory.getFileSystem().equals(relativePath.getFileSystem())){
+      return directory.resolve(relativePath);
+    }
+    
+    Path resolved = directory;
+    for(final Path element : relativePath){
+      resolved = resolved.resolve(element.toString());
+    }
+    return resolved;
+  }
 }
@@ -5,13 +5,23 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
 import com.github.jscancella.domain.Version;
 import com.github.jscancella.exceptions.InvalidBagMetadataException;
 import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.LazyLoadingException;
 import com.github.jscancella.exceptions.MaliciousPathException;
 import com.github.jscancella.exceptions.UnparsableVersionException;
+import com.github.jscancella.internal.FutureUtils;
+import com.github.jscancella.reader.internal.BagIndex;
+import com.github.jscancella.reader.internal.BagIndex.TagFileFingerprint;
 import com.github.jscancella.reader.internal.BagitTextFileReader;
 import com.github.jscancella.reader.internal.FetchReader;
 import com.github.jscancella.reader.internal.ManifestReader;
@@ -21,6 +31,7 @@ import com.github.jscancella.reader.internal.MetadataReader;
  * Responsible for reading a bag from the filesystem.
  */
 public enum BagReader {; //using enum to ensure singleton
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
   
   /**
    * Reads the filesystem and creates a {@link Bag} object
@@ -38,12 +49,7 @@ public enum BagReader {; //using enum to ensure singleton
   public static Bag read(final Path bagDirectory) 
       throws InvalidBagMetadataException, IOException, UnparsableVersionException, InvalidBagitFileFormatException, MaliciousPathException {
     
-    final Bag bag = new Bag();
-    final Path bagitFile = bagDirectory.resolve("bagit.txt");
-    final SimpleImmutableEntry<Version, Charset> bagitInfo = BagitTextFileReader.readBagitTextFile(bagitFile);
-    bag.setVersion(bagitInfo.getKey());
-    bag.setFileEncoding(bagitInfo.getValue());
-    bag.setRootDir(bagDirectory);
+    final Bag bag = readBagitTextFile(bagDirectory);
     
     ManifestReader.readAllManifests(bagDirectory, bag);
     
@@ -56,4 +62,159 @@ public enum BagReader {; //using enum to ensure singleton
     
     return bag;
   }
+  
+  /**
+   * Reads the filesystem and creates a {@link Bag} object, parsing the manifests, bag metadata, and fetch file concurrently.
+   * The resulting bag and any exception thrown are the same as {@link #read(Path)}.
+   * The executor is not shut down after reading.
+   * 
+   * @param bagDirectory the base directory of a bag on a filesystem
+   * @param executor the executor used to parse the tag files
+   * 
+   * @return {@link Bag} object or throws an exception
+   * 
+   * @throws InvalidBagMetadataException If the metadata in the bag is improperly formatted
+   * @throws IOException If there was a problem reading from the filesystem
+   * @throws UnparsableVersionException If there was a problem parsing the version
+   * @throws InvalidBagitFileFormatException If one of the files are formatted incorrectly
+   * @throws MaliciousPathException If a manifest is trying to access a file outside the bag
+   */
+  public static Bag read(final Path bagDirectory, final ExecutorService executor) 
+      throws InvalidBagMetadataException, IOException, UnparsableVersionException, InvalidBagitFileFormatException, MaliciousPathException {
+    
+    final Bag bag = readBagitTextFile(bagDirectory);
+    
+    final Future<List<SimpleImmutableEntry<String, String>>> metadataFuture = 
+        executor.submit(() -> MetadataReader.readBagMetadata(bagDirectory, bag.getFileEncoding()));
+    
+    final Path fetchFile = bagDirectory.resolve("fetch.txt");
+    final Future<List<FetchItem>> fetchFuture = Files.exists(fetchFile) ? 
+        executor.submit(() -> FetchReader.readFetch(fetchFile, bag.getFileEncoding(), bag.getRootDir())) : null;
+    
+    try{
+      ManifestReader.readAllManifests(bagDirectory, bag, executor);
+      
+      bag.getMetadata().addAll(FutureUtils.waitFor(metadataFuture, InvalidBagMetadataException.class, InvalidBagitFileFormatException.class, MaliciousPathException.class));
+      
+      if(fetchFuture != null){
+        bag.getItemsToFetch().addAll(FutureUtils.waitFor(fetchFuture, InvalidBagitFileFormatException.class, MaliciousPathException.class));
+      }
+    }
+    finally{
+      metadataFuture.cancel(true);
+      if(fetchFuture != null){
+        fetchFuture.cancel(true);
+      }
+    }
+    
+    return bag;
+  }
+  
+  /**
+   * Reads the filesystem and creates a {@link Bag} object, using a binary index stored in the cache directory when none of the
+   * tag files have changed since the index was written. Otherwise the bag is read normally and the index is (re)written.
+   *
+   * @param bagDirectory the base directory of a bag on a filesystem
+   * @param indexCacheDir the directory where bag indexes are stored
+   *
+   * @return {@link Bag} object or throws an exception
+   *
+   * @throws InvalidBagMetadataException If the metadata in the bag is improperly formatted
+   * @throws IOException If there was a problem reading from the filesystem
+   * @throws UnparsableVersionException If there was a problem parsing the version
+   * @throws InvalidBagitFileFormatException If one of the files are formatted incorrectly
+   * @throws MaliciousPathException If a manifest is trying to access a file outside the bag
+   */
+  public static Bag read(final Path bagDirectory, final Path indexCacheDir)
+      throws InvalidBagMetadataException, IOException, UnparsableVersionException, InvalidBagitFileFormatException, MaliciousPathException {
+    return read(bagDirectory, indexCacheDir, false);
+  }
+  
+  /**
+   * Reads the filesystem and creates a {@link Bag} object, using a binary index stored in the cache directory when none of the
+   * tag files have changed since the index was written. Otherwise the bag is read normally and the index is (re)written.
+   *
+   * @param bagDirectory the base directory of a bag on a filesystem
+   * @param indexCacheDir the directory where bag indexes are stored
+   * @param isContentCompared true to compare the SHA-256 of every tag file to the index, instead of only their size, last modified time,
+   * and file key. This reads every tag file, so only use it if they may be changed without changing their size or last modified time
+   *
+   * @return {@link Bag} object or throws an exception
+   *
+   * @throws InvalidBagMetadataException If the metadata in the bag is improperly formatted
+   * @throws IOException If there was a problem reading from the filesystem
+   * @throws UnparsableVersionException If there was a problem parsing the version
+   * @throws InvalidBagitFileFormatException If one of the files are formatted incorrectly
+   * @throws MaliciousPathException If a manifest is trying to access a file outside the bag
+   */
+  public static Bag read(final Path bagDirectory, final Path indexCacheDir, final boolean isContentCompared)
+      throws InvalidBagMetadataException, IOException, UnparsableVersionException, InvalidBagitFileFormatException, MaliciousPathException {
+    final Path indexFile = BagIndex.getIndexFile(indexCacheDir, bagDirectory);
+    final Bag indexedBag = BagIndex.readIndex(indexFile, bagDirectory, isContentCompared);
+    if(indexedBag != null){
+      return indexedBag;
+    }
+
+    //fingerprint before reading so that a change made while reading makes the index stale
+    final Map<String, TagFileFingerprint> fingerprints = BagIndex.fingerprintTagFiles(bagDirectory);
+    final Bag bag = read(bagDirectory);
+    BagIndex.writeIndex(bag, fingerprints, indexFile);
+
+    return bag;
+  }
+
+  /**
+   * Reads only the bagit.txt and bag metadata from the filesystem and creates a {@link Bag} object.
+   * The manifests and fetch items are read the first time they are accessed, and each manifest is read individually. 
+   * Because of this any problem with those files is thrown as a {@link LazyLoadingException} when they are accessed.
+   * 
+   * @param bagDirectory the base directory of a bag on a filesystem
+   * 
+   * @return {@link Bag} object or throws an exception
+   * 
+   * @throws InvalidBagMetadataException If the metadata in the bag is improperly formatted
+   * @throws IOException If there was a problem reading from the filesystem
+   * @throws UnparsableVersionException If there was a problem parsing the version
+   * @throws InvalidBagitFileFormatException If the bagit.txt file is formatted incorrectly
+   */
+  public static Bag readLazily(final Path bagDirectory) 
+      throws InvalidBagMetadataException, IOException, UnparsableVersionException, InvalidBagitFileFormatException {
+    
+    final Bag bag = readBagitTextFile(bagDirectory);
+    
+    ManifestReader.addAllManifestsLazily(bagDirectory, bag);
+    
+    bag.getMetadata().addAll(MetadataReader.readBagMetadata(bagDirectory, bag.getFileEncoding()));
+    
+    final Path fetchFile = bagDirectory.resolve("fetch.txt");
+    if(Files.exists(fetchFile)){
+      bag.setUnloadedItemsToFetch(() -> readFetchLazily(fetchFile, bag));
+    }
+    
+    return bag;
+  }
+  
+  /*
+   * the fetch file is read inside a supplier so any checked exception is wrapped
+   */
+  private static List<FetchItem> readFetchLazily(final Path fetchFile, final Bag bag){
+    try{
+      return FetchReader.readFetch(fetchFile, bag.getFileEncoding(), bag.getRootDir());
+    }
+    catch(IOException | MaliciousPathException | InvalidBagitFileFormatException e){
+      throw new LazyLoadingException(messages.getString("lazy_loading_error"), fetchFile, e);
+    }
+  }
+  
+  private static Bag readBagitTextFile(final Path bagDirectory) 
+      throws InvalidBagMetadataException, IOException, UnparsableVersionException, InvalidBagitFileFormatException{
+    final Bag bag = new Bag();
+    final Path bagitFile = bagDirectory.resolve("bagit.txt");
+    final SimpleImmutableEntry<Version, Charset> bagitInfo = BagitTextFileReader.readBagitTextFile(bagitFile);
+    bag.setVersion(bagitInfo.getKey());
+    bag.setFileEncoding(bagitInfo.getValue());
+    bag.setRootDir(bagDirectory);
+    
+    return bag;
+  }
 }
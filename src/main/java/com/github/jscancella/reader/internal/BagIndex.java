@@ -0,0 +1,524 @@
+package com.github.jscancella.reader.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Version;
+import com.github.jscancella.internal.PathUtils;
+
+/**
+ * Responsible for writing and reading a compact binary index of a parsed {@link Bag}, so that the same bag can be reopened
+ * without parsing the text manifests again. The index stores the size, last modified time, file key (the inode on unix), and SHA-256
+ * of every tag file it was created from and is only used while all of them are unchanged. Normally only the size, last modified time,
+ * and file key are compared, since that doesn't require reading the tag files. Comparing the SHA-256 as well is optional.
+ */
+@SuppressWarnings({"PMD.AvoidInstantiatingObjectsInLoops", "PMD.TooManyMethods"})
+public enum BagIndex {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(BagIndex.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int MAGIC = 0x42414758; //BAGX
+  private static final int FORMAT_VERSION = 2;
+  private static final int _64_KB = 1024 * 64;
+  private static final String INDEX_EXTENSION = ".bagindex";
+  private static final byte HEX_CHECKSUM = 0;
+  private static final byte TEXT_CHECKSUM = 1;
+
+  /**
+   * Get where the index for a bag is stored in the cache directory. The name is derived from the absolute path of the bag.
+   *
+   * @param indexCacheDir the directory that stores the indexes
+   * @param bagDirectory the base directory of the bag
+   *
+   * @return the path of the index file for that bag
+   */
+  public static Path getIndexFile(final Path indexCacheDir, final Path bagDirectory){
+    final byte[] hash = sha256().digest(bagDirectory.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+    return indexCacheDir.resolve(toHex(hash) + INDEX_EXTENSION);
+  }
+
+  /**
+   * Calculate the fingerprint (size, last modified time, file key, and SHA-256) of every file the parsed bag is created from.
+   *
+   * @param bagDirectory the base directory of the bag
+   *
+   * @return the fingerprint of each tag file, keyed by filename
+   *
+   * @throws IOException if there is a problem reading a tag file
+   */
+  public static Map<String, TagFileFingerprint> fingerprintTagFiles(final Path bagDirectory) throws IOException{
+    final Map<String, TagFileFingerprint> fingerprints = new TreeMap<>();
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(bagDirectory, BagIndex::isIndexedTagFile)){
+      for(final Path file : files){
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        fingerprints.put(PathUtils.getFilename(file),
+            new TagFileFingerprint(attributes.size(), getLastModified(attributes), getFileKey(attributes), hashFile(file)));
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Write the index of a bag. The index is written to a temporary file first and then moved into place.
+   *
+   * @param bag the parsed bag
+   * @param fingerprints the fingerprint of the tag files from before the bag was parsed
+   * @param indexFile where to write the index
+   *
+   * @throws IOException if there is a problem writing the index
+   */
+  public static void writeIndex(final Bag bag, final Map<String, TagFileFingerprint> fingerprints, final Path indexFile) throws IOException{
+    logger.debug(messages.getString("writing_bag_index"), bag.getRootDir(), indexFile);
+    final Path parent = indexFile.toAbsolutePath().getParent();
+    if(parent != null){
+      Files.createDirectories(parent);
+    }
+    final Path tempFile = indexFile.resolveSibling(PathUtils.getFilename(indexFile) + "." + System.nanoTime() + ".temp");
+
+    try{
+      try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), _64_KB))){
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeFingerprints(fingerprints, out);
+        out.writeInt(bag.getVersion().getMajor());
+        out.writeInt(bag.getVersion().getMinor());
+        writeString(bag.getFileEncoding().name(), out);
+        writeMetadata(bag.getMetadata().getAll(), out);
+        writeManifests(bag.getPayLoadManifests(), bag.getRootDir(), out);
+        writeManifests(bag.getTagManifests(), bag.getRootDir(), out);
+        writeFetchItems(bag.getItemsToFetch(), bag.getRootDir(), out);
+      }
+      moveIntoPlace(tempFile, indexFile);
+    }
+    finally{
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Read the index of a bag if it exists and every tag file has the same size, last modified time, and file key as when the index was written.
+   *
+   * @param indexFile the index to read
+   * @param bagDirectory the base directory of the bag
+   *
+   * @return the bag or null if the index does not exist, is stale, or can't be read
+   *
+   * @throws IOException if there is a problem reading the tag files of the bag
+   */
+  public static Bag readIndex(final Path indexFile, final Path bagDirectory) throws IOException{
+    return readIndex(indexFile, bagDirectory, false);
+  }
+
+  /**
+   * Read the index of a bag if it exists and every tag file is unchanged since the index was written.
+   *
+   * @param indexFile the index to read
+   * @param bagDirectory the base directory of the bag
+   * @param isContentCompared true to also compare the SHA-256 of every tag file, which reads all of them. 
+   * Only needed if the tag files may be changed without changing their size or last modified time
+   *
+   * @return the bag or null if the index does not exist, is stale, or can't be read
+   *
+   * @throws IOException if there is a problem reading the tag files of the bag
+   */
+  public static Bag readIndex(final Path indexFile, final Path bagDirectory, final boolean isContentCompared) throws IOException{
+    if(!Files.exists(indexFile)){
+      return null;
+    }
+
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), _64_KB))){
+      if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+        logger.warn(messages.getString("unreadable_bag_index_warning"), indexFile);
+        return null;
+      }
+      if(!isFresh(readFingerprints(in), bagDirectory, isContentCompared)){
+        logger.info(messages.getString("stale_bag_index"), indexFile, bagDirectory);
+        return null;
+      }
+
+      logger.debug(messages.getString("reading_bag_index"), indexFile, bagDirectory);
+      final Bag bag = new Bag(new Version(in.readInt(), in.readInt()));
+      bag.setFileEncoding(Charset.forName(readString(in)));
+      bag.setRootDir(bagDirectory);
+      bag.getMetadata().addAll(readMetadata(in));
+      bag.getPayLoadManifests().addAll(readManifests(bagDirectory, in));
+      bag.getTagManifests().addAll(readManifests(bagDirectory, in));
+      bag.getItemsToFetch().addAll(readFetchItems(bagDirectory, in));
+
+      return bag;
+    }
+    catch(IOException | IllegalArgumentException e){
+      logger.warn(messages.getString("unreadable_bag_index_warning"), indexFile, e);
+      return null;
+    }
+  }
+
+  /*
+   * the index is only fresh if the same tag files exist and none of them have changed.
+   * A file replaced by a rename gets a new file key even if its size and last modified time are the same.
+   */
+  private static boolean isFresh(final Map<String, TagFileFingerprint> indexedFingerprints, final Path bagDirectory, final boolean isContentCompared) throws IOException{
+    final Map<String, BasicFileAttributes> currentAttributes = new HashMap<>();
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(bagDirectory, BagIndex::isIndexedTagFile)){
+      for(final Path file : files){
+        currentAttributes.put(PathUtils.getFilename(file), Files.readAttributes(file, BasicFileAttributes.class));
+      }
+    }
+    if(!currentAttributes.keySet().equals(indexedFingerprints.keySet())){
+      return false;
+    }
+
+    for(final Entry<String, TagFileFingerprint> entry : indexedFingerprints.entrySet()){
+      final BasicFileAttributes attributes = currentAttributes.get(entry.getKey());
+      if(attributes.size() != entry.getValue().getSize() || getLastModified(attributes) != entry.getValue().getLastModified() 
+          || !getFileKey(attributes).equals(entry.getValue().getFileKey())){
+        return false;
+      }
+    }
+
+    if(!isContentCompared){
+      return true;
+    }
+    for(final Entry<String, TagFileFingerprint> entry : indexedFingerprints.entrySet()){
+      if(!Arrays.equals(hashFile(bagDirectory.resolve(entry.getKey())), entry.getValue().getSha256())){
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static long getLastModified(final BasicFileAttributes attributes){
+    return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+  }
+
+  /*
+   * not every filesystem has file keys, in which case only the size and last modified time are compared
+   */
+  private static String getFileKey(final BasicFileAttributes attributes){
+    final Object fileKey = attributes.fileKey();
+    return fileKey == null ? "" : fileKey.toString();
+  }
+
+  private static boolean isIndexedTagFile(final Path file){
+    final String filename = PathUtils.getFilename(file);
+    return Files.isRegularFile(file) &&
+        ("bagit.txt".equals(filename) || "bag-info.txt".equals(filename) || "package-info.txt".equals(filename) || "fetch.txt".equals(filename) ||
+        filename.startsWith("manifest-") || filename.startsWith("tagmanifest-"));
+  }
+
+  private static void moveIntoPlace(final Path tempFile, final Path indexFile) throws IOException{
+    try{
+      Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch(AtomicMoveNotSupportedException e){
+      Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void writeFingerprints(final Map<String, TagFileFingerprint> fingerprints, final DataOutputStream out) throws IOException{
+    writeVarInt(fingerprints.size(), out);
+    for(final Entry<String, TagFileFingerprint> entry : fingerprints.entrySet()){
+      writeString(entry.getKey(), out);
+      out.writeLong(entry.getValue().getSize());
+      out.writeLong(entry.getValue().getLastModified());
+      writeString(entry.getValue().getFileKey(), out);
+      out.write(entry.getValue().getSha256());
+    }
+  }
+
+  private static Map<String, TagFileFingerprint> readFingerprints(final DataInputStream in) throws IOException{
+    final Map<String, TagFileFingerprint> fingerprints = new TreeMap<>();
+    final int count = readVarInt(in);
+    for(int index = 0; index < count; index++){
+      final String filename = readString(in);
+      final long size = in.readLong();
+      final long lastModified = in.readLong();
+      final String fileKey = readString(in);
+      final byte[] sha256 = new byte[sha256().getDigestLength()];
+      in.readFully(sha256);
+      fingerprints.put(filename, new TagFileFingerprint(size, lastModified, fileKey, sha256));
+    }
+    return fingerprints;
+  }
+
+  private static void writeMetadata(final List<SimpleImmutableEntry<String, String>> metadata, final DataOutputStream out) throws IOException{
+    writeVarInt(metadata.size(), out);
+    for(final SimpleImmutableEntry<String, String> entry : metadata){
+      writeString(entry.getKey(), out);
+      writeString(entry.getValue(), out);
+    }
+  }
+
+  private static List<SimpleImmutableEntry<String, String>> readMetadata(final DataInputStream in) throws IOException{
+    final int count = readVarInt(in);
+    final List<SimpleImmutableEntry<String, String>> metadata = new ArrayList<>(count);
+    for(int index = 0; index < count; index++){
+      metadata.add(new SimpleImmutableEntry<>(readString(in), readString(in)));
+    }
+    return metadata;
+  }
+
+  /*
+   * Paths are sorted and only the part that differs from the previous path is stored (front coding)
+   * and checksums in lower case hex are stored as raw bytes.
+   */
+  private static void writeManifests(final Iterable<Manifest> manifests, final Path bagRootDir, final DataOutputStream out) throws IOException{
+    final List<Manifest> manifestList = new ArrayList<>();
+    manifests.forEach(manifestList::add);
+    writeVarInt(manifestList.size(), out);
+
+    for(final Manifest manifest : manifestList){
+      writeString(manifest.getBagitAlgorithmName(), out);
+      final Map<String, String> relativePathToChecksum = new TreeMap<>();
+      for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
+        relativePathToChecksum.put(toRelativeString(bagRootDir, entry.getKey()), entry.getValue());
+      }
+
+      writeVarInt(relativePathToChecksum.size(), out);
+      String previous = "";
+      for(final Entry<String, String> entry : relativePathToChecksum.entrySet()){
+        final int sharedPrefix = sharedPrefixLength(previous, entry.getKey());
+        writeVarInt(sharedPrefix, out);
+        writeString(entry.getKey().substring(sharedPrefix), out);
+        writeChecksum(entry.getValue(), out);
+        previous = entry.getKey();
+      }
+    }
+  }
+
+  private static List<Manifest> readManifests(final Path bagRootDir, final DataInputStream in) throws IOException{
+    final int count = readVarInt(in);
+    final List<Manifest> manifests = new ArrayList<>(count);
+
+    for(int manifestIndex = 0; manifestIndex < count; manifestIndex++){
+      final Manifest manifest = new Manifest(readString(in));
+      final Map<Path, String> fileToChecksumMap = manifest.getFileToChecksumMap();
+      final int entries = readVarInt(in);
+      String previous = "";
+      for(int entryIndex = 0; entryIndex < entries; entryIndex++){
+        final int sharedPrefix = readVarInt(in);
+        final String relativePath = previous.substring(0, sharedPrefix) + readString(in);
+        fileToChecksumMap.put(bagRootDir.resolve(relativePath).normalize(), readChecksum(in));
+        previous = relativePath;
+      }
+      manifests.add(manifest);
+    }
+
+    return manifests;
+  }
+
+  private static void writeFetchItems(final List<FetchItem> items, final Path bagRootDir, final DataOutputStream out) throws IOException{
+    writeVarInt(items.size(), out);
+    for(final FetchItem item : items){
+      writeString(item.getUrl().toString(), out);
+      out.writeBoolean(item.getLength() != null);
+      if(item.getLength() != null){
+        out.writeLong(item.getLength());
+      }
+      writeString(toRelativeString(bagRootDir, item.getPath()), out);
+    }
+  }
+
+  private static List<FetchItem> readFetchItems(final Path bagRootDir, final DataInputStream in) throws IOException{
+    final int count = readVarInt(in);
+    final List<FetchItem> items = new ArrayList<>(count);
+    for(int index = 0; index < count; index++){
+      final URL url = new URL(readString(in));
+      final Long length = in.readBoolean() ? in.readLong() : null;
+      items.add(new FetchItem(url, length, bagRootDir.resolve(readString(in)).normalize()));
+    }
+    return items;
+  }
+
+  private static String toRelativeString(final Path bagRootDir, final Path file){
+    final StringBuilder sb = new StringBuilder();
+    for(final Path part : bagRootDir.relativize(file)){
+      if(sb.length() > 0){
+        sb.append('/');
+      }
+      sb.append(part.toString());
+    }
+    return sb.toString();
+  }
+
+  private static int sharedPrefixLength(final String previous, final String current){
+    final int max = Math.min(previous.length(), current.length());
+    int index = 0;
+    while(index < max && previous.charAt(index) == current.charAt(index)){
+      index++;
+    }
+    //don't split a surrogate pair
+    if(index > 0 && Character.isHighSurrogate(current.charAt(index - 1))){
+      index--;
+    }
+    return index;
+  }
+
+  private static void writeChecksum(final String checksum, final DataOutputStream out) throws IOException{
+    if(isLowerCaseHex(checksum)){
+      out.writeByte(HEX_CHECKSUM);
+      writeVarInt(checksum.length() / 2, out);
+      for(int index = 0; index < checksum.length(); index += 2){
+        out.writeByte(Character.digit(checksum.charAt(index), 16) << 4 | Character.digit(checksum.charAt(index + 1), 16));
+      }
+    }
+    else{
+      out.writeByte(TEXT_CHECKSUM);
+      writeString(checksum, out);
+    }
+  }
+
+  private static String readChecksum(final DataInputStream in) throws IOException{
+    if(in.readByte() == HEX_CHECKSUM){
+      final byte[] bytes = new byte[readVarInt(in)];
+      in.readFully(bytes);
+      return toHex(bytes);
+    }
+    return readString(in);
+  }
+
+  private static boolean isLowerCaseHex(final String checksum){
+    if(checksum.isEmpty() || checksum.length() % 2 != 0){
+      return false;
+    }
+    for(int index = 0; index < checksum.length(); index++){
+      final char character = checksum.charAt(index);
+      if(!(character >= '0' && character <= '9' || character >= 'a' && character <= 'f')){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeString(final String value, final DataOutputStream out) throws IOException{
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(bytes.length, out);
+    out.write(bytes);
+  }
+
+  private static String readString(final DataInputStream in) throws IOException{
+    final byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeVarInt(final int value, final DataOutputStream out) throws IOException{
+    int remaining = value;
+    while((remaining & ~0x7F) != 0){
+      out.writeByte(remaining & 0x7F | 0x80);
+      remaining >>>= 7;
+    }
+    out.writeByte(remaining);
+  }
+
+  private static int readVarInt(final DataInputStream in) throws IOException{
+    int value = 0;
+    for(int shift = 0; shift < 32; shift += 7){
+      final int current = in.readUnsignedByte();
+      value |= (current & 0x7F) << shift;
+      if((current & 0x80) == 0){
+        if(value < 0){
+          throw new IOException(messages.getString("malformed_bag_index_error"));
+        }
+        return value;
+      }
+    }
+    throw new IOException(messages.getString("malformed_bag_index_error"));
+  }
+
+  private static byte[] hashFile(final Path file) throws IOException{
+    final MessageDigest digest = sha256();
+    try(InputStream is = Files.newInputStream(file)){
+      final byte[] buffer = new byte[_64_KB];
+      int read = is.read(buffer);
+      while(read != -1){
+        digest.update(buffer, 0, read);
+        read = is.read(buffer);
+      }
+    }
+    return digest.digest();
+  }
+
+  private static MessageDigest sha256(){
+    try{
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch(NoSuchAlgorithmException e){
+      throw new IllegalStateException(e); //every java implementation is required to support SHA-256
+    }
+  }
+
+  private static String toHex(final byte[] bytes){
+    final char[] hexDigits = "0123456789abcdef".toCharArray();
+    final char[] hex = new char[bytes.length * 2];
+    for(int index = 0; index < bytes.length; index++){
+      hex[index * 2] = hexDigits[(bytes[index] >> 4) & 0xF];
+      hex[index * 2 + 1] = hexDigits[bytes[index] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * The size, last modified time (in nanoseconds), file key, and SHA-256 of a tag file at the time it was indexed.
+   */
+  public static final class TagFileFingerprint {
+    private final long size;
+    private final long lastModified;
+    private final String fileKey;
+    private final byte[] sha256;
+
+    public TagFileFingerprint(final long size, final long lastModified, final String fileKey, final byte[] sha256){
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+      this.sha256 = sha256.clone();
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public String getFileKey() {
+      return fileKey;
+    }
+
+    public byte[] getSha256() {
+      return sha256.clone();
+    }
+  }
+}
@@ -1,6 +1,9 @@
 package com.github.jscancella.reader.internal;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -39,10 +42,54 @@ public enum BagitTextFileReader {;//using enum to enforce singleton
    * @throws InvalidBagitFileFormatException if the bagit.txt file does not conform to the bagit spec
    */
   public static SimpleImmutableEntry<Version, Charset> readBagitTextFile(final Path bagitFile) throws IOException, UnparsableVersionException, InvalidBagMetadataException, InvalidBagitFileFormatException{
-    logger.debug(messages.getString("reading_version_and_encoding"), bagitFile);
-    throwErrorIfByteOrderMarkIsPresent(bagitFile);
-    final List<SimpleImmutableEntry<String, String>> pairs = KeyValueReader.readKeyValuesFromFile(bagitFile, ":", StandardCharsets.UTF_8);
-    
+    return readBagitTextFile(Files.readAllBytes(bagitFile), bagitFile);
+  }
+  
+  /**
+   * Read the contents of a bagit.txt file and return the version and encoding.
+   * 
+   * @param contents the contents of the bagit.txt file, which MUST be in UTF-8 encoding
+   * @param location where the contents came from, used for logging and error messages
+   * @return the bag {@link Version} and {@link Charset} encoding of the tag files
+   * 
+   * @throws IOException if there is a problem reading the contents
+   * @throws UnparsableVersionException if there is a problem parsing the bagit version number
+   * @throws InvalidBagMetadataException if the bagit.txt file does not conform to "key: value"
+   * @throws InvalidBagitFileFormatException if the bagit.txt file does not conform to the bagit spec
+   */
+  public static SimpleImmutableEntry<Version, Charset> readBagitTextFile(final byte[] contents, final Object location) throws IOException, UnparsableVersionException, InvalidBagMetadataException, InvalidBagitFileFormatException{
+    return getVersionAndEncoding(readKeyValues(contents, location));
+  }
+  
+  /**
+   * Read the contents of a bagit.txt file into its key value pairs, so they can be checked without reading the file again.
+   * 
+   * @param contents the contents of the bagit.txt file, which MUST be in UTF-8 encoding
+   * @param location where the contents came from, used for logging and error messages
+   * @return the key value pairs in the order they are in the file
+   * 
+   * @throws IOException if there is a problem reading the contents
+   * @throws InvalidBagMetadataException if the bagit.txt file does not conform to "key: value"
+   * @throws InvalidBagitFileFormatException if the bagit.txt file starts with a byte order mark
+   */
+  public static List<SimpleImmutableEntry<String, String>> readKeyValues(final byte[] contents, final Object location) throws IOException, InvalidBagMetadataException, InvalidBagitFileFormatException{
+    logger.debug(messages.getString("reading_version_and_encoding"), location);
+    throwErrorIfByteOrderMarkIsPresent(contents, location);
+    try(BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents), StandardCharsets.UTF_8))){
+      return KeyValueReader.readKeyValues(reader, ":", location);
+    }
+  }
+  
+  /**
+   * Get the version and encoding from the key value pairs of a bagit.txt file
+   * 
+   * @param pairs the key value pairs of the bagit.txt file
+   * @return the bag {@link Version} and {@link Charset} encoding of the tag files
+   * 
+   * @throws UnparsableVersionException if there is a problem parsing the bagit version number
+   * @throws InvalidBagitFileFormatException if the version or encoding is missing
+   */
+  public static SimpleImmutableEntry<Version, Charset> getVersionAndEncoding(final List<SimpleImmutableEntry<String, String>> pairs) throws UnparsableVersionException, InvalidBagitFileFormatException{
     String version = null;
     Charset encoding = null;
     for(final SimpleImmutableEntry<String, String> pair : pairs){
@@ -68,11 +115,11 @@ public enum BagitTextFileReader {;//using enum to enforce singleton
   /*
    * As per the specification, a BOM is not allowed in the bagit.txt file
    */
-  private static void throwErrorIfByteOrderMarkIsPresent(final Path bagitFile) throws IOException, InvalidBagitFileFormatException{
-    final byte[] firstFewBytesInFile = Arrays.copyOfRange(Files.readAllBytes(bagitFile), 0, BOM.length);
+  private static void throwErrorIfByteOrderMarkIsPresent(final byte[] contents, final Object location) throws InvalidBagitFileFormatException{
+    final byte[] firstFewBytesInFile = Arrays.copyOfRange(contents, 0, BOM.length);
     if(Arrays.equals(BOM, firstFewBytesInFile)){
       final String formattedMessage = messages.getString("bom_present_error");
-      throw new InvalidBagitFileFormatException(MessageFormatter.format(formattedMessage, bagitFile).getMessage());
+      throw new InvalidBagitFileFormatException(MessageFormatter.format(formattedMessage, location).getMessage());
     }
   }
 
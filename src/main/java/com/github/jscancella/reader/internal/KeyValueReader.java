@@ -37,26 +37,42 @@ public enum KeyValueReader {;//using enum to enforce singleton
    * @throws IOException if there was a problem reading the file
    * @throws InvalidBagMetadataException if the file does not conform to pattern of key value
    */
-  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
   public static List<SimpleImmutableEntry<String, String>> readKeyValuesFromFile(final Path file, final String splitRegex, final Charset charset) throws IOException, InvalidBagMetadataException{
+    try(BufferedReader reader = Files.newBufferedReader(file, charset)){
+      return readKeyValues(reader, splitRegex, file);
+    }
+  }
+  
+  /**
+   * Generic method to read key value pairs, like the contents of bagit.txt or bag-info.txt. The reader is not closed.
+   * 
+   * @param reader the contents to read
+   * @param splitRegex how to split the key from the value
+   * @param location where the contents came from, used for logging
+   * 
+   * @return a list of key value pairs
+   * 
+   * @throws IOException if there was a problem reading the contents
+   * @throws InvalidBagMetadataException if the contents do not conform to pattern of key value
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  public static List<SimpleImmutableEntry<String, String>> readKeyValues(final BufferedReader reader, final String splitRegex, final Object location) throws IOException, InvalidBagMetadataException{
     final List<SimpleImmutableEntry<String, String>> keyValues = new ArrayList<>();
     
-    try(BufferedReader reader = Files.newBufferedReader(file, charset)){
-      String line = reader.readLine();
-      while(line != null){
-        if(line.matches(INDENTED_LINE_REGEX) && !keyValues.isEmpty()){
-          mergeIndentedLine(line, keyValues);
-        }
-        else{
-          final String[] parts = checkLineFormat(line, splitRegex);
-          final String key = parts[0].trim();
-          final String value = parts[1].trim();
-          logger.debug(messages.getString("read_key_value_line"), key, value, file, splitRegex);
-          keyValues.add(new SimpleImmutableEntry<>(key, value));
-        }
-         
-        line = reader.readLine();
+    String line = reader.readLine();
+    while(line != null){
+      if(line.matches(INDENTED_LINE_REGEX) && !keyValues.isEmpty()){
+        mergeIndentedLine(line, keyValues);
+      }
+      else{
+        final String[] parts = checkLineFormat(line, splitRegex);
+        final String key = parts[0].trim();
+        final String value = parts[1].trim();
+        logger.debug(messages.getString("read_key_value_line"), key, value, location, splitRegex);
+        keyValues.add(new SimpleImmutableEntry<>(key, value));
       }
+       
+      line = reader.readLine();
     }
     
     return keyValues;
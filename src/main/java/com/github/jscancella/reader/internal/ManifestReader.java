@@ -6,9 +6,14 @@ import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,8 +21,10 @@ import org.slf4j.LoggerFactory;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.Manifest;
 import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.LazyLoadingException;
 import com.github.jscancella.exceptions.MaliciousPathException;
 import com.github.jscancella.internal.ManifestFilter;
+import com.github.jscancella.internal.FutureUtils;
 import com.github.jscancella.internal.PathUtils;
 
 /**
@@ -56,6 +63,109 @@ public enum ManifestReader {;//using enum to enforce singleton
     }
   }
   
+  /**
+   * Finds all manifest files in the rootDir and adds them to the given bag without reading them. 
+   * Each manifest is read individually the first time it is accessed.
+   * 
+   * @param rootDir the directory that contains the tag files of a bag
+   * @param bag the bag to add the unloaded manifests to
+   * 
+   * @throws IOException if there is a problem listing the manifest files
+   */
+  public static void addAllManifestsLazily(final Path rootDir, final Bag bag) throws IOException{
+    logger.info(messages.getString("attempting_read_manifests"));
+    
+    try(DirectoryStream<Path> manifests = Files.newDirectoryStream(rootDir, new ManifestFilter())){
+      for (final Path path : manifests){
+        addManifestLazily(path, bag);
+      }
+    }
+  }
+  
+  /**
+   * Adds a single manifest file to the bag so that it is only read the first time it is accessed.
+   * Whether it is a payload or tag manifest is determined by the filename.
+   * 
+   * @param manifestFile the manifest file, for example manifest-md5.txt
+   * @param bag the bag to add the manifest to
+   */
+  public static void addManifestLazily(final Path manifestFile, final Bag bag){
+    final String filename = PathUtils.getFilename(manifestFile);
+    final String algorithm = filename.split("[-\\.]")[1];
+    
+    if(filename.startsWith("tagmanifest-")){
+      logger.debug(messages.getString("found_tagmanifest"), manifestFile);
+      bag.addUnloadedTagManifest(algorithm, () -> readManifestLazily(manifestFile, bag.getRootDir(), bag.getFileEncoding()));
+    }
+    else if(filename.startsWith("manifest-")){
+      logger.debug(messages.getString("found_payload_manifest"), manifestFile);
+      bag.addUnloadedPayLoadManifest(algorithm, () -> readManifestLazily(manifestFile, bag.getRootDir(), bag.getFileEncoding()));
+    }
+  }
+  
+  /*
+   * the manifest is read inside a supplier so any checked exception is wrapped
+   */
+  private static Manifest readManifestLazily(final Path manifestFile, final Path bagRootDir, final Charset charset){
+    try{
+      return readManifest(manifestFile, bagRootDir, charset);
+    }
+    catch(IOException | MaliciousPathException | InvalidBagitFileFormatException e){
+      throw new LazyLoadingException(messages.getString("lazy_loading_error"), manifestFile, e);
+    }
+  }
+  
+  /**
+   * Finds all manifest files in the rootDir and reads them concurrently using the supplied executor, 
+   * then adds them to the given bag. The result is the same as {@link #readAllManifests(Path, Bag)}, 
+   * and if more than one manifest is invalid the exception thrown is the one that would have been thrown when reading them one after another.
+   * 
+   * @param rootDir the directory that contains the tag files of a bag
+   * @param bag the bag to add the manifests to
+   * @param executor the executor used to read the manifests
+   * 
+   * @throws IOException if there is a problem reading a file
+   * @throws MaliciousPathException if a path in the manifest points outside the bag
+   * @throws InvalidBagitFileFormatException if one of the bagit files is not formatted correctly
+   */
+  public static void readAllManifests(final Path rootDir, final Bag bag, final ExecutorService executor) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    logger.info(messages.getString("attempting_read_manifests"));
+    final List<SimpleImmutableEntry<Boolean, Future<Manifest>>> isTagManifestToFutures = new ArrayList<>();
+    
+    try(DirectoryStream<Path> manifests = Files.newDirectoryStream(rootDir, new ManifestFilter())){
+      for (final Path path : manifests){
+        final String filename = PathUtils.getFilename(path);
+        final boolean isTagManifest = filename.startsWith("tagmanifest-");
+        if(isTagManifest){
+          logger.debug(messages.getString("found_tagmanifest"), path);
+        }
+        else if(filename.startsWith("manifest-")){
+          logger.debug(messages.getString("found_payload_manifest"), path);
+        }
+        else{
+          continue; //like when reading them serially, only files starting with manifest- are payload manifests
+        }
+        final Future<Manifest> future = executor.submit(() -> readManifest(path, bag.getRootDir(), bag.getFileEncoding()));
+        isTagManifestToFutures.add(new SimpleImmutableEntry<>(isTagManifest, future));
+      }
+      
+      for(final SimpleImmutableEntry<Boolean, Future<Manifest>> isTagManifestToFuture : isTagManifestToFutures){
+        final Manifest manifest = FutureUtils.waitFor(isTagManifestToFuture.getValue(), MaliciousPathException.class, InvalidBagitFileFormatException.class);
+        if(isTagManifestToFuture.getKey()){
+          bag.getTagManifests().add(manifest);
+        }
+        else{
+          bag.getPayLoadManifests().add(manifest);
+        }
+      }
+    }
+    finally{
+      for(final SimpleImmutableEntry<Boolean, Future<Manifest>> isTagManifestToFuture : isTagManifestToFutures){
+        isTagManifestToFuture.getValue().cancel(true);
+      }
+    }
+  }
+  
   /**
    * Reads a manifest file and converts it to a {@link Manifest} object.
    * 
@@ -83,16 +193,40 @@ public enum ManifestReader {;//using enum to enforce singleton
    * read the manifest file into a map of files and checksums
    */
   static Map<Path, String> readChecksumFileMap(final Path manifestFile, final Path bagRootDir, final Charset charset) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
-    final HashMap<Path, String> map = new HashMap<>();
     try(BufferedReader br = Files.newBufferedReader(manifestFile, charset)){
-      String line = br.readLine();
-      while(line != null){
-        final String[] parts = line.split("\\s+", 2);
-        final Path file = TagFileReader.createFileFromManifest(bagRootDir, parts[1]);
-        logger.debug("Read checksum [{}] and file [{}] from manifest [{}]", parts[0], file, manifestFile);
-        map.put(file, parts[0]);
-        line = br.readLine();
-      }
+      return readChecksumFileMap(br, bagRootDir, manifestFile);
+    }
+  }
+  
+  /**
+   * Reads the contents of a manifest file and converts it to a {@link Manifest} object. The reader is not closed.
+   * 
+   * @param algorithm the bagit name of the algorithm of the manifest
+   * @param reader the contents of the manifest
+   * @param bagRootDir the root directory of the bag
+   * @param location where the contents came from, used for logging
+   * 
+   * @return a manifest
+   * 
+   * @throws IOException if there is a problem reading the contents
+   * @throws MaliciousPathException if the manifest has a path that is outside the bag
+   * @throws InvalidBagitFileFormatException if the manifest is not formatted correctly
+   */
+  public static Manifest readManifest(final String algorithm, final BufferedReader reader, final Path bagRootDir, final Object location) 
+          throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    logger.debug(messages.getString("reading_manifest"), location);
+    return new Manifest(algorithm, readChecksumFileMap(reader, bagRootDir, location));
+  }
+  
+  private static Map<Path, String> readChecksumFileMap(final BufferedReader reader, final Path bagRootDir, final Object location) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    final HashMap<Path, String> map = new HashMap<>();
+    String line = reader.readLine();
+    while(line != null){
+      final String[] parts = line.split("\\s+", 2);
+      final Path file = TagFileReader.createFileFromManifest(bagRootDir, parts[1]);
+      logger.debug("Read checksum [{}] and file [{}] from manifest [{}]", parts[0], file, location);
+      map.put(file, parts[0]);
+      line = reader.readLine();
     }
     
     return map;
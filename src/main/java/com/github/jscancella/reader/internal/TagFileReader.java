@@ -2,6 +2,8 @@ package com.github.jscancella.reader.internal;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ResourceBundle;
@@ -47,6 +49,29 @@ public enum TagFileReader {;//using enum to enforce singleton
     return file;
   }
 
+  /**
+   * Create the file for a path that isn't from a manifest, like the name of a streamed file or an archive entry, 
+   * with the same checks as {@link #createFileFromManifest(Path, String)} but without decoding it or removing a leading *
+   * 
+   * @param bagRootDir the base directory of the bag
+   * 
+   * @param path the path relative to the base directory of the bag, using / as the separator
+   * 
+   * @return a {@link Path} object
+   * 
+   * @throws MaliciousPathException if the path is trying to reference a place outside the bag
+   * @throws InvalidBagitFileFormatException if the path is invalid
+   */
+  public static Path createFileFromRawPath(final Path bagRootDir, final String path) throws MaliciousPathException, InvalidBagitFileFormatException{
+    checkPathSeparator(path);
+    checkTildaMaliciousPath(path);
+
+    final Path file = bagRootDir.resolve(path).normalize();
+    checkNormalizedPathIsInBag(file, bagRootDir);
+
+    return file;
+  }
+
   private static void checkPathSeparator(final String path) throws InvalidBagitFileFormatException{
     if(path.contains("\\")){
       final String formattedMessage = messages.getString("blackslash_used_as_path_separator_error");
@@ -79,7 +104,13 @@ public enum TagFileReader {;//using enum to enforce singleton
   private static Path createPath(final String path, final Path bagRootDir) throws InvalidBagitFileFormatException{
     if(path.startsWith("file://")){
       try {
-        return Paths.get(new URI(path));
+        final URI uri = new URI(path);
+        final FileSystem fileSystem = bagRootDir.getFileSystem();
+        if(fileSystem.equals(FileSystems.getDefault())){
+          return Paths.get(uri);
+        }
+        //a file URI can only refer to the default filesystem, so use its path in the filesystem of the bag (like a zip filesystem)
+        return fileSystem.getPath(uri.getPath()).normalize();
       } catch (URISyntaxException e) {
         final String formattedMessage = messages.getString("invalid_url_format_error");
         throw new InvalidBagitFileFormatException(MessageFormatter.format(formattedMessage, path).getMessage(), e);
@@ -0,0 +1,76 @@
+package com.github.jscancella.verify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.exceptions.FileNotInPayloadDirectoryException;
+import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.exceptions.MissingBagitFileException;
+import com.github.jscancella.exceptions.MissingPayloadManifestException;
+import com.github.jscancella.exceptions.UnparsableVersionException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.verify.internal.StreamingArchiveVerifier;
+import com.github.jscancella.writer.ArchiveFormat;
+
+/**
+ * Responsible for verifying a serialized bag is complete and correct while it is read from a stream,
+ * without extracting it first. The bag must be in a single top level directory of the archive,
+ * like the archives created by {@link com.github.jscancella.writer.BagWriter#writeArchive(com.github.jscancella.domain.Bag, java.io.OutputStream, ArchiveFormat)}
+ */
+public enum ArchiveVerifier {;//using enum to enforce singleton
+
+  /**
+   * Read the whole archive once, hashing each file as it goes by, and check the bag in it is valid.
+   * Only the checksums are kept in memory, not the files.
+   *
+   * @param archive the serialized bag, which is not closed
+   * @param format the format of the archive
+   *
+   * @return true if the bag is valid or throws an exception
+   *
+   * @throws IOException if there is a problem reading the archive
+   * @throws NoSuchAlgorithmException if there is no mapping in the {@link BagitChecksumNameMapping} for a manifest
+   * @throws MissingBagitFileException if the bag is missing a bagit file
+   * @throws MissingPayloadManifestException if the bag is missing a payload manifest
+   * @throws FileNotInPayloadDirectoryException if a file is in a manifest but is not in the archive
+   * @throws MaliciousPathException if an entry or manifest is trying to access a file outside the bag
+   * @throws InvalidBagitFileFormatException if the archive or a bagit file is not formatted correctly
+   * @throws UnparsableVersionException if the version in the bagit.txt file can't be parsed
+   * @throws CorruptChecksumException if a file in the archive doesn't match its checksum
+   */
+  public static boolean isValid(final InputStream archive, final ArchiveFormat format)
+      throws IOException, NoSuchAlgorithmException, MissingBagitFileException, MissingPayloadManifestException, FileNotInPayloadDirectoryException,
+      MaliciousPathException, InvalidBagitFileFormatException, UnparsableVersionException, CorruptChecksumException{
+    return StreamingArchiveVerifier.verify(archive, format, null);
+  }
+
+  /**
+   * Same as {@link #isValid(InputStream, ArchiveFormat)} but also extracts the bag into a directory while reading it.
+   * The extracted bag should not be used if an exception is thrown.
+   *
+   * @param archive the serialized bag, which is not closed
+   * @param format the format of the archive
+   * @param extractTo the directory to extract the top level directory of the archive into
+   *
+   * @return true if the bag is valid or throws an exception
+   *
+   * @throws IOException if there is a problem reading the archive or writing an extracted file
+   * @throws NoSuchAlgorithmException if there is no mapping in the {@link BagitChecksumNameMapping} for a manifest
+   * @throws MissingBagitFileException if the bag is missing a bagit file
+   * @throws MissingPayloadManifestException if the bag is missing a payload manifest
+   * @throws FileNotInPayloadDirectoryException if a file is in a manifest but is not in the archive
+   * @throws MaliciousPathException if an entry or manifest is trying to access a file outside the bag
+   * @throws InvalidBagitFileFormatException if the archive or a bagit file is not formatted correctly
+   * @throws UnparsableVersionException if the version in the bagit.txt file can't be parsed
+   * @throws CorruptChecksumException if a file in the archive doesn't match its checksum
+   */
+  public static boolean isValid(final InputStream archive, final ArchiveFormat format, final Path extractTo)
+      throws IOException, NoSuchAlgorithmException, MissingBagitFileException, MissingPayloadManifestException, FileNotInPayloadDirectoryException,
+      MaliciousPathException, InvalidBagitFileFormatException, UnparsableVersionException, CorruptChecksumException{
+    return StreamingArchiveVerifier.verify(archive, format, extractTo);
+  }
+}
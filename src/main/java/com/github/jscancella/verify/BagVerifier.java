@@ -4,8 +4,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +27,7 @@ import com.github.jscancella.exceptions.MissingPayloadManifestException;
 import com.github.jscancella.exceptions.PayloadOxumDoesNotExistException;
 import com.github.jscancella.hash.BagitChecksumNameMapping;
 import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.internal.FutureUtils;
 import com.github.jscancella.verify.internal.BagitTextFileVerifier;
 import com.github.jscancella.verify.internal.MandatoryVerifier;
 import com.github.jscancella.verify.internal.ManifestVerifier;
@@ -79,6 +84,35 @@ public enum BagVerifier { ;// using enum to ensure singleton
       throws FileNotInPayloadDirectoryException, MissingBagitFileException, MissingPayloadDirectoryException, 
       MissingPayloadManifestException, IOException, MaliciousPathException, InvalidBagitFileFormatException, 
       NoSuchAlgorithmException, CorruptChecksumException {
+    return isValid(bag, ignoreHiddenFiles, null);
+  }
+  
+  /**
+   * Same as {@link #isValid(Bag, boolean)} but the checksums of the files are calculated concurrently using the supplied executor.
+   * Useful when reading the files is slow but can be done in parallel, like a bag in a zip filesystem or on network storage.
+   * If more than one file is corrupt, the exception thrown is the one that would have been thrown when checking them one after another.
+   * Hashers that don't support {@link Hasher#newInstance()} are checked one file at a time.
+   * 
+   * @param bag the bag to check
+   * @param ignoreHiddenFiles to include hidden files when checking
+   * @param executor the executor used to calculate the checksums, or null to calculate them one after another
+   * 
+   * @return true if the bag is valid or throws an exception
+   * 
+   * @throws FileNotInPayloadDirectoryException if a file is in a manifest but is not in the payload directory
+   * @throws MissingBagitFileException if the bag is missing a bagit file
+   * @throws MissingPayloadDirectoryException if the bag is missing a payload directory
+   * @throws MissingPayloadManifestException if the bag is missing a payload manifest
+   * @throws IOException if there is a problem reading a file from the filesystem
+   * @throws MaliciousPathException if a bag is trying to access a file outside the bag
+   * @throws InvalidBagitFileFormatException if a bagit file is not formatted correctly
+   * @throws NoSuchAlgorithmException if there is no mapping in the {@link BagitChecksumNameMapping}
+   * @throws CorruptChecksumException if the file has been changed
+   */
+  public static boolean isValid(final Bag bag, final boolean ignoreHiddenFiles, final ExecutorService executor) 
+      throws FileNotInPayloadDirectoryException, MissingBagitFileException, MissingPayloadDirectoryException, 
+      MissingPayloadManifestException, IOException, MaliciousPathException, InvalidBagitFileFormatException, 
+      NoSuchAlgorithmException, CorruptChecksumException {
 
     boolean isValid = true;
     
@@ -89,36 +123,65 @@ public enum BagVerifier { ;// using enum to ensure singleton
 
     logger.debug(messages.getString("checking_payload_checksums"));
     for(final Manifest payloadManifest : bag.getPayLoadManifests()){
-      isValid = checkHashes(payloadManifest) && isValid;
+      isValid = checkHashes(payloadManifest, executor) && isValid;
     }
 
     logger.debug(messages.getString("checking_tag_file_checksums"));
     for(final Manifest tagManifest : bag.getTagManifests()){
-      isValid = checkHashes(tagManifest) && isValid;
+      isValid = checkHashes(tagManifest, executor) && isValid;
     }
 
     return isValid;
   }
 
-  private static boolean checkHashes(final Manifest manifest) throws CorruptChecksumException, NoSuchAlgorithmException, IOException{
+  private static boolean checkHashes(final Manifest manifest, final ExecutorService executor) throws CorruptChecksumException, NoSuchAlgorithmException, IOException{
     final Hasher hasher = BagitChecksumNameMapping.get(manifest.getBagitAlgorithmName());
+    if(executor != null && hasher.newInstance() != null){
+      checkHashesConcurrently(manifest, hasher, executor);
+      return true;
+    }
 
     for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
-      if (Files.exists(entry.getKey())){
-        logger.debug(messages.getString("checking_checksums"), entry.getKey(), entry.getValue());
-
-        final String hash = hasher.hash(entry.getKey());
-        logger.debug(messages.getString("computed_hash"), hash, entry.getKey());
-        if (!hash.equals(entry.getValue())){
-          throw new CorruptChecksumException(messages.getString("corrupt_checksum_error"), entry.getKey(),
-              manifest.getBagitAlgorithmName(), entry.getValue(), hash);
-        }
-      }
+      checkHash(entry, manifest.getBagitAlgorithmName(), hasher);
     }
 
     return true;
   }
 
+  private static void checkHashesConcurrently(final Manifest manifest, final Hasher prototype, final ExecutorService executor) 
+      throws CorruptChecksumException, NoSuchAlgorithmException, IOException{
+    final List<Future<Void>> futures = new ArrayList<>(manifest.getFileToChecksumMap().size());
+    try{
+      for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
+        futures.add(executor.submit(() -> {
+          checkHash(entry, manifest.getBagitAlgorithmName(), prototype.newInstance());
+          return null;
+        }));
+      }
+      for(final Future<Void> future : futures){
+        FutureUtils.waitFor(future, CorruptChecksumException.class, NoSuchAlgorithmException.class);
+      }
+    }
+    finally{
+      for(final Future<Void> future : futures){
+        future.cancel(true);
+      }
+    }
+  }
+
+  private static void checkHash(final Entry<Path, String> entry, final String algorithm, final Hasher hasher) throws CorruptChecksumException, IOException{
+    if (Files.exists(entry.getKey())){
+      logger.debug(messages.getString("checking_checksums"), entry.getKey(), entry.getValue());
+
+      final String hash = hasher.hash(entry.getKey());
+      logger.debug(messages.getString("computed_hash"), hash, entry.getKey());
+      if (!hash.equals(entry.getValue())){
+        throw new CorruptChecksumException(messages.getString("corrupt_checksum_error"), entry.getKey(),
+            algorithm, entry.getValue(), hash);
+      }
+    }
+  }
+
   /**
    * See <a href=
    * "https://tools.ietf.org/html/draft-kunze-bagit#section-3">https://tools.ietf.org/html/draft-kunze-bagit#section-3</a><br>
@@ -0,0 +1,54 @@
+package com.github.jscancella.verify.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.github.jscancella.writer.ArchiveFormat;
+
+/**
+ * Reads the file entries of an archive one after the other.
+ * Mainly used in {@link StreamingArchiveVerifier} and {@link com.github.jscancella.writer.BagBuilder}
+ */
+public interface ArchiveReader {
+  
+  /**
+   * @param in the archive, which is not closed by the reader
+   * @param format the format of the archive
+   * 
+   * @return a reader for the archive
+   * 
+   * @throws IOException if there was a problem reading the gzip header of a compressed archive
+   */
+  static ArchiveReader open(final InputStream in, final ArchiveFormat format) throws IOException{
+    switch(format){
+      case ZIP:
+        return new ZipArchiveReader(in);
+      case TAR_GZ:
+        return new TarArchiveReader(new GZIPInputStream(in));
+      default:
+        return new TarArchiveReader(in);
+    }
+  }
+  
+  /**
+   * Move to the next file in the archive, skipping any directories, symbolic links or other entries that aren't regular files.
+   * Hard links are returned since they are files, see {@link #getLinkTarget()}.
+   * 
+   * @return the path of the file in the archive, using / as the separator, or null if there are no more files
+   * 
+   * @throws IOException if there was a problem reading the archive
+   */
+  String nextFile() throws IOException;
+  
+  /**
+   * @return the contents of the current file, which must not be closed
+   */
+  InputStream getContents();
+  
+  /**
+   * @return the path in the archive of the earlier file that the current file is a hard link to, or null if it isn't a hard link.
+   * A hard link has no contents of its own, it has the same contents as its target
+   */
+  String getLinkTarget();
+}
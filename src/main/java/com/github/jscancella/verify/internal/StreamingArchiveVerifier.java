@@ -0,0 +1,413 @@
+package com.github.jscancella.verify.internal;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Version;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.exceptions.FileNotInManifestException;
+import com.github.jscancella.exceptions.FileNotInPayloadDirectoryException;
+import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.exceptions.MissingBagitFileException;
+import com.github.jscancella.exceptions.MissingPayloadManifestException;
+import com.github.jscancella.exceptions.UnparsableVersionException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.reader.internal.BagitTextFileReader;
+import com.github.jscancella.reader.internal.ManifestReader;
+import com.github.jscancella.writer.ArchiveFormat;
+
+/**
+ * Verifies a serialized bag while reading it from a stream, so the data is only read once.
+ * Every file is hashed as it goes by and only the checksums are kept, along with the contents of bagit.txt and the manifests.
+ * Payload files are hashed with the algorithms of the payload manifests seen so far. Payload files that come before the first payload manifest
+ * are only hashed once the bag has been extracted, with just the algorithms of its manifests. If the bag isn't extracted there is no way
+ * to read them again, so they are hashed with every algorithm in {@link BagitChecksumNameMapping} instead.
+ * Tag files are treated the same way with the tag manifests.
+ * Once the stream ends the bag is checked for completeness and validity. If a checksum wasn't calculated because its manifest came later
+ * in the archive, the extracted file is hashed again, or the bag can't be verified if it wasn't extracted.
+ * Archives can be verified on several threads at once, unless a hasher can't create new instances in which case they are verified one at a time.
+ * Mainly used in {@link com.github.jscancella.verify.ArchiveVerifier}
+ */
+public final class StreamingArchiveVerifier {
+  private static final Logger logger = LoggerFactory.getLogger(StreamingArchiveVerifier.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+  private static final Pattern MANIFEST_PATTERN = Pattern.compile("(tag)?manifest-(\\w+)\\.txt");
+  private static final Object SHARED_HASHER_LOCK = new Object();
+
+  private final Path extractTo;
+  private final Map<String, Map<String, String>> fileToChecksums = new HashMap<>();
+  private final Map<String, byte[]> tagFileContents = new HashMap<>();
+  private final Set<String> payloadManifestAlgorithms = new TreeSet<>();
+  private final Set<String> tagManifestAlgorithms = new TreeSet<>();
+  private final Map<String, Hasher> hashersByAlgorithm = new HashMap<>();
+  private String topLevelDirectory;
+
+  private StreamingArchiveVerifier(final Path extractTo){
+    this.extractTo = extractTo;
+  }
+
+  /**
+   * Read the archive to the end and check that the bag in it is complete and valid.
+   *
+   * @param archive the serialized bag, which is not closed
+   * @param format the archive format
+   * @param extractTo the directory to extract the bag into while verifying it, or null to only verify it
+   *
+   * @return true if the bag is valid or throws an exception
+   *
+   * @throws IOException if there is a problem reading the archive or extracting a file
+   * @throws NoSuchAlgorithmException if there is no mapping in the {@link BagitChecksumNameMapping} for a manifest
+   * @throws MissingBagitFileException if the bag is missing a bagit file
+   * @throws MissingPayloadManifestException if the bag is missing a payload manifest
+   * @throws FileNotInPayloadDirectoryException if a file is in a manifest but is not in the archive
+   * @throws MaliciousPathException if an entry or manifest is trying to access a file outside the bag
+   * @throws InvalidBagitFileFormatException if the archive or a bagit file is not formatted correctly
+   * @throws UnparsableVersionException if the version in the bagit.txt file can't be parsed
+   * @throws CorruptChecksumException if a file in the archive doesn't match its checksum
+   */
+  public static boolean verify(final InputStream archive, final ArchiveFormat format, final Path extractTo)
+      throws IOException, NoSuchAlgorithmException, MissingBagitFileException, MissingPayloadManifestException, FileNotInPayloadDirectoryException,
+      MaliciousPathException, InvalidBagitFileFormatException, UnparsableVersionException, CorruptChecksumException{
+    if(canCreateNewHashers()){
+      return verifyArchive(archive, format, extractTo);
+    }
+    synchronized(SHARED_HASHER_LOCK){
+      return verifyArchive(archive, format, extractTo);
+    }
+  }
+
+  /*
+   * any registered algorithm could be needed, since the manifests aren't known until they are read
+   */
+  private static boolean canCreateNewHashers() throws NoSuchAlgorithmException{
+    for(final String algorithm : BagitChecksumNameMapping.getBagitAlgorithmNames()){
+      if(BagitChecksumNameMapping.get(algorithm).newInstance() == null){
+        logger.info(messages.getString("verifying_archives_serially"), algorithm);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean verifyArchive(final InputStream archive, final ArchiveFormat format, final Path extractTo)
+      throws IOException, NoSuchAlgorithmException, MissingBagitFileException, MissingPayloadManifestException, FileNotInPayloadDirectoryException,
+      MaliciousPathException, InvalidBagitFileFormatException, UnparsableVersionException, CorruptChecksumException{
+    final ArchiveReader reader = ArchiveReader.open(archive, format);
+    final StreamingArchiveVerifier verifier = new StreamingArchiveVerifier(extractTo);
+
+    String name = reader.nextFile();
+    while(name != null){
+      if(reader.getLinkTarget() == null){
+        verifier.readFile(name, reader.getContents());
+      }
+      else{
+        verifier.readHardLink(name, reader.getLinkTarget());
+      }
+      name = reader.nextFile();
+    }
+
+    return verifier.verifyContents();
+  }
+
+  private void readFile(final String name, final InputStream contents) throws IOException, NoSuchAlgorithmException, MaliciousPathException, InvalidBagitFileFormatException{
+    final String relativeName = getRelativeName(name);
+    logger.debug(messages.getString("reading_archive_entry"), name);
+    final ByteArrayOutputStream keptContents = isKept(relativeName) ? new ByteArrayOutputStream() : null;
+    final Set<String> manifestAlgorithms = relativeName.startsWith("data/") ? payloadManifestAlgorithms : tagManifestAlgorithms;
+    //an extracted file can be hashed later with only the algorithms of the manifests
+    final List<Hasher> hashers = manifestAlgorithms.isEmpty() && extractTo != null ? Collections.<Hasher>emptyList() : getHashers(manifestAlgorithms);
+
+    try(OutputStream extracted = openExtractedFile(relativeName)){
+      final byte[] buffer = new byte[CHUNK_SIZE];
+      int read = contents.read(buffer);
+      while(read != -1){
+        for(final Hasher hasher : hashers){
+          hasher.update(buffer, read);
+        }
+        if(keptContents != null){
+          keptContents.write(buffer, 0, read);
+        }
+        if(extracted != null){
+          extracted.write(buffer, 0, read);
+        }
+        read = contents.read(buffer);
+      }
+    }
+
+    final Map<String, String> checksums = new HashMap<>();
+    for(final Hasher hasher : hashers){
+      checksums.put(hasher.getBagitAlgorithmName(), hasher.getHash());
+      hasher.reset();
+    }
+    addFile(relativeName, checksums, keptContents == null ? null : keptContents.toByteArray());
+  }
+
+  /*
+   * a hard link has the same contents as a file earlier in the archive, so it has the same checksums
+   */
+  private void readHardLink(final String name, final String linkTarget) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    final String relativeName = getRelativeName(name);
+    final String relativeTarget = getRelativeName(linkTarget);
+    logger.debug(messages.getString("reading_archive_hard_link"), name, linkTarget);
+    final Map<String, String> targetChecksums = fileToChecksums.get(relativeTarget);
+    final byte[] targetContents = tagFileContents.get(relativeTarget);
+    if(targetChecksums == null || (targetContents == null && isKept(relativeName))){
+      throw new InvalidBagitFileFormatException(MessageFormatter.format(messages.getString("archive_hard_link_target_error"), 
+          name, linkTarget).getMessage());
+    }
+
+    if(extractTo != null){
+      Files.copy(resolveExtractedFile(relativeTarget), resolveExtractedFile(relativeName), StandardCopyOption.REPLACE_EXISTING);
+    }
+    addFile(relativeName, new HashMap<>(targetChecksums), isKept(relativeName) ? targetContents : null);
+  }
+
+  private static boolean isKept(final String relativeName){
+    return MANIFEST_PATTERN.matcher(relativeName).matches() || "bagit.txt".equals(relativeName);
+  }
+
+  private void addFile(final String relativeName, final Map<String, String> checksums, final byte[] keptContents){
+    fileToChecksums.put(relativeName, checksums);
+    if(keptContents != null){
+      tagFileContents.put(relativeName, keptContents);
+    }
+    final Matcher manifestMatcher = MANIFEST_PATTERN.matcher(relativeName);
+    if(manifestMatcher.matches()){
+      (manifestMatcher.group(1) == null ? payloadManifestAlgorithms : tagManifestAlgorithms).add(manifestMatcher.group(2));
+    }
+  }
+
+  /*
+   * the name of the entry relative to the single top level directory of the bag
+   */
+  private String getRelativeName(final String name) throws MaliciousPathException, InvalidBagitFileFormatException{
+    String normalizedName = name;
+    while(normalizedName.startsWith("./")){
+      normalizedName = normalizedName.substring(2);
+    }
+    if(normalizedName.startsWith("/") || ("/" + normalizedName + "/").contains("/../")){
+      throw new MaliciousPathException(MessageFormatter.format(messages.getString("malicious_path_error"), name).getMessage());
+    }
+
+    final int separator = normalizedName.indexOf('/');
+    final String directory = separator == -1 ? null : normalizedName.substring(0, separator);
+    if(topLevelDirectory == null){
+      topLevelDirectory = directory;
+    }
+    if(directory == null || !directory.equals(topLevelDirectory)){
+      throw new InvalidBagitFileFormatException(MessageFormatter.format(messages.getString("archive_entry_outside_top_level_directory_error"),
+          name, topLevelDirectory).getMessage());
+    }
+    return normalizedName.substring(separator + 1);
+  }
+
+  private List<Hasher> getHashers(final Collection<String> manifestAlgorithms) throws NoSuchAlgorithmException{
+    final Collection<String> algorithms = manifestAlgorithms.isEmpty() ? BagitChecksumNameMapping.getBagitAlgorithmNames() : manifestAlgorithms;
+    final List<Hasher> hashers = new ArrayList<>(algorithms.size());
+    for(final String algorithm : algorithms){
+      Hasher hasher = hashersByAlgorithm.get(algorithm);
+      if(hasher == null){
+        final Hasher prototype = BagitChecksumNameMapping.get(algorithm);
+        final Hasher instance = prototype.newInstance(); //so archives can be verified on several threads at once
+        hasher = instance == null ? prototype : instance;
+        hashersByAlgorithm.put(algorithm, hasher);
+      }
+      hasher.reset();
+      hashers.add(hasher);
+    }
+    return hashers;
+  }
+
+  private OutputStream openExtractedFile(final String relativeName) throws IOException, MaliciousPathException{
+    if(extractTo == null){
+      return null;
+    }
+    return Files.newOutputStream(resolveExtractedFile(relativeName));
+  }
+
+  private Path resolveExtractedFile(final String relativeName) throws IOException, MaliciousPathException{
+    final Path bagRootDir = extractTo.resolve(topLevelDirectory).normalize();
+    final Path file = bagRootDir.resolve(relativeName).normalize();
+    final Path parent = file.getParent();
+    if(!file.startsWith(bagRootDir) || parent == null){
+      throw new MaliciousPathException(MessageFormatter.format(messages.getString("malicious_path_error"), file).getMessage());
+    }
+    Files.createDirectories(parent);
+    return file;
+  }
+
+  private boolean verifyContents() throws IOException, NoSuchAlgorithmException, MissingBagitFileException, MissingPayloadManifestException,
+      FileNotInPayloadDirectoryException, MaliciousPathException, InvalidBagitFileFormatException, UnparsableVersionException, CorruptChecksumException{
+    final String directory = topLevelDirectory == null ? "" : topLevelDirectory;
+    final byte[] bagitFile = tagFileContents.get("bagit.txt");
+    if(bagitFile == null){
+      throw new MissingBagitFileException(MessageFormatter.format(messages.getString("file_should_exist_error"), directory + "/bagit.txt").getMessage());
+    }
+    final SimpleImmutableEntry<Version, Charset> versionAndEncoding = BagitTextFileReader.readBagitTextFile(bagitFile, directory + "/bagit.txt");
+    final Path bagRootDir = extractTo == null ? Paths.get(directory) : extractTo.resolve(directory).normalize();
+
+    final List<Manifest> payloadManifests = new ArrayList<>();
+    final List<Manifest> tagManifests = new ArrayList<>();
+    for(final Entry<String, byte[]> tagFile : tagFileContents.entrySet()){
+      final Matcher manifestMatcher = MANIFEST_PATTERN.matcher(tagFile.getKey());
+      if(manifestMatcher.matches()){
+        final Manifest manifest = readManifest(manifestMatcher.group(2), tagFile, bagRootDir, versionAndEncoding.getValue());
+        if(manifestMatcher.group(1) == null){
+          payloadManifests.add(manifest);
+        }
+        else{
+          tagManifests.add(manifest);
+        }
+      }
+    }
+    if(payloadManifests.isEmpty()){
+      throw new MissingPayloadManifestException(messages.getString("missing_payload_manifest_error"));
+    }
+
+    logger.info(messages.getString("checking_archive_checksums"), directory);
+    checkChecksums(payloadManifests, bagRootDir);
+    checkChecksums(tagManifests, bagRootDir);
+    checkPayloadFilesAreInManifests(payloadManifests, bagRootDir, versionAndEncoding.getKey());
+
+    return true;
+  }
+
+  private static Manifest readManifest(final String algorithm, final Entry<String, byte[]> manifestFile, final Path bagRootDir, final Charset encoding)
+      throws IOException, NoSuchAlgorithmException, MaliciousPathException, InvalidBagitFileFormatException{
+    BagitChecksumNameMapping.get(algorithm); //fail early if the algorithm isn't supported
+    try(BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(manifestFile.getValue()), encoding))){
+      return ManifestReader.readManifest(algorithm, reader, bagRootDir, manifestFile.getKey());
+    }
+  }
+
+  /*
+   * every file listed must be in the archive and match the checksum
+   */
+  private void checkChecksums(final List<Manifest> manifests, final Path bagRootDir) 
+      throws IOException, NoSuchAlgorithmException, FileNotInPayloadDirectoryException, CorruptChecksumException, InvalidBagitFileFormatException{
+    final Set<String> algorithms = new TreeSet<>();
+    for(final Manifest manifest : manifests){
+      algorithms.add(manifest.getBagitAlgorithmName());
+    }
+    for(final Manifest manifest : manifests){
+      for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
+        final String relativeName = toEntryName(bagRootDir.relativize(entry.getKey()));
+        final Map<String, String> checksums = fileToChecksums.get(relativeName);
+        if(checksums == null){
+          throw new FileNotInPayloadDirectoryException(MessageFormatter.format(messages.getString("missing_payload_files_error"), entry.getKey()).getMessage());
+        }
+
+        String computedChecksum = checksums.get(manifest.getBagitAlgorithmName());
+        if(computedChecksum == null){
+          final Set<String> missingAlgorithms = new TreeSet<>(algorithms);
+          missingAlgorithms.removeAll(checksums.keySet());
+          checksums.putAll(hashExtractedFile(entry.getKey(), relativeName, manifest.getBagitAlgorithmName(), missingAlgorithms));
+          computedChecksum = checksums.get(manifest.getBagitAlgorithmName());
+        }
+        if(!computedChecksum.equals(entry.getValue())){
+          throw new CorruptChecksumException(messages.getString("corrupt_checksum_error"), entry.getKey(),
+              manifest.getBagitAlgorithmName(), entry.getValue(), computedChecksum);
+        }
+      }
+    }
+  }
+
+  /*
+   * the manifest came after the file in the archive, so the file has to be read again. It is read once for all the missing algorithms
+   */
+  private Map<String, String> hashExtractedFile(final Path file, final String relativeName, final String algorithm, final Set<String> algorithms) 
+      throws IOException, NoSuchAlgorithmException, InvalidBagitFileFormatException{
+    if(extractTo == null){
+      throw new InvalidBagitFileFormatException(MessageFormatter.format(messages.getString("archive_checksum_not_calculated_error"), 
+          relativeName, algorithm).getMessage());
+    }
+    logger.debug(messages.getString("hashing_extracted_file"), file, algorithms);
+    final List<Hasher> hashers = getHashers(algorithms);
+    try(InputStream in = Files.newInputStream(file)){
+      final byte[] buffer = new byte[CHUNK_SIZE];
+      int read = in.read(buffer);
+      while(read != -1){
+        for(final Hasher hasher : hashers){
+          hasher.update(buffer, read);
+        }
+        read = in.read(buffer);
+      }
+    }
+
+    final Map<String, String> checksums = new HashMap<>();
+    for(final Hasher hasher : hashers){
+      checksums.put(hasher.getBagitAlgorithmName(), hasher.getHash());
+      hasher.reset();
+    }
+    return checksums;
+  }
+
+  /*
+   * as per the bagit-spec 1.0+ all payload files have to be listed in all manifests, before that in at least one
+   */
+  private void checkPayloadFilesAreInManifests(final List<Manifest> payloadManifests, final Path bagRootDir, final Version version)
+      throws FileNotInManifestException{
+    for(final String relativeName : fileToChecksums.keySet()){
+      if(relativeName.startsWith("data/")){
+        final Path file = bagRootDir.resolve(relativeName).normalize();
+        int listedCount = 0;
+        for(final Manifest manifest : payloadManifests){
+          if(manifest.getFileToChecksumMap().containsKey(file)){
+            listedCount++;
+          }
+          else if(!version.isOlder(Version.VERSION_1_0())){
+            throw new FileNotInManifestException(MessageFormatter.format(messages.getString("file_not_in_manifest_error"),
+                file, manifest.getBagitAlgorithmName()).getMessage());
+          }
+        }
+        if(listedCount == 0){
+          throw new FileNotInManifestException(MessageFormatter.format(messages.getString("file_not_in_any_manifest_error"), file).getMessage());
+        }
+      }
+    }
+  }
+
+  private static String toEntryName(final Path relativePath){
+    final StringBuilder name = new StringBuilder();
+    for(final Path element : relativePath){
+      if(name.length() > 0){
+        name.append('/');
+      }
+      name.append(element.toString());
+    }
+    return name.toString();
+  }
+}
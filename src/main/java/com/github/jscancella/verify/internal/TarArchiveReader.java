@@ -0,0 +1,297 @@
+package com.github.jscancella.verify.internal;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Reads a POSIX (ustar) tar archive, including pax extended headers and GNU long names.
+ * Hard links are returned as files without contents, along with the name of the file they link to.
+ * See <a href="https://pubs.opengroup.org/onlinepubs/9699919799/utilities/pax.html">the pax specification</a>
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+final class TarArchiveReader implements ArchiveReader {
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int BLOCK_SIZE = 512;
+  private static final int _64_KB = 1024 * 64;
+  private static final int MAX_HEADER_DATA_SIZE = 1024 * 1024; //pax headers and long names are small, this protects against corrupt archives
+  private static final byte PAX_HEADER = 'x';
+  private static final byte GNU_LONG_NAME = 'L';
+  private static final byte GNU_LONG_LINK_NAME = 'K';
+  private static final byte HARD_LINK = '1';
+  private static final byte REGULAR_FILE = '0';
+  private static final byte OLD_REGULAR_FILE = 0;
+  private static final byte CONTIGUOUS_FILE = '7';
+
+  private final InputStream in;
+  private final EntryInputStream contents = new EntryInputStream();
+  private long remaining;
+  private long padding;
+  private String linkTarget;
+
+  TarArchiveReader(final InputStream in){
+    this.in = new BufferedInputStream(in, _64_KB);
+  }
+
+  @Override
+  public String nextFile() throws IOException{
+    skipFully(remaining + padding);
+    remaining = 0;
+    padding = 0;
+    linkTarget = null;
+
+    Map<String, String> paxHeaders = new HashMap<>();
+    String longName = null;
+    String longLinkName = null;
+    byte[] header = readHeader();
+    while(header != null){
+      final byte type = header[156];
+      final long size = paxHeaders.containsKey("size") ? parsePaxNumber(paxHeaders.get("size")) : parseNumber(header, 124, 12);
+
+      if(type == PAX_HEADER){
+        paxHeaders = parsePaxRecords(readHeaderData(size));
+      }
+      else if(type == GNU_LONG_NAME){
+        longName = trimNul(readHeaderData(size));
+      }
+      else if(type == GNU_LONG_LINK_NAME){
+        longLinkName = trimNul(readHeaderData(size));
+      }
+      else if(type == HARD_LINK){
+        skipFully(size + padding(size)); //the size is normally 0, the contents are those of the target
+        linkTarget = getLinkName(header, paxHeaders, longLinkName);
+        return getName(header, paxHeaders, longName);
+      }
+      else if(type == REGULAR_FILE || type == OLD_REGULAR_FILE || type == CONTIGUOUS_FILE){
+        remaining = size;
+        padding = padding(size);
+        return getName(header, paxHeaders, longName);
+      }
+      else{ //directories, symbolic links, global headers and anything else aren't files
+        skipFully(size + padding(size));
+        paxHeaders = new HashMap<>();
+        longName = null;
+        longLinkName = null;
+      }
+      header = readHeader();
+    }
+
+    return null;
+  }
+
+  @Override
+  public InputStream getContents(){
+    return contents;
+  }
+
+  @Override
+  public String getLinkTarget(){
+    return linkTarget;
+  }
+
+  /*
+   * read the next header block, or return null at the end of the archive
+   */
+  private byte[] readHeader() throws IOException{
+    final byte[] header = new byte[BLOCK_SIZE];
+    int read = 0;
+    while(read < BLOCK_SIZE){
+      final int count = in.read(header, read, BLOCK_SIZE - read);
+      if(count == -1){
+        if(read == 0){
+          return null; //some writers leave out the end of archive blocks
+        }
+        throw new EOFException(messages.getString("truncated_tar_error"));
+      }
+      read += count;
+    }
+
+    if(isEndOfArchive(header)){
+      return null;
+    }
+    checkChecksum(header);
+    return header;
+  }
+
+  private static boolean isEndOfArchive(final byte[] header){
+    for(final byte headerByte : header){
+      if(headerByte != 0){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void checkChecksum(final byte[] header) throws IOException{
+    long checksum = 0;
+    for(int index = 0; index < BLOCK_SIZE; index++){
+      checksum += index >= 148 && index < 156 ? ' ' : header[index] & 0xff;
+    }
+    if(checksum != parseNumber(header, 148, 8)){
+      throw new IOException(messages.getString("tar_header_checksum_error"));
+    }
+  }
+
+  private static String getName(final byte[] header, final Map<String, String> paxHeaders, final String longName){
+    if(paxHeaders.containsKey("path")){
+      return paxHeaders.get("path");
+    }
+    if(longName != null){
+      return longName;
+    }
+
+    final String name = readString(header, 0, 100);
+    final String prefix = "ustar".equals(readString(header, 257, 5)) ? readString(header, 345, 155) : "";
+    return prefix.isEmpty() ? name : prefix + "/" + name;
+  }
+
+  private static String getLinkName(final byte[] header, final Map<String, String> paxHeaders, final String longLinkName){
+    if(paxHeaders.containsKey("linkpath")){
+      return paxHeaders.get("linkpath");
+    }
+    if(longLinkName != null){
+      return longLinkName;
+    }
+    return readString(header, 157, 100);
+  }
+
+  /*
+   * octal, or base-256 if the high bit of the first byte is set (a GNU extension for large numbers)
+   */
+  private static long parseNumber(final byte[] header, final int offset, final int length){
+    long value = 0;
+    if((header[offset] & 0x80) != 0){
+      for(int index = offset + 1; index < offset + length; index++){
+        value = (value << 8) + (header[index] & 0xff);
+      }
+      return value;
+    }
+
+    for(int index = offset; index < offset + length; index++){
+      final byte digit = header[index];
+      if(digit >= '0' && digit <= '7'){
+        value = (value << 3) + digit - '0';
+      }
+      else if(digit == 0 || (digit == ' ' && value > 0)){
+        break;
+      }
+    }
+    return value;
+  }
+
+  private static String readString(final byte[] header, final int offset, final int length){
+    int end = offset;
+    while(end < offset + length && header[end] != 0){
+      end++;
+    }
+    return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  private static String trimNul(final byte[] data){
+    return readString(data, 0, data.length);
+  }
+
+  /*
+   * each record is "<length> <key>=<value>\n" where the length includes itself
+   */
+  private static Map<String, String> parsePaxRecords(final byte[] data) throws IOException{
+    final Map<String, String> records = new HashMap<>();
+    int offset = 0;
+    while(offset < data.length && data[offset] != 0){
+      int space = offset;
+      while(space < data.length && data[space] != ' '){
+        space++;
+      }
+      final int length = (int) parsePaxNumber(new String(data, offset, space - offset, StandardCharsets.US_ASCII));
+      if(length <= 0 || offset + length > data.length){
+        throw new IOException(messages.getString("malformed_pax_header_error"));
+      }
+      final String record = new String(data, space + 1, offset + length - space - 2, StandardCharsets.UTF_8); //without the trailing newline
+      final int equals = record.indexOf('=');
+      if(equals == -1){
+        throw new IOException(messages.getString("malformed_pax_header_error"));
+      }
+      records.put(record.substring(0, equals), record.substring(equals + 1));
+      offset += length;
+    }
+    return records;
+  }
+
+  private static long parsePaxNumber(final String number) throws IOException{
+    try{
+      return Long.parseLong(number);
+    }
+    catch(NumberFormatException e){
+      throw new IOException(messages.getString("malformed_pax_header_error"), e);
+    }
+  }
+
+  private byte[] readHeaderData(final long size) throws IOException{
+    if(size > MAX_HEADER_DATA_SIZE){
+      throw new IOException(MessageFormatter.format(messages.getString("tar_header_data_too_large_error"), size).getMessage());
+    }
+    final byte[] data = new byte[(int) size];
+    int read = 0;
+    while(read < data.length){
+      final int count = in.read(data, read, data.length - read);
+      if(count == -1){
+        throw new EOFException(messages.getString("truncated_tar_error"));
+      }
+      read += count;
+    }
+    skipFully(padding(size));
+    return data;
+  }
+
+  private static long padding(final long size){
+    final long remainder = size % BLOCK_SIZE;
+    return remainder == 0 ? 0 : BLOCK_SIZE - remainder;
+  }
+
+  private void skipFully(final long count) throws IOException{
+    long skipped = 0;
+    while(skipped < count){
+      final long skip = in.skip(count - skipped);
+      if(skip <= 0){
+        if(in.read() == -1){
+          throw new EOFException(messages.getString("truncated_tar_error"));
+        }
+        skipped++;
+      }
+      else{
+        skipped += skip;
+      }
+    }
+  }
+
+  /*
+   * the contents of the current file, ending at the end of the file
+   */
+  private final class EntryInputStream extends InputStream{
+    @Override
+    public int read() throws IOException{
+      final byte[] single = new byte[1];
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException{
+      if(remaining == 0){
+        return -1;
+      }
+      final int count = in.read(bytes, offset, (int) Math.min(length, remaining));
+      if(count == -1){
+        throw new EOFException(messages.getString("truncated_tar_error"));
+      }
+      remaining -= count;
+      return count;
+    }
+  }
+}
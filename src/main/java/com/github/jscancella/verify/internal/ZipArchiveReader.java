@@ -0,0 +1,36 @@
+package com.github.jscancella.verify.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads a zip archive using {@link ZipInputStream}, which expects entry names encoded in UTF-8.
+ */
+final class ZipArchiveReader implements ArchiveReader {
+  private final ZipInputStream zip;
+  
+  ZipArchiveReader(final InputStream in){
+    zip = new ZipInputStream(in);
+  }
+
+  @Override
+  public String nextFile() throws IOException{
+    ZipEntry entry = zip.getNextEntry();
+    while(entry != null && entry.isDirectory()){
+      entry = zip.getNextEntry();
+    }
+    return entry == null ? null : entry.getName();
+  }
+
+  @Override
+  public InputStream getContents(){
+    return zip;
+  }
+
+  @Override
+  public String getLinkTarget(){
+    return null; //zip archives don't have hard links
+  }
+}
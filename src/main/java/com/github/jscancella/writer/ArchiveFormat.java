@@ -0,0 +1,20 @@
+package com.github.jscancella.writer;
+
+/**
+ * The archive formats a bag can be serialized to with {@link BagWriter#writeArchive(com.github.jscancella.domain.Bag, java.io.OutputStream, ArchiveFormat)},
+ * verified from with {@link com.github.jscancella.verify.ArchiveVerifier}, or created from with {@link BagBuilder}
+ */
+public enum ArchiveFormat {
+  /**
+   * POSIX (ustar) tar, using pax extended headers for long or non ASCII paths and files of 8 GB or more
+   */
+  TAR,
+  /**
+   * Same as {@link #TAR} but compressed with gzip (.tar.gz or .tgz)
+   */
+  TAR_GZ,
+  /**
+   * Zip, using the Zip64 extensions when the archive needs them
+   */
+  ZIP
+}
@@ -0,0 +1,234 @@
+package com.github.jscancella.writer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Metadata;
+import com.github.jscancella.domain.Version;
+import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
+import com.github.jscancella.reader.internal.TagFileReader;
+import com.github.jscancella.verify.internal.ArchiveReader;
+import com.github.jscancella.writer.internal.BagCreator;
+
+/**
+ * Responsible for creating a bag from payload that arrives as streams, like from a socket or message queue, without landing the files first.
+ * Each payload file is written to the data directory while its checksums are calculated for every manifest in the same pass,
+ * so the payload is never read back. The payload can also be extracted from a tar or zip archive.
+ * Call {@link #build(Metadata)} once all the payload has been added to write the tag files.
+ * Creates a bag for {@link Version#LATEST_BAGIT_VERSION()}. Each builder has its own hashers, so builders can be used on different threads
+ * at the same time, unless a hasher can't create new instances in which case only one of them writes a payload file at a time. 
+ * A single builder is <b>not thread safe</b>
+ */
+public final class BagBuilder {
+  private static final Logger logger = LoggerFactory.getLogger(BagBuilder.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+  private static final Object SHARED_HASHER_LOCK = new Object();
+
+  private final Bag bag;
+  private final List<String> algorithms;
+  private final List<Manifest> manifests;
+  private final List<Hasher> hashers;
+  private final boolean isSharingHashers;
+  private final FileCountAndTotalSize payloadTotals = new FileCountAndTotalSize();
+  private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+  /**
+   * @param rootDir the directory to create the bag in, which should be empty or not exist yet
+   * @param algorithms the bagit algorithm names used to create the manifests, for example sha512
+   *
+   * @throws NoSuchAlgorithmException if there is no mapping in the {@link BagitChecksumNameMapping} for an algorithm
+   * @throws IOException if there was a problem creating the data directory
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  public BagBuilder(final Path rootDir, final Collection<String> algorithms) throws NoSuchAlgorithmException, IOException{
+    bag = new Bag(Version.LATEST_BAGIT_VERSION());
+    bag.setRootDir(rootDir);
+    this.algorithms = new ArrayList<>(algorithms);
+    manifests = new ArrayList<>(algorithms.size());
+    hashers = new ArrayList<>(algorithms.size());
+    boolean sharesHasher = false;
+    for(final String algorithm : algorithms){
+      manifests.add(new Manifest(algorithm));
+      final Hasher prototype = BagitChecksumNameMapping.get(algorithm);
+      final Hasher instance = prototype.newInstance(); //so builders on different threads don't share a hasher
+      sharesHasher = sharesHasher || instance == null;
+      hashers.add(instance == null ? prototype : instance);
+    }
+    isSharingHashers = sharesHasher;
+    logger.info(messages.getString("creating_bag"), bag.getVersion(), rootDir);
+    Files.createDirectories(bag.getDataDir());
+  }
+
+  /**
+   * Write a payload file from a stream while calculating its checksums. The stream is read to the end but not closed.
+   *
+   * @param relativePath where to put the file, relative to the data directory and using / as the separator
+   * @param in the contents of the file
+   *
+   * @throws IOException if there was a problem reading the stream or writing the file, including if the file was already added.
+   * A file that was only partly written is removed, so it can be added again
+   * @throws MaliciousPathException if the path would be outside the data directory
+   * @throws InvalidBagitFileFormatException if the path isn't valid in a bag, like using \ as the separator
+   */
+  public void addPayload(final String relativePath, final InputStream in) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    addPayload(relativePath, Channels.newChannel(in));
+  }
+
+  /**
+   * Write a payload file from a channel while calculating its checksums. The channel is read to the end but not closed.
+   *
+   * @param relativePath where to put the file, relative to the data directory and using / as the separator
+   * @param in the contents of the file
+   *
+   * @throws IOException if there was a problem reading the channel or writing the file, including if the file was already added.
+   * A file that was only partly written is removed, so it can be added again
+   * @throws MaliciousPathException if the path would be outside the data directory
+   * @throws InvalidBagitFileFormatException if the path isn't valid in a bag, like using \ as the separator
+   */
+  public void addPayload(final String relativePath, final ReadableByteChannel in) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    final Path payloadFile = createPayloadFile(relativePath);
+    logger.debug(messages.getString("streaming_payload_file"), payloadFile);
+    final Path parent = payloadFile.getParent();
+    if(parent != null){
+      Files.createDirectories(parent);
+    }
+
+    if(isSharingHashers){
+      synchronized(SHARED_HASHER_LOCK){
+        writePayloadFile(payloadFile, in);
+      }
+    }
+    else{
+      writePayloadFile(payloadFile, in);
+    }
+  }
+
+  /*
+   * a file that was only partly written is removed, so it isn't left in the data directory without being in a manifest
+   * and adding the same path again can succeed
+   */
+  private void writePayloadFile(final Path payloadFile, final ReadableByteChannel in) throws IOException{
+    for(final Hasher hasher : hashers){
+      hasher.reset();
+    }
+    final FileChannel channel = FileChannel.open(payloadFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    boolean isWritten = false;
+    long size = 0;
+    try{
+      try(FileChannel out = channel){
+        size = copy(in, out);
+      }
+      isWritten = true;
+    }
+    finally{
+      if(!isWritten){
+        Files.deleteIfExists(payloadFile);
+      }
+    }
+
+    for(int index = 0; index < manifests.size(); index++){
+      manifests.get(index).getFileToChecksumMap().put(payloadFile, hashers.get(index).getHash());
+      hashers.get(index).reset();
+    }
+    payloadTotals.addFile(size);
+  }
+
+  private long copy(final ReadableByteChannel in, final FileChannel out) throws IOException{
+    long size = 0;
+    buffer.clear();
+    int read = in.read(buffer);
+    while(read != -1){
+      for(final Hasher hasher : hashers){
+        hasher.update(buffer.array(), buffer.position());
+      }
+      size += read;
+      buffer.flip();
+      while(buffer.hasRemaining()){
+        out.write(buffer);
+      }
+      buffer.clear();
+      read = in.read(buffer);
+    }
+    return size;
+  }
+
+  /**
+   * Extract every file of an archive into the data directory while calculating its checksums, so each byte is only read once.
+   * The entries keep their path in the archive, relative to the data directory. Directories, links and other entries that
+   * aren't regular files are skipped, including hard links. The stream is read to the end but not closed.
+   * 
+   * @param archive the archive to extract, like one sent by a donor
+   * @param format the format of the archive
+   * 
+   * @throws IOException if there was a problem reading the archive or writing a file, including if a file is in the archive twice
+   * @throws MaliciousPathException if an entry would be outside the data directory
+   * @throws InvalidBagitFileFormatException if the path of an entry isn't valid in a bag, like using \ as the separator
+   */
+  public void addPayloadArchive(final InputStream archive, final ArchiveFormat format) throws IOException, MaliciousPathException, InvalidBagitFileFormatException{
+    logger.info(messages.getString("extracting_payload_archive"), format, bag.getDataDir());
+    final ArchiveReader reader = ArchiveReader.open(archive, format);
+    String name = reader.nextFile();
+    while(name != null){
+      if(name.startsWith("/")){
+        throw new MaliciousPathException(MessageFormatter.format(messages.getString("malicious_path_error"), name).getMessage());
+      }
+      if(reader.getLinkTarget() == null){
+        addPayload(name, reader.getContents());
+      }
+      name = reader.nextFile();
+    }
+  }
+
+  /*
+   * use the same rules as paths listed in a manifest, except that the name is used as is instead of being decoded, 
+   * and make sure it is a payload file
+   */
+  private Path createPayloadFile(final String relativePath) throws MaliciousPathException, InvalidBagitFileFormatException{
+    final Path payloadFile = TagFileReader.createFileFromRawPath(bag.getRootDir(), "data/" + relativePath);
+    final Path dataDir = bag.getDataDir().normalize();
+    if(!payloadFile.startsWith(dataDir) || payloadFile.equals(dataDir)){
+      throw new MaliciousPathException(MessageFormatter.format(messages.getString("malicious_path_error"), relativePath).getMessage());
+    }
+    return payloadFile;
+  }
+
+  /**
+   * Write the bagit.txt, payload manifests, bag metadata and tag manifests
+   *
+   * @param metadata the metadata to include in the bag. Payload-Oxum and Bagging-Date will be overwritten
+   *
+   * @return the newly created bag
+   *
+   * @throws NoSuchAlgorithmException if there is no mapping in the {@link BagitChecksumNameMapping} for an algorithm
+   * @throws IOException if there was a problem writing a file
+   */
+  public Bag build(final Metadata metadata) throws NoSuchAlgorithmException, IOException{
+    bag.getPayLoadManifests().addAll(manifests);
+    BagCreator.finishBag(bag, algorithms, metadata, payloadTotals);
+    return bag;
+  }
+}
@@ -0,0 +1,249 @@
+package com.github.jscancella.writer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Metadata;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.internal.FutureUtils;
+import com.github.jscancella.internal.PathUtils;
+import com.github.jscancella.writer.internal.PayloadPartitioner;
+
+/**
+ * Responsible for splitting a bag into several smaller bags, for example to fit each one on a drive or to send them down parallel transfer lanes.
+ * The payload files are divided by {@link PayloadPartitioner} and each sub-bag gets the entries of the payload manifests for its files,
+ * so no payload file is hashed again. Each sub-bag has the metadata of the original bag along with its own Payload-Oxum,
+ * a Bag-Count (for example "2 of 5") and a Bag-Group-Identifier (the name of the original bag unless it already had one).
+ * A catalog listing the Payload-Oxum and directory of each sub-bag is written next to them.
+ */
+public enum BagSplitter {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(BagSplitter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final String CATALOG_FILE_NAME = "bag-split-catalog.txt";
+  private static final String BAG_COUNT = "Bag-Count";
+  private static final String BAG_GROUP_IDENTIFIER = "Bag-Group-Identifier";
+  private static final String BAG_SIZE = "Bag-Size";
+
+  /**
+   * Split a bag into sub-bags that are each under a maximum payload size and number of payload files.
+   * The sub-bags are written to directories named after the bag followed by their number, like bag-01.
+   * If the options have an executor the sub-bags are written in parallel on it, and each sub-bag's files are then copied on the thread writing it.
+   * That requires hashers that can create new instances, otherwise the sub-bags are written one at a time.
+   * The other options are used to write each sub-bag, except for deduplication.
+   * Files listed in the fetch.txt take no room, and are put in the same sub-bag as their manifest entries along with their fetch item.
+   *
+   * @param bag the bag to split, which must have been read from the filesystem
+   * @param outputDir the directory to write the sub-bags and catalog to
+   * @param maxBagSize the maximum number of payload bytes in a sub-bag, or 0 or less for no maximum. A file larger than this gets a sub-bag to itself
+   * @param maxFileCount the maximum number of payload files in a sub-bag, or 0 or less for no maximum
+   * @param options how to write the sub-bags
+   *
+   * @return the root directories of the sub-bags, in order
+   *
+   * @throws IOException if there was a problem reading the size of a payload file or writing a sub-bag
+   * @throws NoSuchAlgorithmException if the hasher for a tag manifest can't be found
+   * @throws CorruptChecksumException if the payload is verified while writing and a written file doesn't match the payload manifests
+   */
+  public static List<Path> split(final Bag bag, final Path outputDir, final long maxBagSize, final long maxFileCount, final WriteOptions options)
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    final Map<Path, FetchItem> fetchItems = new HashMap<>();
+    for(final FetchItem item : bag.getItemsToFetch()){
+      fetchItems.put(item.getPath().normalize(), item);
+    }
+    final List<List<Path>> partitions = PayloadPartitioner.partition(getPayloadSizes(bag, fetchItems), maxBagSize, maxFileCount);
+    logger.info(messages.getString("splitting_bag"), bag.getRootDir(), partitions.size());
+
+    final String name = PathUtils.getFilename(bag.getRootDir());
+    final String numberFormat = "%0" + String.valueOf(partitions.size()).length() + "d";
+    final Map<Path, Bag> subBags = new LinkedHashMap<>();
+    for(int index = 0; index < partitions.size(); index++){
+      final Path subBagDir = outputDir.resolve(name + "-" + String.format(numberFormat, index + 1));
+      subBags.put(subBagDir, createSubBag(bag, partitions.get(index), fetchItems, (index + 1) + " of " + partitions.size()));
+    }
+
+    writeSubBags(subBags, options);
+    writeCatalog(outputDir, subBags);
+    return new ArrayList<>(subBags.keySet());
+  }
+
+  /*
+   * only the sizes are looked up, nothing is read
+   */
+  private static Map<Path, Long> getPayloadSizes(final Bag bag, final Map<Path, FetchItem> fetchItems) throws IOException{
+    final Map<Path, Long> fileToSize = new HashMap<>();
+    for(final Manifest manifest : bag.getPayLoadManifests()){
+      for(final Path file : manifest.getFileToChecksumMap().keySet()){
+        if(!fileToSize.containsKey(file)){
+          fileToSize.put(file, fetchItems.containsKey(file.normalize()) ? 0L : Files.size(file));
+        }
+      }
+    }
+    return fileToSize;
+  }
+
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private static Bag createSubBag(final Bag bag, final List<Path> files, final Map<Path, FetchItem> fetchItems, final String bagCount){
+    final Bag subBag = new Bag(bag.getVersion());
+    subBag.setRootDir(bag.getRootDir()); //so the payload files are copied from the original bag
+    subBag.setFileEncoding(bag.getFileEncoding());
+
+    final Set<Manifest> payloadManifests = new HashSet<>();
+    for(final Manifest manifest : bag.getPayLoadManifests()){
+      final Manifest subManifest = new Manifest(manifest.getBagitAlgorithmName());
+      for(final Path file : files){
+        final String checksum = manifest.getFileToChecksumMap().get(file);
+        if(checksum != null){
+          subManifest.getFileToChecksumMap().put(file, checksum);
+        }
+      }
+      payloadManifests.add(subManifest);
+    }
+    subBag.setPayLoadManifests(payloadManifests);
+
+    final List<FetchItem> subFetchItems = new ArrayList<>();
+    for(final Path file : files){
+      final FetchItem item = fetchItems.get(file.normalize());
+      if(item != null){
+        subFetchItems.add(item);
+      }
+    }
+    subBag.setItemsToFetch(subFetchItems);
+    subBag.setTagManifests(createTagManifests(bag, subFetchItems.isEmpty()));
+    subBag.setMetadata(createMetadata(bag, bagCount));
+    return subBag;
+  }
+
+  /*
+   * the tag files are hashed again when the sub-bag is written, so only which files they list matters
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private static Set<Manifest> createTagManifests(final Bag bag, final boolean isFetchFileExcluded){
+    final Path fetchFile = bag.getTagFileDir().resolve("fetch.txt");
+    final Set<Manifest> tagManifests = new HashSet<>();
+    for(final Manifest manifest : bag.getTagManifests()){
+      final Manifest subManifest = new Manifest(manifest.getBagitAlgorithmName());
+      subManifest.getFileToChecksumMap().putAll(manifest.getFileToChecksumMap());
+      if(isFetchFileExcluded){
+        subManifest.getFileToChecksumMap().remove(fetchFile);
+      }
+      tagManifests.add(subManifest);
+    }
+    return tagManifests;
+  }
+
+  /*
+   * the Payload-Oxum is set when the sub-bag is written, and the Bag-Size of the original bag would be wrong
+   */
+  private static Metadata createMetadata(final Bag bag, final String bagCount){
+    final Metadata metadata = new Metadata();
+    metadata.addAll(bag.getMetadata().getAll());
+    metadata.remove(BAG_SIZE);
+    metadata.remove(BAG_COUNT);
+    metadata.add(BAG_COUNT, bagCount);
+    if(!metadata.contains(BAG_GROUP_IDENTIFIER)){
+      metadata.add(BAG_GROUP_IDENTIFIER, PathUtils.getFilename(bag.getRootDir()));
+    }
+    return metadata;
+  }
+
+  /*
+   * the executor is only used for writing the sub-bags in parallel, since waiting on it from inside one of its own tasks could deadlock
+   */
+  private static void writeSubBags(final Map<Path, Bag> subBags, final WriteOptions options) throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    final boolean isParallel = options.getExecutor() != null && canCreateNewHashers(subBags.values());
+    final WriteOptions subBagOptions = createSubBagOptions(options);
+    if(!isParallel){
+      for(final Entry<Path, Bag> subBag : subBags.entrySet()){
+        writeSubBag(subBag.getValue(), subBag.getKey(), subBagOptions);
+      }
+      return;
+    }
+
+    final List<Future<?>> futures = new ArrayList<>(subBags.size());
+    try{
+      for(final Entry<Path, Bag> subBag : subBags.entrySet()){
+        futures.add(options.getExecutor().submit(() -> {
+          writeSubBag(subBag.getValue(), subBag.getKey(), subBagOptions);
+          return null;
+        }));
+      }
+      for(final Future<?> future : futures){
+        FutureUtils.waitFor(future, NoSuchAlgorithmException.class, CorruptChecksumException.class);
+      }
+    }
+    finally{
+      for(final Future<?> future : futures){
+        future.cancel(true);
+      }
+    }
+  }
+
+  /*
+   * a hasher that can't create new instances is shared by every thread, so only one bag can be written at a time
+   */
+  private static boolean canCreateNewHashers(final Collection<Bag> bags) throws NoSuchAlgorithmException{
+    for(final Bag bag : bags){
+      final Set<Manifest> manifests = new HashSet<>(bag.getPayLoadManifests());
+      manifests.addAll(bag.getTagManifests());
+      for(final Manifest manifest : manifests){
+        if(BagitChecksumNameMapping.get(manifest.getBagitAlgorithmName()).newInstance() == null){
+          logger.info(messages.getString("writing_sub_bags_serially"), manifest.getBagitAlgorithmName());
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /*
+   * the options for writing each sub-bag, without the executor since it is only used for writing the sub-bags in parallel
+   */
+  private static WriteOptions createSubBagOptions(final WriteOptions options){
+    final WriteOptions subBagOptions = new WriteOptions();
+    subBagOptions.setWriteMode(options.getWriteMode());
+    subBagOptions.setVerifyPayload(options.isVerifyPayload());
+    subBagOptions.setTransactional(options.isTransactional());
+    return subBagOptions;
+  }
+
+  private static void writeSubBag(final Bag subBag, final Path subBagDir, final WriteOptions options)
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    logger.debug(messages.getString("writing_sub_bag"), subBagDir, subBag.getMetadata().get(BAG_COUNT).get(0));
+    Files.createDirectories(subBagDir);
+    BagWriter.write(subBag, subBagDir, options);
+  }
+
+  /*
+   * laid out like a manifest, with the Payload-Oxum in place of the checksum
+   */
+  private static void writeCatalog(final Path outputDir, final Map<Path, Bag> subBags) throws IOException{
+    final List<String> lines = new ArrayList<>(subBags.size());
+    for(final Entry<Path, Bag> subBag : subBags.entrySet()){
+      lines.add(subBag.getValue().getMetadata().get("Payload-Oxum").get(0) + "  " + PathUtils.getFilename(subBag.getKey()));
+    }
+    final Path catalog = outputDir.resolve(CATALOG_FILE_NAME);
+    logger.info(messages.getString("writing_split_catalog"), catalog);
+    Files.write(catalog, lines, StandardCharsets.UTF_8);
+  }
+}
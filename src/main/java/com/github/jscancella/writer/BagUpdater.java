@@ -0,0 +1,225 @@
+package com.github.jscancella.writer;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Metadata;
+import com.github.jscancella.exceptions.FileNotInManifestException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.hash.PayloadOxumGenerator;
+import com.github.jscancella.writer.internal.BagUpdateWriter;
+
+/**
+ * Responsible for changing the payload of an existing bag in place without rehashing the files that didn't change.
+ * Collect the additions, replacements and removals, then call {@link #update()} to apply them. Only the affected payload files are hashed,
+ * the payload manifests are patched, the Payload-Oxum (if the bag has one) is adjusted by the difference,
+ * and the payload manifests, bag metadata and tag manifests are rewritten with a temporary file and a rename.
+ * <b>Not thread safe</b>
+ */
+public final class BagUpdater {
+  private static final Logger logger = LoggerFactory.getLogger(BagUpdater.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final String PAYLOAD_OXUM = "Payload-Oxum";
+  private static final String PAYLOAD_OXUM_REGEX = "\\d+\\.\\d+";
+
+  private final Bag bag;
+  private final Map<String, Path> additions = new LinkedHashMap<>();
+  private final Map<String, Path> replacements = new LinkedHashMap<>();
+  private final Set<String> removals = new LinkedHashSet<>();
+
+  /**
+   * @param bag the bag to update, which must have been read from the filesystem
+   */
+  public BagUpdater(final Bag bag){
+    this.bag = bag;
+  }
+
+  /**
+   * Replace the bag metadata in place. Only the bag metadata file and the tag manifests are rewritten (with a temporary file and a rename),
+   * and only the checksums of the bag metadata file are recalculated. The payload and payload manifests are not read or changed,
+   * so this takes the same time regardless of the size of the bag.
+   * 
+   * @param bag the bag to update, which must have been read from the filesystem
+   * @param metadata the new metadata. If it doesn't have a Payload-Oxum the existing one is kept, since the payload hasn't changed
+   * 
+   * @throws IOException if there was a problem writing a file
+   * @throws NoSuchAlgorithmException if the hasher for a tag manifest can't be found
+   */
+  public static void updateMetadata(final Bag bag, final Metadata metadata) throws IOException, NoSuchAlgorithmException{
+    logger.info(messages.getString("updating_bag_metadata"), bag.getRootDir());
+    final List<String> payloadOxums = bag.getMetadata().get(PAYLOAD_OXUM);
+    if(!metadata.contains(PAYLOAD_OXUM) && payloadOxums != null && payloadOxums.size() == 1){
+      metadata.upsertPayloadOxum(payloadOxums.get(0));
+    }
+    bag.setMetadata(metadata);
+    BagUpdateWriter.rewriteTagFiles(bag, false);
+  }
+
+  /**
+   * Add a new file to the payload
+   *
+   * @param source the file to copy into the payload
+   * @param relativePath where to put the file, relative to the data directory and using / as the separator
+   */
+  public void addPayloadFile(final Path source, final String relativePath){
+    forget(relativePath);
+    additions.put(relativePath, source);
+  }
+
+  /**
+   * Replace the contents of a file that is already in the payload
+   *
+   * @param source the file with the new contents
+   * @param relativePath the payload file to replace, relative to the data directory and using / as the separator
+   */
+  public void replacePayloadFile(final Path source, final String relativePath){
+    forget(relativePath);
+    replacements.put(relativePath, source);
+  }
+
+  /**
+   * Remove a file from the payload
+   *
+   * @param relativePath the payload file to remove, relative to the data directory and using / as the separator
+   */
+  public void removePayloadFile(final String relativePath){
+    forget(relativePath);
+    removals.add(relativePath);
+  }
+
+  /*
+   * only the last change to a path is applied
+   */
+  private void forget(final String relativePath){
+    additions.remove(relativePath);
+    replacements.remove(relativePath);
+    removals.remove(relativePath);
+  }
+
+  /**
+   * Apply the collected changes to the bag on disk and to the bag object, then clear them.
+   * Every path is checked before any file is changed.
+   *
+   * @throws IOException if there was a problem reading or writing a file
+   * @throws NoSuchAlgorithmException if the hasher for a manifest can't be found
+   * @throws MaliciousPathException if a path is outside the data directory
+   * @throws FileNotInManifestException if a file to replace or remove isn't in the payload manifests
+   * @throws FileAlreadyExistsException if a file to add is already in the payload
+   */
+  public void update() throws IOException, NoSuchAlgorithmException, MaliciousPathException, FileNotInManifestException{
+    logger.info(messages.getString("updating_bag"), bag.getRootDir(), additions.size(), replacements.size(), removals.size());
+    final Map<Path, Path> filesToAdd = resolveAll(additions);
+    final Map<Path, Path> filesToReplace = resolveAll(replacements);
+    final Set<Path> filesToRemove = resolveAll(removals);
+    checkChanges(filesToAdd.keySet(), filesToReplace.keySet(), filesToRemove);
+
+    long sizeDifference = 0;
+    for(final Path payloadFile : filesToRemove){
+      sizeDifference -= BagUpdateWriter.removePayloadFile(bag, payloadFile);
+    }
+    for(final Entry<Path, Path> replacement : filesToReplace.entrySet()){
+      sizeDifference -= Files.exists(replacement.getKey()) ? Files.size(replacement.getKey()) : 0;
+      sizeDifference += BagUpdateWriter.writePayloadFile(bag, replacement.getValue(), replacement.getKey());
+    }
+    for(final Entry<Path, Path> addition : filesToAdd.entrySet()){
+      sizeDifference += BagUpdateWriter.writePayloadFile(bag, addition.getValue(), addition.getKey());
+    }
+
+    updatePayloadOxum(sizeDifference, filesToAdd.size() - filesToRemove.size());
+    BagUpdateWriter.rewriteTagFiles(bag, true);
+
+    additions.clear();
+    replacements.clear();
+    removals.clear();
+  }
+
+  private Map<Path, Path> resolveAll(final Map<String, Path> relativePathToSource) throws MaliciousPathException{
+    final Map<Path, Path> payloadFileToSource = new LinkedHashMap<>();
+    for(final Entry<String, Path> entry : relativePathToSource.entrySet()){
+      payloadFileToSource.put(resolve(entry.getKey()), entry.getValue());
+    }
+    return payloadFileToSource;
+  }
+
+  private Set<Path> resolveAll(final Set<String> relativePaths) throws MaliciousPathException{
+    final Set<Path> payloadFiles = new LinkedHashSet<>();
+    for(final String relativePath : relativePaths){
+      payloadFiles.add(resolve(relativePath));
+    }
+    return payloadFiles;
+  }
+
+  private Path resolve(final String relativePath) throws MaliciousPathException{
+    final Path dataDir = bag.getDataDir().normalize();
+    final Path payloadFile = dataDir.resolve(relativePath).normalize();
+    if(!payloadFile.startsWith(dataDir) || payloadFile.equals(dataDir)){
+      throw new MaliciousPathException(MessageFormatter.format(messages.getString("malicious_path_error"), relativePath).getMessage());
+    }
+    return payloadFile;
+  }
+
+  private void checkChanges(final Set<Path> filesToAdd, final Set<Path> filesToReplace, final Set<Path> filesToRemove) throws FileNotInManifestException, FileAlreadyExistsException{
+    for(final Path payloadFile : filesToAdd){
+      if(isInPayloadManifests(payloadFile) || Files.exists(payloadFile)){
+        throw new FileAlreadyExistsException(payloadFile.toString(), null, messages.getString("update_file_already_exists_error"));
+      }
+    }
+    for(final Path payloadFile : filesToReplace){
+      checkIsInPayloadManifests(payloadFile);
+    }
+    for(final Path payloadFile : filesToRemove){
+      checkIsInPayloadManifests(payloadFile);
+    }
+  }
+
+  private void checkIsInPayloadManifests(final Path payloadFile) throws FileNotInManifestException{
+    if(!isInPayloadManifests(payloadFile)){
+      throw new FileNotInManifestException(MessageFormatter.format(messages.getString("update_file_not_in_manifest_error"), payloadFile).getMessage());
+    }
+  }
+
+  private boolean isInPayloadManifests(final Path payloadFile){
+    for(final Manifest payloadManifest : bag.getPayLoadManifests()){
+      if(payloadManifest.getFileToChecksumMap().containsKey(payloadFile)){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * adjust the existing Payload-Oxum instead of walking the whole payload again
+   */
+  private void updatePayloadOxum(final long sizeDifference, final long countDifference){
+    final List<String> payloadOxums = bag.getMetadata().get(PAYLOAD_OXUM);
+    if(payloadOxums == null || payloadOxums.isEmpty()){
+      return;
+    }
+    final String payloadOxum = payloadOxums.get(0);
+    if(payloadOxums.size() != 1 || !payloadOxum.matches(PAYLOAD_OXUM_REGEX)){
+      logger.warn(messages.getString("payload_oxum_not_updated_warning"), payloadOxum);
+      return;
+    }
+
+    final String[] parts = payloadOxum.split("\\.");
+    final long totalSize = Long.parseLong(parts[0]) + sizeDifference;
+    final long count = Long.parseLong(parts[1]) + countDifference;
+    bag.getMetadata().upsertPayloadOxum(PayloadOxumGenerator.formatPayloadOxum(totalSize, count));
+  }
+}
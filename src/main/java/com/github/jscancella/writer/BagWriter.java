@@ -1,6 +1,9 @@
 package com.github.jscancella.writer;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
@@ -10,6 +13,7 @@ import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,15 +21,19 @@ import org.slf4j.LoggerFactory;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.Manifest;
 import com.github.jscancella.domain.Metadata;
+import com.github.jscancella.exceptions.CorruptChecksumException;
 import com.github.jscancella.hash.BagitChecksumNameMapping;
 import com.github.jscancella.hash.Hasher;
-import com.github.jscancella.hash.PayloadOxumGenerator;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
+import com.github.jscancella.internal.PathUtils;
+import com.github.jscancella.writer.internal.ArchiveBagWriter;
 import com.github.jscancella.writer.internal.BagCreator;
 import com.github.jscancella.writer.internal.BagitFileWriter;
 import com.github.jscancella.writer.internal.FetchWriter;
 import com.github.jscancella.writer.internal.ManifestWriter;
 import com.github.jscancella.writer.internal.MetadataWriter;
 import com.github.jscancella.writer.internal.PayloadWriter;
+import com.github.jscancella.writer.internal.TransactionalBagWriter;
 
 /**
  * responsible for writing out a {@link Bag} to the filesystem
@@ -49,11 +57,111 @@ public enum BagWriter {; //using enum to ensure singleton
    */
   public static void write(final Bag bag, final Path outputDir) throws IOException, NoSuchAlgorithmException{
     logger.debug(messages.getString("writing_payload_files"));
-    PayloadWriter.writeVersionDependentPayloadFiles(bag, outputDir);
+    final FileCountAndTotalSize writtenPayloadTotals = PayloadWriter.writeVersionDependentPayloadFiles(bag, outputDir);
+    writeTagFiles(bag, outputDir, writtenPayloadTotals);
+  }
+  
+  /**
+   * Write the bag out to the specified directory using the supplied options. 
+   * If an error occurs some of the files may have been written out to the filesystem, 
+   * unless the write is transactional in which case the output directory won't have a bagit.txt and can be cleaned up with {@link #recover(Path)}.
+   * tag manifest(s) are updated prior to writing to ensure bag is valid after completion, 
+   * it is therefore recommended if you are going to further interact with the bag to read it from specified outputDir path
+   * 
+   * @param bag the {@link Bag} object to write out
+   * @param outputDir the output directory that will become the root of the bag
+   * @param options how to write the bag. The same options can be used for any number of writes, including concurrent ones
+   * 
+   * @return the payload files that were deduplicated, which is empty unless {@link WriteOptions#setDeduplication(Deduplication)} is used
+   * 
+   * @throws IOException if there is a problem writing a file
+   * @throws NoSuchAlgorithmException when trying to generate a {@link MessageDigest} which is used during update.
+   * @throws CorruptChecksumException if the payload is verified while writing and a written file doesn't match the payload manifests
+   */
+  public static DeduplicationReport write(final Bag bag, final Path outputDir, final WriteOptions options) throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    final DeduplicationReport report = new DeduplicationReport();
+    final Path stagingDir = options.isTransactional() ? TransactionalBagWriter.begin(outputDir) : null;
+    logger.debug(messages.getString("writing_payload_files"));
+    final FileCountAndTotalSize writtenPayloadTotals;
+    if(options.isVerifyPayload()){
+      writtenPayloadTotals = PayloadWriter.writeAndVerifyVersionDependentPayloadFiles(bag, outputDir, options, report);
+    }
+    else{
+      writtenPayloadTotals = PayloadWriter.writeVersionDependentPayloadFiles(bag, outputDir, options, report);
+    }
     
+    if(stagingDir == null){
+      writeTagFiles(bag, outputDir, writtenPayloadTotals);
+    }
+    else{
+      TransactionalBagWriter.sync(outputDir, PayloadWriter.getWrittenFiles(bag, outputDir), options.getExecutor());
+      writeTagFiles(bag, stagingDir, writtenPayloadTotals);
+      bag.setTagManifests(TransactionalBagWriter.commit(stagingDir, outputDir, bag.getTagManifests(), options.getExecutor()));
+    }
+    if(options.getDeduplication() != Deduplication.NONE){
+      logger.info(messages.getString("deduplicated_payload_files"), report.getDuplicateCount(), report.getBytesSaved());
+    }
+    return report;
+  }
+  
+  /**
+   * Detect and clean up a write that was interrupted, for example by a crash, so that it can be tried again. This covers 
+   * a transactional write (see {@link WriteOptions#setTransactional(boolean)}), creating a bag in place whose files were being moved 
+   * to the data directory, and replacing a tag file of an existing bag with {@link BagUpdater}.
+   * Only call this on a directory that was being written to, since the files it cleans up are recognized by name.
+   * 
+   * @param bagDir the directory that was being written to
+   * 
+   * @return true if an interrupted write was found and cleaned up
+   * 
+   * @throws IOException if there was a problem cleaning up
+   */
+  public static boolean recover(final Path bagDir) throws IOException{
+    return TransactionalBagWriter.recover(bagDir);
+  }
+  
+  /**
+   * Serialize the bag straight to a tar, tar.gz or zip archive without writing it to the filesystem first. 
+   * The archive contains a single top level directory with the same name as the bag root directory.
+   * The payload files are checked against the payload manifests as they are streamed 
+   * and the Payload-Oxum and tag manifests are updated for the archived bag. The stream is not closed.
+   * 
+   * @param bag the {@link Bag} object to serialize
+   * @param out where to write the archive
+   * @param format the archive format
+   * 
+   * @throws IOException if there is a problem reading a file or writing to the stream
+   * @throws NoSuchAlgorithmException if the hasher for a manifest can't be found
+   * @throws CorruptChecksumException if a payload file doesn't match the payload manifests, in which case the archive is incomplete
+   */
+  public static void writeArchive(final Bag bag, final OutputStream out, final ArchiveFormat format) 
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    ArchiveBagWriter.write(bag, out, format);
+  }
+  
+  /**
+   * Serialize the bag straight to a tar, tar.gz or zip archive without writing it to the filesystem first. 
+   * See {@link #writeArchive(Bag, OutputStream, ArchiveFormat)}. The channel is not closed.
+   * 
+   * @param bag the {@link Bag} object to serialize
+   * @param channel where to write the archive
+   * @param format the archive format
+   * 
+   * @throws IOException if there is a problem reading a file or writing to the channel
+   * @throws NoSuchAlgorithmException if the hasher for a manifest can't be found
+   * @throws CorruptChecksumException if a payload file doesn't match the payload manifests, in which case the archive is incomplete
+   */
+  public static void writeArchive(final Bag bag, final WritableByteChannel channel, final ArchiveFormat format) 
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    ArchiveBagWriter.write(bag, Channels.newOutputStream(channel), format);
+  }
+  
+  /*
+   * Write everything except the payload files
+   */
+  private static void writeTagFiles(final Bag bag, final Path outputDir, final FileCountAndTotalSize writtenPayloadTotals) throws IOException, NoSuchAlgorithmException{
     logger.debug(messages.getString("upsert_payload_oxum"));
-    final String payloadOxum = PayloadOxumGenerator.generatePayloadOxum(bag.getDataDir());
-    bag.getMetadata().upsertPayloadOxum(payloadOxum);
+    bag.getMetadata().upsertPayloadOxum(writtenPayloadTotals.toPayloadOxum());
     
     logger.debug(messages.getString("writing_bagit_file"));
     BagitFileWriter.writeBagitFile(bag.getVersion(), bag.getFileEncoding(), outputDir);
@@ -87,11 +195,13 @@ public enum BagWriter {; //using enum to ensure singleton
     
     for(final Manifest tagManifest : bag.getTagManifests()){
       final Manifest newManifest = new Manifest(tagManifest.getBagitAlgorithmName());
+      final Hasher prototype = BagitChecksumNameMapping.get(tagManifest.getBagitAlgorithmName());
+      final Hasher instance = prototype.newInstance(); //so bags can be written on several threads at once
+      final Hasher hasher = instance == null ? prototype : instance;
       
       for(final Path originalPath : tagManifest.getFileToChecksumMap().keySet()){
         final Path relativePath = bag.getRootDir().relativize(originalPath);
-        final Path pathToUpdate = newBagRootDir.resolve(relativePath);
-        final Hasher hasher = BagitChecksumNameMapping.get(tagManifest.getBagitAlgorithmName());
+        final Path pathToUpdate = PathUtils.resolve(newBagRootDir, relativePath);
         final String newChecksum = hasher.hash(pathToUpdate);
         newManifest.getFileToChecksumMap().put(pathToUpdate, newChecksum);
       }
@@ -109,7 +219,7 @@ public enum BagWriter {; //using enum to ensure singleton
     for(final Manifest manifest : manifests){
       for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
         final Path relativeLocation = bagRootDir.relativize(entry.getKey());
-        final Path writeTo = outputDir.resolve(relativeLocation);
+        final Path writeTo = PathUtils.resolve(outputDir, relativeLocation);
         final Path writeToParent = writeTo.getParent();
         if(!Files.exists(writeTo) && writeToParent != null){
           Files.createDirectories(writeToParent);
@@ -122,7 +232,8 @@ public enum BagWriter {; //using enum to ensure singleton
   /**
    * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}.
    * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
-   * in an unknown state of transition. Thus this is <b>not thread safe</b>
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
    * 
    * @param root the directory that will become the base of the bag and where to start searching for content
    * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
@@ -140,7 +251,8 @@ public enum BagWriter {; //using enum to ensure singleton
   /**
   * Creates a bag in place for version 0.97.
   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
-  * in an unknown state of transition. Thus this is <b>not thread safe</b>
+  * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+  * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
   * 
   * @param root the directory that will become the base of the bag and where to start searching for content
   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
@@ -155,4 +267,81 @@ public enum BagWriter {; //using enum to ensure singleton
  public static Bag bagInPlace(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata) throws NoSuchAlgorithmException, IOException{
    return BagCreator.bagInPlace(root, algorithms, includeHidden, metadata);
  }
+  
+  /**
+   * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}, 
+   * calculating the payload checksums concurrently using the supplied executor. 
+   * The resulting manifests are the same as when creating the bag serially. 
+   * The executor is not shut down after creating the bag.
+   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
+   * 
+   * @param root the directory that will become the base of the bag and where to start searching for content
+   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
+   * @param includeHidden to include hidden files when generating the bagit files, like the manifests
+   * @param metadata the metadata to include when creating the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param executor the executor used to hash the payload files
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing or moving file(s)
+   * 
+   * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
+   */
+  public static Bag bagInPlace(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final ExecutorService executor) throws NoSuchAlgorithmException, IOException{
+    return BagCreator.bagInPlace(root, algorithms, includeHidden, metadata, executor);
+  }
+  
+  /**
+   * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}, 
+   * then deduplicates the payload files as set in {@link WriteOptions#setDeduplication(Deduplication)} using the checksums that were just calculated. 
+   * The payload files are hashed using {@link WriteOptions#getExecutor()}, the other options only apply to writing a bag.
+   * With {@link Deduplication#FETCH} the duplicates are only removed from the payload after the fetch.txt listing them is written.
+   * The executor is not shut down after creating the bag.
+   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
+   * in an unknown state of transition. Thus this is <b>not thread safe</b>
+   * 
+   * @param root the directory that will become the base of the bag and where to start searching for content
+   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
+   * @param includeHidden to include hidden files when generating the bagit files, like the manifests
+   * @param metadata the metadata to include when creating the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param options how to deduplicate the payload
+   * @param report where the payload files that were deduplicated are added
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing, moving or linking file(s)
+   * 
+   * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
+   */
+  public static Bag bagInPlaceDeduplicated(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final WriteOptions options, final DeduplicationReport report) throws NoSuchAlgorithmException, IOException{
+    return BagCreator.bagInPlaceDeduplicated(root, algorithms, includeHidden, metadata, options.getExecutor(), 
+        options.getDeduplication(), options.getFetchBaseUrl(), report);
+  }
+  
+  /**
+   * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}, 
+   * appending each payload checksum to the manifest files as soon as it is calculated instead of keeping them in memory.
+   * The payload manifests of the returned bag are only read from the manifest files when they are first accessed.
+   * The executor is not shut down after creating the bag.
+   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
+   * 
+   * @param root the directory that will become the base of the bag and where to start searching for content
+   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
+   * @param includeHidden to include hidden files when generating the bagit files, like the manifests
+   * @param metadata the metadata to include when creating the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param executor the executor used to hash the payload files, or null to hash them on the calling thread
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing or moving file(s)
+   * 
+   * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
+   */
+  public static Bag bagInPlaceStreaming(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final ExecutorService executor) throws NoSuchAlgorithmException, IOException{
+    return BagCreator.bagInPlaceStreaming(root, algorithms, includeHidden, metadata, executor);
+  }
 }
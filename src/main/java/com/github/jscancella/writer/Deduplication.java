@@ -0,0 +1,21 @@
+package com.github.jscancella.writer;
+
+/**
+ * What to do with payload files whose contents are identical to another payload file. Files are only considered identical 
+ * when they are the same size and have the same checksum in every payload manifest, so the manifests stay correct whichever is used.
+ */
+public enum Deduplication {
+  /**
+   * Keep every copy of the contents
+   */
+  NONE,
+  /**
+   * Make each duplicate a hard link to the first file (by path) with the same contents, which requires the payload to be on a filesystem that supports hard links
+   */
+  HARDLINK,
+  /**
+   * Leave the duplicates out of the payload and list them in the fetch.txt instead, with a URL pointing at the first file (by path) 
+   * with the same contents. The URLs are resolved against {@link WriteOptions#getFetchBaseUrl()}, which is where the bag will be published
+   */
+  FETCH
+}
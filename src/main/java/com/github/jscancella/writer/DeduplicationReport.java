@@ -0,0 +1,47 @@
+package com.github.jscancella.writer;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The payload files that were deduplicated when writing or creating a bag, and how many bytes that saved. 
+ * See {@link Deduplication}, it is returned by {@link BagWriter#write(com.github.jscancella.domain.Bag, Path, WriteOptions)}. <b>Not thread safe</b>
+ */
+public final class DeduplicationReport {
+  private final Map<Path, Path> duplicateToCanonical = new LinkedHashMap<>();
+  private long bytesSaved;
+  
+  /**
+   * Add a payload file that was deduplicated
+   * 
+   * @param duplicate the payload file that was linked or listed in the fetch.txt
+   * @param canonical the payload file with the same contents that was kept
+   * @param size the size of the file in bytes
+   */
+  public void addDuplicate(final Path duplicate, final Path canonical, final long size){
+    duplicateToCanonical.put(duplicate, canonical);
+    bytesSaved += size;
+  }
+  
+  /**
+   * @return each deduplicated payload file mapped to the payload file with the same contents that was kept
+   */
+  public Map<Path, Path> getDuplicates(){
+    return Collections.unmodifiableMap(duplicateToCanonical);
+  }
+  
+  public int getDuplicateCount(){
+    return duplicateToCanonical.size();
+  }
+  
+  public long getBytesSaved(){
+    return bytesSaved;
+  }
+
+  @Override
+  public String toString(){
+    return "DeduplicationReport [duplicateCount=" + getDuplicateCount() + ", bytesSaved=" + bytesSaved + "]";
+  }
+}
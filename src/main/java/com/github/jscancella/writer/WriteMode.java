@@ -0,0 +1,25 @@
+package com.github.jscancella.writer;
+
+/**
+ * How the payload files are materialized when writing a bag with {@link BagWriter}. Tag files are always written fresh.
+ */
+public enum WriteMode {
+  /**
+   * Copy the contents of every payload file
+   */
+  COPY,
+  /**
+   * Create a hard link to the original payload file, which requires the output to be on the same filesystem
+   */
+  HARDLINK,
+  /**
+   * Clone the payload file so that both files share the data blocks until one of them is changed (copy-on-write).
+   * This is only attempted on Linux, using one {@code cp --reflink=always} for each batch of files in a directory, and only works on filesystems that support it (like btrfs and xfs).
+   * Otherwise the contents are copied like {@link #COPY}
+   */
+  REFLINK,
+  /**
+   * Create a symbolic link to the absolute path of the original payload file
+   */
+  SYMLINK
+}
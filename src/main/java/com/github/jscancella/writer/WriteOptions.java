@@ -0,0 +1,105 @@
+package com.github.jscancella.writer;
+
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options that change how {@link BagWriter#write(com.github.jscancella.domain.Bag, java.nio.file.Path, WriteOptions)} writes a bag. 
+ * The defaults result in the same bag as {@link BagWriter#write(com.github.jscancella.domain.Bag, java.nio.file.Path)}.
+ */
+public final class WriteOptions {
+  private ExecutorService executor;
+  private WriteMode writeMode = WriteMode.COPY;
+  private boolean verifyPayload;
+  private boolean transactional;
+  private Deduplication deduplication = Deduplication.NONE;
+  private URL fetchBaseUrl;
+  
+  /**
+   * @return the executor used to copy the payload files concurrently, or null if they are copied on the calling thread
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+  
+  /**
+   * @param executor the executor used to copy the payload files concurrently, or null to copy them on the calling thread. 
+   * The executor is not shut down after writing.
+   */
+  public void setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+  }
+  
+  /**
+   * @return how the payload files are materialized, defaults to {@link WriteMode#COPY}
+   */
+  public WriteMode getWriteMode() {
+    return writeMode;
+  }
+  
+  /**
+   * @param writeMode how the payload files are materialized
+   */
+  public void setWriteMode(final WriteMode writeMode) {
+    this.writeMode = writeMode;
+  }
+  
+  /**
+   * @return true if the checksums of each payload file are calculated while it is written and compared to the payload manifests, defaults to false
+   */
+  public boolean isVerifyPayload() {
+    return verifyPayload;
+  }
+  
+  /**
+   * @param verifyPayload true to calculate the checksums of each payload file while it is written and compare them to the payload manifests, 
+   * which verifies the written payload without reading it a second time
+   */
+  public void setVerifyPayload(final boolean verifyPayload) {
+    this.verifyPayload = verifyPayload;
+  }
+  
+  /**
+   * @return true if the bag is written so that an interrupted write never looks like a complete bag, defaults to false
+   */
+  public boolean isTransactional() {
+    return transactional;
+  }
+  
+  /**
+   * @param transactional true to sync the payload to disk, write the tag files to a staging directory, 
+   * and then rename them into place with the bagit.txt last. See {@link BagWriter#recover(java.nio.file.Path)} for cleaning up after a crash
+   */
+  public void setTransactional(final boolean transactional) {
+    this.transactional = transactional;
+  }
+  
+  /**
+   * @return what to do with payload files that have the same contents as another payload file, defaults to {@link Deduplication#NONE}
+   */
+  public Deduplication getDeduplication() {
+    return deduplication;
+  }
+  
+  /**
+   * @param deduplication what to do with payload files that have the same contents as another payload file. 
+   * The checksums already in the payload manifests are used to find them, so no file is read again
+   */
+  public void setDeduplication(final Deduplication deduplication) {
+    this.deduplication = deduplication;
+  }
+  
+  /**
+   * @return the URL the bag will be published at, which the fetch.txt URLs of duplicates are resolved against
+   */
+  public URL getFetchBaseUrl() {
+    return fetchBaseUrl;
+  }
+  
+  /**
+   * @param fetchBaseUrl the URL the bag will be published at, ending with a /. Required when using {@link Deduplication#FETCH}
+   */
+  public void setFetchBaseUrl(final URL fetchBaseUrl) {
+    this.fetchBaseUrl = fetchBaseUrl;
+  }
+}
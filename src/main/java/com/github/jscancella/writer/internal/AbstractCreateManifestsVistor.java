@@ -9,6 +9,8 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.ResourceBundle;
@@ -18,6 +20,8 @@ import org.slf4j.LoggerFactory;
 
 import com.github.jscancella.domain.Manifest;
 import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
+import com.github.jscancella.hash.internal.FileCountAndTotalSizeVistor;
 import com.github.jscancella.internal.PathUtils;
 
 /**
@@ -32,11 +36,37 @@ public abstract class AbstractCreateManifestsVistor extends SimpleFileVisitor<Pa
   
   protected transient final Map<Manifest, Hasher> manifestToHasherMap;
   protected transient final boolean includeHiddenFiles;
+  protected transient final FileCountAndTotalSize fileCountAndTotalSize = new FileCountAndTotalSize();
+  protected transient final StreamingManifestWriter streamingWriter;
+  protected transient final BagCreationJournal journal;
   
   public AbstractCreateManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles){
+    this(manifestToHasherMap, includeHiddenFiles, null);
+  }
+  
+  /**
+   * @param manifestToHasherMap the manifests to create and the hasher for each
+   * @param includeHiddenFiles if hidden files should be included in the manifests
+   * @param streamingWriter where to send the checksums instead of adding them to the manifests, or null to keep them in the manifests
+   */
+  public AbstractCreateManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, 
+      final StreamingManifestWriter streamingWriter){
+    this(manifestToHasherMap, includeHiddenFiles, streamingWriter, null);
+  }
+  
+  /**
+   * @param manifestToHasherMap the manifests to create and the hasher for each
+   * @param includeHiddenFiles if hidden files should be included in the manifests
+   * @param streamingWriter where to send the checksums instead of adding them to the manifests, or null to keep them in the manifests
+   * @param journal where to record each hashed file so an interrupted creation can be resumed, or null to not record them
+   */
+  public AbstractCreateManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, 
+      final StreamingManifestWriter streamingWriter, final BagCreationJournal journal){
     super();
     this.manifestToHasherMap = manifestToHasherMap;
     this.includeHiddenFiles = includeHiddenFiles;
+    this.streamingWriter = streamingWriter;
+    this.journal = journal;
   }
   
   public FileVisitResult abstractPreVisitDirectory(final Path dir, final String directoryToIgnore) throws IOException {
@@ -54,27 +84,121 @@ public abstract class AbstractCreateManifestsVistor extends SimpleFileVisitor<Pa
 
   @Override
   public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs)throws IOException{
+    fileCountAndTotalSize.addFile(attrs.isSymbolicLink() ? Files.size(path) : attrs.size());
     if(!includeHiddenFiles && PathUtils.isHidden(path) && !path.endsWith(".keep")){
       logger.debug(messages.getString("skipping_hidden_file"), path);
     }
-    else{
-      streamFile(path);
-      for(final Entry<Manifest, Hasher> entry : manifestToHasherMap.entrySet()) {
-        entry.getKey().getFileToChecksumMap().put(path, entry.getValue().getHash());
-        entry.getValue().reset();
-      }
+    else if(!addJournaledFile(path, attrs)){
+      addFile(path, attrs);
     }
     
     return FileVisitResult.CONTINUE;
   }
   
-  private void streamFile(final Path path) throws IOException {
+  /*
+   * use the checksums from before the creation was interrupted if the file hasn't changed since
+   */
+  private boolean addJournaledFile(final Path path, final BasicFileAttributes attrs) throws IOException{
+    final Map<String, String> journaledChecksums = journal == null ? null : journal.getChecksums(path, attrs);
+    if(journaledChecksums == null){
+      return false;
+    }
+    for(final Manifest manifest : manifestToHasherMap.keySet()){
+      recordChecksum(manifest, path, journaledChecksums.get(manifest.getBagitAlgorithmName()));
+    }
+    return true;
+  }
+  
+  /**
+   * Include the files of a directory that was skipped in the file count and total size, 
+   * since they are still part of the payload even though they are not in the manifests.
+   * 
+   * @param dir the skipped directory
+   * 
+   * @throws IOException if there is a problem reading the size of a file
+   */
+  protected void countSkippedDirectory(final Path dir) throws IOException{
+    final FileCountAndTotalSizeVistor visitor = new FileCountAndTotalSizeVistor();
+    Files.walkFileTree(dir, visitor);
+    fileCountAndTotalSize.addFiles(visitor.getCount(), visitor.getTotalSize());
+  }
+  
+  /**
+   * @return the number and total size of all the files visited, including those not added to the manifests
+   */
+  public FileCountAndTotalSize getFileCountAndTotalSize(){
+    return fileCountAndTotalSize;
+  }
+  
+  /**
+   * Calculate the checksums of a file that is to be included and add them to the manifests.
+   * 
+   * @param path the file to include
+   * @param attrs the attributes of the file
+   * 
+   * @throws IOException if there is a problem reading the file
+   */
+  protected void addFile(final Path path, final BasicFileAttributes attrs) throws IOException{
+    streamFile(path, manifestToHasherMap.values());
+    final Map<Manifest, String> checksums = new HashMap<>();
+    for(final Entry<Manifest, Hasher> entry : manifestToHasherMap.entrySet()) {
+      checksums.put(entry.getKey(), entry.getValue().getHash());
+      entry.getValue().reset();
+    }
+    recordChecksums(path, attrs, checksums);
+  }
+  
+  /**
+   * Add the checksums of a file to the manifests, and record them in the journal if there is one.
+   * 
+   * @param path the file
+   * @param attrs the attributes of the file from before it was hashed
+   * @param checksums the checksum of the file for each manifest
+   * 
+   * @throws IOException if there was a problem writing a checksum to the manifest file or the journal
+   */
+  protected void recordChecksums(final Path path, final BasicFileAttributes attrs, final Map<Manifest, String> checksums) throws IOException{
+    for(final Entry<Manifest, String> checksum : checksums.entrySet()){
+      recordChecksum(checksum.getKey(), path, checksum.getValue());
+    }
+    if(journal != null){
+      journal.record(path, attrs, checksums);
+    }
+  }
+  
+  /**
+   * Add the checksum of a file to the manifest, or send it to the streaming writer if there is one.
+   * 
+   * @param manifest the manifest the checksum belongs to
+   * @param path the file
+   * @param checksum the checksum of the file
+   * 
+   * @throws IOException if there was a problem writing the checksum to the manifest file
+   */
+  protected void recordChecksum(final Manifest manifest, final Path path, final String checksum) throws IOException{
+    if(streamingWriter == null){
+      manifest.getFileToChecksumMap().put(path, checksum);
+    }
+    else{
+      streamingWriter.append(manifest, path, checksum);
+    }
+  }
+  
+  /**
+   * Read the file once, updating every hasher with its contents.
+   * 
+   * @param path the file to read
+   * @param hashers the hashers to update
+   * 
+   * @throws IOException if there is a problem reading the file
+   */
+  protected static void streamFile(final Path path, final Collection<Hasher> hashers) throws IOException {
     try(InputStream is = new BufferedInputStream(Files.newInputStream(path, StandardOpenOption.READ))){
       final byte[] buffer = new byte[CHUNK_SIZE];
       int read = is.read(buffer);
 
       while(read != -1){
-        for(final Hasher hasher : manifestToHasherMap.values()) {
+        for(final Hasher hasher : hashers) {
           hasher.update(buffer, read);
         }
         read = is.read(buffer);
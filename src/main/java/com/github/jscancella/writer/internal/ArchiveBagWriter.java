@@ -0,0 +1,337 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
+import com.github.jscancella.writer.ArchiveFormat;
+
+/**
+ * Responsible for serializing a {@link Bag} straight to a tar, tar.gz or zip stream without writing it to the filesystem first.
+ * All entries are under a single top level directory with the same name as the bag root directory.
+ * The bagit.txt is written first, followed by the payload files, which are checked against the payload manifests as they stream.
+ * The fetch.txt, payload manifests, bag metadata (with the Payload-Oxum of the streamed payload), other tag files,
+ * and the recalculated tag manifests are written last.
+ * Since the size of an entry has to be known before its contents, each generated tag file is generated twice,
+ * first only counting its bytes and then straight into the archive, so that nothing is written to a temporary directory.
+ */
+public enum ArchiveBagWriter {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(ArchiveBagWriter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+  private static final Object SHARED_HASHER_LOCK = new Object();
+
+  /**
+   * Serialize the bag to the stream. The stream is not closed.
+   * The Payload-Oxum of the bag metadata is updated with the streamed payload files, like when writing a bag to the filesystem.
+   * Archives can be written on several threads at once, unless a hasher can't create new instances in which case they are written one at a time.
+   *
+   * @param bag the bag to serialize
+   * @param out where to write the archive
+   * @param format the archive format
+   *
+   * @throws IOException if there was a problem reading a file or writing to the stream
+   * @throws NoSuchAlgorithmException if the hasher for a manifest can't be found
+   * @throws CorruptChecksumException if a payload file doesn't match the checksum in a payload manifest, in which case the archive is incomplete
+   */
+  public static void write(final Bag bag, final OutputStream out, final ArchiveFormat format)
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    if(canCreateNewHashers(bag)){
+      writeArchive(bag, out, format);
+    }
+    else{
+      synchronized(SHARED_HASHER_LOCK){
+        writeArchive(bag, out, format);
+      }
+    }
+  }
+
+  /*
+   * a hasher that can't create new instances is shared by every thread, so only one archive can be written at a time
+   */
+  private static boolean canCreateNewHashers(final Bag bag) throws NoSuchAlgorithmException{
+    final Set<Manifest> manifests = new HashSet<>(bag.getPayLoadManifests());
+    manifests.addAll(bag.getTagManifests());
+    for(final Manifest manifest : manifests){
+      if(BagitChecksumNameMapping.get(manifest.getBagitAlgorithmName()).newInstance() == null){
+        logger.info(messages.getString("writing_archives_serially"), manifest.getBagitAlgorithmName());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeArchive(final Bag bag, final OutputStream out, final ArchiveFormat format)
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    final GZIPOutputStream compressed = format == ArchiveFormat.TAR_GZ ? new GZIPOutputStream(out, _64_KB) : null;
+    final ArchiveWriter archive = format == ArchiveFormat.ZIP ? new ZipArchiveWriter(out) : new TarArchiveWriter(compressed == null ? out : compressed);
+    final Path bagRootDir = bag.getRootDir();
+    final Path fileName = bagRootDir.toAbsolutePath().getFileName();
+    final String topLevelDirectory = fileName == null ? "bag/" : fileName + "/";
+    final Map<Manifest, Manifest> updatedTagManifests = new HashMap<>();
+    for(final Manifest tagManifest : bag.getTagManifests()){
+      updatedTagManifests.put(tagManifest, new Manifest(tagManifest.getBagitAlgorithmName()));
+    }
+    final TagFileWriter tagFileWriter = new TagFileWriter(archive, topLevelDirectory, bagRootDir, updatedTagManifests);
+    logger.info(messages.getString("writing_bag_archive"), bagRootDir, format);
+
+    tagFileWriter.write("bagit.txt", stream -> BagitFileWriter.writeBagitFile(bag.getVersion(), bag.getFileEncoding(), stream));
+
+    final FileCountAndTotalSize payloadTotals = writePayloadFiles(bag, archive, topLevelDirectory);
+    bag.getMetadata().upsertPayloadOxum(payloadTotals.toPayloadOxum());
+
+    if(!bag.getItemsToFetch().isEmpty()){
+      tagFileWriter.write("fetch.txt", stream -> FetchWriter.writeFetchFile(bag.getItemsToFetch(), bagRootDir, bag.getFileEncoding(), stream));
+    }
+    for(final Manifest payloadManifest : bag.getPayLoadManifests()){
+      tagFileWriter.write("manifest-" + payloadManifest.getBagitAlgorithmName() + ".txt", 
+          stream -> ManifestWriter.writeManifest(payloadManifest, bagRootDir, bag.getFileEncoding(), stream));
+    }
+    if(!bag.getMetadata().isEmpty()){
+      tagFileWriter.write(MetadataWriter.getBagMetadataFileName(bag.getVersion()), 
+          stream -> MetadataWriter.writeBagMetadata(bag.getMetadata(), bag.getFileEncoding(), stream));
+    }
+    tagFileWriter.writeRemainingTagFiles();
+
+    for(final Manifest tagManifest : updatedTagManifests.values()){
+      tagFileWriter.write("tagmanifest-" + tagManifest.getBagitAlgorithmName() + ".txt", 
+          stream -> ManifestWriter.writeManifest(tagManifest, bagRootDir, bag.getFileEncoding(), stream));
+    }
+    archive.finish();
+    if(compressed != null){
+      compressed.finish();
+    }
+  }
+
+  private static FileCountAndTotalSize writePayloadFiles(final Bag bag, final ArchiveWriter archive, final String topLevelDirectory)
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    final PayloadCopyVerifier verifier = new PayloadCopyVerifier(bag.getPayLoadManifests());
+    final Path bagDataDir = bag.getRootDir().resolve("data");
+    final FileCountAndTotalSize payloadTotals = new FileCountAndTotalSize();
+
+    for(final Path payloadFile : PayloadWriter.getFilesToWrite(bag.getPayLoadManifests(), bag.getItemsToFetch(), bagDataDir, bagDataDir).keySet()){
+      final List<Hasher> hashers = verifier.sharedHashers();
+      payloadTotals.addFile(writeEntry(archive, topLevelDirectory + "data/" + toEntryName(bagDataDir.relativize(payloadFile)), payloadFile, hashers));
+      verifier.check(payloadFile, payloadFile, hashers);
+      verifier.throwIfFailed();
+    }
+
+    return payloadTotals;
+  }
+
+  /*
+   * stream the file into the archive, updating the hashers with its contents, and return its size
+   */
+  private static long writeEntry(final ArchiveWriter archive, final String name, final Path file, final List<Hasher> hashers) throws IOException{
+    logger.debug(messages.getString("writing_archive_entry"), file, name);
+    return writeEntry(archive, name, file, Files.getLastModifiedTime(file), hashers);
+  }
+
+  private static long writeEntry(final ArchiveWriter archive, final String name, final Path file, final FileTime lastModified, 
+      final List<Hasher> hashers) throws IOException{
+    final long size = Files.size(file);
+    final OutputStream entry = archive.putEntry(name, size, lastModified);
+    try(InputStream in = Files.newInputStream(file, StandardOpenOption.READ)){
+      final byte[] buffer = new byte[CHUNK_SIZE];
+      int read = in.read(buffer);
+      while(read != -1){
+        for(final Hasher hasher : hashers){
+          hasher.update(buffer, read);
+        }
+        entry.write(buffer, 0, read);
+        read = in.read(buffer);
+      }
+    }
+    archive.closeEntry();
+    return size;
+  }
+
+  /*
+   * the path with / as the separator, regardless of the filesystem
+   */
+  private static String toEntryName(final Path relativePath){
+    final StringBuilder name = new StringBuilder();
+    for(final Path element : relativePath){
+      if(name.length() > 0){
+        name.append('/');
+      }
+      name.append(element.toString());
+    }
+    return name.toString();
+  }
+
+  /*
+   * generates the contents of a tag file
+   */
+  @FunctionalInterface
+  private interface TagFileContents{
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  /*
+   * only counts the bytes written to it
+   */
+  private static final class CountingOutputStream extends OutputStream{
+    private long count;
+
+    @Override
+    public void write(final int value){
+      count++;
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length){
+      count += length;
+    }
+  }
+
+  /*
+   * updates the hashers with the bytes before writing them to the entry
+   */
+  private static final class HashingOutputStream extends FilterOutputStream{
+    private final List<Hasher> hashers;
+
+    private HashingOutputStream(final OutputStream entry, final List<Hasher> hashers){
+      super(entry);
+      this.hashers = hashers;
+    }
+
+    @Override
+    public void write(final int value) throws IOException{
+      write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException{
+      if(offset == 0){
+        for(final Hasher hasher : hashers){
+          hasher.update(bytes, length);
+        }
+      }
+      else{
+        final byte[] copy = Arrays.copyOfRange(bytes, offset, offset + length);
+        for(final Hasher hasher : hashers){
+          hasher.update(copy, length);
+        }
+      }
+      out.write(bytes, offset, length);
+    }
+  }
+
+  /*
+   * writes the tag files and calculates their checksums for the tag manifests that include them
+   */
+  private static final class TagFileWriter{
+    private final ArchiveWriter archive;
+    private final String topLevelDirectory;
+    private final Path bagRootDir;
+    private final Map<Manifest, Manifest> updatedTagManifests;
+    private final Map<String, Hasher> hashersByAlgorithm = new HashMap<>();
+    private final Set<Path> writtenTagFiles = new HashSet<>();
+
+    private TagFileWriter(final ArchiveWriter archive, final String topLevelDirectory, final Path bagRootDir,
+        final Map<Manifest, Manifest> updatedTagManifests) throws NoSuchAlgorithmException{
+      this.archive = archive;
+      this.topLevelDirectory = topLevelDirectory;
+      this.bagRootDir = bagRootDir;
+      this.updatedTagManifests = updatedTagManifests;
+      for(final Manifest tagManifest : updatedTagManifests.keySet()){
+        final Hasher prototype = BagitChecksumNameMapping.get(tagManifest.getBagitAlgorithmName());
+        final Hasher instance = prototype.newInstance(); //so archives can be written on several threads at once
+        hashersByAlgorithm.put(tagManifest.getBagitAlgorithmName(), instance == null ? prototype : instance);
+      }
+    }
+
+    /*
+     * generate the tag file once to count its bytes, and then again straight into the archive entry.
+     * The archive fails the entry if the second time doesn't give the same number of bytes
+     */
+    private void write(final String relativeName, final TagFileContents contents) throws IOException, NoSuchAlgorithmException{
+      logger.debug(messages.getString("writing_generated_archive_entry"), relativeName);
+      final CountingOutputStream counter = new CountingOutputStream();
+      try(OutputStream out = new BufferedOutputStream(counter, CHUNK_SIZE)){
+        contents.writeTo(out);
+      }
+      final Path tagFile = bagRootDir.resolve(relativeName);
+      writtenTagFiles.add(tagFile);
+      final List<Manifest> manifestsWithFile = new ArrayList<>();
+      final List<Hasher> hashers = getHashers(tagFile, manifestsWithFile);
+
+      final OutputStream entry = archive.putEntry(topLevelDirectory + relativeName, counter.count, FileTime.fromMillis(System.currentTimeMillis()));
+      final OutputStream out = new BufferedOutputStream(new HashingOutputStream(entry, hashers), CHUNK_SIZE);
+      contents.writeTo(out);
+      out.flush(); //the entry must not be closed
+      archive.closeEntry();
+      addChecksums(tagFile, manifestsWithFile, hashers);
+    }
+
+    /*
+     * copy the tag files listed in the tag manifests that weren't generated, like custom tag files
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private void writeRemainingTagFiles() throws IOException, NoSuchAlgorithmException{
+      final Set<Path> remainingTagFiles = new HashSet<>();
+      for(final Manifest tagManifest : updatedTagManifests.keySet()){
+        remainingTagFiles.addAll(tagManifest.getFileToChecksumMap().keySet());
+      }
+      remainingTagFiles.removeAll(writtenTagFiles);
+
+      for(final Path tagFile : remainingTagFiles){
+        final List<Manifest> manifestsWithFile = new ArrayList<>();
+        final List<Hasher> hashers = getHashers(tagFile, manifestsWithFile);
+        writeEntry(archive, topLevelDirectory + toEntryName(bagRootDir.relativize(tagFile)), tagFile, hashers);
+        addChecksums(tagFile, manifestsWithFile, hashers);
+      }
+    }
+
+    /*
+     * a hasher for each tag manifest that includes the tag file, adding the updated manifest to manifestsWithFile in the same order
+     */
+    private List<Hasher> getHashers(final Path tagFile, final List<Manifest> manifestsWithFile) throws NoSuchAlgorithmException{
+      final List<Hasher> hashers = new ArrayList<>();
+      for(final Entry<Manifest, Manifest> entry : updatedTagManifests.entrySet()){
+        if(entry.getKey().getFileToChecksumMap().containsKey(tagFile)){
+          final Hasher hasher = hashersByAlgorithm.get(entry.getKey().getBagitAlgorithmName());
+          hasher.reset();
+          hashers.add(hasher);
+          manifestsWithFile.add(entry.getValue());
+        }
+      }
+      return hashers;
+    }
+
+    private static void addChecksums(final Path tagFile, final List<Manifest> manifestsWithFile, final List<Hasher> hashers){
+      for(int index = 0; index < hashers.size(); index++){
+        manifestsWithFile.get(index).getFileToChecksumMap().put(tagFile, hashers.get(index).getHash());
+        hashers.get(index).reset();
+      }
+    }
+  }
+}
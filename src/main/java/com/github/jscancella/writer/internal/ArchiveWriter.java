@@ -0,0 +1,39 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Writes entries one after the other to an archive format.
+ * Mainly used in {@link ArchiveBagWriter}
+ */
+interface ArchiveWriter {
+  
+  /**
+   * Start a new entry in the archive.
+   * 
+   * @param name the path of the entry in the archive, using / as the separator
+   * @param size the exact number of bytes that will be written to the entry
+   * @param lastModified when the entry was last modified
+   * 
+   * @return the stream to write the contents of the entry to, which must not be closed
+   * 
+   * @throws IOException if there was a problem writing to the archive
+   */
+  OutputStream putEntry(String name, long size, FileTime lastModified) throws IOException;
+  
+  /**
+   * Finish the current entry.
+   * 
+   * @throws IOException if there was a problem writing to the archive or the wrong number of bytes were written to the entry
+   */
+  void closeEntry() throws IOException;
+  
+  /**
+   * Finish writing the archive without closing the underlying stream.
+   * 
+   * @throws IOException if there was a problem writing to the archive
+   */
+  void finish() throws IOException;
+}
@@ -0,0 +1,73 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ResourceBundle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.internal.PathUtils;
+
+/**
+ * Replaces files by writing a temporary file next to them and then renaming it over the original,
+ * so readers see either the old or the new contents but never a partially written file.
+ */
+public enum AtomicFileWriter {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(AtomicFileWriter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+
+  /**
+   * Replace the contents of a file, or create it if it doesn't exist
+   *
+   * @param file the file to write
+   * @param contents the new contents of the file
+   *
+   * @throws IOException if there was a problem writing or renaming the file
+   */
+  public static void write(final Path file, final byte[] contents) throws IOException{
+    final Path tempFile = createTempFile(file.toAbsolutePath().getParent(), file);
+    try{
+      Files.write(tempFile, contents);
+      move(tempFile, file);
+    }
+    finally{
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Create a new empty temporary file with a unique name, so that it can never be an existing file.
+   *
+   * @param directory where to create the temporary file, which should be on the same filesystem as the file so it can be renamed over it
+   * @param file the file that will be replaced
+   *
+   * @return the temporary file to write the new contents to before renaming it
+   *
+   * @throws IOException if there was a problem creating the temporary file
+   */
+  public static Path createTempFile(final Path directory, final Path file) throws IOException{
+    return Files.createTempFile(directory, "." + PathUtils.getFilename(file) + ".", ".tmp");
+  }
+
+  /**
+   * Rename a file over another file, atomically if the filesystem supports it
+   *
+   * @param source the file to rename
+   * @param target the file to replace
+   *
+   * @throws IOException if there was a problem renaming the file
+   */
+  public static void move(final Path source, final Path target) throws IOException{
+    try{
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch(AtomicMoveNotSupportedException e){
+      logger.warn(messages.getString("atomic_move_not_supported_warning"), target);
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
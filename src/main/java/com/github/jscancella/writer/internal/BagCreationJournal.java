@@ -0,0 +1,224 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Manifest;
+
+/**
+ * Records the progress of creating a bag in place so that it can be resumed after being interrupted, instead of starting over.
+ * The journal is a hidden file in the root of the bag. The first line records the algorithms and the temporary directory the
+ * payload is moved to, and every other line records a payload file that was hashed along with its size, modification time and checksums.
+ * When resuming, a file is only skipped if its size and modification time haven't changed.
+ * Lines are flushed in batches, so the files recorded since the last flush are simply hashed again after an interruption.
+ * Mainly used in {@link BagCreator}. <b>Not thread safe</b>
+ */
+public final class BagCreationJournal implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(BagCreationJournal.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final String FILE_NAME = ".bagit-creation-journal";
+  private static final String HEADER = "BagIt-Creation-Journal";
+  private static final String SEPARATOR = "\t";
+  private static final int SIZE_INDEX = 0;
+  private static final int MODIFIED_INDEX = 1;
+  private static final int FIRST_CHECKSUM_INDEX = 2;
+  private static final int LINES_PER_FLUSH = 1000;
+  private static final long NANOSECONDS_PER_FLUSH = TimeUnit.SECONDS.toNanos(1);
+
+  private final Path root;
+  private final Path journalFile;
+  private final Path tempDir;
+  private final List<String> algorithms;
+  private final boolean isResumed;
+  private final Map<String, String[]> journaledFiles = new HashMap<>();
+  private final BufferedWriter writer;
+  private int unflushedLines;
+  private long lastFlush = System.nanoTime();
+
+  private BagCreationJournal(final Path root, final Path tempDir, final List<String> algorithms, final boolean isResumed, 
+      final boolean isChecksumsReused) throws IOException{
+    this.root = root;
+    this.journalFile = root.resolve(FILE_NAME);
+    this.tempDir = tempDir;
+    this.algorithms = algorithms;
+    this.isResumed = isResumed;
+    if(isChecksumsReused){
+      readJournaledFiles();
+      writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+    else{
+      writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+      writer.write(HEADER + SEPARATOR + tempDir.getFileName() + SEPARATOR + String.join(SEPARATOR, algorithms));
+      writer.newLine();
+      writer.flush();
+    }
+  }
+
+  /**
+   * Start a new journal, or continue the journal of a bag whose creation was interrupted.
+   * If the interrupted creation used different algorithms its journaled checksums can't be used, so they are discarded,
+   * but the payload is still where the interrupted creation moved it.
+   *
+   * @param root the directory that is becoming a bag
+   * @param algorithms the bagit algorithm names of the manifests being created
+   *
+   * @return the journal
+   *
+   * @throws IOException if there was a problem reading or creating the journal
+   */
+  public static BagCreationJournal open(final Path root, final Collection<String> algorithms) throws IOException{
+    final List<String> algorithmList = new ArrayList<>(algorithms);
+    final Path journalFile = root.resolve(FILE_NAME);
+    if(Files.exists(journalFile)){
+      final String[] header = readHeader(journalFile);
+      if(header.length > 2 && HEADER.equals(header[0])){
+        final Path tempDir = root.resolve(header[1]);
+        if(algorithmList.equals(Arrays.asList(header).subList(2, header.length))){
+          logger.info(messages.getString("resuming_bag_creation"), root);
+          return new BagCreationJournal(root, tempDir, algorithmList, true, true);
+        }
+        logger.warn(messages.getString("journal_algorithms_changed_warning"), journalFile);
+        return new BagCreationJournal(root, tempDir, algorithmList, true, false);
+      }
+    }
+    return new BagCreationJournal(root, root.resolve(System.currentTimeMillis() + ".temp"), algorithmList, false, false);
+  }
+
+  private static String[] readHeader(final Path journalFile) throws IOException{
+    try(BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)){
+      final String header = reader.readLine();
+      return header == null ? new String[0] : header.split(SEPARATOR);
+    }
+  }
+
+  /*
+   * a line that doesn't have all the fields was being written when the creation was interrupted, so it is ignored
+   */
+  private void readJournaledFiles() throws IOException{
+    try(BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)){
+      String line = reader.readLine(); //skip the header
+      line = reader.readLine();
+      while(line != null){
+        final String[] parts = line.split(SEPARATOR, FIRST_CHECKSUM_INDEX + algorithms.size() + 1);
+        if(parts.length == FIRST_CHECKSUM_INDEX + algorithms.size() + 1){
+          journaledFiles.put(parts[parts.length - 1], parts);
+        }
+        line = reader.readLine();
+      }
+    }
+    logger.info(messages.getString("journaled_files_found"), journaledFiles.size());
+  }
+
+  /**
+   * @return true if the payload still needs to be moved to the data directory, either because this is a new journal
+   * or because moving it was interrupted
+   */
+  public boolean isPayloadToBeMoved(){
+    return !isResumed || Files.exists(tempDir) || !Files.exists(root.resolve("data"));
+  }
+
+  /**
+   * @return the directory the payload is moved to before it is renamed to the data directory
+   */
+  public Path getTempDir(){
+    return tempDir;
+  }
+
+  /**
+   * @return the journal file, which is not part of the payload or the tag manifests
+   */
+  public Path getJournalFile(){
+    return journalFile;
+  }
+
+  /**
+   * Get the checksums of a file that was hashed before the creation was interrupted
+   *
+   * @param file the payload file
+   * @param attrs the current attributes of the file
+   *
+   * @return the checksums by bagit algorithm name, or null if the file wasn't hashed or it changed since
+   */
+  public Map<String, String> getChecksums(final Path file, final BasicFileAttributes attrs){
+    final String[] parts = journaledFiles.get(toKey(file));
+    if(parts == null || !parts[SIZE_INDEX].equals(String.valueOf(attrs.size())) ||
+        !parts[MODIFIED_INDEX].equals(String.valueOf(attrs.lastModifiedTime().toMillis()))){
+      return null;
+    }
+
+    logger.debug(messages.getString("skipping_journaled_file"), file);
+    final Map<String, String> checksums = new HashMap<>();
+    for(int index = 0; index < algorithms.size(); index++){
+      checksums.put(algorithms.get(index), parts[FIRST_CHECKSUM_INDEX + index]);
+    }
+    return checksums;
+  }
+
+  /**
+   * Record that a file was hashed. The lines are flushed every thousand files or every second, whichever comes first,
+   * so the process being killed only loses the last few files, which are hashed again when resuming.
+   *
+   * @param file the payload file
+   * @param attrs the attributes of the file from before it was hashed
+   * @param checksums the checksums of the file for each manifest
+   *
+   * @throws IOException if there was a problem writing to the journal
+   */
+  public void record(final Path file, final BasicFileAttributes attrs, final Map<Manifest, String> checksums) throws IOException{
+    final String[] orderedChecksums = new String[algorithms.size()];
+    for(final Entry<Manifest, String> checksum : checksums.entrySet()){
+      orderedChecksums[algorithms.indexOf(checksum.getKey().getBagitAlgorithmName())] = checksum.getValue();
+    }
+    writer.write(attrs.size() + SEPARATOR + attrs.lastModifiedTime().toMillis() + SEPARATOR +
+        String.join(SEPARATOR, orderedChecksums) + SEPARATOR + toKey(file));
+    writer.newLine();
+    unflushedLines++;
+    final long now = System.nanoTime();
+    if(unflushedLines >= LINES_PER_FLUSH || now - lastFlush >= NANOSECONDS_PER_FLUSH){
+      writer.flush();
+      unflushedLines = 0;
+      lastFlush = now;
+    }
+  }
+
+  /*
+   * encoded like in a manifest, so the line can't be split by a new line in the file name
+   */
+  private String toKey(final Path file){
+    return RelativePathWriter.encodePath(root.relativize(file));
+  }
+
+  /**
+   * Remove the journal once the bag is complete, including the tag manifests
+   *
+   * @throws IOException if there was a problem deleting the journal
+   */
+  public void delete() throws IOException{
+    close();
+    Files.deleteIfExists(journalFile);
+  }
+
+  @Override
+  public void close() throws IOException{
+    writer.close();
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.jscancella.writer.internal;
 
 import java.io.IOException;
+import java.net.URL;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -13,6 +14,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,8 +25,11 @@ import com.github.jscancella.domain.Metadata;
 import com.github.jscancella.domain.Version;
 import com.github.jscancella.hash.BagitChecksumNameMapping;
 import com.github.jscancella.hash.Hasher;
-import com.github.jscancella.hash.PayloadOxumGenerator;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
 import com.github.jscancella.internal.PathUtils;
+import com.github.jscancella.reader.internal.ManifestReader;
+import com.github.jscancella.writer.Deduplication;
+import com.github.jscancella.writer.DeduplicationReport;
 
 /**
  * Responsible for creating a bag in place.
@@ -37,7 +42,8 @@ public enum BagCreator {; //Using Enum to enforce singleton
   /**
    * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}.
    * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
-   * in an unknown state of transition. Thus this is <b>not thread safe</b>
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
    * 
    * @param root the directory that will become the base of the bag and where to start searching for content
    * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
@@ -55,7 +61,8 @@ public enum BagCreator {; //Using Enum to enforce singleton
   /**
    * Creates a bag in place for version 0.97.
    * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
-   * in an unknown state of transition. Thus this is <b>not thread safe</b>
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
    * 
    * @param root the directory that will become the base of the bag and where to start searching for content
    * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
@@ -68,25 +75,165 @@ public enum BagCreator {; //Using Enum to enforce singleton
    * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
    */
   public static Bag bagInPlace(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata) throws NoSuchAlgorithmException, IOException{
+    return bagInPlace(root, algorithms, includeHidden, metadata, null);
+  }
+  
+  /**
+   * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}, 
+   * calculating the payload checksums concurrently using the supplied executor. 
+   * The resulting manifests are the same as when creating the bag serially. 
+   * If one of the algorithms does not support {@link Hasher#newInstance()} the payload is hashed serially.
+   * The executor is not shut down after creating the bag.
+   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
+   * 
+   * @param root the directory that will become the base of the bag and where to start searching for content
+   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
+   * @param includeHidden to include hidden files when generating the bagit files, like the manifests
+   * @param metadata the metadata to include when creating the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param executor the executor used to hash the payload files, or null to hash them on the calling thread
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing or moving file(s)
+   * 
+   * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
+   */
+  public static Bag bagInPlace(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final ExecutorService executor) throws NoSuchAlgorithmException, IOException{
+    return createBag(root, algorithms, includeHidden, metadata, executor, false, Deduplication.NONE, null, null);
+  }
+  
+  /**
+   * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}, 
+   * appending each payload checksum to the manifest files as soon as it is calculated instead of keeping them in memory.
+   * This allows creating bags with more files than would fit in memory. 
+   * The payload manifests of the returned bag are only read from the manifest files when they are first accessed, 
+   * see {@link com.github.jscancella.reader.BagReader#readLazily(Path)}.
+   * The executor is not shut down after creating the bag.
+   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
+   * in an unknown state of transition. Calling it again with the same algorithms resumes the creation, only hashing the files 
+   * that weren't hashed already or that changed since. Thus this is <b>not thread safe</b>
+   * 
+   * @param root the directory that will become the base of the bag and where to start searching for content
+   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
+   * @param includeHidden to include hidden files when generating the bagit files, like the manifests
+   * @param metadata the metadata to include when creating the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param executor the executor used to hash the payload files, or null to hash them on the calling thread
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing or moving file(s)
+   * 
+   * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
+   */
+  public static Bag bagInPlaceStreaming(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final ExecutorService executor) throws NoSuchAlgorithmException, IOException{
+    return createBag(root, algorithms, includeHidden, metadata, executor, true, Deduplication.NONE, null, null);
+  }
+  
+  /**
+   * Creates a bag in place for {@link com.github.jscancella.domain.Version#LATEST_BAGIT_VERSION}, 
+   * then deduplicates the payload files using the checksums that were just calculated.
+   * The executor is not shut down after creating the bag.
+   * This method moves and creates files, thus if an error is thrown during operation it may leave the filesystem 
+   * in an unknown state of transition. Thus this is <b>not thread safe</b>
+   * 
+   * @param root the directory that will become the base of the bag and where to start searching for content
+   * @param algorithms an collection of bagit algorithm names which will be used for creating manifests
+   * @param includeHidden to include hidden files when generating the bagit files, like the manifests
+   * @param metadata the metadata to include when creating the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param executor the executor used to hash the payload files, or null to hash them on the calling thread
+   * @param deduplication what to do with payload files that have the same contents as another payload file
+   * @param fetchBaseUrl the URL the bag will be published at, only used with {@link Deduplication#FETCH}
+   * @param report where to record the deduplicated files
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing, moving or linking file(s)
+   * 
+   * @return a {@link com.github.jscancella.domain.Bag} object representing the newly created bagit bag
+   */
+  public static Bag bagInPlaceDeduplicated(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final ExecutorService executor, final Deduplication deduplication, final URL fetchBaseUrl, final DeduplicationReport report) 
+          throws NoSuchAlgorithmException, IOException{
+    final Bag bag = createBag(root, algorithms, includeHidden, metadata, executor, false, deduplication, fetchBaseUrl, report);
+    logger.info(messages.getString("deduplicated_payload_files"), report.getDuplicateCount(), report.getBytesSaved());
+    return bag;
+  }
+  
+  private static Bag createBag(final Path root, final Collection<String> algorithms, final boolean includeHidden, final Metadata metadata, 
+      final ExecutorService executor, final boolean streamPayloadManifests, final Deduplication deduplication, final URL fetchBaseUrl, 
+      final DeduplicationReport report) throws NoSuchAlgorithmException, IOException{
     final Bag bag = new Bag(Version.LATEST_BAGIT_VERSION());
     logger.info(messages.getString("creating_bag"), bag.getVersion(), root);
     bag.setRootDir(root);
     
-    movePayloadFilesToDataDir(bag, includeHidden);
-    BagitFileWriter.writeBagitFile(bag.getVersion(), bag.getFileEncoding(), bag.getRootDir()); //create the bagit.txt file
-    createPayloadManifests(bag, algorithms, includeHidden);
-    createMetadataFile(bag, metadata);
-    createTagManifests(bag, algorithms, includeHidden); //must come last since it needs to calculate checksums for other tag files
+    try(BagCreationJournal journal = BagCreationJournal.open(root, algorithms)){
+      if(journal.isPayloadToBeMoved()){
+        movePayloadFilesToDataDir(bag, includeHidden, journal);
+      }
+      BagitFileWriter.writeBagitFile(bag.getVersion(), bag.getFileEncoding(), bag.getRootDir()); //create the bagit.txt file
+      final FileCountAndTotalSize payloadTotals = streamPayloadManifests ? 
+          streamPayloadManifests(bag, algorithms, includeHidden, executor, journal) : createPayloadManifests(bag, algorithms, includeHidden, executor, journal);
+      if(deduplication != Deduplication.NONE){
+        deduplicate(bag, deduplication, fetchBaseUrl, report, payloadTotals);
+      }
+      createMetadataFile(bag, metadata, payloadTotals);
+      //must come last since it needs to calculate checksums for other tag files
+      createTagManifests(bag, algorithms, includeHidden, journal.getJournalFile());
+      journal.delete(); //only once the bag is complete, so an interruption before this is resumed without moving the payload again
+    }
     
     return bag;
   }
   
-  private static void movePayloadFilesToDataDir(final Bag bag, final boolean includeHidden) throws IOException {
-    final Path tempDir = bag.getRootDir().resolve(System.currentTimeMillis() + ".temp");
-    Files.createDirectory(tempDir);
+  /**
+   * Write the tag files of a bag whose payload has already been written and hashed, like when the payload was streamed into the data directory.
+   * The bagit.txt, payload manifests, bag metadata (with Payload-Oxum and Bagging-Date) and tag manifests are written, in that order.
+   * 
+   * @param bag the bag with the root directory, version, and payload manifests already set
+   * @param algorithms an collection of bagit algorithm names which will be used for creating the tag manifests
+   * @param metadata the metadata to include in the bag. Payload-Oxum and Bagging-Date will be overwritten 
+   * @param payloadTotals the number of payload files and their total size
+   * 
+   * @throws NoSuchAlgorithmException if {@link MessageDigest} can't find the algorithm
+   * @throws IOException if there is a problem writing a file
+   */
+  public static void finishBag(final Bag bag, final Collection<String> algorithms, final Metadata metadata, final FileCountAndTotalSize payloadTotals) 
+      throws NoSuchAlgorithmException, IOException{
+    BagitFileWriter.writeBagitFile(bag.getVersion(), bag.getFileEncoding(), bag.getRootDir());
+    ManifestWriter.writePayloadManifests(bag.getPayLoadManifests(), bag.getTagFileDir(), bag.getRootDir(), bag.getFileEncoding());
+    createMetadataFile(bag, metadata, payloadTotals);
+    createTagManifests(bag, algorithms, false, null);
+  }
+  
+  /*
+   * duplicates listed in the fetch.txt aren't in the payload anymore, so they aren't counted in the Payload-Oxum like when writing a bag with fetch items
+   */
+  private static void deduplicate(final Bag bag, final Deduplication deduplication, final URL fetchBaseUrl, final DeduplicationReport report,
+      final FileCountAndTotalSize payloadTotals) throws IOException{
+    final Map<Path, Path> duplicates = PayloadDeduplicator.findDuplicates(bag.getPayLoadManifests());
+    if(deduplication == Deduplication.HARDLINK){
+      PayloadDeduplicator.linkInPlace(duplicates, report);
+      return;
+    }
+    
+    PayloadDeduplicator.addToFetch(bag, duplicates, fetchBaseUrl, report);
+    FetchWriter.writeFetchFile(bag.getItemsToFetch(), bag.getTagFileDir(), bag.getRootDir(), bag.getFileEncoding());
+    for(final Path duplicate : duplicates.keySet()){
+      Files.delete(duplicate);
+    }
+    payloadTotals.addFiles(-report.getDuplicateCount(), -report.getBytesSaved());
+  }
+  
+  /*
+   * the temporary directory comes from the journal, so an interrupted move is continued instead of nesting the data directory
+   */
+  private static void movePayloadFilesToDataDir(final Bag bag, final boolean includeHidden, final BagCreationJournal journal) throws IOException {
+    final Path tempDir = journal.getTempDir();
+    Files.createDirectories(tempDir);
     try(DirectoryStream<Path> directoryStream = Files.newDirectoryStream(bag.getRootDir())){
       for(final Path path : directoryStream){
-        if(!path.equals(tempDir) && (!PathUtils.isHidden(path) || includeHidden)){
+        if(!path.equals(tempDir) && !path.equals(journal.getJournalFile()) && (!PathUtils.isHidden(path) || includeHidden)){
           Files.move(path, tempDir.resolve(path.getFileName()));
         }
       }
@@ -94,24 +241,67 @@ public enum BagCreator {; //Using Enum to enforce singleton
     Files.move(tempDir, bag.getDataDir());
   }
   
-  private static void createPayloadManifests(final Bag bag, final Collection<String> algorithms, final boolean includeHidden) throws NoSuchAlgorithmException, IOException{
+  private static FileCountAndTotalSize createPayloadManifests(final Bag bag, final Collection<String> algorithms, final boolean includeHidden, 
+      final ExecutorService executor, final BagCreationJournal journal) throws NoSuchAlgorithmException, IOException{
     logger.info(messages.getString("creating_payload_manifests"));
     
     final Map<Manifest, Hasher> manifestToHasherMap = createManifestToHasherMap(algorithms);
-    
-    final CreatePayloadManifestsVistor payloadVisitor = new CreatePayloadManifestsVistor(manifestToHasherMap, includeHidden);
-    Files.walkFileTree(bag.getDataDir(), payloadVisitor);
+    final AbstractCreateManifestsVistor payloadVisitor = walkPayload(bag, manifestToHasherMap, includeHidden, executor, null, journal);
     
     bag.getPayLoadManifests().addAll(manifestToHasherMap.keySet());
     ManifestWriter.writePayloadManifests(bag.getPayLoadManifests(), bag.getTagFileDir(), bag.getRootDir(), bag.getFileEncoding());
+    
+    return payloadVisitor.getFileCountAndTotalSize();
+  }
+  
+  /*
+   * the checksums are written to the manifest files as they are calculated and the manifests are only read back when accessed
+   */
+  private static FileCountAndTotalSize streamPayloadManifests(final Bag bag, final Collection<String> algorithms, final boolean includeHidden, 
+      final ExecutorService executor, final BagCreationJournal journal) throws NoSuchAlgorithmException, IOException{
+    logger.info(messages.getString("streaming_payload_manifests"));
+    
+    final Map<Manifest, Hasher> manifestToHasherMap = createManifestToHasherMap(algorithms);
+    final AbstractCreateManifestsVistor payloadVisitor;
+    
+    try(StreamingManifestWriter streamingWriter = new StreamingManifestWriter(manifestToHasherMap.keySet(), bag.getTagFileDir(), 
+        bag.getRootDir(), "manifest-", bag.getFileEncoding())){
+      payloadVisitor = walkPayload(bag, manifestToHasherMap, includeHidden, executor, streamingWriter, journal);
+      
+      for(final Path manifestFile : streamingWriter.getManifestFiles()){
+        ManifestReader.addManifestLazily(manifestFile, bag);
+      }
+    }
+    
+    return payloadVisitor.getFileCountAndTotalSize();
   }
   
-  private static void createMetadataFile(final Bag bag, final Metadata metadata) throws IOException{
+  private static AbstractCreateManifestsVistor walkPayload(final Bag bag, final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHidden, 
+      final ExecutorService executor, final StreamingManifestWriter streamingWriter, final BagCreationJournal journal) throws NoSuchAlgorithmException, IOException{
+    if(executor != null && canCreateNewInstances(manifestToHasherMap.values())){
+      final ParallelCreatePayloadManifestsVistor parallelVisitor = 
+          new ParallelCreatePayloadManifestsVistor(manifestToHasherMap, includeHidden, executor, streamingWriter, journal);
+      try{
+        Files.walkFileTree(bag.getDataDir(), parallelVisitor);
+        parallelVisitor.waitForAll();
+      }
+      finally{
+        parallelVisitor.cancelRemaining();
+      }
+      return parallelVisitor;
+    }
+    
+    final CreatePayloadManifestsVistor payloadVisitor = new CreatePayloadManifestsVistor(manifestToHasherMap, includeHidden, streamingWriter, journal);
+    Files.walkFileTree(bag.getDataDir(), payloadVisitor);
+    return payloadVisitor;
+  }
+  
+  private static void createMetadataFile(final Bag bag, final Metadata metadata, final FileCountAndTotalSize payloadTotals) throws IOException{
     bag.setMetadata(metadata);
     
+    //the file count and size were collected while hashing the payload, so the data directory doesn't need to be walked again
     logger.debug(messages.getString("calculating_payload_oxum"), bag.getDataDir());
-    final String payloadOxum = PayloadOxumGenerator.generatePayloadOxum(bag.getDataDir());
-    bag.getMetadata().upsertPayloadOxum(payloadOxum);
+    bag.getMetadata().upsertPayloadOxum(payloadTotals.toPayloadOxum());
     
     bag.getMetadata().remove("Bagging-Date"); //remove the old bagging date if it exists so that there is only one
     bag.getMetadata().add("Bagging-Date", new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH).format(new Date()));
@@ -120,25 +310,37 @@ public enum BagCreator {; //Using Enum to enforce singleton
     MetadataWriter.writeBagMetadata(bag.getMetadata(), bag.getVersion(), bag.getRootDir(), bag.getFileEncoding());
   }
   
-  private static void createTagManifests(final Bag bag, final Collection<String> algorithms, final boolean includeHidden) throws NoSuchAlgorithmException, IOException{
+  private static void createTagManifests(final Bag bag, final Collection<String> algorithms, final boolean includeHidden, final Path journalFile) 
+      throws NoSuchAlgorithmException, IOException{
     logger.info(messages.getString("creating_tag_manifests"));
     
     final Map<Manifest, Hasher> manifestToHasherMap = createManifestToHasherMap(algorithms);
-    final CreateTagManifestsVistor tagVistor = new CreateTagManifestsVistor(manifestToHasherMap, includeHidden);
+    final CreateTagManifestsVistor tagVistor = new CreateTagManifestsVistor(manifestToHasherMap, includeHidden, journalFile);
     Files.walkFileTree(bag.getTagFileDir(), tagVistor);
     
     bag.getTagManifests().addAll(manifestToHasherMap.keySet());
     ManifestWriter.writeTagManifests(bag.getTagManifests(), bag.getTagFileDir(), bag.getRootDir(), bag.getFileEncoding());
   }
   
+  private static boolean canCreateNewInstances(final Collection<Hasher> hashers) throws NoSuchAlgorithmException{
+    for(final Hasher hasher : hashers){
+      if(hasher.newInstance() == null){
+        logger.info(messages.getString("hashing_payload_serially"), hasher.getBagitAlgorithmName());
+        return false;
+      }
+    }
+    return true;
+  }
+  
   @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
   private static Map<Manifest, Hasher> createManifestToHasherMap(final Collection<String> algorithms) throws NoSuchAlgorithmException{
     final Map<Manifest, Hasher> manifestToHasherMap = new ConcurrentHashMap<>();
     
     for(final String algorithm : algorithms) {
       final Manifest manifest = new Manifest(algorithm);
-      final Hasher hasher = BagitChecksumNameMapping.get(algorithm);
-      manifestToHasherMap.put(manifest, hasher);
+      final Hasher prototype = BagitChecksumNameMapping.get(algorithm);
+      final Hasher instance = prototype.newInstance(); //so bags can be created on several threads at once
+      manifestToHasherMap.put(manifest, instance == null ? prototype : instance);
     }
     
     return manifestToHasherMap;
@@ -0,0 +1,194 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.hash.Hasher;
+
+/**
+ * Responsible for changing the files of an existing bag in place, touching only the files that changed.
+ * Every file is written to a temporary file first and then renamed over the original.
+ * Mainly used in {@link com.github.jscancella.writer.BagUpdater}
+ */
+public enum BagUpdateWriter {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(BagUpdateWriter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final Object SHARED_HASHER_LOCK = new Object();
+
+  /**
+   * Delete a payload file and remove it from the payload manifests
+   *
+   * @param bag the bag to update
+   * @param payloadFile the payload file to remove
+   *
+   * @return the size of the removed file
+   *
+   * @throws IOException if there was a problem deleting the file
+   */
+  public static long removePayloadFile(final Bag bag, final Path payloadFile) throws IOException{
+    logger.debug(messages.getString("removing_payload_file"), payloadFile);
+    final long size = Files.exists(payloadFile) ? Files.size(payloadFile) : 0;
+    Files.deleteIfExists(payloadFile);
+    for(final Manifest payloadManifest : bag.getPayLoadManifests()){
+      payloadManifest.getFileToChecksumMap().remove(payloadFile);
+    }
+    return size;
+  }
+
+  /**
+   * Copy a file into the payload, replacing the payload file if it exists, and add its checksums to the payload manifests.
+   * The file is hashed while it is copied, so it is only read once. It is copied to a temporary file in the root of the bag first,
+   * so that it can't replace another payload file and isn't left in the payload if the copy is interrupted.
+   *
+   * @param bag the bag to update
+   * @param source the file to copy
+   * @param payloadFile where the file should be in the payload
+   *
+   * @return the size of the copied file
+   *
+   * @throws IOException if there was a problem copying the file
+   * @throws NoSuchAlgorithmException if the hasher for a payload manifest can't be found
+   */
+  public static long writePayloadFile(final Bag bag, final Path source, final Path payloadFile) throws IOException, NoSuchAlgorithmException{
+    logger.debug(messages.getString("writing_updated_payload_file"), source, payloadFile);
+    final List<Manifest> payloadManifests = new ArrayList<>(bag.getPayLoadManifests());
+    final List<Hasher> hashers = new ArrayList<>(payloadManifests.size());
+    boolean isSharingHashers = false;
+    for(final Manifest payloadManifest : payloadManifests){
+      final Hasher prototype = BagitChecksumNameMapping.get(payloadManifest.getBagitAlgorithmName());
+      final Hasher instance = prototype.newInstance(); //so bags can be updated on several threads at once
+      isSharingHashers = isSharingHashers || instance == null;
+      hashers.add(instance == null ? prototype : instance);
+    }
+
+    if(isSharingHashers){
+      synchronized(SHARED_HASHER_LOCK){
+        return copyPayloadFile(bag, source, payloadFile, payloadManifests, hashers);
+      }
+    }
+    return copyPayloadFile(bag, source, payloadFile, payloadManifests, hashers);
+  }
+
+  private static long copyPayloadFile(final Bag bag, final Path source, final Path payloadFile, final List<Manifest> payloadManifests,
+      final List<Hasher> hashers) throws IOException{
+    for(final Hasher hasher : hashers){
+      hasher.reset();
+    }
+    final Path parent = payloadFile.getParent();
+    if(parent != null){
+      Files.createDirectories(parent);
+    }
+    final Path tempFile = AtomicFileWriter.createTempFile(bag.getRootDir(), payloadFile);
+    try{
+      PayloadWriter.copyFile(source, tempFile, hashers);
+      AtomicFileWriter.move(tempFile, payloadFile);
+    }
+    finally{
+      Files.deleteIfExists(tempFile);
+    }
+
+    for(int index = 0; index < payloadManifests.size(); index++){
+      payloadManifests.get(index).getFileToChecksumMap().put(payloadFile, hashers.get(index).getHash());
+      hashers.get(index).reset();
+    }
+    return Files.size(payloadFile);
+  }
+
+  /**
+   * Rewrite the bag metadata, and optionally the payload manifests, then update their checksums in the tag manifests
+   * and rewrite those. No other file of the bag is read, so the payload isn't touched.
+   *
+   * @param bag the bag to update
+   * @param includePayloadManifests if the payload manifests changed and should be rewritten too
+   *
+   * @throws IOException if there was a problem writing a file
+   * @throws NoSuchAlgorithmException if the hasher for a tag manifest can't be found
+   */
+  public static void rewriteTagFiles(final Bag bag, final boolean includePayloadManifests) throws IOException, NoSuchAlgorithmException{
+    final Map<Path, byte[]> changedTagFiles = new LinkedHashMap<>();
+    final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    if(includePayloadManifests){
+      for(final Manifest payloadManifest : bag.getPayLoadManifests()){
+        ManifestWriter.writeManifest(payloadManifest, bag.getRootDir(), bag.getFileEncoding(), contents);
+        changedTagFiles.put(bag.getTagFileDir().resolve("manifest-" + payloadManifest.getBagitAlgorithmName() + ".txt"), contents.toByteArray());
+        contents.reset();
+      }
+    }
+
+    final Path metadataFile = bag.getTagFileDir().resolve(MetadataWriter.getBagMetadataFileName(bag.getVersion()));
+    if(bag.getMetadata().isEmpty()){
+      removeTagFile(bag, metadataFile);
+    }
+    else{
+      MetadataWriter.writeBagMetadata(bag.getMetadata(), bag.getFileEncoding(), contents);
+      changedTagFiles.put(metadataFile, contents.toByteArray());
+      contents.reset();
+    }
+
+    for(final Entry<Path, byte[]> changedTagFile : changedTagFiles.entrySet()){
+      logger.debug(messages.getString("writing_updated_tag_file"), changedTagFile.getKey());
+      AtomicFileWriter.write(changedTagFile.getKey(), changedTagFile.getValue());
+      updateTagManifests(bag, changedTagFile.getKey(), changedTagFile.getValue());
+    }
+
+    for(final Manifest tagManifest : bag.getTagManifests()){
+      final Path tagManifestFile = bag.getTagFileDir().resolve("tagmanifest-" + tagManifest.getBagitAlgorithmName() + ".txt");
+      logger.debug(messages.getString("writing_updated_tag_file"), tagManifestFile);
+      ManifestWriter.writeManifest(tagManifest, bag.getRootDir(), bag.getFileEncoding(), contents);
+      AtomicFileWriter.write(tagManifestFile, contents.toByteArray());
+      contents.reset();
+    }
+    
+    //the manifests changed so their hash codes did too
+    if(includePayloadManifests){
+      bag.setPayLoadManifests(new HashSet<>(bag.getPayLoadManifests()));
+    }
+    bag.setTagManifests(new HashSet<>(bag.getTagManifests()));
+  }
+
+  private static void updateTagManifests(final Bag bag, final Path tagFile, final byte[] contents) throws NoSuchAlgorithmException{
+    for(final Manifest tagManifest : bag.getTagManifests()){
+      final Hasher prototype = BagitChecksumNameMapping.get(tagManifest.getBagitAlgorithmName());
+      final Hasher instance = prototype.newInstance();
+      if(instance == null){
+        synchronized(SHARED_HASHER_LOCK){
+          tagManifest.getFileToChecksumMap().put(tagFile, hash(prototype, contents));
+        }
+      }
+      else{
+        tagManifest.getFileToChecksumMap().put(tagFile, hash(instance, contents));
+      }
+    }
+  }
+
+  private static String hash(final Hasher hasher, final byte[] contents){
+    hasher.reset();
+    hasher.update(contents, contents.length);
+    final String checksum = hasher.getHash();
+    hasher.reset();
+    return checksum;
+  }
+
+  private static void removeTagFile(final Bag bag, final Path tagFile) throws IOException{
+    Files.deleteIfExists(tagFile);
+    for(final Manifest tagManifest : bag.getTagManifests()){
+      tagManifest.getFileToChecksumMap().remove(tagFile);
+    }
+  }
+}
@@ -1,8 +1,11 @@
 package com.github.jscancella.writer.internal;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -39,14 +42,37 @@ public enum BagitFileWriter {
     final Path bagitPath = outputDir.resolve("bagit.txt");
     logger.debug(messages.getString("write_bagit_file_to_path"), outputDir);
 
-    try(BufferedWriter writer = Files.newBufferedWriter(bagitPath,
+    try(Writer writer = Files.newBufferedWriter(bagitPath,
         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)){
-      final String firstLine = "BagIt-Version: " + version + System.lineSeparator();
-      logger.debug(messages.getString("writing_line_to_file"), firstLine, bagitPath);
-      writer.append(firstLine);
-      final String secondLine = "Tag-File-Character-Encoding: " + encoding + System.lineSeparator();
-      logger.debug(messages.getString("writing_line_to_file"), secondLine, bagitPath);
-      writer.append(secondLine);
+      writeBagitFile(version, encoding, writer, bagitPath);
     }
   }
+
+  /**
+   * Write the contents of the bagit.txt file to a stream in required UTF-8 encoding. The stream is not closed.
+   * 
+   * @param version
+   *          the version of the bag to write out
+   * @param encoding
+   *          the encoding of the tag files
+   * @param out
+   *          where to write the contents
+   * 
+   * @throws IOException
+   *           if there was a problem writing to the stream
+   */
+  public static void writeBagitFile(final Version version, final Charset encoding, final OutputStream out) throws IOException{
+    final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    writeBagitFile(version, encoding, writer, "bagit.txt");
+    writer.flush();
+  }
+
+  private static void writeBagitFile(final Version version, final Charset encoding, final Writer writer, final Object location) throws IOException{
+    final String firstLine = "BagIt-Version: " + version + System.lineSeparator();
+    logger.debug(messages.getString("writing_line_to_file"), firstLine, location);
+    writer.append(firstLine);
+    final String secondLine = "Tag-File-Character-Encoding: " + encoding + System.lineSeparator();
+    logger.debug(messages.getString("writing_line_to_file"), secondLine, location);
+    writer.append(secondLine);
+  }
 }
@@ -19,8 +19,22 @@ public final class CreatePayloadManifestsVistor extends AbstractCreateManifestsV
     super(manifestToHasherMap, includeHiddenFiles);
   }
   
+  public CreatePayloadManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, 
+      final StreamingManifestWriter streamingWriter){
+    super(manifestToHasherMap, includeHiddenFiles, streamingWriter);
+  }
+  
+  public CreatePayloadManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, 
+      final StreamingManifestWriter streamingWriter, final BagCreationJournal journal){
+    super(manifestToHasherMap, includeHiddenFiles, streamingWriter, journal);
+  }
+  
   @Override
   public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
-    return abstractPreVisitDirectory(dir, null);
+    final FileVisitResult result = abstractPreVisitDirectory(dir, null);
+    if(result == FileVisitResult.SKIP_SUBTREE){
+      countSkippedDirectory(dir);
+    }
+    return result;
   }
 }
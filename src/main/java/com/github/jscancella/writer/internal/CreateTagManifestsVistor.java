@@ -14,13 +14,32 @@ import com.github.jscancella.hash.Hasher;
  * Mainly used in {@link BagCreator}
  */
 public final class CreateTagManifestsVistor extends AbstractCreateManifestsVistor{
+  private transient final Path fileToIgnore;
   
   public CreateTagManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles){
+    this(manifestToHasherMap, includeHiddenFiles, null);
+  }
+  
+  /**
+   * @param manifestToHasherMap the manifests to create and the hasher for each
+   * @param includeHiddenFiles if hidden files should be included in the manifests
+   * @param fileToIgnore a file that isn't part of the bag, like the journal of a bag being created, or null
+   */
+  public CreateTagManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, final Path fileToIgnore){
     super(manifestToHasherMap, includeHiddenFiles);
+    this.fileToIgnore = fileToIgnore;
   }
   
   @Override
   public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
     return abstractPreVisitDirectory(dir, "data");
   }
+  
+  @Override
+  public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) throws IOException{
+    if(path.equals(fileToIgnore)){
+      return FileVisitResult.CONTINUE;
+    }
+    return super.visitFile(path, attrs);
+  }
 }
@@ -2,6 +2,9 @@ package com.github.jscancella.writer.internal;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -35,12 +38,32 @@ public enum FetchWriter {;//using enum to enforce singleton
     logger.debug(messages.getString("writing_fetch_file_to_path"), outputDir);
     final Path fetchFilePath = outputDir.resolve("fetch.txt");
     
-    try(BufferedWriter writer = Files.newBufferedWriter(fetchFilePath, charsetName, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)){
-      for(final FetchItem item : itemsToFetch){
-        final String line = formatFetchLine(item, bagitRootDir);
-        logger.debug(messages.getString("writing_line_to_file"), line, fetchFilePath);
-        writer.write(line);
-      }
+    try(Writer writer = Files.newBufferedWriter(fetchFilePath, charsetName, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)){
+      writeFetchFile(itemsToFetch, bagitRootDir, writer, fetchFilePath);
+    }
+  }
+  
+  /**
+   * Write the contents of the fetch.txt file to a stream with the specified encoding (charsetName). The stream is not closed.
+   * 
+   * @param itemsToFetch the list of {@link FetchItem}s to write into the fetch.txt
+   * @param bagitRootDir the path to the root of the bag
+   * @param charsetName the name of the encoding for the file
+   * @param out where to write the contents
+   * 
+   * @throws IOException if there was a problem writing to the stream
+   */
+  public static void writeFetchFile(final List<FetchItem> itemsToFetch, final Path bagitRootDir, final Charset charsetName, final OutputStream out) throws IOException{
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(out, charsetName));
+    writeFetchFile(itemsToFetch, bagitRootDir, writer, "fetch.txt");
+    writer.flush();
+  }
+  
+  private static void writeFetchFile(final List<FetchItem> itemsToFetch, final Path bagitRootDir, final Writer writer, final Object location) throws IOException{
+    for(final FetchItem item : itemsToFetch){
+      final String line = formatFetchLine(item, bagitRootDir);
+      logger.debug(messages.getString("writing_line_to_file"), line, location);
+      writer.write(line);
     }
   }
   
@@ -1,7 +1,7 @@
 package com.github.jscancella.writer.internal;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,7 +16,7 @@ import org.slf4j.LoggerFactory;
 import com.github.jscancella.domain.Manifest;
 
 /**
- * Responsible for writing out a {@link Manifest} to the filesystem
+ * Responsible for writing out a {@link Manifest} to the filesystem, with the lines sorted by path
  */
 public enum ManifestWriter{;//using enum to enforce singleton
   private static final Logger logger = LoggerFactory.getLogger(PayloadWriter.class);
@@ -60,15 +60,34 @@ public enum ManifestWriter{;//using enum to enforce singleton
       final Path manifestPath = outputDir.resolve(filenameBase + manifest.getBagitAlgorithmName() + ".txt");
       logger.debug(messages.getString("writing_manifest_to_path"), manifestPath);
 
-      try(BufferedWriter writer = Files.newBufferedWriter(manifestPath, charsetName, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)){
-        for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
-          //there are 2 spaces between the checksum and the path so that the manifests are compatible with the md5sum tools available on most unix systems.
-          //This may cause problems on windows due to it being text mode, in which case either replace with a * or try verifying in binary mode with --binary
-          final String line = entry.getValue() + "  " + RelativePathWriter.formatRelativePathString(relativeTo, entry.getKey());
-          logger.debug(messages.getString("writing_line_to_file"), line, manifestPath);
-          writer.write(line);
-        }
+      try(OutputStream out = Files.newOutputStream(manifestPath, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+          SortedManifestWriter writer = new SortedManifestWriter(relativeTo, charsetName, outputDir)){
+        addLines(manifest, writer);
+        writer.writeTo(out);
       }
     }
   }
+  
+  /**
+   * Write the contents of a manifest file to a stream, sorted by path in memory. The stream is not closed.
+   * 
+   * @param manifest the {@link Manifest} to write out
+   * @param bagitRootDir the path to the root of the bag, which the paths in the manifest are relative to
+   * @param charsetName the name of the encoding for the file
+   * @param out where to write the contents
+   * 
+   * @throws IOException if there was a problem writing to the stream
+   */
+  public static void writeManifest(final Manifest manifest, final Path bagitRootDir, final Charset charsetName, final OutputStream out) throws IOException{
+    try(SortedManifestWriter writer = new SortedManifestWriter(bagitRootDir, charsetName)){
+      addLines(manifest, writer);
+      writer.writeTo(out);
+    }
+  }
+
+  private static void addLines(final Manifest manifest, final SortedManifestWriter writer) throws IOException{
+    for(final Entry<Path, String> entry : manifest.getFileToChecksumMap().entrySet()){
+      writer.add(entry.getKey(), entry.getValue());
+    }
+  }
 }
@@ -2,6 +2,9 @@ package com.github.jscancella.writer.internal;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,18 +36,46 @@ public enum MetadataWriter {;//using enum to enforce singleton
    * @throws IOException if there was a problem writing a file
    */
   public static void writeBagMetadata(final Metadata metadata, final Version version, final Path outputDir, final Charset charsetName) throws IOException{
-    Path bagInfoFilePath = outputDir.resolve("bag-info.txt");
-    if(version.isSameOrOlder(Version.VERSION_0_95())){
-      bagInfoFilePath = outputDir.resolve("package-info.txt");
-    }
+    final Path bagInfoFilePath = outputDir.resolve(getBagMetadataFileName(version));
     logger.debug(messages.getString("writing_metadata_to_path"), bagInfoFilePath.getFileName(), outputDir);
 
-    try(BufferedWriter writer = Files.newBufferedWriter(bagInfoFilePath, charsetName, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)){
-      for(final SimpleImmutableEntry<String, String> entry : metadata.getAll()){
-        final String line = entry.getKey() + ": " + entry.getValue() + System.lineSeparator();
-        logger.debug(messages.getString("writing_line_to_file"), line, bagInfoFilePath);
-        writer.append(line);
-      }
+    try(Writer writer = Files.newBufferedWriter(bagInfoFilePath, charsetName, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)){
+      writeBagMetadata(metadata, writer, bagInfoFilePath);
+    }
+  }
+  
+  /**
+   * Write the contents of the bag-info.txt (or package-info.txt) file to a stream with specified encoding (charsetName). The stream is not closed.
+   * 
+   * @param metadata the key value pair info in the bag-info.txt file
+   * @param charsetName the name of the encoding for the file
+   * @param out where to write the contents
+   * 
+   * @throws IOException if there was a problem writing to the stream
+   */
+  public static void writeBagMetadata(final Metadata metadata, final Charset charsetName, final OutputStream out) throws IOException{
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(out, charsetName));
+    writeBagMetadata(metadata, writer, "bag metadata");
+    writer.flush();
+  }
+  
+  /**
+   * @param version the version of the bag
+   * 
+   * @return the name of the file that contains the bag metadata for that version, either bag-info.txt or package-info.txt
+   */
+  public static String getBagMetadataFileName(final Version version){
+    if(version.isSameOrOlder(Version.VERSION_0_95())){
+      return "package-info.txt";
+    }
+    return "bag-info.txt";
+  }
+  
+  private static void writeBagMetadata(final Metadata metadata, final Writer writer, final Object location) throws IOException{
+    for(final SimpleImmutableEntry<String, String> entry : metadata.getAll()){
+      final String line = entry.getKey() + ": " + entry.getValue() + System.lineSeparator();
+      logger.debug(messages.getString("writing_line_to_file"), line, location);
+      writer.append(line);
     }
   }
 }
@@ -0,0 +1,144 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.internal.FutureUtils;
+
+/**
+ * Creates the payload manifests by walking the payload files and calculating their checksums using an {@link ExecutorService}.
+ * The walk happens on the calling thread and each file is hashed by a task that uses its own set of hashers,
+ * created from {@link Hasher#newInstance()}. Checksums are added to the manifests in the order the files were visited,
+ * so the resulting manifests are the same as with {@link CreatePayloadManifestsVistor}.
+ * Mainly used in {@link BagCreator}
+ */
+@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+public final class ParallelCreatePayloadManifestsVistor extends AbstractCreateManifestsVistor{
+  private static final int MAX_PENDING_FILES = 1024;
+
+  private transient final List<Manifest> manifests;
+  private transient final List<Hasher> prototypes;
+  private transient final ExecutorService executor;
+  private transient final Queue<List<Hasher>> hasherPool = new ConcurrentLinkedQueue<>();
+  private transient final Deque<PendingFile> pending = new ArrayDeque<>();
+
+  public ParallelCreatePayloadManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, final ExecutorService executor){
+    this(manifestToHasherMap, includeHiddenFiles, executor, null);
+  }
+  
+  public ParallelCreatePayloadManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, final ExecutorService executor, 
+      final StreamingManifestWriter streamingWriter){
+    this(manifestToHasherMap, includeHiddenFiles, executor, streamingWriter, null);
+  }
+  
+  public ParallelCreatePayloadManifestsVistor(final Map<Manifest, Hasher> manifestToHasherMap, final boolean includeHiddenFiles, final ExecutorService executor, 
+      final StreamingManifestWriter streamingWriter, final BagCreationJournal journal){
+    super(manifestToHasherMap, includeHiddenFiles, streamingWriter, journal);
+    this.manifests = new ArrayList<>(manifestToHasherMap.keySet());
+    this.prototypes = new ArrayList<>(manifests.size());
+    for(final Manifest manifest : manifests){
+      prototypes.add(manifestToHasherMap.get(manifest));
+    }
+    this.executor = executor;
+  }
+
+  @Override
+  public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+    final FileVisitResult result = abstractPreVisitDirectory(dir, null);
+    if(result == FileVisitResult.SKIP_SUBTREE){
+      countSkippedDirectory(dir);
+    }
+    return result;
+  }
+
+  @Override
+  protected void addFile(final Path path, final BasicFileAttributes attrs) throws IOException{
+    //limit how far the walk can get ahead of the hashing
+    if(pending.size() >= MAX_PENDING_FILES){
+      mergeOldest();
+    }
+    pending.add(new PendingFile(path, attrs, executor.submit(() -> hash(path))));
+  }
+
+  /**
+   * Wait for all the submitted files to be hashed and add their checksums to the manifests.
+   *
+   * @throws IOException if there was a problem reading any of the files
+   */
+  public void waitForAll() throws IOException{
+    while(!pending.isEmpty()){
+      mergeOldest();
+    }
+  }
+
+  /**
+   * Cancel any files that are still waiting to be hashed, for example because the walk failed.
+   */
+  public void cancelRemaining(){
+    for(final PendingFile pendingFile : pending){
+      pendingFile.checksums.cancel(true);
+    }
+    pending.clear();
+  }
+
+  private List<String> hash(final Path path) throws Exception{
+    List<Hasher> hashers = hasherPool.poll();
+    if(hashers == null){
+      hashers = new ArrayList<>(prototypes.size());
+      for(final Hasher prototype : prototypes){
+        hashers.add(prototype.newInstance());
+      }
+    }
+
+    try{
+      streamFile(path, hashers);
+      final List<String> checksums = new ArrayList<>(hashers.size());
+      for(final Hasher hasher : hashers){
+        checksums.add(hasher.getHash());
+      }
+      return checksums;
+    }
+    finally{
+      for(final Hasher hasher : hashers){
+        hasher.reset();
+      }
+      hasherPool.offer(hashers);
+    }
+  }
+
+  private void mergeOldest() throws IOException{
+    final PendingFile pendingFile = pending.poll();
+    final List<String> checksums = FutureUtils.waitFor(pendingFile.checksums, IOException.class);
+    final Map<Manifest, String> manifestToChecksum = new HashMap<>();
+    for(int index = 0; index < manifests.size(); index++){
+      manifestToChecksum.put(manifests.get(index), checksums.get(index));
+    }
+    recordChecksums(pendingFile.path, pendingFile.attrs, manifestToChecksum);
+  }
+
+  private static final class PendingFile{
+    private final Path path;
+    private final BasicFileAttributes attrs;
+    private final Future<List<String>> checksums;
+
+    private PendingFile(final Path path, final BasicFileAttributes attrs, final Future<List<String>> checksums){
+      this.path = path;
+      this.attrs = attrs;
+      this.checksums = checksums;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.github.jscancella.writer.internal;
+
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.hash.BagitChecksumNameMapping;
+import com.github.jscancella.hash.Hasher;
+
+/**
+ * Compares the checksums calculated while writing the payload files against the in memory payload manifests.
+ * Mismatches are recorded instead of thrown so that files being written concurrently can stop early,
+ * and the first one is thrown once writing has stopped.
+ * Mainly used in {@link PayloadWriter}
+ */
+final class PayloadCopyVerifier {
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  
+  private final List<Manifest> manifests;
+  private final List<Hasher> prototypes;
+  private final boolean canCreateNewInstances;
+  private final AtomicReference<CorruptChecksumException> failure = new AtomicReference<>();
+
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  PayloadCopyVerifier(final Collection<Manifest> payloadManifests) throws NoSuchAlgorithmException{
+    manifests = new ArrayList<>(payloadManifests);
+    prototypes = new ArrayList<>(manifests.size());
+    boolean newInstancesSupported = true;
+    for(final Manifest manifest : manifests){
+      final Hasher prototype = BagitChecksumNameMapping.get(manifest.getBagitAlgorithmName());
+      final Hasher instance = prototype.newInstance();
+      newInstancesSupported = newInstancesSupported && instance != null;
+      prototypes.add(instance == null ? prototype : instance); //so that verifiers on different threads don't share a hasher when they can avoid it
+    }
+    canCreateNewInstances = newInstancesSupported;
+  }
+
+  /**
+   * @return true if every hasher can create independent instances, which is required to verify files concurrently
+   */
+  boolean canVerifyConcurrently(){
+    return canCreateNewInstances;
+  }
+
+  /**
+   * @return a new, independent hasher for each manifest, in the same order as the manifests. Only supported if {@link #canVerifyConcurrently()}
+   *
+   * @throws NoSuchAlgorithmException if there is a problem creating a hasher
+   */
+  List<Hasher> newHashers() throws NoSuchAlgorithmException{
+    final List<Hasher> hashers = new ArrayList<>(prototypes.size());
+    for(final Hasher prototype : prototypes){
+      hashers.add(prototype.newInstance());
+    }
+    return hashers;
+  }
+
+  /**
+   * @return the shared hasher for each manifest, reset and in the same order as the manifests. <b>NOT THREAD SAFE</b>
+   */
+  List<Hasher> sharedHashers(){
+    for(final Hasher prototype : prototypes){
+      prototype.reset();
+    }
+    return prototypes;
+  }
+
+  /**
+   * Compare the checksums of the written file against each manifest, recording the first mismatch.
+   *
+   * @param source the payload file listed in the manifests
+   * @param destination the file that was written
+   * @param hashers the hashers returned by {@link #newHashers()} after being updated with the contents of the file
+   */
+  void check(final Path source, final Path destination, final List<Hasher> hashers){
+    for(int index = 0; index < manifests.size(); index++){
+      final String expected = manifests.get(index).getFileToChecksumMap().get(source);
+      final String computed = hashers.get(index).getHash();
+      if(expected != null && !expected.equals(computed)){
+        failure.compareAndSet(null, new CorruptChecksumException(messages.getString("corrupt_checksum_error"), destination,
+            manifests.get(index).getBagitAlgorithmName(), expected, computed));
+      }
+    }
+  }
+
+  /**
+   * @return true if a written file did not match the manifests
+   */
+  boolean hasFailed(){
+    return failure.get() != null;
+  }
+
+  /**
+   * @throws CorruptChecksumException if a written file did not match the manifests
+   */
+  void throwIfFailed() throws CorruptChecksumException{
+    final CorruptChecksumException corrupt = failure.get();
+    if(corrupt != null){
+      throw corrupt;
+    }
+  }
+}
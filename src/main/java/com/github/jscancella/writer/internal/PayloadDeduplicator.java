@@ -0,0 +1,228 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.writer.Deduplication;
+import com.github.jscancella.writer.DeduplicationReport;
+
+/**
+ * Responsible for finding payload files with identical contents using the checksums already in the payload manifests,
+ * and for deduplicating them as described by {@link Deduplication}. Two files are only duplicates when they are the same size
+ * and have the same checksum in every payload manifest. When all the manifests use an algorithm with known collisions (md5 or sha1)
+ * the contents are also compared byte for byte, so deduplicating never makes a manifest wrong.
+ * Mainly used in {@link BagCreator} and {@link PayloadWriter}
+ */
+public enum PayloadDeduplicator {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(PayloadDeduplicator.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final Set<String> COLLIDING_ALGORITHMS = new HashSet<>(Arrays.asList("md5", "sha1"));
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+
+  /**
+   * Find the payload files that have the same contents as another payload file
+   *
+   * @param payloadManifests the payload manifests of the bag
+   *
+   * @return each duplicate mapped to the first file (by path) with the same contents, in path order
+   *
+   * @throws IOException if there was a problem reading the size or contents of a file
+   */
+  public static Map<Path, Path> findDuplicates(final Set<Manifest> payloadManifests) throws IOException{
+    final Set<Path> files = new HashSet<>();
+    for(final Manifest manifest : payloadManifests){
+      files.addAll(manifest.getFileToChecksumMap().keySet());
+    }
+    return findDuplicates(payloadManifests, files);
+  }
+
+  /**
+   * Find which of the files have the same contents as another one of the files
+   *
+   * @param payloadManifests the payload manifests of the bag
+   * @param files the payload files to look at, which must exist
+   *
+   * @return each duplicate mapped to the first file (by path) with the same contents, in path order
+   *
+   * @throws IOException if there was a problem reading the size or contents of a file
+   */
+  public static Map<Path, Path> findDuplicates(final Set<Manifest> payloadManifests, final Collection<Path> files) throws IOException{
+    final List<Manifest> manifests = new ArrayList<>(payloadManifests);
+    manifests.sort(Comparator.comparing(Manifest::getBagitAlgorithmName));
+    final boolean isContentCompared = !hasCollisionResistantAlgorithm(manifests);
+    final Map<String, Path> checksumsToCanonical = new HashMap<>();
+    final Map<Path, Path> duplicateToCanonical = new LinkedHashMap<>();
+
+    for(final Path file : new TreeSet<>(files)){
+      final String checksums = joinChecksums(file, manifests);
+      if(checksums != null){
+        final Path canonical = checksumsToCanonical.putIfAbsent(checksums, file);
+        //only the files with a matching checksum are read or even have their size looked up
+        if(canonical != null && Files.size(canonical) == Files.size(file) && (!isContentCompared || hasSameContents(canonical, file))){
+          duplicateToCanonical.put(file, canonical);
+        }
+      }
+    }
+
+    logger.info(messages.getString("found_duplicate_payload_files"), duplicateToCanonical.size());
+    return duplicateToCanonical;
+  }
+
+  private static boolean hasCollisionResistantAlgorithm(final List<Manifest> manifests){
+    for(final Manifest manifest : manifests){
+      if(!COLLIDING_ALGORITHMS.contains(manifest.getBagitAlgorithmName())){
+        return true;
+      }
+    }
+    logger.debug(messages.getString("comparing_duplicate_contents"));
+    return false;
+  }
+
+  /*
+   * a file missing from a manifest can't be shown to be a duplicate, so it is left alone
+   */
+  private static String joinChecksums(final Path file, final List<Manifest> manifests){
+    final StringBuilder checksums = new StringBuilder();
+    for(final Manifest manifest : manifests){
+      final String checksum = manifest.getFileToChecksumMap().get(file);
+      if(checksum == null){
+        return null;
+      }
+      checksums.append(checksum).append(' ');
+    }
+    return checksums.toString();
+  }
+
+  private static boolean hasSameContents(final Path first, final Path second) throws IOException{
+    try(InputStream firstIn = Files.newInputStream(first); InputStream secondIn = Files.newInputStream(second)){
+      final byte[] firstBuffer = new byte[CHUNK_SIZE];
+      final byte[] secondBuffer = new byte[CHUNK_SIZE];
+      int read = readFully(firstIn, firstBuffer);
+      while(read > 0){
+        if(read != readFully(secondIn, secondBuffer) || !Arrays.equals(firstBuffer, secondBuffer)){
+          return false;
+        }
+        read = readFully(firstIn, firstBuffer);
+      }
+      return readFully(secondIn, secondBuffer) == 0;
+    }
+  }
+
+  /*
+   * fill the buffer unless the end of the stream is reached, clearing what wasn't read so buffers can be compared whole
+   */
+  private static int readFully(final InputStream in, final byte[] buffer) throws IOException{
+    int total = 0;
+    int read = 0;
+    while(total < buffer.length && read != -1){
+      read = in.read(buffer, total, buffer.length - total);
+      if(read > 0){
+        total += read;
+      }
+    }
+    Arrays.fill(buffer, total, buffer.length, (byte) 0);
+    return total;
+  }
+
+  /**
+   * Replace each duplicate with a hard link to the file with the same contents.
+   * The link is created next to the duplicate and renamed over it, so the duplicate is never missing.
+   * Files that are already links to the same file are skipped.
+   *
+   * @param duplicateToCanonical each duplicate mapped to the file with the same contents
+   * @param report where to record the deduplicated files
+   *
+   * @throws IOException if there was a problem creating a link, for example because the filesystem doesn't support hard links
+   */
+  public static void linkInPlace(final Map<Path, Path> duplicateToCanonical, final DeduplicationReport report) throws IOException{
+    for(final Entry<Path, Path> entry : duplicateToCanonical.entrySet()){
+      final Path duplicate = entry.getKey();
+      if(!Files.isSameFile(duplicate, entry.getValue())){
+        logger.debug(messages.getString("linking_duplicate_payload_file"), duplicate, entry.getValue());
+        final long size = Files.size(duplicate);
+        final Path parent = duplicate.toAbsolutePath().getParent();
+        final Path tempFile = AtomicFileWriter.createTempFile(parent, duplicate);
+        try{
+          Files.delete(tempFile); //only the unique name is needed, createLink fails rather than replace a file created since
+          Files.createLink(tempFile, entry.getValue());
+          AtomicFileWriter.move(tempFile, duplicate);
+        }
+        finally{
+          Files.deleteIfExists(tempFile);
+        }
+        report.addDuplicate(duplicate, entry.getValue(), size);
+      }
+    }
+  }
+
+  /**
+   * List each duplicate in the fetch.txt of the bag, with a URL pointing at the file with the same contents.
+   * The fetch.txt itself isn't written.
+   *
+   * @param bag the bag the duplicates are in
+   * @param duplicateToCanonical each duplicate mapped to the file with the same contents
+   * @param fetchBaseUrl the URL the bag will be published at, which the path of the file with the same contents is resolved against
+   * @param report where to record the deduplicated files
+   *
+   * @throws IOException if there was a problem reading the size of a file or if the URL can't be created
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  public static void addToFetch(final Bag bag, final Map<Path, Path> duplicateToCanonical, final URL fetchBaseUrl, final DeduplicationReport report)
+      throws IOException{
+    if(fetchBaseUrl == null){
+      throw new IllegalArgumentException(messages.getString("missing_fetch_base_url_error"));
+    }
+    try{
+      final URI baseUri = fetchBaseUrl.toURI();
+      final List<FetchItem> items = new ArrayList<>(bag.getItemsToFetch());
+      for(final Entry<Path, Path> entry : duplicateToCanonical.entrySet()){
+        final long size = Files.size(entry.getKey());
+        final URL url = baseUri.resolve(new URI(null, null, toUrlPath(bag.getRootDir(), entry.getValue()), null)).toURL();
+        logger.debug(messages.getString("fetching_duplicate_payload_file"), entry.getKey(), url);
+        items.add(new FetchItem(url, size, entry.getKey()));
+        report.addDuplicate(entry.getKey(), entry.getValue(), size);
+      }
+      bag.setItemsToFetch(items);
+    }
+    catch(URISyntaxException e){
+      throw new IOException(e);
+    }
+  }
+
+  /*
+   * the URI constructor does the percent encoding, so the names are joined as they are
+   */
+  private static String toUrlPath(final Path rootDir, final Path file){
+    final StringJoiner urlPath = new StringJoiner("/");
+    for(final Path name : rootDir.relativize(file)){
+      urlPath.add(name.toString());
+    }
+    return urlPath.toString();
+  }
+}
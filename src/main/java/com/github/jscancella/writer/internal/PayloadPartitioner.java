@@ -0,0 +1,91 @@
+package com.github.jscancella.writer.internal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Responsible for dividing the payload files into partitions that are under a maximum size and number of files.
+ * Files are placed largest first, each into the fullest partition it still fits in (best fit decreasing), which keeps the number
+ * of partitions low. A new partition is only started when the file doesn't fit in any of them.
+ * A file that is larger than the maximum size on its own gets a partition to itself.
+ * Mainly used in {@link com.github.jscancella.writer.BagSplitter}
+ */
+public enum PayloadPartitioner {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(PayloadPartitioner.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final Comparator<Partition> BY_SIZE = Comparator.<Partition>comparingLong(partition -> partition.size)
+      .thenComparingInt(partition -> partition.index);
+
+  /**
+   * Divide the files into partitions
+   *
+   * @param fileToSize the payload files and their size in bytes
+   * @param maxSize the maximum total size of the files in a partition, or 0 or less for no maximum
+   * @param maxFileCount the maximum number of files in a partition, or 0 or less for no maximum
+   *
+   * @return the files of each partition sorted by path, in the order the partitions were started
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  public static List<List<Path>> partition(final Map<Path, Long> fileToSize, final long maxSize, final long maxFileCount){
+    final long sizeLimit = maxSize > 0 ? maxSize : Long.MAX_VALUE;
+    final long countLimit = maxFileCount > 0 ? maxFileCount : Long.MAX_VALUE;
+    final List<Entry<Path, Long>> files = new ArrayList<>(fileToSize.entrySet());
+    files.sort(Entry.<Path, Long>comparingByValue().reversed().thenComparing(Entry.comparingByKey()));
+
+    final List<Partition> partitions = new ArrayList<>();
+    final TreeSet<Partition> notFull = new TreeSet<>(BY_SIZE);
+    final Partition largestThatFits = new Partition(Integer.MAX_VALUE);
+    for(final Entry<Path, Long> file : files){
+      largestThatFits.size = sizeLimit - file.getValue();
+      Partition partition = notFull.floor(largestThatFits);
+      if(partition == null){
+        if(file.getValue() > sizeLimit){
+          logger.warn(messages.getString("file_larger_than_partition_warning"), file.getKey(), file.getValue(), sizeLimit);
+        }
+        partition = new Partition(partitions.size());
+        partitions.add(partition);
+      }
+      else{
+        notFull.remove(partition); //it has to be added back since its size is changing
+      }
+
+      partition.add(file.getKey(), file.getValue());
+      if(partition.files.size() < countLimit){
+        notFull.add(partition);
+      }
+    }
+
+    logger.info(messages.getString("partitioned_payload"), files.size(), partitions.size());
+    final List<List<Path>> partitionedFiles = new ArrayList<>(partitions.size());
+    for(final Partition partition : partitions){
+      Collections.sort(partition.files);
+      partitionedFiles.add(partition.files);
+    }
+    return partitionedFiles;
+  }
+
+  private static final class Partition{
+    private final int index;
+    private final List<Path> files = new ArrayList<>();
+    private long size;
+
+    private Partition(final int index){
+      this.index = index;
+    }
+
+    private void add(final Path file, final long fileSize){
+      files.add(file);
+      size += fileSize;
+    }
+  }
+}
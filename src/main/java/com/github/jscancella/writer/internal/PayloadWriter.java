@@ -1,13 +1,25 @@
 package com.github.jscancella.writer.internal;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +27,15 @@ import org.slf4j.LoggerFactory;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.FetchItem;
 import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.hash.Hasher;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
+import com.github.jscancella.internal.FutureUtils;
+import com.github.jscancella.internal.PathUtils;
+import com.github.jscancella.writer.Deduplication;
+import com.github.jscancella.writer.DeduplicationReport;
+import com.github.jscancella.writer.WriteMode;
+import com.github.jscancella.writer.WriteOptions;
 
 /**
  * Responsible for writing out the bag payload to the filesystem
@@ -22,50 +43,377 @@ import com.github.jscancella.domain.Manifest;
 public enum PayloadWriter {;//using enum to enforce singleton
   private static final Logger logger = LoggerFactory.getLogger(PayloadWriter.class);
   private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
-  
+  private static final int _64_KB = 1024 * 64;
+  private static final int CHUNK_SIZE = _64_KB;
+
   /*
    * Write the payload files in the data directory or under the root directory depending on the version
+   * and return the number and total size of the files written
+   */
+  public static FileCountAndTotalSize writeVersionDependentPayloadFiles(final Bag bag, final Path outputDir) throws IOException{
+    return writeVersionDependentPayloadFiles(bag, outputDir, new WriteOptions(), new DeduplicationReport());
+  }
+
+  /*
+   * Write the payload files in the data directory or under the root directory depending on the version,
+   * using the supplied options, and return the number and total size of the files written. Any deduplicated files are added to the report
+   */
+  public static FileCountAndTotalSize writeVersionDependentPayloadFiles(final Bag bag, final Path outputDir, final WriteOptions options, 
+      final DeduplicationReport report) throws IOException{
+    addDuplicatesToFetch(bag, options, report);
+    return writePayloadFiles(bag.getPayLoadManifests(), bag.getItemsToFetch(), createDataDir(outputDir), bag.getRootDir().resolve("data"), options, report);
+  }
+
+  /*
+   * Write the payload files in the data directory or under the root directory depending on the version,
+   * checking each file against the payload manifests as it is written, and return the number and total size of the files written. 
+   * Any deduplicated files are added to the report
+   */
+  public static FileCountAndTotalSize writeAndVerifyVersionDependentPayloadFiles(final Bag bag, final Path outputDir, final WriteOptions options, 
+      final DeduplicationReport report) throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    addDuplicatesToFetch(bag, options, report);
+    return writeAndVerifyPayloadFiles(bag.getPayLoadManifests(), bag.getItemsToFetch(), createDataDir(outputDir), bag.getRootDir().resolve("data"), options, report);
+  }
+
+  /*
+   * the payload files that writing the bag puts in the output directory, including the ones that are links to a duplicate.
+   * Any duplicates that were added to the fetch items aren't included
+   */
+  public static Collection<Path> getWrittenFiles(final Bag bag, final Path outputDir){
+    return getFilesToWrite(bag.getPayLoadManifests(), bag.getItemsToFetch(), outputDir.resolve("data"), bag.getRootDir().resolve("data")).values();
+  }
+
+  /*
+   * the duplicates are then skipped like any other fetch item
    */
-  public static void writeVersionDependentPayloadFiles(final Bag bag, final Path outputDir) throws IOException{
+  private static void addDuplicatesToFetch(final Bag bag, final WriteOptions options, final DeduplicationReport report) throws IOException{
+    if(options.getDeduplication() == Deduplication.FETCH){
+      final Map<Path, Path> sourceToDestination = getFilesToWrite(bag.getPayLoadManifests(), bag.getItemsToFetch(), bag.getRootDir(), bag.getRootDir().resolve("data"));
+      final Map<Path, Path> duplicates = PayloadDeduplicator.findDuplicates(bag.getPayLoadManifests(), sourceToDestination.keySet());
+      PayloadDeduplicator.addToFetch(bag, duplicates, options.getFetchBaseUrl(), report);
+    }
+  }
+
+  private static Path createDataDir(final Path outputDir) throws IOException{
     final Path dataDir = outputDir.resolve("data");
     Files.createDirectories(dataDir);
-    writePayloadFiles(bag.getPayLoadManifests(), bag.getItemsToFetch(), dataDir, bag.getRootDir().resolve("data"));
+    return dataDir;
   }
-  
+
   /**
   * Write the payload <b>file(s)</b> to the output directory
-  * 
+  *
   * @param payloadManifests the set of objects representing the payload manifests
   * @param fetchItems the list of items to exclude from writing in the output directory because they will be fetched
   * @param outputDir the data directory of the bag
   * @param bagDataDir the data directory of the bag
-  * 
+  *
+  * @return the number and total size of the files written, which is the Payload-Oxum of the written bag
+  *
   * @throws IOException if there was a problem writing a file
   */
- public static void writePayloadFiles(final Set<Manifest> payloadManifests, final List<FetchItem> fetchItems, final Path outputDir, final Path bagDataDir) throws IOException{
-   logger.info(messages.getString("writing_payload_files"));
-   final Set<Path> fetchPaths = getFetchPaths(fetchItems, bagDataDir);
-   
-   for(final Manifest payloadManifest : payloadManifests){
-     for(final Path payloadFile : payloadManifest.getFileToChecksumMap().keySet()){
-       final Path relativePayloadPath = bagDataDir.relativize(payloadFile);
-       
-       if(fetchPaths.contains(relativePayloadPath.normalize())) {
-         logger.info(messages.getString("skip_fetch_item_when_writing_payload"), payloadFile);
-       }
-       else {
-         final Path writeToPath = outputDir.resolve(relativePayloadPath);
-         logger.debug(messages.getString("writing_payload_file_to_path"), payloadFile, writeToPath);
-         final Path parent = writeToPath.getParent();
-         if(parent != null){
-           Files.createDirectories(parent);
-         }
-         Files.copy(payloadFile, writeToPath, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
-       }
-     }
-   }
- }
- 
+  public static FileCountAndTotalSize writePayloadFiles(final Set<Manifest> payloadManifests, final List<FetchItem> fetchItems, final Path outputDir, final Path bagDataDir) throws IOException{
+    return writePayloadFiles(payloadManifests, fetchItems, outputDir, bagDataDir, new WriteOptions(), new DeduplicationReport());
+  }
+
+  /**
+  * Write the payload <b>file(s)</b> to the output directory.
+  * Each file is only copied once even if it is listed in multiple manifests,
+  * and all the directories are created before any file is copied. With {@link Deduplication#HARDLINK} only the first file (by path) 
+  * with each contents is copied, and the others are hard links to it.
+  *
+  * @param payloadManifests the set of objects representing the payload manifests
+  * @param fetchItems the list of items to exclude from writing in the output directory because they will be fetched
+  * @param outputDir the data directory of the bag
+  * @param bagDataDir the data directory of the bag
+  * @param options how to write the files, for example concurrently using an executor or as links to the original files
+  * @param report where the files that were hard linked to a duplicate are added
+  *
+  * @return the number and total size of the files written, which is the Payload-Oxum of the written bag
+  *
+  * @throws IOException if there was a problem writing a file
+  */
+  public static FileCountAndTotalSize writePayloadFiles(final Set<Manifest> payloadManifests, final List<FetchItem> fetchItems, final Path outputDir,
+      final Path bagDataDir, final WriteOptions options, final DeduplicationReport report) throws IOException{
+    return writeFiles(payloadManifests, fetchItems, outputDir, bagDataDir, options, report, null);
+  }
+
+  /**
+  * Write the payload <b>file(s)</b> to the output directory like {@link #writePayloadFiles(Set, List, Path, Path, WriteOptions, DeduplicationReport)},
+  * but calculate the checksums of each file while it is written and compare them to the payload manifests.
+  * This verifies the written payload while only reading each source file once.
+  * Writing stops at the first file that doesn't match, but the files already written are left in place.
+  *
+  * @param payloadManifests the set of objects representing the payload manifests
+  * @param fetchItems the list of items to exclude from writing in the output directory because they will be fetched
+  * @param outputDir the data directory of the bag
+  * @param bagDataDir the data directory of the bag
+  * @param options how to write the files, for example concurrently using an executor or as links to the original files
+  * @param report where the files that were hard linked to a duplicate are added
+  *
+  * @return the number and total size of the files written, which is the Payload-Oxum of the written bag
+  *
+  * @throws IOException if there was a problem writing a file
+  * @throws NoSuchAlgorithmException if the hasher for one of the manifests can't be found
+  * @throws CorruptChecksumException if a written file doesn't match the checksum in a manifest
+  */
+  public static FileCountAndTotalSize writeAndVerifyPayloadFiles(final Set<Manifest> payloadManifests, final List<FetchItem> fetchItems, 
+      final Path outputDir, final Path bagDataDir, final WriteOptions options, final DeduplicationReport report) 
+      throws IOException, NoSuchAlgorithmException, CorruptChecksumException{
+    final PayloadCopyVerifier verifier = new PayloadCopyVerifier(payloadManifests);
+    final FileCountAndTotalSize writtenTotals = writeFiles(payloadManifests, fetchItems, outputDir, bagDataDir, options, report, verifier);
+    verifier.throwIfFailed();
+    return writtenTotals;
+  }
+
+  private static FileCountAndTotalSize writeFiles(final Set<Manifest> payloadManifests, final List<FetchItem> fetchItems, final Path outputDir,
+      final Path bagDataDir, final WriteOptions options, final DeduplicationReport report, final PayloadCopyVerifier verifier) throws IOException{
+    logger.info(messages.getString("writing_payload_files"));
+    final Map<Path, Path> sourceToDestination = getFilesToWrite(payloadManifests, fetchItems, outputDir, bagDataDir);
+    createDirectories(sourceToDestination.values());
+    final Map<Path, Path> duplicates = options.getDeduplication() == Deduplication.HARDLINK ? 
+        PayloadDeduplicator.findDuplicates(payloadManifests, sourceToDestination.keySet()) : Collections.emptyMap();
+    final Map<Path, Path> filesToCopy = duplicates.isEmpty() ? sourceToDestination : withoutDuplicates(sourceToDestination, duplicates);
+    final Set<Path> reflinked = options.getWriteMode() == WriteMode.REFLINK ? 
+        ReflinkCopier.reflink(withoutSameLocations(filesToCopy)) : Collections.emptySet();
+
+    final FileCountAndTotalSize writtenTotals = new FileCountAndTotalSize();
+    if(options.getExecutor() != null && (verifier == null || verifier.canVerifyConcurrently())){
+      writeFilesConcurrently(filesToCopy, reflinked, writtenTotals, options, verifier);
+    }
+    else{
+      writeFilesSerially(filesToCopy, reflinked, writtenTotals, options, verifier);
+    }
+
+    if(verifier == null || !verifier.hasFailed()){
+      linkDuplicates(duplicates, sourceToDestination, writtenTotals, report);
+    }
+    return writtenTotals;
+  }
+
+  private static Map<Path, Path> withoutDuplicates(final Map<Path, Path> sourceToDestination, final Map<Path, Path> duplicates){
+    final Map<Path, Path> filesToCopy = new LinkedHashMap<>(sourceToDestination);
+    filesToCopy.keySet().removeAll(duplicates.keySet());
+    return filesToCopy;
+  }
+
+  /*
+   * writing a file onto itself has nothing to clone
+   */
+  private static Map<Path, Path> withoutSameLocations(final Map<Path, Path> sourceToDestination) throws IOException{
+    final Map<Path, Path> filesToClone = new LinkedHashMap<>();
+    for(final Entry<Path, Path> entry : sourceToDestination.entrySet()){
+      if(!isSameLocation(entry.getKey(), entry.getValue())){
+        filesToClone.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return filesToClone;
+  }
+
+  private static void writeFilesSerially(final Map<Path, Path> sourceToDestination, final Set<Path> reflinked, final FileCountAndTotalSize writtenTotals,
+      final WriteOptions options, final PayloadCopyVerifier verifier) throws IOException{
+    if(options.getExecutor() != null){
+      logger.info(messages.getString("verifying_payload_serially"));
+    }
+    for(final Entry<Path, Path> entry : sourceToDestination.entrySet()){
+      if(verifier == null){
+        writtenTotals.addFile(writeFile(entry.getKey(), entry.getValue(), options.getWriteMode(), reflinked.contains(entry.getKey()), null, Collections.emptyList()));
+      }
+      else if(verifier.hasFailed()){
+        break;
+      }
+      else{
+        writtenTotals.addFile(writeFile(entry.getKey(), entry.getValue(), options.getWriteMode(), reflinked.contains(entry.getKey()), verifier, verifier.sharedHashers()));
+      }
+    }
+  }
+
+  /*
+   * a duplicate has the same checksums as the file it links to, so it is verified when that file is
+   */
+  private static void linkDuplicates(final Map<Path, Path> duplicates, final Map<Path, Path> sourceToDestination, 
+      final FileCountAndTotalSize writtenTotals, final DeduplicationReport report) throws IOException{
+    for(final Entry<Path, Path> entry : duplicates.entrySet()){
+      final Path destination = sourceToDestination.get(entry.getKey());
+      final Path canonicalDestination = sourceToDestination.get(entry.getValue());
+      logger.debug(messages.getString("linking_duplicate_payload_file"), destination, canonicalDestination);
+      Files.deleteIfExists(destination);
+      Files.createLink(destination, canonicalDestination);
+      final long size = Files.size(destination);
+      writtenTotals.addFile(size);
+      report.addDuplicate(destination, canonicalDestination, size);
+    }
+  }
+
+  /*
+   * the distinct set of payload files across all the manifests, minus the ones that will be fetched
+   */
+  static Map<Path, Path> getFilesToWrite(final Set<Manifest> payloadManifests, final List<FetchItem> fetchItems, final Path outputDir,
+      final Path bagDataDir){
+    final Set<Path> fetchPaths = getFetchPaths(fetchItems, bagDataDir);
+    final Map<Path, Path> sourceToDestination = new LinkedHashMap<>();
+
+    for(final Manifest payloadManifest : payloadManifests){
+      for(final Path payloadFile : payloadManifest.getFileToChecksumMap().keySet()){
+        if(sourceToDestination.containsKey(payloadFile)){
+          continue; //already included from a previous manifest
+        }
+        final Path relativePayloadPath = bagDataDir.relativize(payloadFile);
+        if(fetchPaths.contains(relativePayloadPath.normalize())) {
+          logger.info(messages.getString("skip_fetch_item_when_writing_payload"), payloadFile);
+        }
+        else {
+          sourceToDestination.put(payloadFile, PathUtils.resolve(outputDir, relativePayloadPath));
+        }
+      }
+    }
+
+    return sourceToDestination;
+  }
+
+  /*
+   * create each distinct directory once, skipping any directory that will be created as the parent of a deeper one
+   */
+  private static void createDirectories(final Iterable<Path> destinations) throws IOException{
+    final TreeSet<Path> directories = new TreeSet<>();
+    for(final Path destination : destinations){
+      final Path parent = destination.getParent();
+      if(parent != null){
+        directories.add(parent);
+      }
+    }
+
+    Path previous = null;
+    for(final Path directory : directories.descendingSet()){
+      if(previous == null || !previous.startsWith(directory)){
+        Files.createDirectories(directory);
+      }
+      previous = directory;
+    }
+  }
+
+  private static void writeFilesConcurrently(final Map<Path, Path> sourceToDestination, final Set<Path> reflinked, final FileCountAndTotalSize writtenTotals,
+      final WriteOptions options, final PayloadCopyVerifier verifier) throws IOException{
+    final List<Future<?>> futures = new ArrayList<>(sourceToDestination.size());
+    try{
+      for(final Entry<Path, Path> entry : sourceToDestination.entrySet()){
+        futures.add(options.getExecutor().submit(() -> {
+          if(verifier == null){
+            writtenTotals.addFile(writeFile(entry.getKey(), entry.getValue(), options.getWriteMode(), reflinked.contains(entry.getKey()), null, Collections.emptyList()));
+          }
+          else if(!verifier.hasFailed()){
+            writtenTotals.addFile(writeFile(entry.getKey(), entry.getValue(), options.getWriteMode(), reflinked.contains(entry.getKey()), verifier, verifier.newHashers()));
+          }
+          return null;
+        }));
+      }
+      for(final Future<?> future : futures){
+        FutureUtils.waitFor(future, IOException.class);
+      }
+    }
+    finally{
+      for(final Future<?> future : futures){
+        future.cancel(true);
+      }
+    }
+  }
+
+  /*
+   * materialize the payload file at the destination, updating the hashers with its contents if there are any, and return its size.
+   * Reflinks are created beforehand in batches, so a reflinked file only needs to be hashed
+   */
+  private static long writeFile(final Path source, final Path destination, final WriteMode writeMode, final boolean isReflinked,
+      final PayloadCopyVerifier verifier, final List<Hasher> hashers) throws IOException{
+    logger.debug(messages.getString("writing_payload_file_to_path"), source, destination);
+    if(isSameLocation(source, destination)){
+      hashFile(destination, hashers); //writing a bag to the same location, so there is nothing to copy
+    }
+    else if(writeMode == WriteMode.HARDLINK || writeMode == WriteMode.SYMLINK){
+      linkFile(source, destination, writeMode);
+      hashFile(destination, hashers);
+    }
+    else if(isReflinked){
+      hashFile(destination, hashers);
+    }
+    else{
+      copyFile(source, destination, hashers);
+    }
+    
+    if(verifier != null){
+      verifier.check(source, destination, hashers);
+    }
+    return Files.size(destination);
+  }
+
+  /*
+   * only the same path counts, a hard link or symbolic link at the destination is replaced instead of being kept or written through
+   */
+  private static boolean isSameLocation(final Path source, final Path destination) throws IOException{
+    final Path sourceParent = source.toAbsolutePath().getParent();
+    final Path destinationParent = destination.toAbsolutePath().getParent();
+    return Files.exists(destination, LinkOption.NOFOLLOW_LINKS) && sourceParent != null && destinationParent != null
+        && source.getFileName().equals(destination.getFileName()) && Files.isSameFile(sourceParent, destinationParent);
+  }
+
+  private static void linkFile(final Path source, final Path destination, final WriteMode writeMode) throws IOException{
+    Files.deleteIfExists(destination);
+    if(writeMode == WriteMode.HARDLINK){
+      Files.createLink(destination, source);
+    }
+    else{
+      Files.createSymbolicLink(destination, source.toAbsolutePath());
+    }
+  }
+
+  private static void hashFile(final Path file, final List<Hasher> hashers) throws IOException{
+    if(!hashers.isEmpty()){
+      AbstractCreateManifestsVistor.streamFile(file, hashers);
+    }
+  }
+
+  /*
+   * copy using FileChannel.transferTo so that the operating system can avoid copying the bytes through java when it is able to,
+   * unless the contents need to be hashed while copying.
+   * Any existing destination is removed first, so that a hard link or symbolic link there is replaced and its target is left untouched
+   */
+  static void copyFile(final Path source, final Path destination, final List<Hasher> hashers) throws IOException{
+    Files.deleteIfExists(destination);
+    try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)){
+      if(hashers.isEmpty()){
+        transfer(in, out);
+      }
+      else{
+        copyAndHash(in, out, hashers);
+      }
+    }
+    Files.setLastModifiedTime(destination, Files.getLastModifiedTime(source));
+  }
+
+  private static void transfer(final FileChannel in, final FileChannel out) throws IOException{
+    final long size = in.size();
+    long position = 0;
+    long transferred = 1;
+    while(position < size && transferred > 0){ //stop if the file was truncated while copying
+      transferred = in.transferTo(position, size - position, out);
+      position += transferred;
+    }
+  }
+
+  private static void copyAndHash(final FileChannel in, final FileChannel out, final List<Hasher> hashers) throws IOException{
+    final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    while(in.read(buffer) != -1){
+      buffer.flip();
+      for(final Hasher hasher : hashers){
+        hasher.update(buffer.array(), buffer.limit());
+      }
+      while(buffer.hasRemaining()){
+        out.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
   private static Set<Path> getFetchPaths(final List<FetchItem> fetchItems, final Path bagDataDir) {
     final Set<Path> fetchPaths = new HashSet<>();
     for (final FetchItem fetchItem : fetchItems) {
@@ -0,0 +1,167 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Responsible for creating reflinks (copies that share the data blocks until either file is changed) of payload files.
+ * Java has no way to request one, so on Linux the files are cloned with {@code cp --reflink=always}, which only succeeds
+ * on filesystems that support it (like btrfs and xfs). One cp is run for each batch of files in the same directory.
+ * Only when cp reports that cloning isn't supported between two filesystems are they never tried again, any other failure
+ * only falls back to copying the contents of that batch.
+ */
+public enum ReflinkCopier {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(ReflinkCopier.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final boolean IS_LINUX = System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).contains("linux");
+  private static final int MAX_FILES_PER_COMMAND = 256;
+  //the errors for EOPNOTSUPP and EXDEV, cp is run with LC_ALL=C so they aren't translated
+  private static final List<String> UNSUPPORTED_ERRORS = Arrays.asList("Operation not supported", "Invalid cross-device link");
+  private static final Set<List<FileStore>> UNSUPPORTED_STORES = ConcurrentHashMap.newKeySet();
+  private static volatile boolean isCommandMissing;
+
+  /**
+   * Try to create each destination as a reflink of its source. Any existing destination is removed first.
+   * Only destinations with the same file name as their source are tried.
+   *
+   * @param sourceToDestination the files to clone and where to create each clone
+   * @return the sources that were reflinked, the others need to be copied
+   *
+   * @throws IOException if there was a problem removing an existing destination or waiting for the clones
+   */
+  public static Set<Path> reflink(final Map<Path, Path> sourceToDestination) throws IOException{
+    if(!IS_LINUX){
+      return Collections.emptySet();
+    }
+
+    final Set<Path> reflinked = new HashSet<>();
+    for(final Entry<List<Path>, List<Path>> directories : groupByDirectories(sourceToDestination).entrySet()){
+      final Path destinationDir = directories.getKey().get(1);
+      final List<FileStore> stores = Arrays.asList(Files.getFileStore(directories.getKey().get(0)), Files.getFileStore(destinationDir));
+      final List<Path> sources = directories.getValue();
+      for(int start = 0; start < sources.size() && !isCommandMissing && !UNSUPPORTED_STORES.contains(stores); start += MAX_FILES_PER_COMMAND){
+        final List<Path> batch = sources.subList(start, Math.min(sources.size(), start + MAX_FILES_PER_COMMAND));
+        if(reflinkBatch(batch, destinationDir, stores)){
+          reflinked.addAll(batch);
+        }
+      }
+    }
+    return reflinked;
+  }
+
+  /*
+   * the sources grouped by their directory and the directory of their destination
+   */
+  private static Map<List<Path>, List<Path>> groupByDirectories(final Map<Path, Path> sourceToDestination){
+    final Map<List<Path>, List<Path>> sourcesByDirectories = new LinkedHashMap<>();
+    for(final Entry<Path, Path> entry : sourceToDestination.entrySet()){
+      final Path source = entry.getKey().toAbsolutePath();
+      final Path destination = entry.getValue().toAbsolutePath();
+      if(source.getFileSystem() == FileSystems.getDefault() && destination.getFileSystem() == FileSystems.getDefault()
+          && source.getParent() != null && destination.getParent() != null && source.getFileName().equals(destination.getFileName())){
+        sourcesByDirectories.computeIfAbsent(Arrays.asList(source.getParent(), destination.getParent()), key -> new ArrayList<>()).add(source);
+      }
+    }
+    return sourcesByDirectories;
+  }
+
+  private static boolean reflinkBatch(final List<Path> sources, final Path destinationDir, final List<FileStore> stores) throws IOException{
+    for(final Path source : sources){
+      Files.deleteIfExists(destinationDir.resolve(source.getFileName())); //cp would otherwise write through a link at the destination
+    }
+    final List<String> command = new ArrayList<>(Arrays.asList("cp", "--reflink=always", "--preserve=timestamps",
+        "--target-directory=" + destinationDir, "--"));
+    for(final Path source : sources){
+      command.add(source.toString());
+    }
+
+    final String errors = runClone(command);
+    if(errors == null){
+      return true;
+    }
+    for(final Path source : sources){
+      Files.deleteIfExists(destinationDir.resolve(source.getFileName())); //cp leaves empty files behind when cloning fails
+    }
+    if(isUnsupported(errors)){
+      logger.info(messages.getString("reflink_not_supported"), stores.get(0), stores.get(1));
+      UNSUPPORTED_STORES.add(stores);
+    }
+    else{
+      logger.warn(messages.getString("reflink_batch_failed"), destinationDir, errors.trim());
+    }
+    return false;
+  }
+
+  private static boolean isUnsupported(final String errors){
+    for(final String error : UNSUPPORTED_ERRORS){
+      if(errors.contains(error)){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * run cp and return null if it succeeded, or what it wrote to the standard error if it didn't
+   */
+  private static String runClone(final List<String> command) throws IOException{
+    final ProcessBuilder builder = new ProcessBuilder(command);
+    builder.environment().put("LC_ALL", "C");
+    builder.redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null"))); //only run on linux
+    final Process process;
+    try{
+      process = builder.start();
+    }
+    catch(IOException e){ //cp isn't available
+      logger.info(messages.getString("reflink_command_failed"), e.getMessage());
+      isCommandMissing = true;
+      return e.getMessage();
+    }
+
+    try{
+      final String errors = readAll(process.getErrorStream());
+      return process.waitFor() == 0 ? null : errors;
+    }
+    catch(InterruptedException e){
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  private static String readAll(final InputStream in) throws IOException{
+    try(InputStream errorStream = in){
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[1024];
+      int read = errorStream.read(buffer);
+      while(read != -1){
+        bytes.write(buffer, 0, read);
+        read = errorStream.read(buffer);
+      }
+      return new String(bytes.toByteArray(), Charset.defaultCharset());
+    }
+  }
+}
@@ -16,14 +16,51 @@ public enum RelativePathWriter { ;//using enum to enforce singleton
    * @return the relative path with only unix path separator
    */
   public static String formatRelativePathString(final Path relativeTo, final Path entry){
-    final String encodedPath = encodeFilename(relativeTo.toAbsolutePath().relativize(entry.toAbsolutePath()));
-    return encodedPath.replace('\\', '/') + System.lineSeparator();
+    return encodePath(relativize(relativeTo, entry)) + System.lineSeparator();
   }
   
   /*
-   * as per https://github.com/jkunze/bagitspec/commit/152d42f6298b31a4916ea3f8f644ca4490494070 encode any new lines or carriage returns
+   * only make the paths absolute when one of them isn't, so paths from filesystems without a working directory (like zip) are left alone
    */
-  private static String encodeFilename(final Path path){
-    return path.toString().replaceAll("\n", "%0A").replaceAll("\r", "%0D");
+  private static Path relativize(final Path relativeTo, final Path entry){
+    if(relativeTo.isAbsolute() == entry.isAbsolute()){
+      return relativeTo.relativize(entry);
+    }
+    return relativeTo.toAbsolutePath().relativize(entry.toAbsolutePath());
+  }
+  
+  /*
+   * as per https://github.com/jkunze/bagitspec/commit/152d42f6298b31a4916ea3f8f644ca4490494070 encode any new lines or carriage returns,
+   * and replace \ (windows) path separators with /. Done in a single pass since it is called for every line of every manifest
+   */
+  static String encodePath(final Path relativePath){
+    final String path = relativePath.toString();
+    StringBuilder encoded = null;
+    for(int index = 0; index < path.length(); index++){
+      final char character = path.charAt(index);
+      if(character == '\n' || character == '\r' || character == '\\'){
+        if(encoded == null){
+          encoded = new StringBuilder(path.length() + 8).append(path, 0, index);
+        }
+        appendEncoded(encoded, character);
+      }
+      else if(encoded != null){
+        encoded.append(character);
+      }
+    }
+    return encoded == null ? path : encoded.toString();
+  }
+  
+  private static void appendEncoded(final StringBuilder encoded, final char character){
+    switch(character){
+      case '\n':
+        encoded.append("%0A");
+        break;
+      case '\r':
+        encoded.append("%0D");
+        break;
+      default:
+        encoded.append('/');
+    }
   }
 }
@@ -0,0 +1,256 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.ResourceBundle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the lines of a manifest sorted by path, so the same files always give the same manifest which can then be diffed or binary searched.
+ * Paths are made relative to a root that is only resolved once, and lines are encoded straight into a reusable byte buffer.
+ * Lines are kept in memory and sorted in parallel, unless there are too many and a directory for spilling was given, in which case
+ * they are sorted in runs that are spilled to hidden temporary files in that directory and merged when the manifest is written.
+ * Nothing is ever written to the default temporary directory. <b>Not thread safe</b>
+ */
+public final class SortedManifestWriter implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(SortedManifestWriter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  static final int MAX_LINES_IN_MEMORY = 1_000_000;
+  private static final int _1_MB = 1024 * 1024;
+  //there are 2 spaces between the checksum and the path so that the manifests are compatible with the md5sum tools available on most unix systems.
+  //This may cause problems on windows due to it being text mode, in which case either replace with a * or try verifying in binary mode with --binary
+  private static final String SEPARATOR = "  ";
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+  private static final Comparator<ManifestLine> BY_PATH = Comparator.comparing(line -> line.path);
+  private static final Comparator<RunReader> BY_CURRENT_PATH = Comparator.comparing(reader -> reader.line, BY_PATH);
+
+  private final Path relativeTo;
+  private final Path absoluteRelativeTo;
+  private final Charset charset;
+  private final CharsetEncoder encoder;
+  private final int maxLinesInMemory;
+  private final Path spillDirectory;
+  private final List<ManifestLine> lines = new ArrayList<>();
+  private final List<Path> runs = new ArrayList<>();
+  private final ByteBuffer bytes = ByteBuffer.allocate(_1_MB);
+  private CharBuffer chars = CharBuffer.allocate(1024);
+
+  /**
+   * Keep all the lines in memory, for when the manifest is already in memory anyway
+   *
+   * @param relativeTo the path to the root of the bag, which the paths in the manifest are relative to
+   * @param charset the encoding of the manifest
+   */
+  public SortedManifestWriter(final Path relativeTo, final Charset charset){
+    this(relativeTo, charset, MAX_LINES_IN_MEMORY, null);
+  }
+
+  /**
+   * @param relativeTo the path to the root of the bag, which the paths in the manifest are relative to
+   * @param charset the encoding of the manifest
+   * @param spillDirectory where to create the temporary files when there are too many lines to keep in memory
+   */
+  public SortedManifestWriter(final Path relativeTo, final Charset charset, final Path spillDirectory){
+    this(relativeTo, charset, MAX_LINES_IN_MEMORY, spillDirectory);
+  }
+
+  /**
+   * @param relativeTo the path to the root of the bag, which the paths in the manifest are relative to
+   * @param charset the encoding of the manifest
+   * @param maxLinesInMemory how many lines to keep in memory before spilling them to a temporary file
+   * @param spillDirectory where to create the temporary files, or null to keep all the lines in memory
+   */
+  SortedManifestWriter(final Path relativeTo, final Charset charset, final int maxLinesInMemory, final Path spillDirectory){
+    this.relativeTo = relativeTo;
+    this.absoluteRelativeTo = relativeTo.toAbsolutePath();
+    this.charset = charset;
+    this.maxLinesInMemory = maxLinesInMemory;
+    this.spillDirectory = spillDirectory;
+    //same as a java.io.Writer would do
+    encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Add a line to the manifest
+   *
+   * @param file the file
+   * @param checksum the checksum of the file
+   *
+   * @throws IOException if there was a problem spilling the sorted lines to a temporary file
+   */
+  public void add(final Path file, final String checksum) throws IOException{
+    lines.add(new ManifestLine(RelativePathWriter.encodePath(relativize(file)), checksum));
+    if(spillDirectory != null && lines.size() >= maxLinesInMemory){
+      spill();
+    }
+  }
+
+  /*
+   * only make the paths absolute when one of them isn't, so paths from filesystems without a working directory (like zip) are left alone
+   */
+  private Path relativize(final Path file){
+    if(relativeTo.isAbsolute() == file.isAbsolute()){
+      return relativeTo.relativize(file);
+    }
+    return absoluteRelativeTo.relativize(file.toAbsolutePath());
+  }
+
+  /**
+   * Write all the lines added so far, sorted by path. The stream is not closed.
+   *
+   * @param out where to write the manifest
+   *
+   * @throws IOException if there was a problem writing to the stream or reading the temporary files
+   */
+  public void writeTo(final OutputStream out) throws IOException{
+    if(runs.isEmpty()){
+      for(final ManifestLine line : sortLines()){
+        writeLine(line, out);
+      }
+    }
+    else{
+      if(!lines.isEmpty()){
+        spill();
+      }
+      mergeRuns(out);
+    }
+    flush(out);
+  }
+
+  private ManifestLine[] sortLines(){
+    final ManifestLine[] sorted = lines.toArray(new ManifestLine[0]);
+    lines.clear();
+    Arrays.parallelSort(sorted, BY_PATH);
+    return sorted;
+  }
+
+  private void spill() throws IOException{
+    final Path run = Files.createTempFile(spillDirectory, ".manifest-", ".run");
+    runs.add(run);
+    logger.debug(messages.getString("spilling_sorted_manifest_lines"), lines.size(), run);
+    try(OutputStream out = Files.newOutputStream(run)){
+      for(final ManifestLine line : sortLines()){
+        writeLine(line, out);
+      }
+      flush(out);
+    }
+  }
+
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private void mergeRuns(final OutputStream out) throws IOException{
+    logger.debug(messages.getString("merging_sorted_manifest_runs"), runs.size());
+    final PriorityQueue<RunReader> readers = new PriorityQueue<>(runs.size(), BY_CURRENT_PATH);
+    try{
+      for(final Path run : runs){
+        final RunReader reader = new RunReader(Files.newBufferedReader(run, charset));
+        if(reader.next()){
+          readers.add(reader);
+        }
+        else{
+          reader.close();
+        }
+      }
+      while(!readers.isEmpty()){
+        final RunReader reader = readers.poll();
+        writeLine(reader.line, out);
+        if(reader.next()){
+          readers.add(reader);
+        }
+        else{
+          reader.close();
+        }
+      }
+    }
+    finally{
+      for(final RunReader reader : readers){
+        reader.close();
+      }
+    }
+  }
+
+  private void writeLine(final ManifestLine line, final OutputStream out) throws IOException{
+    final int length = line.checksum.length() + SEPARATOR.length() + line.path.length() + LINE_SEPARATOR.length();
+    if(chars.capacity() < length){
+      chars = CharBuffer.allocate(length);
+    }
+    chars.clear();
+    chars.put(line.checksum).put(SEPARATOR).put(line.path).put(LINE_SEPARATOR).flip();
+
+    CoderResult result = encoder.encode(chars, bytes, false);
+    while(result.isOverflow()){
+      flush(out);
+      result = encoder.encode(chars, bytes, false);
+    }
+  }
+
+  private void flush(final OutputStream out) throws IOException{
+    out.write(bytes.array(), 0, bytes.position());
+    bytes.clear();
+  }
+
+  /**
+   * Delete any temporary files, including when the manifest wasn't written because of a failure
+   */
+  @Override
+  public void close() throws IOException{
+    lines.clear();
+    for(final Path run : runs){
+      Files.deleteIfExists(run);
+    }
+    runs.clear();
+  }
+
+  private static final class ManifestLine{
+    private final String path;
+    private final String checksum;
+
+    private ManifestLine(final String path, final String checksum){
+      this.path = path;
+      this.checksum = checksum;
+    }
+  }
+
+  /*
+   * reads back the lines of a run, which are in the same format as a manifest
+   */
+  private static final class RunReader implements Closeable{
+    private final BufferedReader reader;
+    private ManifestLine line;
+
+    private RunReader(final BufferedReader reader){
+      this.reader = reader;
+    }
+
+    private boolean next() throws IOException{
+      final String nextLine = reader.readLine();
+      if(nextLine == null){
+        return false;
+      }
+      final int separatorIndex = nextLine.indexOf(SEPARATOR);
+      line = new ManifestLine(nextLine.substring(separatorIndex + SEPARATOR.length()), nextLine.substring(0, separatorIndex));
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException{
+      reader.close();
+    }
+  }
+}
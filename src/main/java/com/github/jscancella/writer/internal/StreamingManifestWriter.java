@@ -0,0 +1,209 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Manifest;
+
+/**
+ * Hands manifest lines to a background thread as checksums are calculated so hashing doesn't wait on writing them.
+ * At most a fixed number of lines can be waiting, after which {@link #append(Manifest, Path, String)} blocks until the writer catches up.
+ * Lines are sorted by path with a {@link SortedManifestWriter} per manifest, which spills them to temporary files next to the manifests
+ * when there are too many to keep in memory, and written to the manifest files when this is closed.
+ * The manifests share one limit of lines kept in memory, so adding algorithms doesn't add to the memory used.
+ */
+public final class StreamingManifestWriter implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(StreamingManifestWriter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int MAX_PENDING_LINES = 10_000;
+  private static final long WAIT_MILLISECONDS = 100;
+  private static final PendingLine END_OF_LINES = new PendingLine(null, null, null);
+
+  private final BlockingQueue<PendingLine> queue = new ArrayBlockingQueue<>(MAX_PENDING_LINES);
+  private final Map<String, OutputStream> writers = new HashMap<>();
+  private final Map<String, SortedManifestWriter> sortedWriters = new HashMap<>();
+  private final List<Path> manifestFiles = new ArrayList<>();
+  private final Thread writerThread;
+  private volatile IOException failure;
+  private boolean closed;
+
+  /**
+   * Create the (empty) manifest files and start the background writer.
+   *
+   * @param manifests the manifests whose lines will be appended
+   * @param outputDir where to write the manifest files
+   * @param bagRootDir the root of the bag, which the paths in the manifest are relative to
+   * @param filenameBase either manifest- or tagmanifest-
+   * @param charset the encoding of the manifest files
+   *
+   * @throws IOException if one of the manifest files can't be created
+   */
+  public StreamingManifestWriter(final Collection<Manifest> manifests, final Path outputDir, final Path bagRootDir,
+      final String filenameBase, final Charset charset) throws IOException{
+    final int maxLinesInMemory = Math.max(1, SortedManifestWriter.MAX_LINES_IN_MEMORY / Math.max(1, manifests.size()));
+    try{
+      for(final Manifest manifest : manifests){
+        final Path manifestFile = outputDir.resolve(filenameBase + manifest.getBagitAlgorithmName() + ".txt");
+        logger.debug(messages.getString("writing_manifest_to_path"), manifestFile);
+        writers.put(manifest.getBagitAlgorithmName(),
+            Files.newOutputStream(manifestFile, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE));
+        sortedWriters.put(manifest.getBagitAlgorithmName(), new SortedManifestWriter(bagRootDir, charset, maxLinesInMemory, outputDir));
+        manifestFiles.add(manifestFile);
+      }
+    }
+    catch(IOException e){
+      closeWriters();
+      throw e;
+    }
+
+    writerThread = new Thread(this::writeLines, "streaming-manifest-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Queue a line to be added to the manifest file, blocking if too many lines are already waiting.
+   *
+   * @param manifest the manifest the line belongs to
+   * @param file the file
+   * @param checksum the checksum of the file
+   *
+   * @throws IOException if the background writer failed
+   */
+  public void append(final Manifest manifest, final Path file, final String checksum) throws IOException{
+    put(new PendingLine(manifest.getBagitAlgorithmName(), file, checksum));
+  }
+
+  /**
+   * @return the manifest files being written
+   */
+  public List<Path> getManifestFiles(){
+    return new ArrayList<>(manifestFiles);
+  }
+
+  /**
+   * Wait for all the queued lines to be sorted and written and close the manifest files.
+   *
+   * @throws IOException if the background writer failed
+   */
+  @Override
+  public void close() throws IOException{
+    if(closed){
+      return;
+    }
+    closed = true;
+
+    if(failure == null){
+      put(END_OF_LINES);
+    }
+    try{
+      writerThread.join();
+    }
+    catch(InterruptedException e){
+      writerThread.interrupt();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+    checkForFailure();
+  }
+
+  private void put(final PendingLine line) throws IOException{
+    try{
+      //check periodically so that a failed writer thread doesn't block forever
+      while(!queue.offer(line, WAIT_MILLISECONDS, TimeUnit.MILLISECONDS)){
+        checkForFailure();
+      }
+    }
+    catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+    checkForFailure();
+  }
+
+  private void checkForFailure() throws IOException{
+    if(failure != null){
+      throw new IOException(messages.getString("streaming_manifest_writer_failed"), failure);
+    }
+  }
+
+  private void writeLines(){
+    try{
+      PendingLine line = queue.take();
+      while(line != END_OF_LINES){
+        sortedWriters.get(line.algorithm).add(line.file, line.checksum);
+        line = queue.take();
+      }
+      for(final Map.Entry<String, SortedManifestWriter> sortedWriter : sortedWriters.entrySet()){
+        sortedWriter.getValue().writeTo(writers.get(sortedWriter.getKey()));
+      }
+    }
+    catch(IOException e){
+      failure = e;
+    }
+    catch(InterruptedException e){
+      failure = new InterruptedIOException(e.getMessage());
+    }
+    catch(RuntimeException e){
+      failure = new IOException(e);
+    }
+    finally{
+      try{
+        closeWriters();
+      }
+      catch(IOException e){
+        if(failure == null){
+          failure = e;
+        }
+      }
+      queue.clear();
+    }
+  }
+
+  private void closeWriters() throws IOException{
+    IOException closeFailure = null;
+    final List<Closeable> closeables = new ArrayList<>(writers.values());
+    closeables.addAll(sortedWriters.values());
+    for(final Closeable closeable : closeables){
+      try{
+        closeable.close();
+      }
+      catch(IOException e){
+        closeFailure = e;
+      }
+    }
+    if(closeFailure != null){
+      throw closeFailure;
+    }
+  }
+
+  private static final class PendingLine{
+    private final String algorithm;
+    private final Path file;
+    private final String checksum;
+
+    private PendingLine(final String algorithm, final Path file, final String checksum){
+      this.algorithm = algorithm;
+      this.file = file;
+      this.checksum = checksum;
+    }
+  }
+}
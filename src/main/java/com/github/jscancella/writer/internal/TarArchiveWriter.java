@@ -0,0 +1,213 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Writes a POSIX (ustar) tar archive. Paths that don't fit in the ustar name and prefix fields or aren't ASCII,
+ * and files too large for the ustar size field, are written with a pax extended header before the entry.
+ * See <a href="https://pubs.opengroup.org/onlinepubs/9699919799/utilities/pax.html">the pax specification</a>
+ */
+@SuppressWarnings({"PMD.AvoidUsingOctalValues", "PMD.TooManyMethods"})
+final class TarArchiveWriter implements ArchiveWriter {
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final int BLOCK_SIZE = 512;
+  private static final int RECORD_SIZE = BLOCK_SIZE * 20;
+  private static final int _64_KB = 1024 * 64;
+  private static final int NAME_LENGTH = 100;
+  private static final int PREFIX_LENGTH = 155;
+  private static final long MAX_USTAR_SIZE = 077_777_777_777L; //11 octal digits
+  private static final int FILE_MODE = 0644;
+  private static final byte REGULAR_FILE = '0';
+  private static final byte PAX_HEADER = 'x';
+
+  private final OutputStream out;
+  private final EntryOutputStream entryStream = new EntryOutputStream();
+  private long archiveSize;
+  private long entrySize;
+  private long entryBytesWritten;
+  private String entryName;
+
+  TarArchiveWriter(final OutputStream out){
+    this.out = new BufferedOutputStream(out, _64_KB);
+  }
+
+  @Override
+  public OutputStream putEntry(final String name, final long size, final FileTime lastModified) throws IOException{
+    final long modifiedSeconds = Math.max(0, lastModified.to(TimeUnit.SECONDS));
+    final Map<String, String> paxHeaders = new LinkedHashMap<>();
+    String[] prefixAndName = splitName(name);
+    if(prefixAndName.length == 0){
+      paxHeaders.put("path", name);
+      prefixAndName = new String[]{"", fallbackName(name)};
+    }
+    long ustarSize = size;
+    if(size > MAX_USTAR_SIZE){
+      paxHeaders.put("size", Long.toString(size));
+      ustarSize = 0;
+    }
+
+    if(!paxHeaders.isEmpty()){
+      final byte[] records = formatPaxRecords(paxHeaders);
+      writeHeader("", fallbackName("PaxHeaders/" + prefixAndName[1]), records.length, modifiedSeconds, PAX_HEADER);
+      write(records, 0, records.length);
+      padToBlock(records.length);
+    }
+    writeHeader(prefixAndName[0], prefixAndName[1], ustarSize, modifiedSeconds, REGULAR_FILE);
+
+    entryName = name;
+    entrySize = size;
+    entryBytesWritten = 0;
+    return entryStream;
+  }
+
+  @Override
+  public void closeEntry() throws IOException{
+    if(entryBytesWritten != entrySize){
+      throw new IOException(MessageFormatter.format(messages.getString("tar_entry_size_mismatch"), entryName, entrySize).getMessage());
+    }
+    padToBlock(entrySize);
+  }
+
+  @Override
+  public void finish() throws IOException{
+    write(new byte[BLOCK_SIZE * 2], 0, BLOCK_SIZE * 2); //end of archive marker
+    final int remainder = (int) (archiveSize % RECORD_SIZE);
+    if(remainder != 0){
+      write(new byte[RECORD_SIZE - remainder], 0, RECORD_SIZE - remainder);
+    }
+    out.flush();
+  }
+
+  /*
+   * split the name into a ustar prefix and name, or return an empty array if it doesn't fit or isn't ASCII
+   */
+  private static String[] splitName(final String name){
+    if(!StandardCharsets.US_ASCII.newEncoder().canEncode(name)){
+      return new String[0];
+    }
+    if(name.length() <= NAME_LENGTH){
+      return new String[]{"", name};
+    }
+
+    int separator = name.indexOf('/', name.length() - NAME_LENGTH - 1);
+    while(separator != -1 && separator <= PREFIX_LENGTH){
+      if(separator > 0 && separator < name.length() - 1){
+        return new String[]{name.substring(0, separator), name.substring(separator + 1)};
+      }
+      separator = name.indexOf('/', separator + 1);
+    }
+    return new String[0];
+  }
+
+  /*
+   * an ASCII name for readers that don't support pax headers
+   */
+  private static String fallbackName(final String name){
+    final StringBuilder ascii = new StringBuilder(name.length());
+    for(final char character : name.toCharArray()){
+      ascii.append(character < 0x80 ? character : '_');
+    }
+    return ascii.length() <= NAME_LENGTH ? ascii.toString() : ascii.substring(ascii.length() - NAME_LENGTH);
+  }
+
+  /*
+   * each record is "<length> <key>=<value>\n" where the length includes itself
+   */
+  private static byte[] formatPaxRecords(final Map<String, String> paxHeaders){
+    final StringBuilder records = new StringBuilder();
+    for(final Entry<String, String> header : paxHeaders.entrySet()){
+      final String record = " " + header.getKey() + "=" + header.getValue() + "\n";
+      final int recordLength = record.getBytes(StandardCharsets.UTF_8).length;
+      int length = recordLength + Integer.toString(recordLength).length();
+      length = recordLength + Integer.toString(length).length();
+      records.append(length).append(record);
+    }
+    return records.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void writeHeader(final String prefix, final String name, final long size, final long modifiedSeconds, final byte type) throws IOException{
+    final byte[] header = new byte[BLOCK_SIZE];
+    putString(header, 0, NAME_LENGTH, name);
+    putOctal(header, 100, 8, FILE_MODE);
+    putOctal(header, 108, 8, 0); //uid
+    putOctal(header, 116, 8, 0); //gid
+    putOctal(header, 124, 12, size);
+    putOctal(header, 136, 12, modifiedSeconds);
+    Arrays.fill(header, 148, 156, (byte) ' '); //checksum is calculated with its own field as spaces
+    header[156] = type;
+    putString(header, 257, 6, "ustar");
+    putString(header, 263, 2, "00");
+    putOctal(header, 329, 8, 0); //device major
+    putOctal(header, 337, 8, 0); //device minor
+    putString(header, 345, PREFIX_LENGTH, prefix);
+
+    long checksum = 0;
+    for(final byte headerByte : header){
+      checksum += headerByte & 0xff;
+    }
+    putOctal(header, 148, 7, checksum);
+
+    write(header, 0, BLOCK_SIZE);
+  }
+
+  private static void putString(final byte[] header, final int offset, final int length, final String value){
+    final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+  }
+
+  /*
+   * zero padded octal followed by a NUL
+   */
+  private static void putOctal(final byte[] header, final int offset, final int length, final long value){
+    final String octal = Long.toOctalString(value);
+    final StringBuilder padded = new StringBuilder(length - 1);
+    for(int index = octal.length(); index < length - 1; index++){
+      padded.append('0');
+    }
+    padded.append(octal);
+    putString(header, offset, length - 1, padded.toString());
+  }
+
+  private void padToBlock(final long size) throws IOException{
+    final int remainder = (int) (size % BLOCK_SIZE);
+    if(remainder != 0){
+      write(new byte[BLOCK_SIZE - remainder], 0, BLOCK_SIZE - remainder);
+    }
+  }
+
+  private void write(final byte[] bytes, final int offset, final int length) throws IOException{
+    out.write(bytes, offset, length);
+    archiveSize += length;
+  }
+
+  /*
+   * forwards the contents of the current entry to the archive, making sure no more than the size of the entry is written
+   */
+  private final class EntryOutputStream extends OutputStream{
+    @Override
+    public void write(final int value) throws IOException{
+      write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException{
+      if(entryBytesWritten + length > entrySize){
+        throw new IOException(MessageFormatter.format(messages.getString("tar_entry_size_mismatch"), entryName, entrySize).getMessage());
+      }
+      TarArchiveWriter.this.write(bytes, offset, length);
+      entryBytesWritten += length;
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.internal.FutureUtils;
+import com.github.jscancella.internal.PathUtils;
+
+/**
+ * Responsible for writing a bag so that a crash part way through never leaves something that looks like a complete bag.
+ * The tag files are written to a staging directory inside the bag, synced to disk, and then renamed into place in a fixed order
+ * with the bagit.txt last, so a bag without a bagit.txt (or with a staging directory) is an interrupted write.
+ * Files are synced in batches that run in parallel instead of one at a time.
+ * Mainly used in {@link com.github.jscancella.writer.BagWriter}
+ */
+public enum TransactionalBagWriter {;//using enum to enforce singleton
+  private static final Logger logger = LoggerFactory.getLogger(TransactionalBagWriter.class);
+  private static final ResourceBundle messages = ResourceBundle.getBundle("MessageBundle");
+  private static final String STAGING_DIRECTORY = ".bagit-transaction";
+  private static final String BAGIT_FILE = "bagit.txt";
+  private static final int SYNC_BATCH_SIZE = 256;
+  private static final Pattern IN_PLACE_TEMP_DIRECTORY = Pattern.compile("\\d+\\.temp");
+  private static final Pattern ATOMIC_WRITE_TEMP_FILE = Pattern.compile("\\..+\\.tmp");
+  private static final Pattern TAG_FILE = Pattern.compile("(tag)?manifest-.+\\.txt|fetch\\.txt|bag-info\\.txt|package-info\\.txt");
+
+  /**
+   * Mark the start of a write by creating the staging directory and removing any bagit.txt that is already there,
+   * so the output directory isn't a bag until {@link #commit(Path, Path, Set, ExecutorService)} finishes
+   *
+   * @param outputDir the directory that will become the root of the bag
+   *
+   * @return the staging directory to write the tag files to, as if it was the root of the bag
+   *
+   * @throws IOException if there was a problem creating the staging directory
+   */
+  public static Path begin(final Path outputDir) throws IOException{
+    logger.info(messages.getString("beginning_transactional_write"), outputDir);
+    final Path stagingDir = outputDir.resolve(STAGING_DIRECTORY);
+    if(Files.exists(stagingDir)){
+      deleteDirectory(stagingDir);
+    }
+    Files.createDirectories(stagingDir);
+    Files.deleteIfExists(outputDir.resolve(BAGIT_FILE));
+    return stagingDir;
+  }
+
+  /**
+   * Make sure the written files, and the directories they are in up to the output directory, are on disk.
+   * Only the files that were written are synced, not any others that were already in the output directory.
+   * The files are synced in batches that run in parallel.
+   *
+   * @param outputDir the root of the bag
+   * @param writtenFiles the files that were written to the output directory, like the payload files
+   * @param executor the executor used to sync the batches, or null to use a pool that is only used for this sync
+   *
+   * @throws IOException if there was a problem syncing a file
+   */
+  public static void sync(final Path outputDir, final Collection<Path> writtenFiles, final ExecutorService executor) throws IOException{
+    final List<Path> files = new ArrayList<>(writtenFiles);
+    final Set<Path> directories = new TreeSet<>(Comparator.reverseOrder()); //the deepest first, so each directory is synced after its children
+    directories.add(outputDir);
+    directories.add(outputDir.resolve("data"));
+    for(final Path file : files){
+      Path parent = file.getParent();
+      while(parent != null && parent.startsWith(outputDir) && directories.add(parent)){
+        parent = parent.getParent();
+      }
+    }
+    syncInBatches(files, executor);
+    for(final Path dir : directories){
+      syncDirectory(dir);
+    }
+  }
+
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private static void syncInBatches(final List<Path> files, final ExecutorService executor) throws IOException{
+    logger.debug(messages.getString("syncing_files"), files.size());
+    final int batchCount = (files.size() + SYNC_BATCH_SIZE - 1) / SYNC_BATCH_SIZE;
+    if(batchCount == 0){
+      return;
+    }
+    final ExecutorService syncExecutor = executor == null ? 
+        Executors.newFixedThreadPool(Math.min(batchCount, Runtime.getRuntime().availableProcessors())) : executor;
+    final List<Future<?>> futures = new ArrayList<>();
+    try{
+      for(int start = 0; start < files.size(); start += SYNC_BATCH_SIZE){
+        final List<Path> batch = files.subList(start, Math.min(start + SYNC_BATCH_SIZE, files.size()));
+        futures.add(syncExecutor.submit(() -> {
+          for(final Path file : batch){
+            syncFile(file);
+          }
+          return null;
+        }));
+      }
+      for(final Future<?> future : futures){
+        FutureUtils.waitFor(future, IOException.class);
+      }
+    }
+    finally{
+      for(final Future<?> future : futures){
+        future.cancel(true);
+      }
+      if(executor == null){
+        syncExecutor.shutdown();
+      }
+    }
+  }
+
+  /*
+   * opened for reading since the payload can be links to read only files. Some platforms (like windows) can only
+   * sync a file that is open for writing, so that is only tried if syncing it for reading fails
+   */
+  private static void syncFile(final Path file) throws IOException{
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      channel.force(true);
+      return;
+    }
+    catch(IOException e){
+      logger.debug(messages.getString("sync_file_for_reading_failed"), file, e.getMessage());
+    }
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)){
+      channel.force(true);
+    }
+  }
+
+  /*
+   * so renames and new files survive a crash. Not every platform (or filesystem) can open a directory, in which case
+   * the directory is synced along with the files anyway
+   */
+  private static void syncDirectory(final Path directory){
+    try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)){
+      channel.force(true);
+    }
+    catch(IOException | UnsupportedOperationException e){
+      logger.debug(messages.getString("sync_directory_not_supported"), directory, e.getMessage());
+    }
+  }
+
+  /**
+   * Sync the staged tag files and rename them into the output directory, payload manifests first,
+   * then the other tag files, then the tag manifests, and the bagit.txt last. The staging directory is removed afterwards.
+   *
+   * @param stagingDir the staging directory returned from {@link #begin(Path)}
+   * @param outputDir the root of the bag
+   * @param stagedTagManifests the tag manifests, which list the files in the staging directory
+   * @param executor the executor used to sync the files, or null to use a pool that is only used for this commit
+   *
+   * @return the tag manifests listing the files where they are in the output directory
+   *
+   * @throws IOException if there was a problem syncing or renaming a file
+   */
+  public static Set<Manifest> commit(final Path stagingDir, final Path outputDir, final Set<Manifest> stagedTagManifests,
+      final ExecutorService executor) throws IOException{
+    final List<Path> stagedFiles = new ArrayList<>();
+    try(Stream<Path> files = Files.walk(stagingDir)){
+      files.filter(Files::isRegularFile).forEach(stagedFiles::add);
+    }
+    syncInBatches(stagedFiles, executor);
+    stagedFiles.sort(Comparator.comparingInt((Path file) -> publishOrder(stagingDir, file)).thenComparing(Comparator.naturalOrder()));
+
+    Path bagitFile = null;
+    for(final Path stagedFile : stagedFiles){
+      if(publishOrder(stagingDir, stagedFile) == Integer.MAX_VALUE){
+        bagitFile = stagedFile;
+      }
+      else{
+        publish(stagingDir, stagedFile, outputDir);
+      }
+    }
+    syncDirectory(outputDir);
+    if(bagitFile != null){
+      publish(stagingDir, bagitFile, outputDir);
+      syncDirectory(outputDir);
+    }
+    deleteDirectory(stagingDir);
+
+    return moveToOutputDir(stagedTagManifests, stagingDir, outputDir);
+  }
+
+  private static int publishOrder(final Path stagingDir, final Path stagedFile){
+    final Path relativePath = stagingDir.relativize(stagedFile);
+    final String name = relativePath.toString();
+    if(BAGIT_FILE.equals(name)){
+      return Integer.MAX_VALUE;
+    }
+    if(name.startsWith("tagmanifest-")){
+      return 2;
+    }
+    if(name.startsWith("manifest-")){
+      return 0;
+    }
+    return 1;
+  }
+
+  private static void publish(final Path stagingDir, final Path stagedFile, final Path outputDir) throws IOException{
+    final Path target = PathUtils.resolve(outputDir, stagingDir.relativize(stagedFile));
+    logger.debug(messages.getString("publishing_tag_file"), target);
+    final Path parent = target.getParent();
+    if(parent != null){
+      Files.createDirectories(parent);
+    }
+    AtomicFileWriter.move(stagedFile, target);
+  }
+
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private static Set<Manifest> moveToOutputDir(final Set<Manifest> stagedTagManifests, final Path stagingDir, final Path outputDir){
+    final Set<Manifest> tagManifests = new HashSet<>();
+    for(final Manifest stagedTagManifest : stagedTagManifests){
+      final Manifest tagManifest = new Manifest(stagedTagManifest.getBagitAlgorithmName());
+      for(final Entry<Path, String> entry : stagedTagManifest.getFileToChecksumMap().entrySet()){
+        tagManifest.getFileToChecksumMap().put(PathUtils.resolve(outputDir, stagingDir.relativize(entry.getKey())), entry.getValue());
+      }
+      tagManifests.add(tagManifest);
+    }
+    return tagManifests;
+  }
+
+  /**
+   * Detect and clean up writes that were interrupted, for example by a crash. Three kinds of interrupted writes are cleaned up:
+   * a transactional write, whose staging directory is removed along with any tag files published before the bagit.txt was;
+   * creating a bag in place, whose files are moved back out of the temporary directory that would have become the data directory;
+   * and replacing a tag file of an existing bag, whose temporary file is removed.
+   *
+   * @param bagDir the directory that was being written to
+   *
+   * @return true if an interrupted write was found and cleaned up
+   *
+   * @throws IOException if there was a problem cleaning up
+   */
+  public static boolean recover(final Path bagDir) throws IOException{
+    final Path stagingDir = bagDir.resolve(STAGING_DIRECTORY);
+    final boolean isCommitted = Files.exists(bagDir.resolve(BAGIT_FILE));
+    final boolean isInterruptedTransaction = Files.exists(stagingDir);
+    if(isInterruptedTransaction){
+      logger.warn(messages.getString("recovering_interrupted_write"), bagDir);
+      deleteDirectory(stagingDir);
+    }
+
+    boolean recovered = isInterruptedTransaction;
+    try(DirectoryStream<Path> children = Files.newDirectoryStream(bagDir)){
+      for(final Path child : children){
+        if(isCommitted ? isInterruptedTagFileReplacement(child) : isInterruptedTransaction && isTagFile(child)){
+          logger.warn(messages.getString("removing_interrupted_write_file"), child);
+          Files.delete(child);
+          recovered = true;
+        }
+        else if(!isCommitted && isInterruptedBagInPlace(child)){
+          restoreMovedFiles(child, bagDir);
+          recovered = true;
+        }
+      }
+    }
+    return recovered;
+  }
+
+  private static boolean isInterruptedTagFileReplacement(final Path file){
+    return Files.isRegularFile(file) && ATOMIC_WRITE_TEMP_FILE.matcher(PathUtils.getFilename(file)).matches();
+  }
+
+  private static boolean isTagFile(final Path file){
+    return Files.isRegularFile(file) && TAG_FILE.matcher(PathUtils.getFilename(file)).matches();
+  }
+
+  private static boolean isInterruptedBagInPlace(final Path directory){
+    return Files.isDirectory(directory) && IN_PLACE_TEMP_DIRECTORY.matcher(PathUtils.getFilename(directory)).matches();
+  }
+
+  /*
+   * undo moving the payload files into the temporary directory that would have become the data directory
+   */
+  private static void restoreMovedFiles(final Path tempDir, final Path bagDir) throws IOException{
+    logger.warn(messages.getString("restoring_files_moved_in_place"), tempDir);
+    try(DirectoryStream<Path> movedFiles = Files.newDirectoryStream(tempDir)){
+      for(final Path movedFile : movedFiles){
+        Files.move(movedFile, bagDir.resolve(movedFile.getFileName().toString()));
+      }
+    }
+    Files.delete(tempDir);
+  }
+
+  private static void deleteDirectory(final Path directory) throws IOException{
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>(){
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException{
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException{
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a zip archive, relying on {@link ZipOutputStream} to add the Zip64 extensions when they are needed.
+ * Entry names are encoded in UTF-8.
+ */
+final class ZipArchiveWriter implements ArchiveWriter {
+  private final ZipOutputStream zip;
+  
+  ZipArchiveWriter(final OutputStream out){
+    zip = new ZipOutputStream(out);
+  }
+
+  @Override
+  public OutputStream putEntry(final String name, final long size, final FileTime lastModified) throws IOException{
+    final ZipEntry entry = new ZipEntry(name);
+    entry.setSize(size);
+    entry.setLastModifiedTime(lastModified);
+    zip.putNextEntry(entry);
+    return zip;
+  }
+
+  @Override
+  public void closeEntry() throws IOException{
+    zip.closeEntry();
+  }
+
+  @Override
+  public void finish() throws IOException{
+    zip.finish();
+    zip.flush();
+  }
+}
@@ -2,11 +2,16 @@ package com.github.jscancella;
 
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -37,6 +42,14 @@ abstract public class TempFolderTest {
     return Files.createFile(newFile);
   }
   
+  /*
+   * a new, writable zip filesystem backed by a file in the temp folder. Close it before the test ends
+   */
+  public FileSystem createZipFileSystem(String name) throws IOException {
+    Map<String, String> env = Collections.singletonMap("create", "true");
+    return FileSystems.newFileSystem(URI.create("jar:" + folder.resolve(name).toUri()), env);
+  }
+  
   public Path copyBagToTempFolder(Path bagFolder) throws IOException{
 	  Path bagCopyDir = createDirectory(bagFolder.getFileName() + "_copy");
 	  Files.walkFileTree(bagFolder, new SimpleFileVisitor<Path>() {
@@ -2,11 +2,15 @@ package com.github.jscancella.conformance;
 
 import java.io.File;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Set;
 
 import org.junit.jupiter.api.Assertions;
@@ -14,6 +18,7 @@ import org.junit.jupiter.api.Test;
 
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.writer.BagWriter;
 
 public class BagLinterTest {
 
@@ -26,6 +31,21 @@ public class BagLinterTest {
     Assertions.assertTrue(warnings.size() == 0);
   }
   
+  @Test
+  public void testBagInZipFileSystem() throws Exception {
+    Path zipFile = Files.createTempFile("weakAlgorithm", ".zip");
+    Files.delete(zipFile);
+    try(FileSystem zip = FileSystems.newFileSystem(URI.create("jar:" + zipFile.toUri()), Collections.singletonMap("create", "true"))){
+      BagWriter.write(BagReader.read(rootDir.resolve("weakAlgorithm")), zip.getPath("/bag"));
+      
+      Set<BagitWarning> warnings = BagLinter.lintBag(zip.getPath("/bag"));
+      Assertions.assertTrue(warnings.contains(BagitWarning.WEAK_CHECKSUM_ALGORITHM));
+    }
+    finally{
+      Files.deleteIfExists(zipFile);
+    }
+  }
+  
   @Test
   public void testBagWithinABag() throws Exception{
     Set<BagitWarning> warnings =  BagLinter.lintBag(rootDir.resolve("bagWithinABag"));
@@ -17,6 +17,7 @@ import com.github.jscancella.conformance.exceptions.MetatdataValueIsNotRepeatabl
 import com.github.jscancella.conformance.exceptions.RequiredManifestNotPresentException;
 import com.github.jscancella.conformance.exceptions.RequiredMetadataFieldNotPresentException;
 import com.github.jscancella.conformance.exceptions.RequiredTagFileNotPresentException;
+import com.github.jscancella.conformance.profile.CompiledBagitProfile;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.reader.BagReader;
 
@@ -120,4 +121,20 @@ public class BagProfileCheckerTest extends TempFolderTest {
           () -> { BagProfileChecker.bagConformsToProfile(inputStream, bag); });
     }
   }
+  
+  @Test
+  public void testCompiledProfileIsReused() throws Exception{
+    CompiledBagitProfile profile;
+    try(InputStream inputStream = Files.newInputStream(profileJson, StandardOpenOption.READ)){
+      profile = CompiledBagitProfile.compile(inputStream);
+    }
+    
+    BagProfileChecker.bagConformsToProfile(profile, BagReader.read(new File("src/test/resources/bagitProfileTestBags/profileConformantBag").toPath()));
+    Bag wrongValueBag = BagReader.read(new File("src/test/resources/bagitProfileTestBags/wrongValueForContactNameBag").toPath());
+    Assertions.assertThrows(MetatdataValueIsNotAcceptableException.class, 
+        () -> { BagProfileChecker.bagConformsToProfile(profile, wrongValueBag); });
+    Bag wrongVersionBag = BagReader.read(new File("src/test/resources/bagitProfileTestBags/wrongBagitVersionBag").toPath());
+    Assertions.assertThrows(BagitVersionIsNotAcceptableException.class, 
+        () -> { BagProfileChecker.bagConformsToProfile(profile, wrongVersionBag); });
+  }
 }
@@ -0,0 +1,125 @@
+package com.github.jscancella.conformance.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.conformance.BagitWarning;
+import com.github.jscancella.conformance.LintOptions;
+
+public class LargeBagCheckerTest extends TempFolderTest {
+
+  private LintOptions createEstimatingOptions(){
+    LintOptions options = new LintOptions();
+    options.setEstimateLargeBag(true);
+    options.setLargeFileCount(3);
+    options.setLargePayloadSize(100);
+    return options;
+  }
+
+  @Test
+  public void testEstimateFromPayloadOxum() throws Exception{
+    //there is no data directory, so walking it would fail
+    Files.write(folder.resolve("bag-info.txt"), Arrays.asList("Payload-Oxum: 500.4"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList(), createEstimatingOptions());
+
+    Assertions.assertTrue(warnings.contains(BagitWarning.LARGE_BAG_SIZE));
+    Assertions.assertTrue(warnings.contains(BagitWarning.LARGE_NUMBER_OF_FILES));
+  }
+
+  @Test
+  public void testEstimateFromManifestLines() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("a  data/1", "b  data/2", "c  data/3", "d  data/4", "e  data/5"),
+        StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Arrays.asList(BagitWarning.LARGE_BAG_SIZE), createEstimatingOptions());
+
+    Assertions.assertEquals(Collections.singleton(BagitWarning.LARGE_NUMBER_OF_FILES), warnings);
+  }
+
+  @Test
+  public void testManifestWithFewLinesIsNotLarge() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("a  data/1", "b  data/2", "c  data/3"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Arrays.asList(BagitWarning.LARGE_BAG_SIZE), createEstimatingOptions());
+
+    Assertions.assertTrue(warnings.isEmpty());
+  }
+
+  @Test
+  public void testOverflowingPayloadOxumIsTreatedAsMissing() throws Exception{
+    Path dataDir = createDirectory("data");
+    Files.write(dataDir.resolve("file.txt"), new byte[10]);
+    Files.write(folder.resolve("bag-info.txt"), Arrays.asList("Payload-Oxum: 99999999999999999999.4"), StandardCharsets.UTF_8);
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("a  data/file.txt"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList(), createEstimatingOptions());
+
+    Assertions.assertTrue(warnings.isEmpty());
+  }
+
+  @Test
+  public void testDefaultOptionsWalkPayload() throws Exception{
+    Path dataDir = createDirectory("data");
+    Files.write(dataDir.resolve("file.txt"), new byte[10]);
+    Files.write(folder.resolve("bag-info.txt"), Arrays.asList("Payload-Oxum: 99999999999999999999999.4"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, warnings, Collections.emptyList());
+
+    Assertions.assertTrue(warnings.isEmpty());
+  }
+
+  @Test
+  public void testWalkPayloadWhenSizeCannotBeEstimated() throws Exception{
+    Path dataDir = createDirectory("data");
+    Files.write(dataDir.resolve("file.txt"), new byte[200]);
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("a  data/file.txt"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList(), createEstimatingOptions());
+
+    Assertions.assertEquals(Collections.singleton(BagitWarning.LARGE_BAG_SIZE), warnings);
+  }
+
+  @Test
+  public void testPayloadOxumIsIgnoredWhenNotEstimating() throws Exception{
+    Path dataDir = createDirectory("data");
+    Files.write(dataDir.resolve("file.txt"), new byte[10]);
+    Files.write(folder.resolve("bag-info.txt"), Arrays.asList("Payload-Oxum: 500.4"), StandardCharsets.UTF_8);
+    LintOptions options = createEstimatingOptions();
+    options.setEstimateLargeBag(false);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList(), options);
+
+    Assertions.assertTrue(warnings.isEmpty());
+  }
+
+  @Test
+  public void testConfigurableManifestCount() throws Exception{
+    createDirectory("data");
+    createFile("manifest-sha256.txt");
+    createFile("tagmanifest-sha256.txt");
+    LintOptions options = new LintOptions();
+    options.setLargeManifestCount(1);
+    Set<BagitWarning> warnings = new HashSet<>();
+
+    LargeBagChecker.checkForLargeBag(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList(), options);
+
+    Assertions.assertEquals(Collections.singleton(BagitWarning.LARGE_NUMBER_OF_MANIFESTS), warnings);
+  }
+}
@@ -2,6 +2,7 @@ package com.github.jscancella.conformance.internal;
 
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -15,6 +16,7 @@ import org.junit.jupiter.api.Test;
 import com.github.jscancella.TempFolderTest;
 import com.github.jscancella.conformance.BagitWarning;
 import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.MaliciousPathException;
 
 public class ManifestCheckerTest extends TempFolderTest{
   
@@ -56,6 +58,87 @@ public class ManifestCheckerTest extends TempFolderTest{
     Assertions.assertTrue(warnings.contains(BagitWarning.MANIFEST_SETS_DIFFER));
   }
   
+  @Test
+  public void testManifestsListingSameFilesInDifferentOrder() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  data/one.txt", "def  data/two.txt"), StandardCharsets.UTF_8);
+    Files.write(folder.resolve("manifest-sha512.txt"), Arrays.asList("ghi  data/two.txt", "jkl  data/one.txt"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+    
+    ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList());
+    
+    Assertions.assertFalse(warnings.contains(BagitWarning.MANIFEST_SETS_DIFFER));
+  }
+  
+  @Test
+  public void testNormalizationWarnedWhenBothFormsExist() throws Exception{
+    Path dataDir = createDirectory("data");
+    String composed = "caf\u00e9.txt";
+    String decomposed = "cafe\u0301.txt";
+    Files.createFile(dataDir.resolve(composed));
+    Files.createFile(dataDir.resolve(decomposed));
+
+    for(String listed : Arrays.asList(composed, decomposed)){ //whichever one the manifest lists, the other one differs
+      Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  data/" + listed), StandardCharsets.UTF_8);
+      Set<BagitWarning> warnings = new HashSet<>();
+
+      ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList());
+
+      Assertions.assertTrue(warnings.contains(BagitWarning.DIFFERENT_NORMALIZATION));
+    }
+  }
+  
+  @Test
+  public void testFileListedTwiceIsSameSetOfFiles() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  data/one.txt", "abc  data/one.txt", "def  data/two.txt"), StandardCharsets.UTF_8);
+    Files.write(folder.resolve("manifest-sha512.txt"), Arrays.asList("ghi  data/one.txt", "jkl  data/two.txt"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+    
+    ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList());
+    
+    Assertions.assertFalse(warnings.contains(BagitWarning.MANIFEST_SETS_DIFFER));
+  }
+  
+  @Test
+  public void testDifferentCaseInSameDirectory() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  data/sub/One.txt", "def  data/sub/one.txt", "ghi  data/two.txt"), 
+        StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+    
+    ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList());
+    
+    Assertions.assertTrue(warnings.contains(BagitWarning.DIFFERENT_CASE));
+  }
+  
+  @Test
+  public void testSameNameInDifferentDirectoriesIsNotDifferentCase() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  data/a/one.txt", "def  data/b/ONE.txt", "ghi  data/one.txt"), 
+        StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+    
+    ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList());
+    
+    Assertions.assertFalse(warnings.contains(BagitWarning.DIFFERENT_CASE));
+  }
+  
+  @Test
+  public void testManifestsListingSameNumberOfDifferentFiles() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  data/one.txt", "def  data/two.txt"), StandardCharsets.UTF_8);
+    Files.write(folder.resolve("manifest-sha512.txt"), Arrays.asList("ghi  data/two.txt", "jkl  data/three.txt"), StandardCharsets.UTF_8);
+    Set<BagitWarning> warnings = new HashSet<>();
+    
+    ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, warnings, Collections.emptyList());
+    
+    Assertions.assertTrue(warnings.contains(BagitWarning.MANIFEST_SETS_DIFFER));
+  }
+  
+  @Test
+  public void testMaliciousPathInManifest() throws Exception{
+    Files.write(folder.resolve("manifest-sha256.txt"), Arrays.asList("abc  ../outside.txt"), StandardCharsets.UTF_8);
+    
+    Assertions.assertThrows(MaliciousPathException.class, 
+        () -> { ManifestChecker.checkManifests(folder, StandardCharsets.UTF_8, new HashSet<>(), Collections.emptyList()); });
+  }
+  
   @Test
   public void testCheckTagManifest() throws Exception{
     createFile("tagmanifest-md5.txt");
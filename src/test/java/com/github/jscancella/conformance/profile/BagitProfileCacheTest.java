@@ -0,0 +1,70 @@
+package com.github.jscancella.conformance.profile;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BagitProfileCacheTest {
+  private static final Path profileJson = new File("src/test/resources/bagitProfiles/exampleProfile.json").toPath();
+  private static final String IDENTIFIER = "http://canadiana.org/standards/bagit/tdr_ingest.json";
+
+  @Test
+  public void testProfileIsCachedByIdentifier() throws Exception{
+    BagitProfileCache cache = new BagitProfileCache();
+    CompiledBagitProfile profile;
+    try(InputStream inputStream = Files.newInputStream(profileJson)){
+      profile = cache.add(inputStream);
+    }
+
+    Assertions.assertSame(profile, cache.get(IDENTIFIER));
+    Assertions.assertSame(profile, cache.load(IDENTIFIER)); //already cached, so nothing is downloaded
+
+    cache.remove(IDENTIFIER);
+    Assertions.assertNull(cache.get(IDENTIFIER));
+  }
+
+  @Test
+  public void testLoadProfileOnlyOnce() throws Exception{
+    BagitProfileCache cache = new BagitProfileCache();
+    String location = profileJson.toUri().toString();
+
+    CompiledBagitProfile profile = cache.load(location);
+
+    Assertions.assertEquals(IDENTIFIER, profile.getBagitProfileIdentifier());
+    Assertions.assertSame(profile, cache.load(location));
+  }
+
+  @Test
+  public void testProfileWithoutIdentifierIsRejected(){
+    BagitProfileCache cache = new BagitProfileCache();
+    CompiledBagitProfile emptyIdentifier = CompiledBagitProfile.compile(new BagitProfile());
+    BagitProfile profile = new BagitProfile();
+    profile.setBagitProfileIdentifier(null);
+    CompiledBagitProfile nullIdentifier = CompiledBagitProfile.compile(profile);
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> { cache.add(emptyIdentifier); });
+    Assertions.assertThrows(IllegalArgumentException.class, () -> { cache.add(nullIdentifier); });
+  }
+
+  @Test
+  public void testCompiledProfileDoesNotChangeWithProfile(){
+    BagitProfile profile = new BagitProfile();
+    profile.setBagitProfileIdentifier(IDENTIFIER);
+    profile.getAcceptableBagitVersions().add("1.0");
+    profile.getBagInfoRequirements().put("Contact-Name", new BagInfoRequirement(true, Arrays.asList("Foo", "Bar")));
+
+    CompiledBagitProfile compiled = CompiledBagitProfile.compile(profile);
+    profile.getAcceptableBagitVersions().add("0.97");
+
+    Assertions.assertTrue(compiled.isAcceptableBagitVersion("1.0"));
+    Assertions.assertFalse(compiled.isAcceptableBagitVersion("0.97"));
+    Assertions.assertTrue(compiled.getBagInfoRequirements().get("Contact-Name").isAcceptableValue("Bar"));
+    Assertions.assertFalse(compiled.getBagInfoRequirements().get("Contact-Name").isAcceptableValue("Baz"));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> { compiled.getTagFilesRequired().add("foo.txt"); });
+  }
+}
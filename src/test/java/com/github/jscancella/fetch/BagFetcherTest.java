@@ -0,0 +1,237 @@
+package com.github.jscancella.fetch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.FetchItem;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.exceptions.InvalidFetchLengthException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.fetch.internal.FetchItemDownloader;
+import com.github.jscancella.verify.BagVerifier;
+import com.github.jscancella.writer.internal.BagCreator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class BagFetcherTest extends TempFolderTest {
+  private static final byte[] HELLO = "hello world, this file is fetched".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] GOODBYE = "goodbye".getBytes(StandardCharsets.UTF_8);
+
+  private HttpServer server;
+  private final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<>());
+  private byte[] servedHello = HELLO;
+  private Integer servedRangeStart; //to send a different range than was requested
+
+  @BeforeEach
+  public void startServer() throws IOException{
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/hello.txt", exchange -> serve(exchange, servedHello));
+    server.createContext("/sub/goodbye.txt", exchange -> serve(exchange, GOODBYE));
+    server.start();
+  }
+
+  @AfterEach
+  public void stopServer(){
+    server.stop(0);
+  }
+
+  /*
+   * supports the simple "bytes=n-" range requests that are used to resume a download
+   */
+  private void serve(final HttpExchange exchange, final byte[] contents) throws IOException{
+    final String range = exchange.getRequestHeaders().getFirst("Range");
+    int start = 0;
+    if(range != null){
+      rangeHeaders.add(range);
+      start = servedRangeStart == null ? Integer.parseInt(range.substring("bytes=".length(), range.length() - 1)) : servedRangeStart;
+      if(start >= contents.length){
+        exchange.sendResponseHeaders(416, -1);
+        exchange.close();
+        return;
+      }
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (contents.length - 1) + "/" + contents.length);
+      exchange.sendResponseHeaders(206, contents.length - start);
+    }
+    else{
+      exchange.sendResponseHeaders(200, contents.length);
+    }
+    try(OutputStream out = exchange.getResponseBody()){
+      out.write(contents, start, contents.length - start);
+    }
+  }
+
+  private URL url(final String path) throws IOException{
+    return new URL("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  /*
+   * create a bag and then remove its payload so that it has to be fetched
+   */
+  private Bag createHoleyBag() throws Exception{
+    Path dataDir = createDirectory("bag");
+    Files.write(dataDir.resolve("hello.txt"), HELLO);
+    Files.createDirectories(dataDir.resolve("sub"));
+    Files.write(dataDir.resolve("sub").resolve("goodbye.txt"), GOODBYE);
+    Bag bag = BagCreator.bagInPlace(dataDir, Arrays.asList("md5", "sha1"), false);
+
+    Files.delete(bag.getDataDir().resolve("hello.txt"));
+    Files.delete(bag.getDataDir().resolve("sub").resolve("goodbye.txt"));
+    bag.setItemsToFetch(Arrays.asList(
+        new FetchItem(url("/hello.txt"), (long) HELLO.length, bag.getDataDir().resolve("hello.txt")),
+        new FetchItem(url("/sub/goodbye.txt"), null, bag.getDataDir().resolve("sub").resolve("goodbye.txt"))));
+    return bag;
+  }
+
+  /*
+   * creates the staging directory so an interrupted download can be faked
+   */
+  private static Path partialFile(final Bag bag, final String relativePath) throws IOException{
+    Path partialFile = FetchItemDownloader.getPartialFile(bag, bag.getDataDir().resolve(relativePath));
+    Files.createDirectories(partialFile.getParent());
+    return partialFile;
+  }
+
+  @Test
+  public void testFetchedBagIsValid() throws Exception{
+    Bag bag = createHoleyBag();
+
+    Assertions.assertEquals(2, BagFetcher.fetch(bag));
+
+    Assertions.assertArrayEquals(HELLO, Files.readAllBytes(bag.getDataDir().resolve("hello.txt")));
+    Assertions.assertFalse(Files.exists(bag.getRootDir().resolve(".bagit-fetch")));
+    Assertions.assertTrue(BagVerifier.isValid(bag, true));
+  }
+
+  @Test
+  public void testHiddenPayloadFileWithPartialNameIsNotUsed() throws Exception{
+    Bag bag = createHoleyBag();
+    Path hiddenFile = bag.getDataDir().resolve(".hello.txt.part");
+    Files.write(hiddenFile, GOODBYE);
+
+    Assertions.assertEquals(2, BagFetcher.fetch(bag));
+
+    Assertions.assertTrue(rangeHeaders.isEmpty());
+    Assertions.assertArrayEquals(GOODBYE, Files.readAllBytes(hiddenFile));
+    Assertions.assertArrayEquals(HELLO, Files.readAllBytes(bag.getDataDir().resolve("hello.txt")));
+  }
+
+  @Test
+  public void testFetchConcurrently() throws Exception{
+    Bag bag = createHoleyBag();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try{
+      Assertions.assertEquals(2, BagFetcher.fetch(bag, executor));
+    }
+    finally{
+      executor.shutdownNow();
+    }
+
+    Assertions.assertTrue(BagVerifier.isValid(bag, true));
+  }
+
+  @Test
+  public void testFilesAlreadyInBagAreSkipped() throws Exception{
+    Bag bag = createHoleyBag();
+    Files.write(bag.getDataDir().resolve("hello.txt"), HELLO);
+
+    Assertions.assertEquals(1, BagFetcher.fetch(bag));
+  }
+
+  @Test
+  public void testInterruptedDownloadIsResumed() throws Exception{
+    Bag bag = createHoleyBag();
+    Files.write(partialFile(bag, "hello.txt"), Arrays.copyOf(HELLO, 10));
+
+    BagFetcher.fetch(bag);
+
+    Assertions.assertEquals(Arrays.asList("bytes=10-"), rangeHeaders);
+    Assertions.assertArrayEquals(HELLO, Files.readAllBytes(bag.getDataDir().resolve("hello.txt")));
+    Assertions.assertTrue(BagVerifier.isValid(bag, true));
+  }
+
+  @Test
+  public void testCompletePartialFileIsNotDownloadedAgain() throws Exception{
+    Bag bag = createHoleyBag();
+    Files.write(partialFile(bag, "hello.txt"), HELLO);
+    Files.write(partialFile(bag, "sub/goodbye.txt"), GOODBYE); //no length in the fetch item
+
+    Assertions.assertEquals(2, BagFetcher.fetch(bag));
+
+    Assertions.assertEquals(Arrays.asList("bytes=" + GOODBYE.length + "-"), rangeHeaders);
+    Assertions.assertArrayEquals(HELLO, Files.readAllBytes(bag.getDataDir().resolve("hello.txt")));
+    Assertions.assertTrue(BagVerifier.isValid(bag, true));
+  }
+
+  @Test
+  public void testDifferentRangeIsDownloadedAgain() throws Exception{
+    Bag bag = createHoleyBag();
+    Files.write(partialFile(bag, "hello.txt"), Arrays.copyOf(HELLO, 10));
+    servedRangeStart = 5;
+
+    BagFetcher.fetch(bag);
+
+    Assertions.assertArrayEquals(HELLO, Files.readAllBytes(bag.getDataDir().resolve("hello.txt")));
+    Assertions.assertTrue(BagVerifier.isValid(bag, true));
+  }
+
+  @Test
+  public void testCorruptDownloadIsNotPutInBag() throws Exception{
+    Bag bag = createHoleyBag();
+    servedHello = Arrays.copyOf(HELLO, HELLO.length);
+    servedHello[0] = 'j';
+
+    Assertions.assertThrows(CorruptChecksumException.class, () -> { BagFetcher.fetch(bag); });
+
+    Assertions.assertFalse(Files.exists(bag.getDataDir().resolve("hello.txt")));
+    Assertions.assertFalse(Files.exists(partialFile(bag, "hello.txt")));
+  }
+
+  @Test
+  public void testShorterDownloadIsKeptToResume() throws Exception{
+    Bag bag = createHoleyBag();
+    servedHello = Arrays.copyOf(HELLO, 10);
+
+    Assertions.assertThrows(InvalidFetchLengthException.class, () -> { BagFetcher.fetch(bag); });
+
+    Assertions.assertFalse(Files.exists(bag.getDataDir().resolve("hello.txt")));
+    Assertions.assertEquals(10, Files.size(partialFile(bag, "hello.txt")));
+  }
+
+  @Test
+  public void testFetchFileUrl() throws Exception{
+    Bag bag = createHoleyBag();
+    Path source = createFile("source.txt");
+    Files.write(source, HELLO);
+    bag.setItemsToFetch(Arrays.asList(new FetchItem(source.toUri().toURL(), null, bag.getDataDir().resolve("hello.txt"))));
+
+    Assertions.assertEquals(1, BagFetcher.fetch(bag));
+
+    Assertions.assertArrayEquals(HELLO, Files.readAllBytes(bag.getDataDir().resolve("hello.txt")));
+  }
+
+  @Test
+  public void testItemOutsidePayloadIsRejected() throws Exception{
+    Bag bag = createHoleyBag();
+    bag.setItemsToFetch(Arrays.asList(new FetchItem(url("/hello.txt"), null, bag.getRootDir().resolve("bagit.txt"))));
+
+    Assertions.assertThrows(MaliciousPathException.class, () -> { BagFetcher.fetch(bag); });
+  }
+}
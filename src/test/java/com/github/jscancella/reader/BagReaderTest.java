@@ -3,21 +3,31 @@ package com.github.jscancella.reader;
 import java.io.File;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.github.jscancella.TempFolderTest;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.FetchItem;
 import com.github.jscancella.domain.Manifest;
 import com.github.jscancella.domain.Metadata;
 import com.github.jscancella.domain.Version;
+import com.github.jscancella.exceptions.LazyLoadingException;
+import com.github.jscancella.exceptions.MaliciousPathException;
 
-public class BagReaderTest {
+public class BagReaderTest extends TempFolderTest {
   
   @Test
   public void testReadBagWithinABag() throws Exception{
@@ -230,4 +240,103 @@ public class BagReaderTest {
     Assertions.assertEquals("bagit.py v1.7.0 <https://github.com/LibraryOfCongress/bagit-python>",
         returnedBag.getMetadata().get("Bag-Software-Agent").get(0));
   }
+  
+  @Test
+  public void testConcurrentReadIsSameAsSerialRead() throws Exception{
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try{
+      for(String bagName : Arrays.asList("bags/v0_97/bag", "bags/v1_0/bag", "bags/v0_96/holey-bag", "UTF-16-encoded-tag-files")){
+        Path rootDir = Paths.get(new File("src/test/resources/" + bagName).toURI());
+        Assertions.assertEquals(BagReader.read(rootDir), BagReader.read(rootDir, executor), bagName + " should be the same when read concurrently");
+      }
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testConcurrentReadThrowsSameException() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(new File("src/test/resources/bags/v0_97/bag").toURI()));
+    Files.write(rootDir.resolve("manifest-md5.txt"), "8ad8757baa8564dc136c1e07507f4a98  data/../../foo.txt\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try{
+      Assertions.assertThrows(MaliciousPathException.class, () -> { BagReader.read(rootDir, executor); });
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testLazyReadIsSameAsRead() throws Exception{
+    for(String bagName : Arrays.asList("bags/v0_97/bag", "bags/v1_0/bag", "bags/v0_96/holey-bag", "UTF-16-encoded-tag-files")){
+      Path rootDir = Paths.get(new File("src/test/resources/" + bagName).toURI());
+      Assertions.assertEquals(BagReader.read(rootDir), BagReader.readLazily(rootDir), bagName + " should be the same when read lazily");
+    }
+  }
+  
+  @Test
+  public void testLazyReadOnlyReadsManifestsWhenAccessed() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(new File("src/test/resources/bags/v0_96/holey-bag").toURI()));
+    Bag bag = BagReader.readLazily(rootDir);
+    Files.delete(rootDir.resolve("tagmanifest-md5.txt"));
+    Files.delete(rootDir.resolve("fetch.txt"));
+    
+    Assertions.assertEquals(new Version(0, 96), bag.getVersion());
+    Assertions.assertEquals(Arrays.asList("md5"), new ArrayList<>(bag.getPayLoadManifestAlgorithms()));
+    Assertions.assertEquals(Arrays.asList("md5"), new ArrayList<>(bag.getTagManifestAlgorithms()));
+    Assertions.assertEquals(5, bag.getPayLoadManifest("md5").getFileToChecksumMap().size());
+    Assertions.assertNull(bag.getPayLoadManifest("sha512"));
+    
+    Assertions.assertThrows(LazyLoadingException.class, () -> { bag.getTagManifest("md5"); });
+    Assertions.assertThrows(LazyLoadingException.class, () -> { bag.getItemsToFetch(); });
+  }
+
+  @Test
+  public void testCopyOfLazyBagDoesNotShareFetchItems() throws Exception{
+    Path rootDir = Paths.get(new File("src/test/resources/bags/v0_96/holey-bag").toURI());
+    Bag expected = BagReader.read(rootDir);
+    Bag bag = BagReader.readLazily(rootDir);
+    Bag copy = new Bag(bag);
+    
+    Assertions.assertEquals(expected.getItemsToFetch(), bag.getItemsToFetch());
+    Assertions.assertEquals(expected.getItemsToFetch(), copy.getItemsToFetch());
+    Assertions.assertNotSame(bag.getItemsToFetch(), copy.getItemsToFetch());
+  }
+
+  @Test
+  public void testLoadCopyOfLazyBagConcurrently() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag expected = BagReader.read(rootDir);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try{
+      for(int index = 0; index < 20; index++){
+        Bag bag = BagReader.readLazily(rootDir);
+        Bag copy = new Bag(bag);
+        Future<Set<Manifest>> bagManifests = executor.submit(() -> bag.getPayLoadManifests());
+        Future<Set<Manifest>> copyManifests = executor.submit(() -> copy.getPayLoadManifests());
+        
+        Assertions.assertEquals(expected.getPayLoadManifests(), bagManifests.get());
+        Assertions.assertEquals(expected.getPayLoadManifests(), copyManifests.get());
+        Assertions.assertNotSame(bagManifests.get(), copyManifests.get());
+        Assertions.assertEquals(expected.getTagManifests(), copy.getTagManifests());
+        Assertions.assertEquals(expected.getTagManifests(), bag.getTagManifests());
+      }
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testReadWithIndexIsSameAsRead() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Path cacheDir = createDirectory("indexes");
+    Bag expected = BagReader.read(rootDir);
+    
+    Assertions.assertEquals(expected, BagReader.read(rootDir, cacheDir)); //creates the index
+    Assertions.assertEquals(1, Files.list(cacheDir).count());
+    Assertions.assertEquals(expected, BagReader.read(rootDir, cacheDir)); //uses the index
+  }
 }
@@ -0,0 +1,132 @@
+package com.github.jscancella.reader.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.reader.internal.BagIndex.TagFileFingerprint;
+
+public class BagIndexTest extends TempFolderTest {
+
+  @Test
+  public void testIndexRoundTrip() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag expected = BagReader.read(rootDir);
+    Path indexFile = BagIndex.getIndexFile(folder, rootDir);
+
+    BagIndex.writeIndex(expected, BagIndex.fingerprintTagFiles(rootDir), indexFile);
+
+    Assertions.assertTrue(Files.exists(indexFile));
+    Assertions.assertEquals(expected, BagIndex.readIndex(indexFile, rootDir));
+  }
+
+  @Test
+  public void testIndexRoundTripWithFetchFileAndEncodedNames() throws Exception{
+    for(String bagName : new String[]{"bags/v0_96/holey-bag", "bags/v0_96/bag-with-encoded-names"}){
+      Path rootDir = Paths.get(getClass().getClassLoader().getResource(bagName).toURI());
+      Bag expected = BagReader.read(rootDir);
+      Path indexFile = BagIndex.getIndexFile(folder, rootDir);
+
+      BagIndex.writeIndex(expected, BagIndex.fingerprintTagFiles(rootDir), indexFile);
+
+      Assertions.assertEquals(expected, BagIndex.readIndex(indexFile, rootDir));
+    }
+  }
+
+  @Test
+  public void testMissingIndexReturnsNull() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+
+    Assertions.assertNull(BagIndex.readIndex(BagIndex.getIndexFile(folder, rootDir), rootDir));
+  }
+
+  @Test
+  public void testChangedTagFileMakesIndexStale() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI()));
+    Path indexFile = BagIndex.getIndexFile(createDirectory("cache"), rootDir);
+    BagIndex.writeIndex(BagReader.read(rootDir), BagIndex.fingerprintTagFiles(rootDir), indexFile);
+
+    Files.write(rootDir.resolve("bag-info.txt"), "Foo: bar\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    Assertions.assertNull(BagIndex.readIndex(indexFile, rootDir));
+  }
+
+  @Test
+  public void testContentIsOnlyComparedWhenAsked() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI()));
+    Path indexFile = BagIndex.getIndexFile(createDirectory("cache"), rootDir);
+    BagIndex.writeIndex(BagReader.read(rootDir), BagIndex.fingerprintTagFiles(rootDir), indexFile);
+    Path bagInfo = rootDir.resolve("bag-info.txt");
+    FileTime lastModified = Files.getLastModifiedTime(bagInfo);
+    
+    //same size and last modified time, but different contents
+    byte[] contents = Files.readAllBytes(bagInfo);
+    contents[0] = (byte) (contents[0] == 'X' ? 'Y' : 'X');
+    Files.write(bagInfo, contents, StandardOpenOption.TRUNCATE_EXISTING);
+    Files.setLastModifiedTime(bagInfo, lastModified);
+
+    Assertions.assertNotNull(BagIndex.readIndex(indexFile, rootDir));
+    Assertions.assertNull(BagIndex.readIndex(indexFile, rootDir, true));
+  }
+
+  @Test
+  public void testReplacedTagFileMakesIndexStale() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI()));
+    Path indexFile = BagIndex.getIndexFile(createDirectory("cache"), rootDir);
+    BagIndex.writeIndex(BagReader.read(rootDir), BagIndex.fingerprintTagFiles(rootDir), indexFile);
+    Path bagInfo = rootDir.resolve("bag-info.txt");
+    Path replacement = rootDir.resolve("replacement");
+    Files.copy(bagInfo, replacement, StandardCopyOption.COPY_ATTRIBUTES);
+    Assumptions.assumeTrue(Files.readAttributes(bagInfo, BasicFileAttributes.class).fileKey() != null);
+
+    Files.move(replacement, bagInfo, StandardCopyOption.REPLACE_EXISTING);
+
+    Assertions.assertNull(BagIndex.readIndex(indexFile, rootDir));
+  }
+
+  @Test
+  public void testAddedTagFileMakesIndexStale() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI()));
+    Path indexFile = BagIndex.getIndexFile(createDirectory("cache"), rootDir);
+    BagIndex.writeIndex(BagReader.read(rootDir), BagIndex.fingerprintTagFiles(rootDir), indexFile);
+
+    Files.copy(rootDir.resolve("manifest-sha512.txt"), rootDir.resolve("manifest-foo.txt"));
+
+    Assertions.assertNull(BagIndex.readIndex(indexFile, rootDir));
+  }
+
+  @Test
+  public void testCorruptIndexReturnsNull() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Path indexFile = BagIndex.getIndexFile(folder, rootDir);
+    Files.write(indexFile, "not an index".getBytes(StandardCharsets.UTF_8));
+
+    Assertions.assertNull(BagIndex.readIndex(indexFile, rootDir));
+  }
+
+  @Test
+  public void testFingerprintOnlyIncludesTagFilesUsedToReadTheBag() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+
+    Map<String, TagFileFingerprint> fingerprints = BagIndex.fingerprintTagFiles(rootDir);
+
+    Assertions.assertTrue(fingerprints.containsKey("bagit.txt"));
+    Assertions.assertTrue(fingerprints.containsKey("bag-info.txt"));
+    Assertions.assertTrue(fingerprints.containsKey("manifest-sha512.txt"));
+    Assertions.assertTrue(fingerprints.containsKey("tagmanifest-sha512.txt"));
+    Assertions.assertFalse(fingerprints.containsKey("data"));
+  }
+}
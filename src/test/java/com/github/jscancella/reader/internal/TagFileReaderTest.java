@@ -1,7 +1,12 @@
 package com.github.jscancella.reader.internal;
 
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -33,6 +38,20 @@ public class TagFileReaderTest {
     Assertions.assertEquals(bagRootDir.resolve("data/bar/ham.txt"), path);
   }
   
+  @Test
+  public void testCreateFileFromManifestWithURISyntaxInZipFileSystem() throws Exception{
+    Path zipFile = Files.createTempFile("bag", ".zip");
+    Files.delete(zipFile);
+    try(FileSystem zip = FileSystems.newFileSystem(URI.create("jar:" + zipFile.toUri()), Collections.singletonMap("create", "true"))){
+      Path bagRootDir = zip.getPath("/foo");
+      Path path = TagFileReader.createFileFromManifest(bagRootDir, "file:///foo/data/bar/ham.txt");
+      Assertions.assertEquals(bagRootDir.resolve("data/bar/ham.txt"), path);
+    }
+    finally{
+      Files.deleteIfExists(zipFile);
+    }
+  }
+  
   @Test
   public void testBackslashThrowsException() throws Exception{
     Path bagRootDir = Paths.get("foo");
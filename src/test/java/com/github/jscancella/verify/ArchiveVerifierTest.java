@@ -0,0 +1,259 @@
+package com.github.jscancella.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarHeader;
+import org.kamranzafar.jtar.TarOutputStream;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.exceptions.FileNotInManifestException;
+import com.github.jscancella.exceptions.FileNotInPayloadDirectoryException;
+import com.github.jscancella.exceptions.InvalidBagitFileFormatException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.exceptions.MissingBagitFileException;
+import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.writer.ArchiveFormat;
+import com.github.jscancella.writer.BagWriter;
+
+public class ArchiveVerifierTest extends TempFolderTest {
+  private static final String BAGIT_FILE = "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n";
+  private static final String SHA256_OF_HELLO = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+  @Test
+  public void testValidTarArchive() throws Exception{
+    try(InputStream archive = new ByteArrayInputStream(writeArchive(ArchiveFormat.TAR))){
+      Assertions.assertTrue(ArchiveVerifier.isValid(archive, ArchiveFormat.TAR));
+    }
+  }
+
+  @Test
+  public void testValidZipArchive() throws Exception{
+    try(InputStream archive = new ByteArrayInputStream(writeArchive(ArchiveFormat.ZIP))){
+      Assertions.assertTrue(ArchiveVerifier.isValid(archive, ArchiveFormat.ZIP));
+    }
+  }
+
+  @Test
+  public void testValidTarGzArchive() throws Exception{
+    try(InputStream archive = new ByteArrayInputStream(writeArchive(ArchiveFormat.TAR_GZ))){
+      Assertions.assertTrue(ArchiveVerifier.isValid(archive, ArchiveFormat.TAR_GZ));
+    }
+  }
+
+  @Test
+  public void testExtractWhileVerifying() throws Exception{
+    Path extractedDir = createDirectory("extracted");
+    try(InputStream archive = new ByteArrayInputStream(writeArchive(ArchiveFormat.TAR))){
+      Assertions.assertTrue(ArchiveVerifier.isValid(archive, ArchiveFormat.TAR, extractedDir));
+    }
+
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(extractedDir.resolve("bag")), false));
+  }
+
+  @Test
+  public void testCorruptPayloadFile() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/data/foo.txt", "changed",
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n");
+
+    Assertions.assertThrows(CorruptChecksumException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP));
+  }
+
+  @Test
+  public void testManifestListsFileNotInArchive() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n");
+
+    Assertions.assertThrows(FileNotInPayloadDirectoryException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP));
+  }
+
+  @Test
+  public void testPayloadFileNotInManifest() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/data/foo.txt", "hello",
+        "bag/data/bar.txt", "not listed",
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n");
+
+    Assertions.assertThrows(FileNotInManifestException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP));
+  }
+
+  @Test
+  public void testTagManifestDoesNotLimitPayloadChecksums() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/tagmanifest-md5.txt", "",
+        "bag/data/foo.txt", "changed",
+        "bag/manifest-sha256.txt", SHA256_OF_HELLO + "  data/foo.txt\n");
+
+    Assertions.assertThrows(CorruptChecksumException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP));
+  }
+
+  @Test
+  public void testManifestAfterPayloadFileCanNotBeVerifiedWithoutExtracting() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n",
+        "bag/data/foo.txt", "hello",
+        "bag/manifest-sha256.txt", SHA256_OF_HELLO + "  data/foo.txt\n");
+
+    Assertions.assertThrows(InvalidBagitFileFormatException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP));
+    Assertions.assertTrue(ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP, createDirectory("extracted")));
+  }
+
+  @Test
+  public void testManifestAfterCorruptPayloadFileWhenExtracting() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/manifest-md5.txt", "8977dfac2f8e04cb96e66882235f5aba  data/foo.txt\n",
+        "bag/data/foo.txt", "changed",
+        "bag/manifest-sha256.txt", SHA256_OF_HELLO + "  data/foo.txt\n");
+    Path extractedDir = createDirectory("extracted");
+
+    Assertions.assertThrows(CorruptChecksumException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP, extractedDir));
+  }
+
+  @Test
+  public void testPayloadFileBeforeManifestsWhenExtracting() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/data/foo.txt", "hello",
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n",
+        "bag/manifest-sha256.txt", SHA256_OF_HELLO + "  data/foo.txt\n");
+
+    Assertions.assertTrue(ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP, createDirectory("extracted")));
+  }
+
+  @Test
+  public void testCorruptPayloadFileBeforeManifestsWhenExtracting() throws Exception{
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/data/foo.txt", "changed",
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n");
+    Path extractedDir = createDirectory("extracted");
+
+    Assertions.assertThrows(CorruptChecksumException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP, extractedDir));
+  }
+
+  @Test
+  public void testVerifyArchivesConcurrently() throws Exception{
+    byte[] archive = writeArchive(ArchiveFormat.TAR);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try{
+      List<Future<Boolean>> results = new ArrayList<>();
+      for(int index = 0; index < 8; index++){
+        results.add(executor.submit(() -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.TAR)));
+      }
+      for(Future<Boolean> result : results){
+        Assertions.assertTrue(result.get());
+      }
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testHardLinkedPayloadFile() throws Exception{
+    byte[] archive = tarWithHardLink("bag/data/foo.txt");
+
+    Assertions.assertTrue(ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.TAR));
+    Path extractedDir = createDirectory("extracted");
+    Assertions.assertTrue(ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.TAR, extractedDir));
+    Assertions.assertEquals("hello", new String(Files.readAllBytes(extractedDir.resolve("bag/data/bar.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testHardLinkToFileNotInArchive() throws Exception{
+    byte[] archive = tarWithHardLink("bag/data/missing.txt");
+
+    Assertions.assertThrows(InvalidBagitFileFormatException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.TAR));
+  }
+
+  @Test
+  public void testMissingBagitFile() throws Exception{
+    byte[] archive = zip("bag/data/foo.txt", "hello",
+        "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n");
+
+    Assertions.assertThrows(MissingBagitFileException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP));
+  }
+
+  @Test
+  public void testMaliciousEntryName() throws Exception{
+    Path extractedDir = createDirectory("extracted");
+    byte[] archive = zip("bag/bagit.txt", BAGIT_FILE,
+        "bag/../../evil.txt", "hello");
+
+    Assertions.assertThrows(MaliciousPathException.class,
+        () -> ArchiveVerifier.isValid(new ByteArrayInputStream(archive), ArchiveFormat.ZIP, extractedDir));
+    Assertions.assertFalse(Files.exists(folder.resolve("evil.txt")));
+  }
+
+  private byte[] writeArchive(final ArchiveFormat format) throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir);
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    BagWriter.writeArchive(bag, archive, format);
+    return archive.toByteArray();
+  }
+
+  /*
+   * like tar does with a bag whose duplicate payload files are hard links
+   */
+  private static byte[] tarWithHardLink(final String linkTarget) throws IOException{
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try(TarOutputStream tar = new TarOutputStream(archive)){
+      putTarEntry(tar, "bag/bagit.txt", BAGIT_FILE);
+      putTarEntry(tar, "bag/manifest-md5.txt", "5d41402abc4b2a76b9719d911017c592  data/foo.txt\n5d41402abc4b2a76b9719d911017c592  data/bar.txt\n");
+      putTarEntry(tar, "bag/data/foo.txt", "hello");
+      TarHeader link = TarHeader.createHeader("bag/data/bar.txt", 0, 0, false, 0644);
+      link.linkFlag = TarHeader.LF_LINK;
+      link.linkName = new StringBuffer(linkTarget);
+      tar.putNextEntry(new TarEntry(link));
+    }
+    return archive.toByteArray();
+  }
+
+  private static void putTarEntry(final TarOutputStream tar, final String name, final String contents) throws IOException{
+    byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+    tar.putNextEntry(new TarEntry(TarHeader.createHeader(name, bytes.length, 0, false, 0644)));
+    tar.write(bytes);
+  }
+
+  /*
+   * names and contents, one after the other
+   */
+  private static byte[] zip(final String... namesAndContents) throws IOException{
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try(ZipOutputStream zip = new ZipOutputStream(archive)){
+      for(int index = 0; index < namesAndContents.length; index += 2){
+        zip.putNextEntry(new ZipEntry(namesAndContents[index]));
+        zip.write(namesAndContents[index + 1].getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+    return archive.toByteArray();
+  }
+}
@@ -1,11 +1,15 @@
 package com.github.jscancella.verify;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.jupiter.api.AfterEach;
@@ -19,6 +23,7 @@ import com.github.jscancella.exceptions.CorruptChecksumException;
 import com.github.jscancella.exceptions.FileNotInManifestException;
 import com.github.jscancella.hash.BagitChecksumNameMapping;
 import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.writer.BagWriter;
 
 public class BagVeriferTest extends TempFolderTest {
   static {
@@ -34,6 +39,35 @@ public class BagVeriferTest extends TempFolderTest {
   
   private Path rootDir = Paths.get(new File("src/test/resources/bags/v0_97/bag").toURI());
   
+  @Test
+  public void testValidInZipFileSystemWithExecutor() throws Exception{
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try(FileSystem zip = createZipFileSystem("bag.zip")){
+      BagWriter.write(BagReader.read(rootDir), zip.getPath("/bag"));
+      
+      Bag bag = BagReader.read(zip.getPath("/bag"), executor);
+      Assertions.assertTrue(BagVerifier.isValid(bag, false, executor));
+    }
+    finally{
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testCorruptFileWithExecutor() throws Exception{
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try{
+      Path copyDir = copyBagToTempFolder(rootDir);
+      Files.write(copyDir.resolve("data").resolve("dir1").resolve("test3.txt"), "corrupt".getBytes(StandardCharsets.UTF_8));
+      
+      Bag bag = BagReader.read(copyDir);
+      Assertions.assertThrows(CorruptChecksumException.class, () -> BagVerifier.isValid(bag, false, executor));
+    }
+    finally{
+      executor.shutdown();
+    }
+  }
+  
   @Test
   public void testValidWhenHiddenFolderNotIncluded() throws Exception{
     Path copyDir = copyBagToTempFolder(rootDir);
@@ -0,0 +1,101 @@
+package com.github.jscancella.verify.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarHeader;
+import org.kamranzafar.jtar.TarOutputStream;
+
+public class TarArchiveReaderTest {
+  private static final byte[] CONTENTS = "hello world".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testReadsFilesAndSkipsDirectories() throws Exception{
+    byte[] archive = writeArchive();
+    TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(archive));
+
+    Assertions.assertEquals("bag/data/hello.txt", reader.nextFile());
+    Assertions.assertArrayEquals(CONTENTS, readContents(reader));
+    Assertions.assertEquals("bag/data/other.txt", reader.nextFile());
+    Assertions.assertNull(reader.nextFile());
+  }
+
+  @Test
+  public void testUnreadContentsAreSkipped() throws Exception{
+    byte[] archive = writeArchive();
+    TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(archive));
+
+    Assertions.assertEquals("bag/data/hello.txt", reader.nextFile());
+    Assertions.assertEquals("bag/data/other.txt", reader.nextFile());
+    Assertions.assertArrayEquals(CONTENTS, readContents(reader));
+  }
+
+  @Test
+  public void testHardLinkHasTargetAndNoContents() throws Exception{
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try(TarOutputStream tar = new TarOutputStream(archive)){
+      tar.putNextEntry(new TarEntry(TarHeader.createHeader("bag/data/hello.txt", CONTENTS.length, 0, false, 0644)));
+      tar.write(CONTENTS);
+      TarHeader link = TarHeader.createHeader("bag/data/link.txt", 0, 0, false, 0644);
+      link.linkFlag = TarHeader.LF_LINK;
+      link.linkName = new StringBuffer("bag/data/hello.txt");
+      tar.putNextEntry(new TarEntry(link));
+    }
+    TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(archive.toByteArray()));
+
+    Assertions.assertEquals("bag/data/hello.txt", reader.nextFile());
+    Assertions.assertNull(reader.getLinkTarget());
+    Assertions.assertEquals("bag/data/link.txt", reader.nextFile());
+    Assertions.assertEquals("bag/data/hello.txt", reader.getLinkTarget());
+    Assertions.assertEquals(0, readContents(reader).length);
+    Assertions.assertNull(reader.nextFile());
+  }
+
+  @Test
+  public void testTruncatedArchive() throws Exception{
+    byte[] archive = Arrays.copyOf(writeArchive(), 1024 + 5);
+    TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(archive));
+
+    reader.nextFile();
+    Assertions.assertThrows(EOFException.class, () -> readContents(reader));
+  }
+
+  @Test
+  public void testCorruptHeader() throws Exception{
+    byte[] archive = writeArchive();
+    archive[0] = 'X';
+    TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(archive));
+
+    Assertions.assertThrows(IOException.class, () -> reader.nextFile());
+  }
+
+  private static byte[] writeArchive() throws IOException{
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try(TarOutputStream tar = new TarOutputStream(archive)){
+      tar.putNextEntry(new TarEntry(TarHeader.createHeader("bag/", 0, 0, true, 0755)));
+      tar.putNextEntry(new TarEntry(TarHeader.createHeader("bag/data/hello.txt", CONTENTS.length, 0, false, 0644)));
+      tar.write(CONTENTS);
+      tar.putNextEntry(new TarEntry(TarHeader.createHeader("bag/data/other.txt", CONTENTS.length, 0, false, 0644)));
+      tar.write(CONTENTS);
+    }
+    return archive.toByteArray();
+  }
+
+  private static byte[] readContents(final ArchiveReader reader) throws IOException{
+    ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4];
+    int read = reader.getContents().read(buffer);
+    while(read != -1){
+      contents.write(buffer, 0, read);
+      read = reader.getContents().read(buffer);
+    }
+    return contents.toByteArray();
+  }
+}
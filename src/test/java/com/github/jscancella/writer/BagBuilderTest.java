@@ -0,0 +1,202 @@
+package com.github.jscancella.writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Metadata;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.hash.PayloadOxumGenerator;
+import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.verify.BagVerifier;
+
+public class BagBuilderTest extends TempFolderTest {
+  private static final byte[] CONTENTS = "hello world".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testBuildFromStreams() throws Exception{
+    Path rootDir = folder.resolve("bag");
+    BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha512", "md5"));
+    builder.addPayload("hello.txt", new ByteArrayInputStream(CONTENTS));
+    builder.addPayload("sub/dir/hello.txt", Channels.newChannel(new ByteArrayInputStream(CONTENTS)));
+    Metadata metadata = new Metadata();
+    metadata.add("Contact-Name", "Some Archivist");
+
+    Bag bag = builder.build(metadata);
+
+    Assertions.assertArrayEquals(CONTENTS, Files.readAllBytes(rootDir.resolve("data/sub/dir/hello.txt")));
+    Assertions.assertEquals(PayloadOxumGenerator.generatePayloadOxum(bag.getDataDir()), bag.getMetadata().get("Payload-Oxum").get(0));
+    Bag readBag = BagReader.read(rootDir);
+    Assertions.assertEquals(Arrays.asList("Some Archivist"), readBag.getMetadata().get("Contact-Name"));
+    Assertions.assertEquals(2, readBag.getTagManifests().size());
+    Assertions.assertTrue(BagVerifier.isValid(readBag, false));
+  }
+
+  @Test
+  public void testBuildersOnDifferentThreads() throws Exception{
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Bag>> bags = new ArrayList<>();
+    try{
+      for(int bagNumber = 0; bagNumber < 4; bagNumber++){
+        Path rootDir = folder.resolve("bag" + bagNumber);
+        bags.add(executor.submit(() -> {
+          BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha512", "md5"));
+          for(int index = 0; index < 50; index++){
+            builder.addPayload("file" + index + ".txt", new ByteArrayInputStream(new byte[index * 1000]));
+          }
+          return builder.build(new Metadata());
+        }));
+      }
+      List<Bag> builtBags = new ArrayList<>();
+      for(Future<Bag> bag : bags){
+        builtBags.add(bag.get());
+      }
+      for(Bag bag : builtBags){
+        Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bag.getRootDir()), false));
+      }
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEmptyStream() throws Exception{
+    Path rootDir = folder.resolve("bag");
+    BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha512"));
+    builder.addPayload("empty.txt", new ByteArrayInputStream(new byte[0]));
+
+    Assertions.assertTrue(BagVerifier.isValid(builder.build(new Metadata()), false));
+  }
+
+  @Test
+  public void testAddingSameFileTwiceThrowsException() throws Exception{
+    BagBuilder builder = new BagBuilder(folder.resolve("bag"), Arrays.asList("sha512"));
+    builder.addPayload("hello.txt", new ByteArrayInputStream(CONTENTS));
+
+    Assertions.assertThrows(FileAlreadyExistsException.class, () -> builder.addPayload("hello.txt", new ByteArrayInputStream(CONTENTS)));
+  }
+
+  @Test
+  public void testFailedStreamDoesNotLeaveFile() throws Exception{
+    Path rootDir = folder.resolve("bag");
+    BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha512"));
+    InputStream failing = new InputStream(){
+      private int count;
+      @Override
+      public int read() throws IOException{
+        if(count++ > 10){
+          throw new IOException("connection reset");
+        }
+        return 'a';
+      }
+    };
+
+    Assertions.assertThrows(IOException.class, () -> builder.addPayload("hello.txt", failing));
+    Assertions.assertFalse(Files.exists(rootDir.resolve("data/hello.txt")));
+
+    builder.addPayload("hello.txt", new ByteArrayInputStream(CONTENTS)); //the retry succeeds
+    Assertions.assertTrue(BagVerifier.isValid(builder.build(new Metadata()), false));
+  }
+
+  @Test
+  public void testNameIsNotDecoded() throws Exception{
+    Path rootDir = folder.resolve("bag");
+    BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha512"));
+    builder.addPayload("a%0A.txt", new ByteArrayInputStream(CONTENTS));
+    builder.addPayload("*star.txt", new ByteArrayInputStream(CONTENTS));
+
+    Bag bag = builder.build(new Metadata());
+
+    Assertions.assertArrayEquals(CONTENTS, Files.readAllBytes(rootDir.resolve("data/a%0A.txt")));
+    Assertions.assertArrayEquals(CONTENTS, Files.readAllBytes(rootDir.resolve("data/*star.txt")));
+    Assertions.assertTrue(bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().containsKey(rootDir.resolve("data/a%0A.txt")));
+    Assertions.assertFalse(Files.exists(rootDir.resolve("data/a\n.txt")));
+  }
+
+  @Test
+  public void testPathOutsideDataDirThrowsException() throws Exception{
+    BagBuilder builder = new BagBuilder(folder.resolve("bag"), Arrays.asList("sha512"));
+
+    Assertions.assertThrows(MaliciousPathException.class, () -> builder.addPayload("../bagit.txt", new ByteArrayInputStream(CONTENTS)));
+    Assertions.assertThrows(MaliciousPathException.class, () -> builder.addPayload("../../evil.txt", new ByteArrayInputStream(CONTENTS)));
+  }
+
+  @Test
+  public void testBuildFromZipArchive() throws Exception{
+    Path rootDir = folder.resolve("bag");
+    BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha512", "md5"));
+    try(InputStream archive = new ByteArrayInputStream(zip("hello.txt", "sub/dir/", "sub/dir/hello.txt"))){
+      builder.addPayloadArchive(archive, ArchiveFormat.ZIP);
+    }
+
+    Bag bag = builder.build(new Metadata());
+
+    Assertions.assertArrayEquals(CONTENTS, Files.readAllBytes(rootDir.resolve("data/sub/dir/hello.txt")));
+    Assertions.assertEquals("22.2", bag.getMetadata().get("Payload-Oxum").get(0));
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(rootDir), false));
+  }
+
+  @Test
+  public void testBuildFromTarGzArchive() throws Exception{
+    Path bagDir = copyBagToTempFolder(Paths.get("src", "test", "resources", "bags", "v1_0", "bag"));
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    BagWriter.writeArchive(BagReader.read(bagDir), archive, ArchiveFormat.TAR_GZ);
+    Path rootDir = folder.resolve("newBag");
+    BagBuilder builder = new BagBuilder(rootDir, Arrays.asList("sha256"));
+
+    builder.addPayloadArchive(new ByteArrayInputStream(archive.toByteArray()), ArchiveFormat.TAR_GZ);
+    Bag bag = builder.build(new Metadata());
+
+    Assertions.assertArrayEquals(Files.readAllBytes(bagDir.resolve("bagit.txt")), Files.readAllBytes(rootDir.resolve("data/bag_copy/bagit.txt")));
+    Assertions.assertTrue(BagVerifier.isValid(bag, false));
+  }
+
+  @Test
+  public void testMaliciousArchiveEntryThrowsException() throws Exception{
+    BagBuilder builder = new BagBuilder(folder.resolve("bag"), Arrays.asList("sha512"));
+
+    Assertions.assertThrows(MaliciousPathException.class,
+        () -> builder.addPayloadArchive(new ByteArrayInputStream(zip("../../evil.txt")), ArchiveFormat.ZIP));
+    Assertions.assertThrows(MaliciousPathException.class,
+        () -> builder.addPayloadArchive(new ByteArrayInputStream(zip("/evil.txt")), ArchiveFormat.ZIP));
+    Assertions.assertFalse(Files.exists(folder.resolve("evil.txt")));
+  }
+
+  /*
+   * entries ending with / are directories, the rest contain CONTENTS
+   */
+  private static byte[] zip(final String... names) throws IOException{
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try(ZipOutputStream zip = new ZipOutputStream(archive)){
+      for(final String name : names){
+        zip.putNextEntry(new ZipEntry(name));
+        if(!name.endsWith("/")){
+          zip.write(CONTENTS);
+        }
+        zip.closeEntry();
+      }
+    }
+    return archive.toByteArray();
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.jscancella.writer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.verify.BagVerifier;
+import com.github.jscancella.writer.internal.BagCreator;
+
+public class BagSplitterTest extends TempFolderTest {
+
+  private Bag createBag() throws Exception{
+    Path root = createDirectory("bag");
+    for(int size : new int[]{60, 50, 40, 30, 20}){
+      Files.write(root.resolve("file" + size + ".txt"), new byte[size]);
+    }
+    return BagCreator.bagInPlace(root, Arrays.asList("md5", "sha256"), false);
+  }
+
+  @Test
+  public void testSplitBagsAreValidAndCoverThePayload() throws Exception{
+    Bag bag = createBag();
+    Path outputDir = createDirectory("split");
+
+    List<Path> subBagDirs = BagSplitter.split(bag, outputDir, 100, 0, new WriteOptions());
+
+    Assertions.assertEquals(Arrays.asList(outputDir.resolve("bag-1"), outputDir.resolve("bag-2")), subBagDirs);
+    Map<Path, String> checksums = new HashMap<>();
+    for(Path subBagDir : subBagDirs){
+      Bag subBag = BagReader.read(subBagDir);
+      Assertions.assertTrue(BagVerifier.isValid(subBag, false));
+      Assertions.assertEquals("bag", subBag.getMetadata().get("Bag-Group-Identifier").get(0));
+      for(Path file : subBag.getPayLoadManifest("sha256").getFileToChecksumMap().keySet()){
+        checksums.put(subBagDir.relativize(file), subBag.getPayLoadManifest("sha256").getFileToChecksumMap().get(file));
+      }
+    }
+    Assertions.assertEquals("1 of 2", BagReader.read(subBagDirs.get(0)).getMetadata().get("Bag-Count").get(0));
+    Assertions.assertEquals("2 of 2", BagReader.read(subBagDirs.get(1)).getMetadata().get("Bag-Count").get(0));
+
+    Manifest original = bag.getPayLoadManifest("sha256");
+    Assertions.assertEquals(original.getFileToChecksumMap().size(), checksums.size());
+    for(Path file : original.getFileToChecksumMap().keySet()){
+      Assertions.assertEquals(original.getFileToChecksumMap().get(file), checksums.get(bag.getRootDir().relativize(file)));
+    }
+    Assertions.assertEquals(Arrays.asList("100.2  bag-1", "100.3  bag-2"), Files.readAllLines(outputDir.resolve("bag-split-catalog.txt")));
+  }
+
+  @Test
+  public void testSplitInParallelByFileCount() throws Exception{
+    Bag bag = createBag();
+    Path outputDir = createDirectory("parallelSplit");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    WriteOptions options = new WriteOptions();
+    options.setExecutor(executor);
+
+    List<Path> subBagDirs;
+    try{
+      subBagDirs = BagSplitter.split(bag, outputDir, 0, 2, options);
+    }
+    finally{
+      executor.shutdown();
+    }
+
+    Assertions.assertEquals(3, subBagDirs.size());
+    for(Path subBagDir : subBagDirs){
+      Bag subBag = BagReader.read(subBagDir);
+      Assertions.assertTrue(BagVerifier.isValid(subBag, false));
+      Assertions.assertTrue(subBag.getPayLoadManifest("md5").getFileToChecksumMap().size() <= 2);
+    }
+  }
+}
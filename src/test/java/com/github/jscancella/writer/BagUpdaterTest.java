@@ -0,0 +1,186 @@
+package com.github.jscancella.writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Metadata;
+import com.github.jscancella.exceptions.FileNotInManifestException;
+import com.github.jscancella.exceptions.MaliciousPathException;
+import com.github.jscancella.hash.PayloadOxumGenerator;
+import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.verify.BagVerifier;
+
+public class BagUpdaterTest extends TempFolderTest {
+  private final Path rootDir = Paths.get("src", "test", "resources", "bags", "v1_0", "bag");
+
+  @Test
+  public void testAddReplaceAndRemovePayloadFiles() throws Exception{
+    Path bagDir = createDirectory("bag");
+    Files.write(bagDir.resolve("foo.txt"), "foo".getBytes(StandardCharsets.UTF_8));
+    Files.write(bagDir.resolve("remove.txt"), "remove me".getBytes(StandardCharsets.UTF_8));
+    Bag bag = BagWriter.bagInPlace(bagDir, Arrays.asList("sha512", "md5"), false);
+    Path newFile = createFile("new.txt");
+    Files.write(newFile, "a new file".getBytes(StandardCharsets.UTF_8));
+    Path replacement = createFile("replacement.txt");
+    Files.write(replacement, "replaced contents".getBytes(StandardCharsets.UTF_8));
+
+    BagUpdater updater = new BagUpdater(bag);
+    updater.addPayloadFile(newFile, "sub/new.txt");
+    updater.replacePayloadFile(replacement, "foo.txt");
+    updater.removePayloadFile("remove.txt");
+    updater.update();
+
+    Path dataDir = bag.getDataDir();
+    Assertions.assertTrue(Files.exists(dataDir.resolve("sub").resolve("new.txt")));
+    Assertions.assertFalse(Files.exists(dataDir.resolve("remove.txt")));
+    Assertions.assertEquals("replaced contents", new String(Files.readAllBytes(dataDir.resolve("foo.txt")), StandardCharsets.UTF_8));
+    Assertions.assertEquals(PayloadOxumGenerator.generatePayloadOxum(dataDir), bag.getMetadata().get("Payload-Oxum").get(0));
+
+    Bag updatedBag = BagReader.read(bag.getRootDir());
+    Assertions.assertEquals(bag.getPayLoadManifests(), updatedBag.getPayLoadManifests());
+    Assertions.assertTrue(BagVerifier.isValid(updatedBag, false));
+  }
+
+  @Test
+  public void testReplacingPayloadFileDoesNotTouchHiddenFileWithTempName() throws Exception{
+    Path bagDir = createDirectory("bag");
+    Files.write(bagDir.resolve("foo.txt"), "foo".getBytes(StandardCharsets.UTF_8));
+    Files.write(bagDir.resolve(".foo.txt.tmp"), "hidden".getBytes(StandardCharsets.UTF_8));
+    Bag bag = BagWriter.bagInPlace(bagDir, Arrays.asList("md5"), true);
+    Path replacement = createFile("replacement.txt");
+    Files.write(replacement, "replaced contents".getBytes(StandardCharsets.UTF_8));
+
+    BagUpdater updater = new BagUpdater(bag);
+    updater.replacePayloadFile(replacement, "foo.txt");
+    updater.update();
+
+    Assertions.assertEquals("hidden", new String(Files.readAllBytes(bag.getDataDir().resolve(".foo.txt.tmp")), StandardCharsets.UTF_8));
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bagDir), false));
+  }
+
+  @Test
+  public void testOnlyChangedFilesAreHashed() throws Exception{
+    Path bagDir = copyBagToTempFolder(rootDir);
+    Bag bag = BagReader.read(bagDir);
+    Manifest manifest = bag.getPayLoadManifest("sha512");
+    Path unchangedFile = bagDir.resolve("data").resolve("foo.txt");
+    manifest.getFileToChecksumMap().put(unchangedFile, "abc123");
+    Path newFile = createFile("new.txt");
+
+    BagUpdater updater = new BagUpdater(bag);
+    updater.addPayloadFile(newFile, "new.txt");
+    updater.update();
+
+    Assertions.assertEquals("abc123", BagReader.read(bagDir).getPayLoadManifest("sha512").getFileToChecksumMap().get(unchangedFile));
+  }
+
+  @Test
+  public void testRemovingFileNotInManifestThrowsException() throws Exception{
+    Bag bag = BagReader.read(copyBagToTempFolder(rootDir));
+    BagUpdater updater = new BagUpdater(bag);
+    updater.removePayloadFile("doesNotExist.txt");
+
+    Assertions.assertThrows(FileNotInManifestException.class, () -> updater.update());
+  }
+
+  @Test
+  public void testAddingExistingFileThrowsException() throws Exception{
+    Bag bag = BagReader.read(copyBagToTempFolder(rootDir));
+    BagUpdater updater = new BagUpdater(bag);
+    updater.addPayloadFile(createFile("new.txt"), "foo.txt");
+
+    Assertions.assertThrows(FileAlreadyExistsException.class, () -> updater.update());
+  }
+
+  @Test
+  public void testPathOutsideDataDirThrowsException() throws Exception{
+    Bag bag = BagReader.read(copyBagToTempFolder(rootDir));
+    BagUpdater updater = new BagUpdater(bag);
+    updater.addPayloadFile(createFile("new.txt"), "../bagit.txt");
+
+    Assertions.assertThrows(MaliciousPathException.class, () -> updater.update());
+  }
+
+  @Test
+  public void testUpdateMetadataDoesNotTouchPayload() throws Exception{
+    Path bagDir = copyBagToTempFolder(rootDir);
+    Bag bag = BagReader.read(bagDir);
+    byte[] payloadManifest = Files.readAllBytes(bagDir.resolve("manifest-sha512.txt"));
+    Path payloadFile = bagDir.resolve("data").resolve("foo.txt");
+    Files.write(payloadFile, "corrupt".getBytes(StandardCharsets.UTF_8)); //would fail if the payload was hashed
+    Metadata metadata = new Metadata();
+    metadata.addAll(bag.getMetadata().getAll());
+    metadata.add("Contact-Name", "Some Archivist");
+
+    BagUpdater.updateMetadata(bag, metadata);
+
+    Assertions.assertArrayEquals(payloadManifest, Files.readAllBytes(bagDir.resolve("manifest-sha512.txt")));
+    Bag updatedBag = BagReader.read(bagDir);
+    Assertions.assertEquals(Arrays.asList("Some Archivist"), updatedBag.getMetadata().get("Contact-Name"));
+    Assertions.assertEquals(bag.getTagManifests(), updatedBag.getTagManifests());
+    Files.write(payloadFile, Files.readAllBytes(rootDir.resolve("data").resolve("foo.txt")));
+    Assertions.assertTrue(BagVerifier.isValid(updatedBag, false));
+  }
+
+  @Test
+  public void testUpdateBagsConcurrently() throws Exception{
+    List<Bag> bags = new ArrayList<>();
+    for(int index = 0; index < 8; index++){
+      Path bagDir = createDirectory("bag" + index);
+      Files.write(bagDir.resolve("foo.txt"), "foo".getBytes(StandardCharsets.UTF_8));
+      bags.add(BagWriter.bagInPlace(bagDir, Arrays.asList("sha512", "md5"), false));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try{
+      List<Future<?>> updates = new ArrayList<>();
+      for(Bag bag : bags){
+        Path newFile = createFile(bag.getRootDir().getFileName() + ".txt");
+        byte[] contents = new byte[1024 * 1024];
+        Arrays.fill(contents, (byte) bags.indexOf(bag));
+        Files.write(newFile, contents);
+        updates.add(executor.submit(() -> {
+          BagUpdater updater = new BagUpdater(bag);
+          updater.addPayloadFile(newFile, "new.txt");
+          updater.update();
+          return null;
+        }));
+      }
+      for(Future<?> update : updates){
+        update.get();
+      }
+    }
+    finally{
+      executor.shutdownNow();
+    }
+
+    for(Bag bag : bags){
+      Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bag.getRootDir()), false));
+    }
+  }
+
+  @Test
+  public void testUpdateMetadataKeepsPayloadOxum() throws Exception{
+    Bag bag = BagReader.read(copyBagToTempFolder(rootDir));
+    Metadata metadata = new Metadata();
+    metadata.add("Contact-Name", "Some Archivist");
+
+    BagUpdater.updateMetadata(bag, metadata);
+
+    Assertions.assertEquals(Arrays.asList("6.1"), BagReader.read(bag.getRootDir()).getMetadata().get("Payload-Oxum"));
+  }
+}
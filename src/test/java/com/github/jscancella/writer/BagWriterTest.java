@@ -1,25 +1,45 @@
 package com.github.jscancella.writer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarInputStream;
 
 import com.github.jscancella.TempFolderTest;
 import com.github.jscancella.TestUtils;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Metadata;
 import com.github.jscancella.domain.Version;
+import com.github.jscancella.exceptions.CorruptChecksumException;
+import com.github.jscancella.fetch.BagFetcher;
+import com.github.jscancella.hash.PayloadOxumGenerator;
 import com.github.jscancella.internal.PathUtils;
 import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.verify.ArchiveVerifier;
+import com.github.jscancella.verify.BagVerifier;
 import com.github.jscancella.writer.internal.BagCreator;
 
 public class BagWriterTest extends TempFolderTest {
@@ -169,6 +189,296 @@ public class BagWriterTest extends TempFolderTest {
     }
   }
   
+  @Test
+  public void testWriteCalculatesPayloadOxumOfWrittenFiles() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir); 
+    Path bagitDirPath = createDirectory("oxum");
+    
+    BagWriter.write(bag, bagitDirPath);
+    
+    Assertions.assertEquals(PayloadOxumGenerator.generatePayloadOxum(bagitDirPath.resolve("data")), bag.getMetadata().get("Payload-Oxum").get(0));
+  }
+  
+  @Test
+  public void testWriteWithExecutorCreatesValidBag() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir); 
+    Path bagitDirPath = createDirectory("concurrentWrite");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    WriteOptions options = new WriteOptions();
+    options.setExecutor(executor);
+    
+    try{
+      BagWriter.write(bag, bagitDirPath, options);
+    }
+    finally{
+      executor.shutdown();
+    }
+    
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bagitDirPath), false));
+  }
+  
+  @Test
+  public void testWriteAndVerifyPayloadCreatesValidBag() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir); 
+    Path bagitDirPath = createDirectory("verifiedWrite");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    WriteOptions options = new WriteOptions();
+    options.setExecutor(executor);
+    options.setVerifyPayload(true);
+    
+    try{
+      BagWriter.write(bag, bagitDirPath, options);
+    }
+    finally{
+      executor.shutdown();
+    }
+    
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bagitDirPath), false));
+  }
+  
+  @Test
+  public void testWriteAndVerifyPayloadThrowsWhenSourceIsCorrupt() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI()));
+    Bag bag = BagReader.read(rootDir); 
+    Path payloadFile = bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet().iterator().next();
+    Files.write(payloadFile, "corrupted".getBytes(StandardCharsets.UTF_8));
+    Path bagitDirPath = createDirectory("corruptWrite");
+    WriteOptions options = new WriteOptions();
+    options.setVerifyPayload(true);
+    
+    Assertions.assertThrows(CorruptChecksumException.class, () -> { BagWriter.write(bag, bagitDirPath, options); });
+  }
+  
+  @Test
+  public void testTransactionalWriteCreatesValidBag() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir); 
+    Path bagitDirPath = createDirectory("transactionalWrite");
+    WriteOptions options = new WriteOptions();
+    options.setTransactional(true);
+    
+    BagWriter.write(bag, bagitDirPath, options);
+    
+    Assertions.assertFalse(Files.exists(bagitDirPath.resolve(".bagit-transaction")));
+    for(Manifest tagManifest : bag.getTagManifests()){
+      for(Path tagFile : tagManifest.getFileToChecksumMap().keySet()){
+        Assertions.assertTrue(Files.exists(tagFile));
+        Assertions.assertTrue(tagFile.startsWith(bagitDirPath));
+      }
+    }
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bagitDirPath), false));
+    Assertions.assertFalse(BagWriter.recover(bagitDirPath));
+  }
+  
+  @Test
+  public void testInterruptedTransactionalWriteIsRecovered() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI()));
+    Bag bag = BagReader.read(rootDir); 
+    Path payloadFile = bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet().iterator().next();
+    Files.write(payloadFile, "corrupted".getBytes(StandardCharsets.UTF_8));
+    Path bagitDirPath = createDirectory("interruptedWrite");
+    Files.write(bagitDirPath.resolve("bagit.txt"), "left over from an earlier bag".getBytes(StandardCharsets.UTF_8));
+    Files.write(bagitDirPath.resolve("manifest-md5.txt"), "left over from an earlier bag".getBytes(StandardCharsets.UTF_8));
+    WriteOptions options = new WriteOptions();
+    options.setVerifyPayload(true);
+    options.setTransactional(true);
+    
+    Assertions.assertThrows(CorruptChecksumException.class, () -> { BagWriter.write(bag, bagitDirPath, options); });
+    Assertions.assertFalse(Files.exists(bagitDirPath.resolve("bagit.txt")));
+    
+    Assertions.assertTrue(BagWriter.recover(bagitDirPath));
+    Assertions.assertFalse(Files.exists(bagitDirPath.resolve(".bagit-transaction")));
+    Assertions.assertFalse(Files.exists(bagitDirPath.resolve("manifest-md5.txt")));
+  }
+  
+  @Test
+  public void testInterruptedBagInPlaceIsRecovered() throws Exception{
+    Path root = createDirectory("interruptedBagInPlace");
+    Path tempDir = Files.createDirectory(root.resolve("1234.temp"));
+    Files.write(tempDir.resolve("moved.txt"), "moved".getBytes(StandardCharsets.UTF_8));
+    Files.write(root.resolve("notMoved.txt"), "not moved".getBytes(StandardCharsets.UTF_8));
+    
+    Assertions.assertTrue(BagWriter.recover(root));
+    
+    Assertions.assertFalse(Files.exists(tempDir));
+    Assertions.assertTrue(Files.exists(root.resolve("moved.txt")));
+    Assertions.assertTrue(Files.exists(root.resolve("notMoved.txt")));
+    Assertions.assertTrue(BagVerifier.isValid(BagWriter.bagInPlace(root, Arrays.asList("md5"), false), false));
+  }
+  
+  @Test
+  public void testWriteArchivesConcurrently() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<byte[]>> archives = new ArrayList<>();
+    try{
+      for(int index = 0; index < 8; index++){
+        archives.add(executor.submit(() -> {
+          ByteArrayOutputStream archive = new ByteArrayOutputStream();
+          BagWriter.writeArchive(BagReader.read(rootDir), archive, ArchiveFormat.TAR);
+          return archive.toByteArray();
+        }));
+      }
+      for(Future<byte[]> archive : archives){
+        Assertions.assertTrue(ArchiveVerifier.isValid(new ByteArrayInputStream(archive.get()), ArchiveFormat.TAR));
+      }
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testWriteTarArchiveCreatesValidBag() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir);
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    
+    BagWriter.writeArchive(bag, archive, ArchiveFormat.TAR);
+    
+    Assertions.assertEquals(0, archive.size() % 10240);
+    Path extractedDir = createDirectory("extractedTar");
+    try(TarInputStream tar = new TarInputStream(new ByteArrayInputStream(archive.toByteArray()))){
+      TarEntry entry = tar.getNextEntry();
+      while(entry != null){
+        extract(tar, extractedDir.resolve(entry.getName()));
+        entry = tar.getNextEntry();
+      }
+    }
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(extractedDir.resolve("bag")), false));
+  }
+  
+  @Test
+  public void testWriteZipArchiveCreatesValidBag() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v1_0/bag").toURI());
+    Bag bag = BagReader.read(rootDir);
+    Path zipFile = folder.resolve("bag.zip");
+    
+    try(FileChannel channel = FileChannel.open(zipFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+      BagWriter.writeArchive(bag, channel, ArchiveFormat.ZIP);
+    }
+    
+    Path extractedDir = createDirectory("extractedZip");
+    try(ZipInputStream zip = new ZipInputStream(Files.newInputStream(zipFile))){
+      ZipEntry entry = zip.getNextEntry();
+      while(entry != null){
+        extract(zip, extractedDir.resolve(entry.getName()));
+        entry = zip.getNextEntry();
+      }
+    }
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(extractedDir.resolve("bag")), false));
+  }
+  
+  private static void extract(InputStream archive, Path file) throws IOException{
+    Files.createDirectories(file.getParent());
+    Files.copy(archive, file);
+  }
+  
+  private Path createPayloadWithDuplicates(final String name) throws IOException{
+    Path root = createDirectory(name);
+    Files.write(root.resolve("original.txt"), "the same contents".getBytes(StandardCharsets.UTF_8));
+    Files.createDirectories(root.resolve("subdir"));
+    Files.write(root.resolve("subdir").resolve("copy.txt"), "the same contents".getBytes(StandardCharsets.UTF_8));
+    Files.write(root.resolve("different.txt"), "different contents".getBytes(StandardCharsets.UTF_8));
+    return root;
+  }
+  
+  @Test
+  public void testWriteWithHardlinkDeduplication() throws Exception{
+    Bag bag = BagCreator.bagInPlace(createPayloadWithDuplicates("hardlinkSource"), Arrays.asList("sha256"), false);
+    Path bagitDirPath = createDirectory("hardlinkWrite");
+    WriteOptions options = new WriteOptions();
+    options.setDeduplication(Deduplication.HARDLINK);
+    
+    DeduplicationReport report = BagWriter.write(bag, bagitDirPath, options);
+    
+    Path data = bagitDirPath.resolve("data");
+    Assertions.assertTrue(Files.isSameFile(data.resolve("subdir").resolve("copy.txt"), data.resolve("original.txt")));
+    Assertions.assertFalse(Files.isSameFile(data.resolve("different.txt"), data.resolve("original.txt")));
+    Assertions.assertEquals(1, report.getDuplicateCount());
+    Assertions.assertEquals(17, report.getBytesSaved());
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(bagitDirPath), false));
+  }
+  
+  @Test
+  public void testWriteWithFetchDeduplication() throws Exception{
+    Bag bag = BagCreator.bagInPlace(createPayloadWithDuplicates("fetchSource"), Arrays.asList("sha256"), false);
+    Path bagitDirPath = createDirectory("fetchWrite");
+    WriteOptions options = new WriteOptions();
+    options.setDeduplication(Deduplication.FETCH);
+    options.setFetchBaseUrl(new URL("https://example.org/bags/fetchWrite/"));
+    
+    DeduplicationReport report = BagWriter.write(bag, bagitDirPath, options);
+    
+    Assertions.assertFalse(Files.exists(bagitDirPath.resolve("data").resolve("subdir").resolve("copy.txt")));
+    Assertions.assertEquals(Arrays.asList("https://example.org/bags/fetchWrite/data/original.txt 17 data/subdir/copy.txt"), 
+        Files.readAllLines(bagitDirPath.resolve("fetch.txt")));
+    Assertions.assertEquals(1, report.getDuplicateCount());
+  }
+  
+  @Test
+  public void testEachWriteWithSharedOptionsGetsItsOwnReport() throws Exception{
+    Bag bag = BagCreator.bagInPlace(createPayloadWithDuplicates("sharedOptionsSource"), Arrays.asList("sha256"), false);
+    WriteOptions options = new WriteOptions();
+    options.setDeduplication(Deduplication.HARDLINK);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try{
+      Future<DeduplicationReport> first = executor.submit(() -> BagWriter.write(bag, createDirectory("sharedOptionsFirst"), options));
+      Future<DeduplicationReport> second = executor.submit(() -> BagWriter.write(bag, createDirectory("sharedOptionsSecond"), options));
+      
+      Assertions.assertEquals(1, first.get().getDuplicateCount());
+      Assertions.assertEquals(1, second.get().getDuplicateCount());
+      Assertions.assertNotSame(first.get(), second.get());
+    }
+    finally{
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testWriteWithFetchDeduplicationRequiresBaseUrl() throws Exception{
+    Bag bag = BagCreator.bagInPlace(createPayloadWithDuplicates("noBaseUrlSource"), Arrays.asList("sha256"), false);
+    WriteOptions options = new WriteOptions();
+    options.setDeduplication(Deduplication.FETCH);
+    
+    Assertions.assertThrows(IllegalArgumentException.class, () -> { BagWriter.write(bag, createDirectory("noBaseUrlWrite"), options); });
+  }
+  
+  @Test
+  public void testBagInPlaceDeduplicatedWithHardlinks() throws Exception{
+    Path root = createPayloadWithDuplicates("hardlinkInPlace");
+    WriteOptions options = new WriteOptions();
+    options.setDeduplication(Deduplication.HARDLINK);
+    
+    DeduplicationReport report = new DeduplicationReport();
+    
+    Bag bag = BagWriter.bagInPlaceDeduplicated(root, Arrays.asList("sha256"), false, new Metadata(), options, report);
+    
+    Assertions.assertTrue(Files.isSameFile(bag.getDataDir().resolve("subdir").resolve("copy.txt"), bag.getDataDir().resolve("original.txt")));
+    Assertions.assertEquals(1, report.getDuplicateCount());
+    Assertions.assertTrue(BagVerifier.isValid(BagReader.read(root), false));
+  }
+  
+  @Test
+  public void testBagInPlaceDeduplicatedWithFetchCanBeFetched() throws Exception{
+    Path root = createPayloadWithDuplicates("fetchInPlace");
+    WriteOptions options = new WriteOptions();
+    options.setDeduplication(Deduplication.FETCH);
+    options.setFetchBaseUrl(root.toUri().toURL());
+    
+    BagWriter.bagInPlaceDeduplicated(root, Arrays.asList("sha256"), false, new Metadata(), options, new DeduplicationReport());
+    Bag bag = BagReader.read(root);
+    
+    Assertions.assertFalse(Files.exists(bag.getDataDir().resolve("subdir").resolve("copy.txt")));
+    Assertions.assertEquals(1, bag.getItemsToFetch().size());
+    Assertions.assertEquals("35.2", bag.getMetadata().get("Payload-Oxum").get(0));
+    Assertions.assertEquals(1, BagFetcher.fetch(bag));
+    Assertions.assertTrue(BagVerifier.isComplete(bag, false));
+  }
+  
   @Test
   public void testWriteHoley() throws Exception{
     Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v0_96/holey-bag").toURI());
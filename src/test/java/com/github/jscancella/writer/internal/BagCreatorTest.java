@@ -2,12 +2,18 @@ package com.github.jscancella.writer.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -16,8 +22,11 @@ import com.github.jscancella.TempFolderTest;
 import com.github.jscancella.TestUtils;
 import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.domain.Metadata;
 import com.github.jscancella.domain.Version;
+import com.github.jscancella.hash.PayloadOxumGenerator;
 import com.github.jscancella.hash.StandardHasher;
+import com.github.jscancella.reader.BagReader;
 
 public class BagCreatorTest extends TempFolderTest {
   
@@ -31,6 +40,87 @@ public class BagCreatorTest extends TempFolderTest {
     Assertions.assertTrue(Files.exists(testFolder.resolve("data").resolve("data")));
   }
   
+  @Test
+  public void testResumeSkipsFilesAlreadyHashed() throws Exception{
+    Path root = createDirectory("resumed");
+    Path dataDir = Files.createDirectory(root.resolve("data"));
+    Path hashedFile = Files.write(dataDir.resolve("hashed.txt"), "hashed".getBytes(StandardCharsets.UTF_8));
+    Path changedFile = Files.write(dataDir.resolve("changed.txt"), "before".getBytes(StandardCharsets.UTF_8));
+    Files.write(dataDir.resolve("notHashed.txt"), "not hashed".getBytes(StandardCharsets.UTF_8));
+    journal(root, hashedFile, changedFile); //as if the creation was interrupted after hashing these
+    Files.write(changedFile, "changed after being hashed".getBytes(StandardCharsets.UTF_8));
+    
+    Bag bag = BagCreator.bagInPlace(root, Arrays.asList("md5"), false);
+    
+    Manifest manifest = bag.getPayLoadManifests().iterator().next();
+    Assertions.assertEquals(3, manifest.getFileToChecksumMap().size());
+    Assertions.assertEquals("journaledChecksum", manifest.getFileToChecksumMap().get(hashedFile));
+    Assertions.assertEquals(StandardHasher.MD5.hash(changedFile), manifest.getFileToChecksumMap().get(changedFile));
+    Assertions.assertFalse(Files.exists(dataDir.resolve("data")));
+    Assertions.assertEquals(Arrays.asList("bag-info.txt", "bagit.txt", "data", "manifest-md5.txt", "tagmanifest-md5.txt"), list(root));
+  }
+  
+  @Test
+  public void testResumeContinuesInterruptedMove() throws Exception{
+    Path root = createDirectory("interruptedMove");
+    Files.write(root.resolve("notMoved.txt"), "not moved".getBytes(StandardCharsets.UTF_8));
+    Path tempDir;
+    try(BagCreationJournal journal = BagCreationJournal.open(root, Arrays.asList("md5"))){
+      tempDir = Files.createDirectory(journal.getTempDir());
+      Files.write(tempDir.resolve("moved.txt"), "moved".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    BagCreator.bagInPlace(root, Arrays.asList("md5"), false);
+    
+    Assertions.assertFalse(Files.exists(tempDir));
+    Assertions.assertEquals(Arrays.asList("moved.txt", "notMoved.txt"), list(root.resolve("data")));
+  }
+  
+  @Test
+  public void testResumeWithDifferentAlgorithmsDoesNotMovePayloadAgain() throws Exception{
+    Path root = createDirectory("changedAlgorithms");
+    Path dataDir = Files.createDirectory(root.resolve("data"));
+    Path file = Files.write(dataDir.resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+    journal(root, file); //as if the creation with md5 was interrupted after moving the payload
+    
+    Bag bag = BagCreator.bagInPlace(root, Arrays.asList("sha256"), false);
+    
+    Assertions.assertEquals(Arrays.asList("a.txt"), list(dataDir));
+    Assertions.assertEquals(StandardHasher.SHA256.hash(file), bag.getPayLoadManifest("sha256").getFileToChecksumMap().get(file));
+  }
+  
+  @Test
+  public void testJournalIsNotInTagManifests() throws Exception{
+    Path root = createDirectory("hiddenJournal");
+    Files.write(root.resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+    
+    Bag bag = BagCreator.bagInPlace(root, Arrays.asList("md5"), true);
+    
+    Assertions.assertEquals(Arrays.asList("bag-info.txt", "bagit.txt", "data", "manifest-md5.txt", "tagmanifest-md5.txt"), list(root));
+    Assertions.assertFalse(bag.getTagManifests().iterator().next().getFileToChecksumMap().keySet().stream()
+        .anyMatch(path -> path.getFileName().toString().startsWith(".")));
+  }
+  
+  private static void journal(final Path root, final Path... files) throws IOException{
+    try(BagCreationJournal journal = BagCreationJournal.open(root, Arrays.asList("md5"))){
+      for(Path file : files){
+        journal.record(file, Files.readAttributes(file, BasicFileAttributes.class), 
+            Collections.singletonMap(new Manifest("md5"), "journaledChecksum"));
+      }
+    }
+  }
+  
+  private static List<String> list(final Path directory) throws IOException{
+    List<String> names = new ArrayList<>();
+    try(DirectoryStream<Path> children = Files.newDirectoryStream(directory)){
+      for(Path child : children){
+        names.add(child.getFileName().toString());
+      }
+    }
+    Collections.sort(names);
+    return names;
+  }
+  
   @Test
   public void testBagInPlace() throws IOException, NoSuchAlgorithmException{
     TestStructure structure = createTestStructure();
@@ -85,6 +175,81 @@ public class BagCreatorTest extends TempFolderTest {
     }
   }
   
+  @Test
+  public void testBagInPlaceCalculatesPayloadOxumWhileHashing() throws IOException, NoSuchAlgorithmException{
+    createTestStructure();
+    Path nestedHiddenFile = Files.createDirectories(folder.resolve("folder1").resolve(".nestedHiddenFolder")).resolve("file4.txt");
+    Files.write(nestedHiddenFile, "some content".getBytes(StandardCharsets.UTF_8));
+    TestUtils.makeFilesHiddenOnWindows(folder);
+    
+    Bag bag = BagCreator.bagInPlace(folder, Arrays.asList(StandardHasher.MD5.getBagitAlgorithmName()), false);
+    
+    //hidden files that are not in the manifests are still part of the payload
+    Assertions.assertEquals(PayloadOxumGenerator.generatePayloadOxum(bag.getDataDir()), bag.getMetadata().get("Payload-Oxum").get(0));
+  }
+  
+  @Test
+  public void testParallelBagInPlaceIsSameAsSerial() throws IOException, NoSuchAlgorithmException{
+    List<String> algorithms = Arrays.asList(StandardHasher.MD5.getBagitAlgorithmName(), StandardHasher.SHA256.getBagitAlgorithmName());
+    Path serialFolder = createPayload("serial");
+    Path parallelFolder = createPayload("parallel");
+    
+    BagCreator.bagInPlace(serialFolder, algorithms, false);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try{
+      BagCreator.bagInPlace(parallelFolder, algorithms, false, new Metadata(), executor);
+    }
+    finally{
+      executor.shutdown();
+    }
+    
+    for(String algorithm : algorithms){
+      String manifestName = "manifest-" + algorithm + ".txt";
+      List<String> serialLines = Files.readAllLines(serialFolder.resolve(manifestName));
+      List<String> parallelLines = Files.readAllLines(parallelFolder.resolve(manifestName));
+      Collections.sort(serialLines);
+      Collections.sort(parallelLines);
+      Assertions.assertEquals(serialLines, parallelLines);
+    }
+  }
+  
+  @Test
+  public void testStreamingBagInPlaceIsSameAsSerial() throws Exception{
+    List<String> algorithms = Arrays.asList(StandardHasher.MD5.getBagitAlgorithmName(), StandardHasher.SHA256.getBagitAlgorithmName());
+    Path serialFolder = createPayload("serial");
+    Path streamingFolder = createPayload("streaming");
+    
+    BagCreator.bagInPlace(serialFolder, algorithms, false);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    Bag bag;
+    try{
+      bag = BagCreator.bagInPlaceStreaming(streamingFolder, algorithms, false, new Metadata(), executor);
+    }
+    finally{
+      executor.shutdown();
+    }
+    
+    for(String algorithm : algorithms){
+      String manifestName = "manifest-" + algorithm + ".txt";
+      List<String> serialLines = Files.readAllLines(serialFolder.resolve(manifestName));
+      List<String> streamingLines = Files.readAllLines(streamingFolder.resolve(manifestName));
+      Collections.sort(serialLines);
+      Collections.sort(streamingLines);
+      Assertions.assertEquals(serialLines, streamingLines);
+    }
+    Assertions.assertEquals(BagReader.read(streamingFolder), bag);
+    Assertions.assertTrue(Files.exists(streamingFolder.resolve("tagmanifest-md5.txt")));
+  }
+  
+  private Path createPayload(String name) throws IOException{
+    Path root = createDirectory(name);
+    for(int index = 0; index < 1500; index++){ //more files than can be pending at once
+      Path subFolder = Files.createDirectories(root.resolve("folder" + (index % 7)));
+      Files.write(subFolder.resolve("file" + index + ".txt"), ("contents of file " + index).getBytes(StandardCharsets.UTF_8));
+    }
+    return root;
+  }
+  
   private TestStructure createTestStructure() throws IOException{
     TestStructure structure = new TestStructure();
     
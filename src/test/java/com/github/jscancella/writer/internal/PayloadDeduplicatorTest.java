@@ -0,0 +1,94 @@
+package com.github.jscancella.writer.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.writer.DeduplicationReport;
+
+public class PayloadDeduplicatorTest extends TempFolderTest {
+
+  private Path createFile(final String name, final String contents) throws Exception{
+    Path file = folder.resolve(name);
+    Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void testDuplicatesMapToFirstFileByPath() throws Exception{
+    Path first = createFile("a.txt", "same");
+    Path second = createFile("b.txt", "same");
+    Path third = createFile("c.txt", "same");
+    Path other = createFile("d.txt", "other");
+    Manifest manifest = new Manifest("sha256");
+    manifest.getFileToChecksumMap().put(third, "samehash");
+    manifest.getFileToChecksumMap().put(first, "samehash");
+    manifest.getFileToChecksumMap().put(other, "otherhash");
+    manifest.getFileToChecksumMap().put(second, "samehash");
+
+    Map<Path, Path> duplicates = PayloadDeduplicator.findDuplicates(Collections.singleton(manifest));
+
+    Assertions.assertEquals(Arrays.asList(second, third), Arrays.asList(duplicates.keySet().toArray()));
+    Assertions.assertEquals(first, duplicates.get(second));
+    Assertions.assertEquals(first, duplicates.get(third));
+  }
+
+  @Test
+  public void testFilesMustMatchInEveryManifest() throws Exception{
+    Path first = createFile("a.txt", "same");
+    Path second = createFile("b.txt", "same");
+    Manifest sha256 = new Manifest("sha256");
+    sha256.getFileToChecksumMap().put(first, "samehash");
+    sha256.getFileToChecksumMap().put(second, "samehash");
+    Manifest sha512 = new Manifest("sha512");
+    sha512.getFileToChecksumMap().put(first, "hash1");
+    sha512.getFileToChecksumMap().put(second, "hash2");
+
+    Assertions.assertTrue(PayloadDeduplicator.findDuplicates(new HashSet<>(Arrays.asList(sha256, sha512))).isEmpty());
+  }
+
+  @Test
+  public void testContentsAreComparedWhenOnlyCollidingAlgorithmsAreUsed() throws Exception{
+    Path first = createFile("a.txt", "collision 1");
+    Path second = createFile("b.txt", "collision 2");
+    Manifest manifest = new Manifest("md5");
+    manifest.getFileToChecksumMap().put(first, "collidinghash");
+    manifest.getFileToChecksumMap().put(second, "collidinghash");
+
+    Assertions.assertTrue(PayloadDeduplicator.findDuplicates(Collections.singleton(manifest)).isEmpty());
+  }
+
+  @Test
+  public void testFilesWithDifferentSizesAreNotDuplicates() throws Exception{
+    Path first = createFile("a.txt", "short");
+    Path second = createFile("b.txt", "much longer");
+    Manifest manifest = new Manifest("sha256");
+    manifest.getFileToChecksumMap().put(first, "samehash");
+    manifest.getFileToChecksumMap().put(second, "samehash");
+
+    Assertions.assertTrue(PayloadDeduplicator.findDuplicates(Collections.singleton(manifest)).isEmpty());
+  }
+
+  @Test
+  public void testLinkInPlaceDoesNotTouchHiddenFileWithTempName() throws Exception{
+    Path first = createFile("a.txt", "same");
+    Path second = createFile("b.txt", "same");
+    Path hidden = createFile(".b.txt.tmp", "hidden");
+    DeduplicationReport report = new DeduplicationReport();
+
+    PayloadDeduplicator.linkInPlace(Collections.singletonMap(second, first), report);
+
+    Assertions.assertTrue(Files.isSameFile(first, second));
+    Assertions.assertEquals("hidden", new String(Files.readAllBytes(hidden), StandardCharsets.UTF_8));
+    Assertions.assertEquals(1, report.getDuplicateCount());
+  }
+}
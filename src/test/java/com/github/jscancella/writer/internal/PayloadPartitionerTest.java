@@ -0,0 +1,57 @@
+package com.github.jscancella.writer.internal;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PayloadPartitionerTest {
+  private static final Path A = Paths.get("data", "a");
+  private static final Path B = Paths.get("data", "b");
+  private static final Path C = Paths.get("data", "c");
+  private static final Path D = Paths.get("data", "d");
+  private static final Path E = Paths.get("data", "e");
+
+  private static Map<Path, Long> sizes(){
+    Map<Path, Long> fileToSize = new HashMap<>();
+    fileToSize.put(A, 60L);
+    fileToSize.put(B, 50L);
+    fileToSize.put(C, 40L);
+    fileToSize.put(D, 30L);
+    fileToSize.put(E, 20L);
+    return fileToSize;
+  }
+
+  @Test
+  public void testFilesGoInFullestPartitionTheyFit(){
+    List<List<Path>> partitions = PayloadPartitioner.partition(sizes(), 100, 0);
+
+    Assertions.assertEquals(Arrays.asList(Arrays.asList(A, C), Arrays.asList(B, D, E)), partitions);
+  }
+
+  @Test
+  public void testFileCountIsLimited(){
+    List<List<Path>> partitions = PayloadPartitioner.partition(sizes(), 0, 2);
+
+    Assertions.assertEquals(Arrays.asList(Arrays.asList(A, B), Arrays.asList(C, D), Arrays.asList(E)), partitions);
+  }
+
+  @Test
+  public void testFileLargerThanMaximumGetsItsOwnPartition(){
+    List<List<Path>> partitions = PayloadPartitioner.partition(sizes(), 55, 0);
+
+    Assertions.assertEquals(Arrays.asList(Arrays.asList(A), Arrays.asList(B), Arrays.asList(C), Arrays.asList(D, E)), partitions);
+  }
+
+  @Test
+  public void testNoLimitsIsOnePartition(){
+    List<List<Path>> partitions = PayloadPartitioner.partition(sizes(), 0, 0);
+
+    Assertions.assertEquals(Arrays.asList(Arrays.asList(A, B, C, D, E)), partitions);
+  }
+}
@@ -9,13 +9,21 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Bag;
 import com.github.jscancella.domain.FetchItem;
 import com.github.jscancella.domain.Manifest;
+import com.github.jscancella.hash.internal.FileCountAndTotalSize;
+import com.github.jscancella.reader.BagReader;
+import com.github.jscancella.writer.DeduplicationReport;
+import com.github.jscancella.writer.WriteMode;
+import com.github.jscancella.writer.WriteOptions;
 
 public class PayloadWriterTest extends TempFolderTest {
   
@@ -53,4 +61,118 @@ public class PayloadWriterTest extends TempFolderTest {
           rootDir.resolve("data"));
     Assertions.assertFalse(Files.exists(copiedFile) || Files.exists(copiedFile.getParent()));
   }
+  
+  @Test
+  public void testFileInMultipleManifestsIsOnlyWrittenOnce() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag").toURI());
+    Path testFile = Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag/data/dir1/test3.txt").toURI());
+    Manifest md5Manifest = new Manifest("md5");
+    md5Manifest.getFileToChecksumMap().put(testFile, "someHashValue");
+    Manifest sha1Manifest = new Manifest("sha1");
+    sha1Manifest.getFileToChecksumMap().put(testFile, "someOtherHashValue");
+    Set<Manifest> payloadManifests = new HashSet<>(Arrays.asList(md5Manifest, sha1Manifest));
+    Path outputDir = createDirectory("writeOnce");
+    
+    FileCountAndTotalSize written = PayloadWriter.writePayloadFiles(payloadManifests, new ArrayList<>(), outputDir, rootDir);
+    
+    Assertions.assertEquals(1, written.getCount());
+    Assertions.assertEquals(Files.size(testFile), written.getTotalSize());
+  }
+  
+  @Test
+  public void testWritePayloadFilesConcurrently() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag").toURI());
+    Bag bag = BagReader.read(rootDir);
+    Path outputDir = createDirectory("writeConcurrently");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    try{
+      WriteOptions options = new WriteOptions();
+      options.setExecutor(executor);
+      PayloadWriter.writePayloadFiles(bag.getPayLoadManifests(), new ArrayList<>(), outputDir, rootDir, options, new DeduplicationReport());
+    }
+    finally{
+      executor.shutdown();
+    }
+    
+    for(Path payloadFile : bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet()){
+      Path copiedFile = outputDir.resolve(rootDir.relativize(payloadFile));
+      Assertions.assertArrayEquals(Files.readAllBytes(payloadFile), Files.readAllBytes(copiedFile));
+      Assertions.assertEquals(Files.getLastModifiedTime(payloadFile), Files.getLastModifiedTime(copiedFile));
+    }
+  }
+  
+  @Test
+  public void testWritePayloadFilesAsHardLinks() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag").toURI()));
+    Bag bag = BagReader.read(rootDir);
+    Path outputDir = createDirectory("writeHardLinks");
+    WriteOptions options = new WriteOptions();
+    options.setWriteMode(WriteMode.HARDLINK);
+    
+    PayloadWriter.writePayloadFiles(bag.getPayLoadManifests(), new ArrayList<>(), outputDir, rootDir, options, new DeduplicationReport());
+    
+    for(Path payloadFile : bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet()){
+      Path linkedFile = outputDir.resolve(rootDir.relativize(payloadFile));
+      Assertions.assertFalse(Files.isSymbolicLink(linkedFile));
+      Assertions.assertTrue(Files.isSameFile(payloadFile, linkedFile));
+    }
+  }
+  
+  @Test
+  public void testCopyOverHardLinksDoesNotChangeOriginal() throws Exception{
+    Path rootDir = copyBagToTempFolder(Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag").toURI()));
+    Bag bag = BagReader.read(rootDir);
+    Path outputDir = createDirectory("copyOverHardLinks");
+    WriteOptions options = new WriteOptions();
+    options.setWriteMode(WriteMode.HARDLINK);
+    PayloadWriter.writePayloadFiles(bag.getPayLoadManifests(), new ArrayList<>(), outputDir, rootDir, options, new DeduplicationReport());
+    Path payloadFile = bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet().iterator().next();
+    byte[] originalContents = Files.readAllBytes(payloadFile);
+    
+    options.setWriteMode(WriteMode.COPY);
+    PayloadWriter.writePayloadFiles(bag.getPayLoadManifests(), new ArrayList<>(), outputDir, rootDir, options, new DeduplicationReport());
+    
+    Path copiedFile = outputDir.resolve(rootDir.relativize(payloadFile));
+    Assertions.assertFalse(Files.isSameFile(payloadFile, copiedFile));
+    Assertions.assertArrayEquals(originalContents, Files.readAllBytes(payloadFile));
+    Assertions.assertArrayEquals(originalContents, Files.readAllBytes(copiedFile));
+  }
+  
+  @Test
+  public void testWritePayloadFilesAsSymbolicLinks() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag").toURI());
+    Bag bag = BagReader.read(rootDir);
+    Path outputDir = createDirectory("writeSymbolicLinks");
+    WriteOptions options = new WriteOptions();
+    options.setWriteMode(WriteMode.SYMLINK);
+    
+    FileCountAndTotalSize written = PayloadWriter.writePayloadFiles(bag.getPayLoadManifests(), new ArrayList<>(), outputDir, rootDir, options, new DeduplicationReport());
+    
+    long totalSize = 0;
+    for(Path payloadFile : bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet()){
+      Path linkedFile = outputDir.resolve(rootDir.relativize(payloadFile));
+      Assertions.assertTrue(Files.isSymbolicLink(linkedFile));
+      Assertions.assertEquals(payloadFile.toAbsolutePath(), Files.readSymbolicLink(linkedFile));
+      totalSize += Files.size(payloadFile);
+    }
+    Assertions.assertEquals(totalSize, written.getTotalSize());
+  }
+  
+  @Test
+  public void testWritePayloadFilesAsReflinksFallsBackToCopy() throws Exception{
+    Path rootDir = Paths.get(getClass().getClassLoader().getResource("bags/v0_97/bag").toURI());
+    Bag bag = BagReader.read(rootDir);
+    Path outputDir = createDirectory("writeReflinks");
+    WriteOptions options = new WriteOptions();
+    options.setWriteMode(WriteMode.REFLINK);
+    
+    PayloadWriter.writePayloadFiles(bag.getPayLoadManifests(), new ArrayList<>(), outputDir, rootDir, options, new DeduplicationReport());
+    
+    for(Path payloadFile : bag.getPayLoadManifests().iterator().next().getFileToChecksumMap().keySet()){
+      Path copiedFile = outputDir.resolve(rootDir.relativize(payloadFile));
+      Assertions.assertFalse(Files.isSymbolicLink(copiedFile));
+      Assertions.assertArrayEquals(Files.readAllBytes(payloadFile), Files.readAllBytes(copiedFile));
+    }
+  }
 }
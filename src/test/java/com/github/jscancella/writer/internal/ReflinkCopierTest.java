@@ -0,0 +1,51 @@
+package com.github.jscancella.writer.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+
+public class ReflinkCopierTest extends TempFolderTest {
+
+  @Test
+  public void testEachFileIsEitherClonedOrLeftToCopy() throws Exception{
+    Path sourceDir = createDirectory("source");
+    Path destinationDir = createDirectory("destination");
+    Map<Path, Path> sourceToDestination = new LinkedHashMap<>();
+    for(int index = 0; index < 300; index++){ //more than one batch
+      Path source = sourceDir.resolve("file" + index + ".txt");
+      Files.write(source, ("contents " + index).getBytes(StandardCharsets.UTF_8));
+      sourceToDestination.put(source, destinationDir.resolve(source.getFileName()));
+    }
+
+    Set<Path> reflinked = ReflinkCopier.reflink(sourceToDestination);
+
+    for(Entry<Path, Path> entry : sourceToDestination.entrySet()){
+      if(reflinked.contains(entry.getKey())){
+        Assertions.assertArrayEquals(Files.readAllBytes(entry.getKey()), Files.readAllBytes(entry.getValue()));
+      }
+      else{ //nothing is left behind for the copy, not even an empty file
+        Assertions.assertFalse(Files.exists(entry.getValue()));
+      }
+    }
+  }
+
+  @Test
+  public void testRenamedFileIsNotCloned() throws Exception{
+    Path source = createFile("source.txt");
+    Path destination = createDirectory("destination").resolve("renamed.txt");
+    Map<Path, Path> sourceToDestination = new LinkedHashMap<>();
+    sourceToDestination.put(source, destination);
+
+    Assertions.assertTrue(ReflinkCopier.reflink(sourceToDestination).isEmpty());
+    Assertions.assertFalse(Files.exists(destination));
+  }
+}
@@ -1,5 +1,6 @@
 package com.github.jscancella.writer.internal;
 
+import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -27,4 +28,15 @@ public class RelativePathWriterTest extends TempFolderTest {
 
     Assertions.assertEquals(expectedRelativePath, RelativePathWriter.formatRelativePathString(parent, child));
   }
+
+  @Test
+  public void testZipFileSystemPaths() throws Exception{
+    try(FileSystem zip = createZipFileSystem("bag.zip")){
+      Path parent = zip.getPath("/foo");
+      Path child = parent.resolve("bar/ham");
+      String expectedRelativePath = "bar/ham" + System.lineSeparator();
+
+      Assertions.assertEquals(expectedRelativePath, RelativePathWriter.formatRelativePathString(parent, child));
+    }
+  }
 }
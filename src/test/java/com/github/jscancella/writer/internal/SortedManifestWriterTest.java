@@ -0,0 +1,105 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+
+public class SortedManifestWriterTest extends TempFolderTest {
+  private static final String NEWLINE = System.lineSeparator();
+
+  @Test
+  public void testLinesAreSortedByPath() throws Exception{
+    Path rootDir = Paths.get("/foo/bar/ham");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try(SortedManifestWriter writer = new SortedManifestWriter(rootDir, StandardCharsets.UTF_8)){
+      writer.add(rootDir.resolve("data/b.txt"), "hash2");
+      writer.add(rootDir.resolve("data/a/z.txt"), "hash1");
+      writer.add(rootDir.resolve("data/c.txt"), "hash3");
+      writer.writeTo(out);
+    }
+
+    Assertions.assertEquals("hash1  data/a/z.txt" + NEWLINE + "hash2  data/b.txt" + NEWLINE + "hash3  data/c.txt" + NEWLINE,
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSpilledRunsAreMerged() throws Exception{
+    List<String> expectedLines = new ArrayList<>();
+    List<Path> files = new ArrayList<>();
+    for(int index = 0; index < 1000; index++){
+      files.add(folder.resolve("data").resolve("file" + index));
+      expectedLines.add("hash" + index + "  data/file" + index);
+    }
+    Collections.shuffle(files);
+    Collections.sort(expectedLines, (first, second) -> first.substring(first.indexOf(' ')).compareTo(second.substring(second.indexOf(' '))));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try(SortedManifestWriter writer = new SortedManifestWriter(folder, StandardCharsets.UTF_8, 64, createDirectory("spill"))){
+      for(Path file : files){
+        writer.add(file, "hash" + file.getFileName().toString().substring(4));
+      }
+      writer.writeTo(out);
+    }
+
+    List<String> lines = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split(NEWLINE));
+    Assertions.assertEquals(expectedLines, lines);
+  }
+
+  @Test
+  public void testRunsAreSpilledToGivenDirectory() throws Exception{
+    Path spillDir = createDirectory("spill");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try(SortedManifestWriter writer = new SortedManifestWriter(folder, StandardCharsets.UTF_8, 2, spillDir)){
+      writer.add(folder.resolve("data").resolve("b.txt"), "hash2");
+      writer.add(folder.resolve("data").resolve("a.txt"), "hash1");
+      try(Stream<Path> runs = Files.list(spillDir)){
+        Assertions.assertEquals(1, runs.count());
+      }
+      writer.add(folder.resolve("data").resolve("c.txt"), "hash3");
+      writer.writeTo(out);
+    }
+
+    Assertions.assertEquals("hash1  data/a.txt" + NEWLINE + "hash2  data/b.txt" + NEWLINE + "hash3  data/c.txt" + NEWLINE,
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+    try(Stream<Path> runs = Files.list(spillDir)){
+      Assertions.assertEquals(0, runs.count());
+    }
+  }
+
+  @Test
+  public void testPathsAreEncoded() throws Exception{
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try(SortedManifestWriter writer = new SortedManifestWriter(folder, StandardCharsets.UTF_8)){
+      writer.add(folder.resolve("data").resolve("new\nline\rfile.txt"), "hash");
+      writer.writeTo(out);
+    }
+
+    Assertions.assertEquals("hash  data/new%0Aline%0Dfile.txt" + NEWLINE, new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testEmptyManifest() throws Exception{
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try(SortedManifestWriter writer = new SortedManifestWriter(folder, StandardCharsets.UTF_8)){
+      writer.writeTo(out);
+    }
+
+    Assertions.assertEquals(0, out.size());
+  }
+}
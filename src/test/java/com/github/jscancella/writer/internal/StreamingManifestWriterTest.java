@@ -0,0 +1,48 @@
+package com.github.jscancella.writer.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.jscancella.TempFolderTest;
+import com.github.jscancella.domain.Manifest;
+
+public class StreamingManifestWriterTest extends TempFolderTest {
+
+  @Test
+  public void testLinesAreWrittenSortedToEachManifest() throws Exception{
+    Manifest md5 = new Manifest("md5");
+    Manifest sha1 = new Manifest("sha1");
+    Path dataDir = createDirectory("data");
+
+    try(StreamingManifestWriter writer = new StreamingManifestWriter(Arrays.asList(md5, sha1), folder, folder, "manifest-", StandardCharsets.UTF_8)){
+      for(int index = 0; index < 20_000; index++){ //more lines than can be waiting at once
+        writer.append(md5, dataDir.resolve("file" + index), "md5hash" + index);
+        writer.append(sha1, dataDir.resolve("file" + index), "sha1hash" + index);
+      }
+    }
+
+    List<String> md5Lines = Files.readAllLines(folder.resolve("manifest-md5.txt"));
+    List<String> sha1Lines = Files.readAllLines(folder.resolve("manifest-sha1.txt"));
+    Assertions.assertEquals(20_000, md5Lines.size());
+    Assertions.assertEquals(20_000, sha1Lines.size());
+    Assertions.assertEquals("md5hash0  data/file0", md5Lines.get(0));
+    Assertions.assertEquals("sha1hash9999  data/file9999", sha1Lines.get(19_999));
+  }
+
+  @Test
+  public void testEmptyManifestsAreCreated() throws Exception{
+    Manifest md5 = new Manifest("md5");
+
+    try(StreamingManifestWriter writer = new StreamingManifestWriter(Arrays.asList(md5), folder, folder, "tagmanifest-", StandardCharsets.UTF_8)){
+      Assertions.assertEquals(Arrays.asList(folder.resolve("tagmanifest-md5.txt")), writer.getManifestFiles());
+    }
+
+    Assertions.assertEquals(0, Files.size(folder.resolve("tagmanifest-md5.txt")));
+  }
+}
@@ -0,0 +1,88 @@
+package com.github.jscancella.writer.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarInputStream;
+
+public class TarArchiveWriterTest {
+  private static final byte[] CONTENTS = "hello world".getBytes(StandardCharsets.UTF_8);
+  
+  @Test
+  public void testShortNameIsReadable() throws Exception{
+    byte[] archive = writeSingleEntry("bag/data/hello.txt");
+    
+    try(TarInputStream tar = new TarInputStream(new ByteArrayInputStream(archive))){
+      TarEntry entry = tar.getNextEntry();
+      Assertions.assertEquals("bag/data/hello.txt", entry.getName());
+      Assertions.assertEquals(CONTENTS.length, entry.getSize());
+      byte[] read = new byte[CONTENTS.length];
+      Assertions.assertEquals(CONTENTS.length, tar.read(read));
+      Assertions.assertArrayEquals(CONTENTS, read);
+      Assertions.assertNull(tar.getNextEntry());
+    }
+  }
+  
+  @Test
+  public void testLongNameIsSplitIntoPrefix() throws Exception{
+    String directory = "bag/data/" + String.join("", Collections.nCopies(60, "d")) + "/";
+    String fileName = String.join("", Collections.nCopies(90, "f")) + ".txt";
+    byte[] archive = writeSingleEntry(directory + fileName);
+    
+    Assertions.assertEquals('0', archive[156]);
+    Assertions.assertEquals(fileName, readString(archive, 0, 100));
+    Assertions.assertEquals(directory.substring(0, directory.length() - 1), readString(archive, 345, 155));
+  }
+  
+  @Test
+  public void testNonAsciiNameUsesPaxHeader() throws Exception{
+    String name = "bag/data/\u00e9t\u00e9.txt";
+    byte[] archive = writeSingleEntry(name);
+    
+    Assertions.assertEquals('x', archive[156]);
+    String record = new String(archive, 512, 512, StandardCharsets.UTF_8);
+    String expectedRecord = " path=" + name + "\n";
+    int length = expectedRecord.getBytes(StandardCharsets.UTF_8).length + 2;
+    Assertions.assertTrue(record.startsWith(length + expectedRecord));
+    Assertions.assertEquals('0', archive[1024 + 156]);
+  }
+  
+  @Test
+  public void testWrongSizeThrowsException() throws Exception{
+    TarArchiveWriter writer = new TarArchiveWriter(new ByteArrayOutputStream());
+    OutputStream entry = writer.putEntry("short.txt", 2, FileTime.fromMillis(0));
+    entry.write(1);
+    
+    Assertions.assertThrows(IOException.class, () -> { writer.closeEntry(); });
+    Assertions.assertThrows(IOException.class, () -> { entry.write(new byte[2], 0, 2); });
+  }
+  
+  private static byte[] writeSingleEntry(String name) throws Exception{
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TarArchiveWriter writer = new TarArchiveWriter(out);
+    writer.putEntry(name, CONTENTS.length, FileTime.fromMillis(System.currentTimeMillis())).write(CONTENTS, 0, CONTENTS.length);
+    writer.closeEntry();
+    writer.finish();
+    
+    Assertions.assertEquals(0, out.size() % 10240);
+    return out.toByteArray();
+  }
+  
+  private static String readString(byte[] header, int offset, int length){
+    byte[] field = Arrays.copyOfRange(header, offset, offset + length);
+    int end = 0;
+    while(end < field.length && field[end] != 0){
+      end++;
+    }
+    return new String(field, 0, end, StandardCharsets.US_ASCII);
+  }
+}